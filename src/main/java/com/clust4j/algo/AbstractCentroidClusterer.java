@@ -20,10 +20,12 @@ import java.util.HashSet;
 import java.util.Random;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
 import com.clust4j.NamedEntity;
+import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.Kernel;
 import com.clust4j.log.LogTimer;
 import com.clust4j.metrics.pairwise.Distance;
@@ -320,13 +322,55 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		
 		// set centroids
 		final LogTimer centTimer = new LogTimer();
-		this.init_centroid_indices = init.getInitialCentroidSeeds(
-			this, this.data.getData(), k, getSeed());
-		for(int i: this.init_centroid_indices)
-			centroids.add(this.data.getRow(i));
+		final int[] warmIndices = planner.getInitialIndices();
+		final double[][] warmCentroids = planner.getInitialCentroids();
 		
+		if(singular_value || (null == warmIndices && null == warmCentroids)) {
+			this.init_centroid_indices = init.getInitialCentroidSeeds(
+				this, this.data.getData(), k, getSeed());
+			for(int i: this.init_centroid_indices)
+				centroids.add(this.data.getRow(i));
+			
+			info("selected centroid centers via " + init.getName() + " in " + centTimer.toString());
+			
+		} else if(null != warmIndices) {
+			if(warmIndices.length != k)
+				error(new IllegalArgumentException("expected "+k+" warm-start indices, got "+warmIndices.length));
+			
+			this.init_centroid_indices = VecUtils.copy(warmIndices);
+			final HashSet<Integer> seen = new HashSet<>();
+			for(int i: this.init_centroid_indices) {
+				if(i < 0 || i >= m)
+					error(new IllegalArgumentException("warm-start index "+i+" out of range"));
+				if(!seen.add(i))
+					error(new IllegalArgumentException("duplicate warm-start index "+i));
+				centroids.add(this.data.getRow(i));
+			}
+			
+			info("warm-started from "+k+" record indices in " + centTimer.toString());
+			
+		} else {
+			if(warmCentroids.length != k)
+				error(new IllegalArgumentException("expected "+k+" warm-start centroids, got "+warmCentroids.length));
+			
+			final int n = this.data.getColumnDimension();
+			for(double[] c: warmCentroids)
+				if(c.length != n)
+					error(new DimensionMismatchException(c.length, n));
+			
+			if(centroidsMustBeRecords()) {
+				this.init_centroid_indices = nearestRecords(this.data.getDataRef(), warmCentroids);
+				for(int i: this.init_centroid_indices)
+					centroids.add(this.data.getRow(i));
+			} else {
+				this.init_centroid_indices = null;
+				for(double[] c: warmCentroids)
+					centroids.add(c);
+			}
+			
+			info("warm-started from "+k+" centroids in " + centTimer.toString());
+		}
 		
-		info("selected centroid centers via " + init.getName() + " in " + centTimer.toString());
 		logModelSummary();
 		
 		/*
@@ -346,6 +390,66 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		wss = VecUtils.rep(Double.NaN, k);
 	}
 	
+	/**
+	 * Identify the distinct record nearest to each of the centroids under this
+	 * model's metric. Used to snap warm-start centroids onto records for models
+	 * whose centroids must be records themselves.
+	 * @param X
+	 * @param cents
+	 * @return the record indices
+	 */
+	final int[] nearestRecords(final double[][] X, final double[][] cents) {
+		final int[] idcs = new int[cents.length];
+		final HashSet<Integer> taken = new HashSet<>();
+		
+		double dist, minDist;
+		for(int c = 0; c < cents.length; c++) {
+			minDist = Double.POSITIVE_INFINITY;
+			idcs[c] = -1;
+			
+			for(int i = 0; i < X.length; i++) {
+				if(taken.contains(i))
+					continue;
+				
+				dist = dist_metric.getPartialDistance(cents[c], X[i]);
+				if(-1 == idcs[c] || dist < minDist) {
+					minDist = dist;
+					idcs[c] = i;
+				}
+			}
+			
+			taken.add(idcs[c]);
+		}
+		
+		return idcs;
+	}
+	
+	/**
+	 * Appends new rows beneath this model's data, for refitting
+	 * the model incrementally from its previous solution.
+	 * @param appended
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws DimensionMismatchException if the column dims do not match
+	 * @return the combined matrix
+	 */
+	protected Array2DRowRealMatrix appendRows(final RealMatrix appended) {
+		getLabels(); // throws the MNF exception if not fit
+		
+		final int n = data.getColumnDimension();
+		if(appended.getColumnDimension() != n)
+			throw new DimensionMismatchException(appended.getColumnDimension(), n);
+		
+		final double[][] X = data.getDataRef();
+		final double[][] combined = new double[m + appended.getRowDimension()][];
+		for(int i = 0; i < m; i++)
+			combined[i] = X[i];
+		for(int i = m; i < combined.length; i++)
+			combined[i] = appended.getRow(i - m);
+		
+		// Copied again in the new model's constructor
+		return new Array2DRowRealMatrix(combined, false);
+	}
+	
 	@Override
 	final public boolean isValidMetric(GeometricallySeparable geo) {
 		return !UNSUPPORTED_METRICS.contains(geo.getClass());
@@ -466,7 +570,22 @@ public abstract class AbstractCentroidClusterer extends AbstractPartitionalClust
 		}
 	}
 
+	/**
+	 * Fit a new model over this model's data with the <tt>appended</tt> rows
+	 * beneath it, warm-started from this model's solution. When the data has
+	 * changed only slightly, this converges in far fewer iterations than a cold fit.
+	 * @param appended - the new rows
+	 * @throws ModelNotFitException if this model has not been fit
+	 * @throws UnsupportedOperationException if the model does not support refitting
+	 * @return the new, fit model
+	 */
+	public AbstractCentroidClusterer refit(RealMatrix appended) {
+		throw new UnsupportedOperationException(getName() + " does not support refitting");
+	}
+	
 	protected abstract void reorderLabelsAndCentroids();
 	@Override protected abstract AbstractCentroidClusterer fit();
 	protected GeometricallySeparable defMetric() { return AbstractClusterer.DEF_DIST; }
+	/** Whether the centroids must be records in the data, as in KMedoids */
+	protected boolean centroidsMustBeRecords() { return false; }
 }
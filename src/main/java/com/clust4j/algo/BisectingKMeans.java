@@ -0,0 +1,500 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.log.LogTimer;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+/**
+ * Bisecting KMeans is a divisive, hierarchical variant of {@link KMeans}. Beginning
+ * with all records in a single cluster, it repeatedly splits the cluster with the
+ * largest WSS contribution in two by running 2-means over that cluster's records only,
+ * until <i>k</i> clusters are found. Each split costs O(<i>n<sub>subset</sub></i>)
+ * per iteration rather than the O(<i>nk</i>) of a full KMeans iteration, and the
+ * splits form a binary tree that may be browsed or cut at any <i>k</i> without refitting.
+ * 
+ * <p>
+ * Only the selected cluster is split, and its 2-means runs in parallel if enabled.
+ * A cluster that cannot be split, i.e., holds fewer than two distinct records, 
+ * is passed over for the next largest.
+ * 
+ * <p>
+ * Nodes are numbered in the order they are created: the root is node 0, and the
+ * <i>j</i>th split creates nodes <tt>2j+1</tt> and <tt>2j+2</tt>.
+ * 
+ * @see KMeans
+ * @see <a href="http://glaros.dtc.umn.edu/gkhome/fetch/papers/docclusterKDDTMW00.pdf">A Comparison of Document Clustering Techniques</a>
+ * @author Taylor G Smith
+ */
+final public class BisectingKMeans extends AbstractCentroidClusterer {
+	private static final long serialVersionUID = -5818542542381428475L;
+	final public static GeometricallySeparable DEF_DIST = Distance.EUCLIDEAN;
+	final public static int DEF_MAX_ITER = KMeans.DEF_MAX_ITER;
+	
+	/** The requested number of clusters; {@link #k} may be less if the data could not be split */
+	final private int requestedK;
+	
+	/* The tree, indexed by node */
+	private int[] parent;
+	private int[] leftChild;
+	private int[] rightChild;
+	private int[] nodeSize;
+	private double[] nodeWSS;
+	private double[][] nodeCentroid;
+	private int numNodes = 0;
+	
+	/** The leaf each record falls in */
+	private int[] leafAssignment;
+	
+	/* Fit-time state for the leaves yet to be split */
+	private transient int[][] members;
+	private transient boolean[] unsplittable;
+	private transient long splitSeed;
+	
+	
+	
+	/**
+	 * The 2-means split of a single node. Null if the node cannot be split.
+	 */
+	static class Split {
+		final int[] labels;
+		final double[][] centroids;
+		final double[] wss;
+		final boolean converged;
+		
+		Split(int[] labels, double[][] centroids, double[] wss, boolean converged) {
+			this.labels = labels;
+			this.centroids = centroids;
+			this.wss = wss;
+			this.converged = converged;
+		}
+	}
+	
+	
+	
+	protected BisectingKMeans(final RealMatrix data) {
+		this(data, DEF_K);
+	}
+	
+	protected BisectingKMeans(final RealMatrix data, final int k) {
+		this(data, new BisectingKMeansParameters(k));
+	}
+	
+	protected BisectingKMeans(final RealMatrix data, final BisectingKMeansParameters planner) {
+		/*
+		 * The top-level seeds are never used -- each split seeds itself
+		 * with the planner's strategy -- so seed them as cheaply as possible
+		 */
+		super(data, planner.copy()
+			.setInitialCentroids(null)
+			.setInitializationStrategy(InitializationStrategy.RANDOM));
+		
+		this.init = planner.getInitializationStrategy();
+		this.requestedK = this.k;
+		
+		if(null != planner.getInitialCentroids())
+			warn("initial centroids are not supported by " + getName() 
+				+ "; the hierarchy is always grown from a single cluster");
+	}
+	
+	
+	
+	@Override
+	public String getName() {
+		return "BisectingKMeans";
+	}
+	
+	@Override
+	public Algo getLoggerTag() {
+		return Algo.KMEANS;
+	}
+	
+	@Override
+	protected Object[] getModelFitSummaryHeaders() {
+		return new Object[]{
+			"Split #","Node","Node Size","Node WSS","Total WSS","BSS","Wall"
+		};
+	}
+	
+	/** 
+	 * Refits the hierarchy over the combined data. As the
+	 * splits depend on all the data, this is not warm-started.
+	 */
+	@Override
+	public BisectingKMeans refit(final RealMatrix appended) {
+		final Array2DRowRealMatrix combined = appendRows(appended);
+		
+		return new BisectingKMeans(combined, new BisectingKMeansParameters(requestedK)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setMetric(dist_metric)
+			.setVerbose(getVerbose())
+			.setSeed(getSeed())
+			.setInitializationStrategy(init)
+			.setForceParallel(parallel)).fit();
+	}
+	
+	
+	
+	@Override
+	protected BisectingKMeans fit() {
+		synchronized(fitLock) {
+			
+			if(null != labels) // already fit
+				return this;
+			
+			final LogTimer timer = new LogTimer();
+			final double[][] X = data.getDataRef();
+			final int maxNodes = 2 * k - 1;
+			
+			parent = VecUtils.repInt(-1, maxNodes);
+			leftChild = VecUtils.repInt(-1, maxNodes);
+			rightChild = VecUtils.repInt(-1, maxNodes);
+			nodeSize = new int[maxNodes];
+			nodeWSS = new double[maxNodes];
+			nodeCentroid = new double[maxNodes][];
+			members = new int[maxNodes][];
+			unsplittable = new boolean[maxNodes];
+			splitSeed = getSeed().nextLong();
+			
+			// The root holds every record
+			numNodes = 1;
+			nodeSize[0] = m;
+			nodeWSS[0] = tss;
+			nodeCentroid[0] = MatUtils.meanRecord(X);
+			members[0] = VecUtils.arange(m);
+			leafAssignment = new int[m];
+			
+			int leaves = 1;
+			double wss_sum = tss;
+			converged = true;
+			
+			unsplittable[0] = m < 2;
+			
+			while(leaves < k) {
+				
+				// Select the leaf with the largest WSS that may still be split
+				int node = -1;
+				for(int v = 0; v < numNodes; v++) {
+					if(null != members[v] && !unsplittable[v] 
+							&& (-1 == node || nodeWSS[v] > nodeWSS[node]))
+						node = v;
+				}
+				
+				if(-1 == node) {
+					warn("no remaining cluster could be split; found " + leaves + " of " + k + " clusters");
+					break;
+				}
+				
+				final Split split = split(node);
+				if(null == split) {
+					unsplittable[node] = true;
+					continue;
+				}
+				
+				// Commit the split
+				final int[] idcs = members[node];
+				final int a = numNodes, b = numNodes + 1;
+				
+				final int[] sizes = new int[2];
+				for(int label: split.labels)
+					sizes[label]++;
+				
+				final int[][] childMembers = new int[][]{ new int[sizes[0]], new int[sizes[1]] };
+				final int[] ptrs = new int[2];
+				for(int i = 0; i < idcs.length; i++) {
+					int label = split.labels[i];
+					childMembers[label][ptrs[label]++] = idcs[i];
+					leafAssignment[idcs[i]] = label == 0 ? a : b;
+				}
+				
+				for(int c = 0; c < 2; c++) {
+					int child = a + c;
+					parent[child] = node;
+					nodeSize[child] = sizes[c];
+					nodeWSS[child] = split.wss[c];
+					nodeCentroid[child] = split.centroids[c];
+					members[child] = childMembers[c];
+					unsplittable[child] = sizes[c] < 2;
+				}
+				
+				leftChild[node] = a;
+				rightChild[node] = b;
+				members[node] = null;
+				numNodes += 2;
+				leaves++;
+				
+				converged &= split.converged;
+				wss_sum += split.wss[0] + split.wss[1] - nodeWSS[node];
+				bss = tss - wss_sum;
+				
+				fitSummary.add(new Object[]{
+					iter++, node, nodeSize[node], nodeWSS[node], wss_sum, bss, timer.wallTime()
+				});
+			}
+			
+			// If we could not find k clusters, k shrinks
+			if(leaves != k) {
+				k = leaves;
+				converged = false;
+			}
+			
+			// Free the fit-time state
+			members = null;
+			unsplittable = null;
+			
+			this.labels = cut(leafAssignment, k);
+			this.centroids = cutCentroids(this.labels, leafAssignment, k);
+			this.wss = cutWSS(this.labels, leafAssignment, k);
+			this.bss = tss - VecUtils.sum(wss);
+			
+			if(!converged)
+				warn("algorithm did not converge");
+			
+			sayBye(timer);
+			return this;
+		}
+	}
+	
+	/**
+	 * Run 2-means over the records in a single node
+	 * @param node
+	 * @return the split, or null if the node cannot be split
+	 */
+	private Split split(final int node) {
+		final int[] idcs = members[node];
+		if(idcs.length < 2)
+			return null;
+		
+		final double[][] X = data.getDataRef();
+		final double[][] sub = new double[idcs.length][];
+		for(int i = 0; i < idcs.length; i++)
+			sub[i] = X[idcs[i]];
+		
+		// Seeded by node so the result does not depend on the order of splits
+		final KMeans model = new KMeans(new Array2DRowRealMatrix(sub, false), 
+			new KMeansParameters(2)
+				.setMaxIter(maxIter)
+				.setConvergenceCriteria(tolerance)
+				.setMetric(dist_metric)
+				.setSeed(new Random(splitSeed + node))
+				.setInitializationStrategy(init)
+				.setVerbose(false)
+				.setForceParallel(parallel));
+		
+		// All records are equal
+		if(model.getK() != 2)
+			return null;
+		
+		model.fit();
+		final ArrayList<double[]> cents = model.getCentroids();
+		return new Split(model.getLabels(), 
+			new double[][]{cents.get(0), cents.get(1)}, 
+			model.getWSS(), model.didConverge());
+	}
+	
+	/**
+	 * Climb from the leaf to the node that is a leaf when the tree is cut at k
+	 * @param node
+	 * @param k
+	 * @return the node
+	 */
+	private int ancestorAtCut(int node, int k) {
+		// Nodes created by later splits have larger indices than their parents
+		final int firstHidden = 2 * k - 1;
+		while(node >= firstHidden)
+			node = parent[node];
+		return node;
+	}
+	
+	/**
+	 * Label the records by their cluster when the tree is cut at k,
+	 * encoded in order of appearance
+	 */
+	private int[] cut(final int[] assignment, final int k) {
+		final int[] encoding = VecUtils.repInt(-1, numNodes);
+		final int[] out = new int[assignment.length];
+		
+		int next = 0, node;
+		for(int i = 0; i < assignment.length; i++) {
+			node = ancestorAtCut(assignment[i], k);
+			if(-1 == encoding[node])
+				encoding[node] = next++;
+			out[i] = encoding[node];
+		}
+		
+		return out;
+	}
+	
+	/**
+	 * The node for each encoded label in a cut
+	 */
+	private int[] cutNodes(final int[] cutLabels, final int[] assignment, final int k) {
+		final int[] nodes = new int[k];
+		for(int i = 0; i < cutLabels.length; i++)
+			nodes[cutLabels[i]] = ancestorAtCut(assignment[i], k);
+		return nodes;
+	}
+	
+	private ArrayList<double[]> cutCentroids(final int[] cutLabels, final int[] assignment, final int k) {
+		final ArrayList<double[]> out = new ArrayList<>(k);
+		for(int node: cutNodes(cutLabels, assignment, k))
+			out.add(VecUtils.copy(nodeCentroid[node]));
+		return out;
+	}
+	
+	private double[] cutWSS(final int[] cutLabels, final int[] assignment, final int k) {
+		final double[] out = new double[k];
+		final int[] nodes = cutNodes(cutLabels, assignment, k);
+		for(int i = 0; i < k; i++)
+			out[i] = nodeWSS[nodes[i]];
+		return out;
+	}
+	
+	private void checkCut(final int k) {
+		if(null == labels)
+			error(new ModelNotFitException("model has not been fit yet"));
+		if(k < 1 || k > this.k)
+			error(new IllegalArgumentException("k must be between 1 and " + this.k));
+	}
+	
+	/**
+	 * Cut the tree into <tt>k</tt> clusters, which are the clusters the
+	 * fit would have produced had it stopped at <tt>k</tt>.
+	 * @param k - the number of clusters, at most the number fit
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return the labels, in order of appearance
+	 */
+	public int[] cut(final int k) {
+		synchronized(fitLock) {
+			checkCut(k);
+			return cut(leafAssignment, k);
+		}
+	}
+	
+	/**
+	 * The centroids of the clusters when the tree is cut into <tt>k</tt>
+	 * clusters, ordered to correspond with the labels of {@link #cut(int)}
+	 * @param k - the number of clusters, at most the number fit
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return the centroids
+	 */
+	public ArrayList<double[]> cutCentroids(final int k) {
+		synchronized(fitLock) {
+			checkCut(k);
+			return cutCentroids(cut(leafAssignment, k), leafAssignment, k);
+		}
+	}
+	
+	private void checkNode(final int node) {
+		if(null == labels)
+			error(new ModelNotFitException("model has not been fit yet"));
+		if(node < 0 || node >= numNodes)
+			error(new IllegalArgumentException("node " + node + " out of range"));
+	}
+	
+	/**
+	 * The number of nodes in the tree, which is <tt>2k - 1</tt>
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return the number of nodes
+	 */
+	public int getNumNodes() {
+		synchronized(fitLock) {
+			if(null == labels)
+				error(new ModelNotFitException("model has not been fit yet"));
+			return numNodes;
+		}
+	}
+	
+	/**
+	 * The parent of a node, or -1 for the root
+	 * @param node
+	 * @return the parent node
+	 */
+	public int getParent(final int node) {
+		synchronized(fitLock) {
+			checkNode(node);
+			return parent[node];
+		}
+	}
+	
+	/**
+	 * The two children a node was split into, or null if the node is a leaf
+	 * @param node
+	 * @return the child nodes
+	 */
+	public int[] getChildren(final int node) {
+		synchronized(fitLock) {
+			checkNode(node);
+			return -1 == leftChild[node] ? null : new int[]{leftChild[node], rightChild[node]};
+		}
+	}
+	
+	/**
+	 * The number of records in a node
+	 * @param node
+	 * @return the size of the node
+	 */
+	public int getNodeSize(final int node) {
+		synchronized(fitLock) {
+			checkNode(node);
+			return nodeSize[node];
+		}
+	}
+	
+	/**
+	 * The within-cluster sum of squares of a node
+	 * @param node
+	 * @return the WSS of the node
+	 */
+	public double getNodeWSS(final int node) {
+		synchronized(fitLock) {
+			checkNode(node);
+			return nodeWSS[node];
+		}
+	}
+	
+	/**
+	 * The centroid of a node
+	 * @param node
+	 * @return a copy of the centroid
+	 */
+	public double[] getNodeCentroid(final int node) {
+		synchronized(fitLock) {
+			checkNode(node);
+			return VecUtils.copy(nodeCentroid[node]);
+		}
+	}
+	
+	/**
+	 * Labels and centroids are already encoded in order of appearance by the cut
+	 */
+	@Override
+	protected void reorderLabelsAndCentroids() {
+		/* no-op */
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import java.util.Collection;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+
+final public class BisectingKMeansParameters extends CentroidClustererParameters<BisectingKMeans> {
+	private static final long serialVersionUID = 4528307625618957341L;
+	
+	private InitializationStrategy strat = BisectingKMeans.DEF_INIT;
+	private int maxIter = BisectingKMeans.DEF_MAX_ITER;
+	
+	public BisectingKMeansParameters() { }
+	public BisectingKMeansParameters(int k) {
+		this.k = k;
+	}
+	
+	@Override
+	public BisectingKMeans fitNewModel(final RealMatrix data) {
+		return new BisectingKMeans(data, this.copy()).fit();
+	}
+	
+	@Override
+	public BisectingKMeansParameters copy() {
+		return new BisectingKMeansParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(minChange)
+			.setMetric(metric)
+			.setVerbose(verbose)
+			.setSeed(seed)
+			.setInitializationStrategy(strat)
+			.setInitialCentroids(initCentroids)
+			.setForceParallel(parallel);
+	}
+	
+	@Override
+	public InitializationStrategy getInitializationStrategy() {
+		return strat;
+	}
+	
+	@Override
+	public int getMaxIter() {
+		return maxIter;
+	}
+	
+	@Override
+	public BisectingKMeansParameters setForceParallel(boolean b) {
+		this.parallel = b;
+		return this;
+	}
+	
+	@Override
+	public BisectingKMeansParameters setMetric(final GeometricallySeparable dist) {
+		this.metric = dist;
+		return this;
+	}
+	
+	/**
+	 * The max iterations for each 2-means split
+	 * @param max
+	 * @return this
+	 */
+	public BisectingKMeansParameters setMaxIter(final int max) {
+		this.maxIter = max;
+		return this;
+	}
+
+	/**
+	 * The convergence tolerance for each 2-means split
+	 * @param min
+	 * @return this
+	 */
+	@Override
+	public BisectingKMeansParameters setConvergenceCriteria(final double min) {
+		this.minChange = min;
+		return this;
+	}
+	
+	/**
+	 * The strategy used to seed each 2-means split
+	 * @param init
+	 * @return this
+	 */
+	@Override
+	public BisectingKMeansParameters setInitializationStrategy(InitializationStrategy init) {
+		this.strat = init;
+		return this;
+	}
+	
+	/**
+	 * {@link BisectingKMeans} always grows its hierarchy from a single
+	 * cluster, so initial centroids are ignored with a warning.
+	 */
+	@Override
+	public BisectingKMeansParameters setInitialCentroids(final Collection<double[]> centroids) {
+		this.initCentroids = copyCentroids(centroids);
+		return this;
+	}
+	
+	@Override
+	public BisectingKMeansParameters setSeed(final Random seed) {
+		this.seed = seed;
+		return this;
+	}
+	
+	@Override
+	public BisectingKMeansParameters setVerbose(final boolean v) {
+		this.verbose = v;
+		return this;
+	}
+}
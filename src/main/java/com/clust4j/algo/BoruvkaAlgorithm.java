@@ -15,9 +15,14 @@
  *******************************************************************************/
 package com.clust4j.algo;
 
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.GlobalState;
 import com.clust4j.algo.Neighborhood;
 import com.clust4j.algo.NearestNeighborHeapSearch.NodeData;
 import com.clust4j.log.LogTimer;
@@ -31,11 +36,23 @@ import com.clust4j.utils.VecUtils;
  * in a graph for which all edge weights are distinct. Used in conjunction with
  * {@link HDBSCAN}, and adapted from the <a href="https://github.com/lmcinnes/hdbscan">HDBSCAN python package</a>.
  * 
+ * 
+ * <p>
+ * Each round's searches for the components' nearest outside neighbors are independent,
+ * so if parallel, the query tree is split at a level with several subtrees per core, and
+ * each subtree is traversed against the whole tree in the fork-join pool. The workers
+ * share the components' best candidate edges, which they lower with compare-and-set, and
+ * each worker alone bounds the nodes of its subtree. Candidates of equal distance are
+ * broken by the lowest point, then neighbor, so the edges found do not depend on the order
+ * of the search, and the components are then joined serially in a fixed order.
+ * 
  * @see <a href="https://en.wikipedia.org/wiki/Bor%C5%AFvka%27s_algorithm">Boruvka's algorithm</a>
  * @author Taylor G Smith
  */
 class BoruvkaAlgorithm implements java.io.Serializable {
 	private static final long serialVersionUID = 3935595821188876442L;
+	/** The number of query subtrees to traverse per core, if parallel */
+	static final int TASKS_PER_CORE = 4;
 
 	// the initialization reorganizes the trees
 	final protected Boruvka alg;
@@ -47,11 +64,19 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	private final int leafSize;
 	private final Loggable logger;
 	private final double alpha;
+	private final boolean parallel;
 	
 	protected BoruvkaAlgorithm(NearestNeighborHeapSearch tree, int min_samples, 
 			DistanceMetric metric, int leafSize, boolean approx_min_span_tree,
 			double alpha, Loggable logger) {
+		this(tree, min_samples, metric, leafSize, approx_min_span_tree, alpha, logger, false);
+	}
+	
+	protected BoruvkaAlgorithm(NearestNeighborHeapSearch tree, int min_samples, 
+			DistanceMetric metric, int leafSize, boolean approx_min_span_tree,
+			double alpha, Loggable logger, boolean parallel) {
 		
+		this.parallel = parallel;
 		this.outer_tree = tree;
 		this.minSamples = min_samples;
 		this.metric = metric;
@@ -75,6 +100,31 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 	}
 	
+	/**
+	 * A component's best candidate edge: from a point in the
+	 * component to its nearest neighbor outside of it
+	 * @author Taylor G Smith
+	 */
+	final static class Candidate {
+		final double distance;
+		final int point, neighbor;
+		
+		Candidate(double distance, int point, int neighbor) {
+			this.distance = distance;
+			this.point = point;
+			this.neighbor = neighbor;
+		}
+		
+		/** Whether this edge is shorter, ties going to the lowest point, then neighbor */
+		boolean precedes(final Candidate other) {
+			if(distance != other.distance)
+				return distance < other.distance;
+			if(point != other.point)
+				return point < other.point;
+			return neighbor < other.neighbor;
+		}
+	}
+	
 
 	protected static double ballTreeMinDistDual(double rad1, double rad2, int node1, int node2, double[][] centroidDist) {
 		double distPt = centroidDist[node1][node2];
@@ -122,8 +172,6 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	 * @author Taylor G Smith
 	 */
 	protected abstract class Boruvka {
-		final static int INIT_VAL = -1;
-		
 		final NearestNeighborHeapSearch coreDistTree = outer_tree;
 		final NearestNeighborHeapSearch TREE;
 		final BoruvkaUnionFind componentUnionFind;
@@ -139,12 +187,13 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		double[] bounds;
 		int[] components, 
 			  componentOfPoint, 
-			  componentOfNode, 
-			  candidateNeighbors, 
-			  candidatePoint;
-		double[] candidateDistance;
+			  componentOfNode;
+		/** Each component's best candidate edge, or null */
+		final AtomicReferenceArray<Candidate> candidates;
 		double[][] edges;
 		double[] coreDistance;
+		/** The number of neighbors, counting the record itself, that define the core distances */
+		int coreNeighbors;
 		
 		Boruvka(boolean partialTrans, NearestNeighborHeapSearch TREE){
 			this.TREE 			= TREE;
@@ -161,9 +210,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			this.bounds 			= new double[numNodes];
 			this.componentOfPoint 	= new int[numPoints];
 			this.componentOfNode 	= new int[numNodes];
-			this.candidateNeighbors	= new int[numPoints];
-			this.candidatePoint 	= new int[numPoints];
-			this.candidateDistance 	= new double[numPoints];
+			this.candidates 		= new AtomicReferenceArray<>(numPoints);
 			this.edges 				= new double[numPoints - 1][3];
 			this.componentUnionFind = new BoruvkaUnionFind(numPoints);
 			
@@ -180,28 +227,82 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		final void initComponents() {
 			int n;
 			
-			for(n = 0; n < this.numPoints; n++) {
+			for(n = 0; n < this.numPoints; n++)
 				this.componentOfPoint[n]	= n;
-				this.candidateNeighbors[n]	= INIT_VAL;
-				this.candidatePoint[n]		= INIT_VAL;
-				this.candidateDistance[n]	= Double.MAX_VALUE;
-			}
 			
 			for(n = 0; n < numNodes; n++)
 				this.componentOfNode[n] = -(n + 1);
 		}
 		
+		/**
+		 * The distance of the component's best candidate edge
+		 * @param component
+		 * @return the distance, or {@link Double#MAX_VALUE} if there is none
+		 */
+		final double candidateDistance(final int component) {
+			final Candidate c = candidates.get(component);
+			return null == c ? Double.MAX_VALUE : c.distance;
+		}
+		
+		/**
+		 * Lower the component's best candidate edge to the given edge if it precedes it.
+		 * Lock-free, so any number of workers can offer edges for the same component.
+		 */
+		final void offer(final int component, final double distance, final int point, final int neighbor) {
+			final Candidate next = new Candidate(distance, point, neighbor);
+			Candidate current;
+			
+			do {
+				current = candidates.get(component);
+				if(null != current && !next.precedes(current))
+					return;
+			} while(!candidates.compareAndSet(component, current, next));
+		}
+		
 		final double[][] spanningTree() {
 			int numComponents = this.tree_data_ref.length;
 			
 			while(numComponents > 1) {
-				this.dualTreeTraversal(0, 0);
+				this.searchComponents();
 				numComponents = this.updateComponents();
 			}
 			
 			return this.edges;
 		}
 		
+		/**
+		 * Find each component's nearest outside neighbor, in parallel if enabled
+		 * and the tree has at least {@link #TASKS_PER_CORE} subtrees per core
+		 */
+		final void searchComponents() {
+			final int targetTasks = TASKS_PER_CORE * GlobalState.ParallelismConf.NUM_CORES;
+			
+			// The first level with enough nodes. The tree is complete, so it spans
+			// nodes 2^level - 1 through 2^(level + 1) - 2
+			int level = 0;
+			while((1 << level) < targetTasks)
+				level++;
+			
+			final int first = (1 << level) - 1, last = (1 << (level + 1)) - 2;
+			if(parallel && last < numNodes) {
+				try {
+					GlobalState.ParallelismConf.FJ_THREADPOOL
+						.invoke(new ParallelSearchTask(this, first, last + 1));
+					
+					// No subtree bounds the nodes above them, which are reset
+					// in case a later round must be searched serially
+					for(int n = 0; n < first; n++)
+						this.bounds[n] = Double.MAX_VALUE;
+					return;
+				} catch(RejectedExecutionException r) {
+					if(null != logger)
+						logger.warn("parallel Boruvka search failed; falling back to serial");
+				}
+			}
+			
+			this.dualTreeTraversal(0, 0, 0);
+		}
+		
 		final int updateComponents() {
 			int source, sink, c, component, n, i, p, currentComponent,
 				currentSrcComponent, currentSinkComponent, child1, child2,
@@ -216,41 +317,39 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		    // We will go through and and an edge to the edge list
 		    // for each of these, and the union the two points
 		    // together in the union find structure
+			Candidate candidate;
 			for(c = 0; c < this.components.length; c++ /* <- tee-hee */) {
 				component = this.components[c];
-				source = this.candidatePoint[component];
-				sink = this.candidateNeighbors[component];
+				candidate = this.candidates.get(component);
 				
 				//Src or sink is undefined...
-				if(source == INIT_VAL || sink == INIT_VAL)
+				if(null == candidate)
 					continue;
 				
+				source = candidate.point;
+				sink = candidate.neighbor;
 				currentSrcComponent = this.componentUnionFind.find(source);
 				currentSinkComponent= this.componentUnionFind.find(sink);
 				
+				// Reset everything
+				this.candidates.set(component, null);
 
 				// Already joined these so ignore this edge
-				if(currentSrcComponent == currentSinkComponent) {
-					this.candidatePoint[component] = INIT_VAL;
-					this.candidateNeighbors[component] = INIT_VAL;
-					this.candidateDistance[component] = Double.MAX_VALUE;
+				if(currentSrcComponent == currentSinkComponent)
 					continue;
-				}
 				
 				// Set edge
 				this.edges[numEdges][0] = source;
 				this.edges[numEdges][1] = sink;
 				this.edges[numEdges][2] = this.partialDistTransform ?
-						metric.partialDistanceToDistance(
-							this.candidateDistance[component]) :
-								this.candidateDistance[component];
+						metric.partialDistanceToDistance(candidate.distance) :
+							candidate.distance;
 				this.numEdges++;
 				
 				// Join
 				this.componentUnionFind.union(source, sink);
 				
-				// Reset everything and check for termination condition
-				this.candidateDistance[component] = Double.MAX_VALUE;
+				// Check for termination condition
 				if(this.numEdges == this.numPoints - 1) {
 					this.components = this.componentUnionFind.components();
 					return components.length;
@@ -316,7 +415,44 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		abstract void computeBounds();
-		abstract int dualTreeTraversal(int node1, int node2);
+		
+		/**
+		 * Search the query node against the reference node
+		 * @param node1 - the query node
+		 * @param node2 - the reference node
+		 * @param top - the root of the query subtree being searched, above which
+		 * the bounds are not propagated
+		 * @return
+		 */
+		abstract int dualTreeTraversal(int node1, int node2, int top);
+	}
+	
+	/**
+	 * Traverses each query subtree in <tt>[lo, hi)</tt> against the whole tree.
+	 * The subtrees are disjoint, so each is bounded by a single worker.
+	 * @author Taylor G Smith
+	 */
+	static class ParallelSearchTask extends RecursiveAction {
+		private static final long serialVersionUID = -5836410427366208474L;
+		final Boruvka alg;
+		final int lo, hi;
+		
+		ParallelSearchTask(Boruvka alg, int lo, int hi) {
+			this.alg = alg;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override
+		protected void compute() {
+			if(hi - lo == 1) {
+				alg.dualTreeTraversal(lo, 0, lo);
+				return;
+			}
+			
+			final int mid = lo + (hi - lo) / 2;
+			invokeAll(new ParallelSearchTask(alg, lo, mid), new ParallelSearchTask(alg, mid, hi));
+		}
 	}
 	
 	protected class KDTreeBoruvAlg extends Boruvka {
@@ -340,6 +476,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			int[][] knnIndices = queryResult.getIndices();
 			
 			// Assign the core distance array and change to rdist...
+			this.coreNeighbors = minSamples + 1;
 			this.coreDistance = new double[knnDist.length];
 			for(i = 0; i < coreDistance.length; i++)
 				coreDistance[i] = metric
@@ -351,9 +488,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					m = knnIndices[n][i];
 					
 					if(this.coreDistance[m] <= this.coreDistance[n]) {
-						this.candidatePoint[n] 	   = n;
-						this.candidateNeighbors[n] = m;
-						this.candidateDistance[n]  = this.coreDistance[n];
+						this.candidates.set(n, new Candidate(this.coreDistance[n], n, m));
 						break;
 					}
 				}
@@ -365,7 +500,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		@Override
-		int dualTreeTraversal(int node1, int node2) {
+		int dualTreeTraversal(int node1, int node2, final int top) {
 			int[] pointIndices1, pointIndices2;
 			int i, j, p, q, parent;
 			
@@ -419,14 +554,14 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					p = pointIndices1[i];
 					component1 = this.componentOfPoint[p];
 					
-					if(this.coreDistance[p] > this.candidateDistance[component1])
+					if(this.coreDistance[p] > candidateDistance(component1))
 						continue;
 					
 					for(j = 0; j < pointIndices2.length; j++) {
 						q = pointIndices2[j];
 						component2 = this.componentOfPoint[q];
 						
-						if(this.coreDistance[q] > this.candidateDistance[component1])
+						if(this.coreDistance[q] > candidateDistance(component1))
 							continue;
 						
 						
@@ -443,16 +578,13 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 									FastMath.max(this.coreDistance[p], 
 										this.coreDistance[q]));
 							
-							if(mrDist < this.candidateDistance[component1]) {
-								this.candidateDistance[component1]	= mrDist;
-								this.candidateNeighbors[component1]	= q;
-								this.candidatePoint[component1]		= p;
-							}
+							if(mrDist <= candidateDistance(component1))
+								offer(component1, mrDist, p, q);
 						}
 					} // end for j
 					
-					newUpperBound = FastMath.max(newUpperBound, this.candidateDistance[component1]);
-					newLowerBound = FastMath.min(newLowerBound, this.candidateDistance[component1]);
+					newUpperBound = FastMath.max(newUpperBound, candidateDistance(component1));
+					newLowerBound = FastMath.min(newLowerBound, candidateDistance(component1));
 				} // end for i
 				
 				// Calc new bound
@@ -463,7 +595,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					this.bounds[node1] = newBound;
 					
 					// propagate bounds up...
-					while(node1 > 0) {
+					while(node1 > top) {
 						parent = (node1 - 1) / 2;
 						left = 2 * parent + 1;
 						right = 2 * parent + 2;
@@ -495,12 +627,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node1, right,node_bounds, this.numFeatures);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(node1, left);
-					this.dualTreeTraversal(node1, right);
+					this.dualTreeTraversal(node1, left, top);
+					this.dualTreeTraversal(node1, right, top);
 					
 				} else { // Navigate in opposite order
-					this.dualTreeTraversal(node1, right);
-					this.dualTreeTraversal(node1, left);
+					this.dualTreeTraversal(node1, right, top);
+					this.dualTreeTraversal(node1, left, top);
 				}
 			} // end case 2 if
 			
@@ -519,12 +651,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						right,node2, node_bounds, this.numFeatures);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(left, node2);
-					this.dualTreeTraversal(right, node2);
+					this.dualTreeTraversal(left, node2, top);
+					this.dualTreeTraversal(right, node2, top);
 					
 				} else {
-					this.dualTreeTraversal(right, node2);
-					this.dualTreeTraversal(left, node2);
+					this.dualTreeTraversal(right, node2, top);
+					this.dualTreeTraversal(left, node2, top);
 				}
 			}
 			
@@ -557,6 +689,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 			int[][] knnIndices = queryResult.getIndices();
 			
 			// Assign the core distance array...
+			this.coreNeighbors = minSamples;
 			this.coreDistance = new double[knnDist.length];
 			for(i = 0; i < coreDistance.length; i++)
 				coreDistance[i] = knnDist[i][minSamples - 1];
@@ -565,11 +698,8 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 				for(i = minSamples - 1; i > 0; i--) {
 					m = knnIndices[n][i];
 					
-					if(this.coreDistance[m] <= this.coreDistance[n]) {
-						this.candidatePoint[n] 	   = n;
-						this.candidateNeighbors[n] = m;
-						this.candidateDistance[n]  = this.coreDistance[n];
-					}
+					if(this.coreDistance[m] <= this.coreDistance[n])
+						this.candidates.set(n, new Candidate(this.coreDistance[n], n, m));
 				}
 			}
 			
@@ -580,7 +710,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 		}
 
 		@Override
-		int dualTreeTraversal(int node1, int node2) {
+		int dualTreeTraversal(int node1, int node2, final int top) {
 			int[] pointIndices1, pointIndices2;
 			int i, j, p, q, parent //,child1, child2
 			;
@@ -640,14 +770,14 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					p = pointIndices1[i];
 					component1 = this.componentOfPoint[p];
 					
-					if(this.coreDistance[p] > this.candidateDistance[component1])
+					if(this.coreDistance[p] > candidateDistance(component1))
 						continue;
 					
 					for(j = 0; j < pointIndices2.length; j++) {
 						q = pointIndices2[j];
 						component2 = this.componentOfPoint[q];
 						
-						if(this.coreDistance[q] > this.candidateDistance[component1])
+						if(this.coreDistance[q] > candidateDistance(component1))
 							continue;
 						
 						// They belong to different components
@@ -662,16 +792,13 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 									FastMath.max(this.coreDistance[p], 
 										this.coreDistance[q]));
 							
-							if(mrDist < this.candidateDistance[component1]) {
-								this.candidateDistance[component1]	= mrDist;
-								this.candidateNeighbors[component1]	= q;
-								this.candidatePoint[component1]		= p;
-							}
+							if(mrDist <= candidateDistance(component1))
+								offer(component1, mrDist, p, q);
 						}
 					} // end for j
 					
-					newUpperBound = FastMath.max(newUpperBound, this.candidateDistance[component1]);
-					newLowerBound = FastMath.min(newLowerBound, this.candidateDistance[component1]);
+					newUpperBound = FastMath.max(newUpperBound, candidateDistance(component1));
+					newLowerBound = FastMath.min(newLowerBound, candidateDistance(component1));
 				} // end for i
 				
 				// Calc new bound
@@ -682,7 +809,7 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 					this.bounds[node1] = newBound;
 					
 					// propagate bounds up...
-					while(node1 > 0) {
+					while(node1 > top) {
 						parent = (node1 - 1) / 2;
 						left = 2 * parent + 1;
 						right = 2 * parent + 2;
@@ -725,12 +852,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node2Info.radius(), node1, right, this.centroidDistances);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(node1, left);
-					this.dualTreeTraversal(node1, right);
+					this.dualTreeTraversal(node1, left, top);
+					this.dualTreeTraversal(node1, right, top);
 					
 				} else { // Navigate in opposite order
-					this.dualTreeTraversal(node1, right);
-					this.dualTreeTraversal(node1, left);
+					this.dualTreeTraversal(node1, right, top);
+					this.dualTreeTraversal(node1, left, top);
 				}
 			} // end case 2 if
 			
@@ -749,12 +876,12 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 						node2Info.radius(), right, node2, this.centroidDistances);
 				
 				if(leftDist < rightDist) {
-					this.dualTreeTraversal(left, node2);
-					this.dualTreeTraversal(right, node2);
+					this.dualTreeTraversal(left, node2, top);
+					this.dualTreeTraversal(right, node2, top);
 					
 				} else {
-					this.dualTreeTraversal(right, node2);
-					this.dualTreeTraversal(left, node2);
+					this.dualTreeTraversal(right, node2, top);
+					this.dualTreeTraversal(left, node2, top);
 				}
 			}
 			
@@ -766,4 +893,25 @@ class BoruvkaAlgorithm implements java.io.Serializable {
 	protected final double[][] spanningTree() {
 		return alg.spanningTree();
 	}
+	
+	/**
+	 * The core distances the spanning tree was built over
+	 * @return a copy of the core distances
+	 */
+	protected final double[] coreDistances() {
+		final double[] core = VecUtils.copy(alg.coreDistance);
+		if(alg.partialDistTransform)
+			for(int i = 0; i < core.length; i++)
+				core[i] = metric.partialDistanceToDistance(core[i]);
+		return core;
+	}
+	
+	/**
+	 * The number of neighbors, counting the record itself, 
+	 * that define the {@link #coreDistances()}
+	 * @return the number of neighbors
+	 */
+	protected final int coreNeighbors() {
+		return alg.coreNeighbors;
+	}
 }
@@ -16,9 +16,13 @@
 
 package com.clust4j.algo;
 
+import java.util.ArrayList;
+import java.util.Collection;
+
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.utils.VecUtils;
 
 public abstract class CentroidClustererParameters<T extends AbstractCentroidClusterer> extends BaseClustererParameters
 		implements UnsupervisedClassifierParameters<T>, ConvergeablePlanner {
@@ -26,12 +30,59 @@ public abstract class CentroidClustererParameters<T extends AbstractCentroidClus
 	private static final long serialVersionUID = -1984508955251863189L;
 	protected int k = AbstractCentroidClusterer.DEF_K;
 	protected double minChange = AbstractCentroidClusterer.DEF_CONVERGENCE_TOLERANCE;
+	
+	/** Warm-start centroids. If not null, take precedence over the {@link InitializationStrategy} */
+	protected ArrayList<double[]> initCentroids = null;
+	/** Warm-start record indices. If not null, take precedence over {@link #initCentroids} */
+	protected int[] initIndices = null;
 
 	@Override abstract public T fitNewModel(RealMatrix mat);
 	@Override abstract public int getMaxIter();
 	abstract public InitializationStrategy getInitializationStrategy();
 	abstract public CentroidClustererParameters<T> setConvergenceCriteria(final double min);
 	abstract public CentroidClustererParameters<T> setInitializationStrategy(final InitializationStrategy strat);
+	abstract public CentroidClustererParameters<T> setInitialCentroids(final Collection<double[]> centroids);
+	
+	/**
+	 * Deep copies the warm-start centroids, or 
+	 * returns null if the collection is null
+	 * @param centroids
+	 * @return a copy of the centroids
+	 */
+	static ArrayList<double[]> copyCentroids(final Collection<double[]> centroids) {
+		if(null == centroids)
+			return null;
+		
+		final ArrayList<double[]> c = new ArrayList<>(centroids.size());
+		for(double[] row: centroids)
+			c.add(VecUtils.copy(row));
+		
+		return c;
+	}
+	
+	/**
+	 * Get the warm-start centroids
+	 * @return a copy of the warm-start centroids, or null if not warm-starting
+	 */
+	final public double[][] getInitialCentroids() {
+		if(null == initCentroids)
+			return null;
+		
+		int i = 0;
+		final double[][] c = new double[initCentroids.size()][];
+		for(double[] row: initCentroids)
+			c[i++] = VecUtils.copy(row);
+		
+		return c;
+	}
+	
+	/**
+	 * Get the warm-start record indices
+	 * @return a copy of the warm-start record indices, or null if not warm-starting
+	 */
+	final public int[] getInitialIndices() {
+		return null == initIndices ? null : VecUtils.copy(initIndices);
+	}
 
 	final public int getK() {
 		return k;
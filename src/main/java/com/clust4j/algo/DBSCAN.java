@@ -15,19 +15,29 @@
  *******************************************************************************/
 package com.clust4j.algo;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Stack;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import com.clust4j.GlobalState;
+import com.clust4j.NamedEntity;
 import com.clust4j.algo.RadiusNeighborsParameters;
 import com.clust4j.log.LogTimer;
+import com.clust4j.log.Loggable;
 import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 import com.clust4j.metrics.pairwise.SimilarityMetric;
 import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
 
 
 /**
@@ -49,9 +59,49 @@ final public class DBSCAN extends AbstractDBSCAN {
 	 * 
 	 */
 	private static final long serialVersionUID = 6749407933012974992L;
+	final public static DBSCANAlgorithm DEF_ALGO = DBSCANAlgorithm.RADIUS_NEIGHBORS;
 	final private int m;
 	final public static HashSet<Class<? extends GeometricallySeparable>> UNSUPPORTED_METRICS;
 	
+	/** Not final because can change if the metric or dimensionality is unsupported */
+	protected DBSCANAlgorithm algo;
+	
+	/**
+	 * The engine used to find the core points and connect
+	 * them into clusters on each {@link DBSCAN} fit.
+	 * @author Taylor G Smith
+	 */
+	public static enum DBSCANAlgorithm implements NamedEntity, java.io.Serializable {
+		/**
+		 * Fits a {@link RadiusNeighbors} model and expands the clusters
+		 * through each point's materialized eps-neighborhood. Supports
+		 * any valid metric and dimensionality.
+		 */
+		RADIUS_NEIGHBORS {
+			@Override public String getName() {
+				return "Radius Neighbors";
+			}
+		},
+		
+		/**
+		 * Buckets the points into a grid of cells with side eps/&radic;d, so any
+		 * two points sharing a cell are within eps of one another. Cells holding
+		 * more than minPts points are marked core without computing any distances,
+		 * the remaining points only count neighbors in the handful of cells that
+		 * can lie within eps, and adjacent core cells are merged when any pair of
+		 * their core points is within eps. Labels the clusters identically to the
+		 * parallel {@link #RADIUS_NEIGHBORS} fit. Only supported for 
+		 * {@link Distance#EUCLIDEAN} on two- or three-dimensional data.
+		 * @see Gunawan, A. (2013). <i>A faster algorithm for DBSCAN</i>. 
+		 * Master's thesis, Technische Universiteit Eindhoven.
+		 */
+		GRID {
+			@Override public String getName() {
+				return "Grid";
+			}
+		};
+	}
+	
 	
 	/**
 	 * Static initializer
@@ -71,6 +121,8 @@ final public class DBSCAN extends AbstractDBSCAN {
 	private volatile boolean[] coreSamples = null;
 	private volatile int numClusters;
 	private volatile int numNoisey;
+	/** Volatile because it is built lazily on the first prediction */
+	private volatile CoreIndex coreIndex = null;
 	
 	
 	
@@ -101,6 +153,7 @@ final public class DBSCAN extends AbstractDBSCAN {
 		super(data, planner);
 		this.m = data.getRowDimension();
 		this.eps = planner.getEps();
+		this.algo = planner.getAlgorithm();
 		
 		// Error handle...
 		if(this.eps <= 0.0) 
@@ -113,16 +166,29 @@ final public class DBSCAN extends AbstractDBSCAN {
 			setSeparabilityMetric(DEF_DIST);
 		}
 		
+		if(DBSCANAlgorithm.GRID.equals(algo)) {
+			final int n = data.getColumnDimension();
+			if(!Distance.EUCLIDEAN.equals(dist_metric)) {
+				warn(dist_metric.getName() + " is unsupported by the " + algo.getName() 
+					+ " algorithm; falling back to " + DBSCANAlgorithm.RADIUS_NEIGHBORS.getName());
+				this.algo = DBSCANAlgorithm.RADIUS_NEIGHBORS;
+			} else if(n < 2 || n > CellGrid.MAX_DIMENSION) {
+				warn(algo.getName() + " algorithm only supports 2 to " + CellGrid.MAX_DIMENSION 
+					+ " dimensions; falling back to " + DBSCANAlgorithm.RADIUS_NEIGHBORS.getName());
+				this.algo = DBSCANAlgorithm.RADIUS_NEIGHBORS;
+			}
+		}
+		
 		logModelSummary();
 	}
 	
 	@Override
 	final protected ModelSummary modelSummary() {
 		return new ModelSummary(new Object[]{
-				"Num Rows","Num Cols","Metric","Epsilon","Min Pts.","Allow Par."
+				"Num Rows","Num Cols","Metric","Algo.","Epsilon","Min Pts.","Allow Par."
 			}, new Object[]{
 				m,data.getColumnDimension(),getSeparabilityMetric(),
-				eps, minPts,
+				algo.getName(), eps, minPts,
 				parallel
 			});
 	}
@@ -156,6 +222,10 @@ final public class DBSCAN extends AbstractDBSCAN {
 		return eps;
 	}
 	
+	public DBSCANAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
 	@Override
 	public int[] getLabels() {
 		return super.handleLabelCopy(labels);
@@ -183,94 +253,69 @@ final public class DBSCAN extends AbstractDBSCAN {
 			sampleWeights = new double[m]; // Init sample weights...
 			coreSamples = new boolean[m];
 			
-			
-			// Fit the nearest neighbor model...
-			final LogTimer rnTimer = new LogTimer();
-			final RadiusNeighbors rnModel = new RadiusNeighbors(data,
-				new RadiusNeighborsParameters(eps)
-					.setSeed(getSeed())
-					.setMetric(getSeparabilityMetric())
-					.setVerbose(false))
-				.fit();
-			
-			info("fit RadiusNeighbors model in " + rnTimer.toString());
-			int[][] nearest = rnModel.getNeighbors().getIndices();
+			// Each label inits to -1 as noise
+			Arrays.fill(labels, NOISE_CLASS);
 			
 			
-			int[] ptNeighbs;
-			ArrayList<int[]> neighborhoods = new ArrayList<>();
-			int numCorePts = 0;
-			for(int i = 0; i < m; i++) {
-				// Each label inits to -1 as noise
-				labels[i] = NOISE_CLASS;
-				ptNeighbs = nearest[i];
+			final LogTimer labelTimer;
+			int nextLabel = -1;
+			if(DBSCANAlgorithm.GRID.equals(algo)) {
+				final CellGrid grid = new CellGrid(data.getDataRef(), eps);
+				info("bucketed " + m + " records into " + grid.numCells() 
+					+ " grid cells in " + neighbTimer.toString());
 				
-				// Add neighborhood...
-				int pts;
-				neighborhoods.add(ptNeighbs);
-				sampleWeights[i] = pts = ptNeighbs.length;
-				coreSamples[i] = pts >= minPts;
+				// Cores and clusters are found together from the cells
+				labelTimer = new LogTimer();
+				nextLabel = labelGrid(grid);
 				
-				if(coreSamples[i]) 
-					numCorePts++;
-			}
-			
-			
-			// Log checkpoint
-			info("completed density neighborhood calculations in " + neighbTimer.toString());
-			info(numCorePts + " core point"+(numCorePts!=1?"s":"")+" found");
-			
-			
-			// Label the points...
-			int nextLabel = 0, v;
-			final Stack<Integer> stack = new Stack<>();
-			int[] neighb;
-			
-			
-			LogTimer stackTimer = new LogTimer();
-			for(int i = 0; i < m; i++) {
-				stackTimer = new LogTimer();
+			} else {
+				// Fit the nearest neighbor model...
+				final LogTimer rnTimer = new LogTimer();
+				final RadiusNeighbors rnModel = new RadiusNeighbors(data,
+					new RadiusNeighborsParameters(eps)
+						.setSeed(getSeed())
+						.setMetric(getSeparabilityMetric())
+						.setForceParallel(parallel)
+						.setVerbose(false))
+					.fit();
 				
-				// Want to look at unlabeled OR core points...
-				if(labels[i] != NOISE_CLASS || !coreSamples[i])
-					continue;
+				info("fit RadiusNeighbors model in " + rnTimer.toString());
+				final Neighborhood neighborhood = rnModel.getNeighbors();
+				final int[][] nearest = neighborhood.getIndices();
 				
-		        // Depth-first search starting from i, ending at the non-core points.
-		        // This is very similar to the classic algorithm for computing connected
-		        // components, the difference being that we label non-core points as
-		        // part of a cluster (component), but don't expand their neighborhoods.
-				int labelCt = 0;
-				while(true) {
-					if(labels[i] == NOISE_CLASS) {
-						labels[i] = nextLabel;
-						labelCt++;
-						
-						if(coreSamples[i]) {
-							neighb = neighborhoods.get(i);
-							
-							for(i = 0; i < neighb.length; i++) {
-								v = neighb[i];
-								if(labels[v] == NOISE_CLASS)
-									stack.push(v);
-							}
-						}
-					}
+				
+				int numCorePts = 0;
+				for(int i = 0; i < m; i++) {
+					sampleWeights[i] = nearest[i].length;
+					coreSamples[i] = nearest[i].length >= minPts;
 					
-
-					if(stack.size() == 0) {
-						fitSummary.add(new Object[]{
-							nextLabel, labelCt, stackTimer.formatTime(), stackTimer.wallTime()
-						});
-						
-						break;
+					if(coreSamples[i]) 
+						numCorePts++;
+				}
+				
+				
+				// Log checkpoint
+				info("completed density neighborhood calculations in " + neighbTimer.toString());
+				info(numCorePts + " core point"+(numCorePts!=1?"s":"")+" found");
+				
+				
+				// Label the points...
+				labelTimer = new LogTimer();
+				if(parallel) {
+					try {
+						nextLabel = labelUnionFind(nearest, neighborhood.getDistances());
+					} catch(RejectedExecutionException r) {
+						warn("parallel labeling failed; falling back to serial depth-first search");
+						Arrays.fill(labels, NOISE_CLASS);
 					}
-					
-					i = stack.pop();
 				}
 				
-				nextLabel++;
+				if(nextLabel < 0)
+					nextLabel = labelDepthFirst(nearest);
 			}
 			
+			info("labeled clusters in " + labelTimer.toString());
+			
 			
 			// Count missing
 			numNoisey = 0;
@@ -280,7 +325,7 @@ final public class DBSCAN extends AbstractDBSCAN {
 			// corner case: numNoisey == m (never gets a fit summary)
 			if(numNoisey == m)
 				fitSummary.add(new Object[]{
-					Double.NaN, 0, stackTimer.formatTime(), stackTimer.wallTime()
+					Double.NaN, 0, labelTimer.formatTime(), labelTimer.wallTime()
 				});
 			
 			
@@ -298,6 +343,509 @@ final public class DBSCAN extends AbstractDBSCAN {
 		
 	}// End train
 	
+	/**
+	 * Label the clusters by a depth-first search from each unlabeled core point
+	 * @param neighborhoods - each point's neighbors within eps
+	 * @return the number of clusters
+	 */
+	private int labelDepthFirst(final int[][] neighborhoods) {
+		int nextLabel = 0, v, p;
+		final Stack<Integer> stack = new Stack<>();
+		int[] neighb;
+		
+		
+		LogTimer stackTimer;
+		for(int i = 0; i < m; i++) {
+			stackTimer = new LogTimer();
+			
+			// Want to look at unlabeled OR core points...
+			if(labels[i] != NOISE_CLASS || !coreSamples[i])
+				continue;
+			
+	        // Depth-first search starting from i, ending at the non-core points.
+	        // This is very similar to the classic algorithm for computing connected
+	        // components, the difference being that we label non-core points as
+	        // part of a cluster (component), but don't expand their neighborhoods.
+			int labelCt = 0;
+			p = i;
+			while(true) {
+				if(labels[p] == NOISE_CLASS) {
+					labels[p] = nextLabel;
+					labelCt++;
+					
+					if(coreSamples[p]) {
+						neighb = neighborhoods[p];
+						
+						for(int j = 0; j < neighb.length; j++) {
+							v = neighb[j];
+							if(labels[v] == NOISE_CLASS)
+								stack.push(v);
+						}
+					}
+				}
+				
+
+				if(stack.size() == 0) {
+					fitSummary.add(new Object[]{
+						nextLabel, labelCt, stackTimer.formatTime(), stackTimer.wallTime()
+					});
+					
+					break;
+				}
+				
+				p = stack.pop();
+			}
+			
+			nextLabel++;
+		}
+		
+		return nextLabel;
+	}
+	
+	/**
+	 * Label the clusters in parallel. The core points are unioned with their core
+	 * neighbors in a concurrent disjoint set, each labeled by the least point in its
+	 * set, and then each border point takes the label of its nearest core neighbor
+	 * (the least such, if tied). The result never depends on the order of the unions,
+	 * so it is deterministic, though a border point within eps of two clusters may be
+	 * labeled differently than by {@link #labelDepthFirst(int[][])}.
+	 * @param neighborhoods - each point's neighbors within eps
+	 * @param distances - the distance to each neighbor
+	 * @throws RejectedExecutionException if the pool rejects the task
+	 * @return the number of clusters
+	 */
+	private int labelUnionFind(final int[][] neighborhoods, final double[][] distances) {
+		final LogTimer timer = new LogTimer();
+		final ConcurrentUnionFind sets = new ConcurrentUnionFind(m);
+		
+		GlobalState.ParallelismConf.FJ_THREADPOOL.invoke(new UnionFindTask(
+			UnionFindTask.UNION, sets, neighborhoods, distances, coreSamples, labels, 0, m));
+		GlobalState.ParallelismConf.FJ_THREADPOOL.invoke(new UnionFindTask(
+			UnionFindTask.LABEL, sets, neighborhoods, distances, coreSamples, labels, 0, m));
+		
+		return summarizeClusters(timer);
+	}
+	
+	/**
+	 * Add the fit summary of each cluster once the {@link #labels}
+	 * are keyed by the least core point of each cluster
+	 * @param timer
+	 * @return the number of clusters
+	 */
+	private int summarizeClusters(final LogTimer timer) {
+		final int[] counts = new int[m];
+		for(int lab: labels)
+			if(NOISE_CLASS != lab)
+				counts[lab]++;
+		
+		int numClusters = 0;
+		for(int i = 0; i < m; i++) {
+			if(counts[i] > 0) {
+				fitSummary.add(new Object[]{
+					numClusters++, counts[i], timer.formatTime(), timer.wallTime()
+				});
+			}
+		}
+		
+		return numClusters;
+	}
+	
+	/**
+	 * Label the clusters from a {@link CellGrid}. A point in a cell holding more
+	 * than {@link #minPts} points is core without any distance computations; any
+	 * other point counts its neighbors in the adjacent cells until it either reaches
+	 * {@link #minPts} or runs out. Each pair of adjacent cells that both hold core
+	 * points is then merged if any of their core points are within eps, and each 
+	 * border point takes the label of its nearest core point (the least such, if
+	 * tied), exactly as in {@link #labelUnionFind(int[][], double[][])}.
+	 * @param grid
+	 * @return the number of clusters
+	 */
+	private int labelGrid(final CellGrid grid) {
+		final LogTimer timer = new LogTimer();
+		final double[][] X = data.getDataRef();
+		final double maxDist = Distance.EUCLIDEAN.distanceToPartialDistance(eps);
+		final int numCells = grid.numCells();
+		final int[] order = grid.order, start = grid.start;
+		
+		
+		// Find the core points. The weights of the points in dense
+		// cells are only the count of their cell-mates.
+		int numCorePts = 0, size, count, i;
+		for(int c = 0; c < numCells; c++) {
+			size = start[c + 1] - start[c];
+			
+			for(int a = start[c]; a < start[c + 1]; a++) {
+				i = order[a];
+				count = size - 1;
+				
+				search:
+				for(int adj: grid.adjacent(c)) {
+					if(count >= minPts)
+						break;
+					
+					for(int b = start[adj]; b < start[adj + 1]; b++) {
+						if(Distance.EUCLIDEAN.getPartialDistance(X[i], X[order[b]]) <= maxDist 
+								&& ++count >= minPts)
+							break search;
+					}
+				}
+				
+				sampleWeights[i] = count;
+				if(coreSamples[i] = count >= minPts)
+					numCorePts++;
+			}
+		}
+		
+		info(numCorePts + " core point"+(numCorePts!=1?"s":"")+" found");
+		
+		
+		// Gather the core points of each cell
+		final int[][] cores = new int[numCells][];
+		for(int c = 0; c < numCells; c++) {
+			count = 0;
+			for(int a = start[c]; a < start[c + 1]; a++)
+				if(coreSamples[order[a]])
+					count++;
+			
+			cores[c] = new int[count];
+			count = 0;
+			for(int a = start[c]; a < start[c + 1]; a++)
+				if(coreSamples[order[a]])
+					cores[c][count++] = order[a];
+		}
+		
+		
+		// Merge the adjacent core cells, each pair once from its lesser cell
+		final ConcurrentUnionFind sets = new ConcurrentUnionFind(numCells);
+		for(int c = 0; c < numCells; c++) {
+			if(0 == cores[c].length)
+				continue;
+			
+			for(int adj: grid.adjacent(c)) {
+				if(adj < c || 0 == cores[adj].length || sets.find(adj) == sets.find(c))
+					continue;
+				
+				merge:
+				for(int p: cores[c]) {
+					for(int q: cores[adj]) {
+						if(Distance.EUCLIDEAN.getPartialDistance(X[p], X[q]) <= maxDist) {
+							sets.union(c, adj);
+							break merge;
+						}
+					}
+				}
+			}
+		}
+		
+		
+		// Key each set of cells by its least core point
+		final int[] least = new int[numCells];
+		Arrays.fill(least, -1);
+		int root;
+		for(i = 0; i < m; i++) {
+			if(coreSamples[i] && least[root = sets.find(grid.cellOf[i])] < 0)
+				least[root] = i;
+		}
+		
+		
+		// Label the core points, then the border points from their nearest core point
+		int nearest, j;
+		double dist, minDist;
+		int[] near;
+		for(int c = 0; c < numCells; c++) {
+			near = grid.adjacent(c);
+			
+			for(int a = start[c]; a < start[c + 1]; a++) {
+				i = order[a];
+				if(coreSamples[i]) {
+					labels[i] = least[sets.find(c)];
+					continue;
+				}
+				
+				nearest = -1;
+				minDist = Double.POSITIVE_INFINITY;
+				for(int adj = -1; adj < near.length; adj++) { // -1 is the point's own cell
+					for(int q: cores[adj < 0 ? c : near[adj]]) {
+						dist = Distance.EUCLIDEAN.getPartialDistance(X[i], X[q]);
+						if(dist <= maxDist && (dist < minDist || (dist == minDist && q < nearest))) {
+							minDist = dist;
+							nearest = q;
+						}
+					}
+				}
+				
+				if(nearest >= 0)
+					labels[i] = least[sets.find(grid.cellOf[nearest])];
+			}
+		}
+		
+		return summarizeClusters(timer);
+	}
+	
+	/**
+	 * Buckets the points into a grid of cells with side eps/&radic;d, so the
+	 * diagonal of a cell is eps. Each cell knows the other non-empty cells whose
+	 * nearest corners lie within eps of its own, which are the only cells that can
+	 * hold any of its points' neighbors.
+	 * @author Taylor G Smith
+	 */
+	final static class CellGrid {
+		/** The greatest supported dimensionality; the number of candidate cells grows as 5^d */
+		final static int MAX_DIMENSION = 3;
+		
+		/** The points, ordered by cell */
+		final int[] order;
+		/** The offset of each cell's first point in {@link #order}, with a final sentinel */
+		final int[] start;
+		/** The cell of each point */
+		final int[] cellOf;
+		/** The non-empty cells near each cell */
+		final int[][] adjacent;
+		
+		CellGrid(final double[][] X, final double eps) {
+			final int m = X.length, d = X[0].length;
+			final double side = eps / Math.sqrt(d);
+			
+			// Bucket the points
+			final HashMap<CellKey, Integer> cells = new HashMap<>();
+			final CellKey[] keys = new CellKey[m];
+			cellOf = new int[m];
+			
+			long[] coords;
+			Integer c;
+			for(int i = 0; i < m; i++) {
+				coords = new long[d];
+				for(int k = 0; k < d; k++)
+					coords[k] = (long) Math.floor(X[i][k] / side);
+				
+				keys[i] = new CellKey(coords);
+				if(null == (c = cells.get(keys[i]))) 
+					cells.put(keys[i], c = cells.size());
+				cellOf[i] = c;
+			}
+			
+			
+			// Order the points by cell
+			final int numCells = cells.size();
+			final CellKey[] cellKeys = new CellKey[numCells];
+			start = new int[numCells + 1];
+			for(int i = 0; i < m; i++) {
+				start[cellOf[i] + 1]++;
+				cellKeys[cellOf[i]] = keys[i];
+			}
+			
+			for(int k = 0; k < numCells; k++)
+				start[k + 1] += start[k];
+			
+			order = new int[m];
+			final int[] next = Arrays.copyOf(start, numCells);
+			for(int i = 0; i < m; i++)
+				order[next[cellOf[i]]++] = i;
+			
+			
+			// Find the neighboring cells
+			final long[][] offsets = offsets(d);
+			final int[] buffer = new int[offsets.length];
+			adjacent = new int[numCells][];
+			
+			int count;
+			for(int k = 0; k < numCells; k++) {
+				count = 0;
+				for(long[] offset: offsets) {
+					coords = cellKeys[k].coords.clone();
+					for(int q = 0; q < d; q++)
+						coords[q] += offset[q];
+					
+					if(null != (c = cells.get(new CellKey(coords))))
+						buffer[count++] = c;
+				}
+				
+				adjacent[k] = Arrays.copyOf(buffer, count);
+			}
+		}
+		
+		/**
+		 * The offsets of the cells (besides the origin) whose nearest corners are
+		 * within eps of the origin cell's, i.e., those with
+		 * sum(max(|o_k| - 1, 0)^2) &lt;= d in units of eps/&radic;d
+		 * @param d
+		 * @return the offsets
+		 */
+		static long[][] offsets(final int d) {
+			final int reach = (int) Math.floor(Math.sqrt(d)) + 1, width = 2 * reach + 1;
+			final long[][] all = new long[(int) Math.pow(width, d)][];
+			
+			int count = 0, code, gap;
+			long sum;
+			boolean origin;
+			for(int idx = 0; idx < all.length; idx++) {
+				final long[] offset = new long[d];
+				code = idx;
+				sum = 0;
+				origin = true;
+				
+				for(int k = 0; k < d; k++) {
+					offset[k] = code % width - reach;
+					code /= width;
+					
+					gap = (int) Math.max(Math.abs(offset[k]) - 1, 0);
+					sum += gap * gap;
+					origin &= 0 == offset[k];
+				}
+				
+				if(!origin && sum <= d)
+					all[count++] = offset;
+			}
+			
+			return Arrays.copyOf(all, count);
+		}
+		
+		int numCells() {
+			return adjacent.length;
+		}
+		
+		int[] adjacent(final int cell) {
+			return adjacent[cell];
+		}
+	}
+	
+	/**
+	 * The integer coordinates of a {@link CellGrid} cell
+	 * @author Taylor G Smith
+	 */
+	final static class CellKey {
+		final long[] coords;
+		final int hash;
+		
+		CellKey(final long[] coords) {
+			this.coords = coords;
+			this.hash = Arrays.hashCode(coords);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof CellKey && Arrays.equals(coords, ((CellKey)o).coords);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+	
+	/**
+	 * A lock-free disjoint set over integers. A union links the greater root 
+	 * under the lesser by compare-and-set, so each set's root is its least
+	 * member once all unions are done. Finds halve the path as they go.
+	 * @author Taylor G Smith
+	 */
+	static class ConcurrentUnionFind {
+		final AtomicIntegerArray parent;
+		
+		ConcurrentUnionFind(final int n) {
+			parent = new AtomicIntegerArray(VecUtils.arange(n));
+		}
+		
+		int find(int x) {
+			int p, gp;
+			while((p = parent.get(x)) != x) {
+				gp = parent.get(p);
+				if(p != gp)
+					parent.compareAndSet(x, p, gp);
+				x = gp;
+			}
+			
+			return x;
+		}
+		
+		void union(int a, int b) {
+			while(true) {
+				a = find(a);
+				b = find(b);
+				if(a == b)
+					return;
+				
+				// Link the greater under the lesser; fails if the greater
+				// was linked elsewhere in the meantime, so retry
+				if(a < b ? parent.compareAndSet(b, b, a) : parent.compareAndSet(a, a, b))
+					return;
+			}
+		}
+	}
+	
+	/**
+	 * Splits a range of points in half until small enough, then either unions the
+	 * core points with their core neighbors or labels the points from their sets. 
+	 * @author Taylor G Smith
+	 */
+	static class UnionFindTask extends RecursiveAction {
+		private static final long serialVersionUID = -7021447395816622134L;
+		static final int UNION = 0, LABEL = 1;
+		/** The fewest points worth splitting off into a separate task */
+		static final int MIN_TASK_SIZE = 512;
+		
+		final int phase;
+		final ConcurrentUnionFind sets;
+		final int[][] neighborhoods;
+		final double[][] distances;
+		final boolean[] core;
+		final int[] labels;
+		final int lo, hi;
+		
+		UnionFindTask(int phase, ConcurrentUnionFind sets, int[][] neighborhoods, 
+				double[][] distances, boolean[] core, int[] labels, int lo, int hi) {
+			this.phase = phase;
+			this.sets = sets;
+			this.neighborhoods = neighborhoods;
+			this.distances = distances;
+			this.core = core;
+			this.labels = labels;
+			this.lo = lo;
+			this.hi = hi;
+		}
+		
+		@Override
+		protected void compute() {
+			if(hi - lo >= 2 * MIN_TASK_SIZE) {
+				final int mid = lo + (hi - lo) / 2;
+				invokeAll(new UnionFindTask(phase, sets, neighborhoods, distances, core, labels, lo, mid),
+						new UnionFindTask(phase, sets, neighborhoods, distances, core, labels, mid, hi));
+				return;
+			}
+			
+			int nearest, j;
+			for(int i = lo; i < hi; i++) {
+				if(UNION == phase) {
+					if(!core[i])
+						continue;
+					
+					// Each pair is unioned once, from its lesser point
+					for(int q: neighborhoods[i])
+						if(q > i && core[q])
+							sets.union(i, q);
+				} else {
+					labels[i] = NOISE_CLASS;
+					if(core[i]) {
+						labels[i] = sets.find(i);
+						continue;
+					}
+					
+					nearest = -1;
+					for(int k = 0; k < neighborhoods[i].length; k++) {
+						j = neighborhoods[i][k];
+						if(core[j] && (nearest < 0 || distances[i][k] < distances[i][nearest]
+								|| (distances[i][k] == distances[i][nearest] && j < neighborhoods[i][nearest])))
+							nearest = k;
+					}
+					
+					if(nearest >= 0)
+						labels[i] = sets.find(neighborhoods[i][nearest]);
+				}
+			}
+		}
+	}
+	
 	@Override
 	public Algo getLoggerTag() {
 		return com.clust4j.log.Log.Tag.Algo.DBSCAN;
@@ -320,9 +868,159 @@ final public class DBSCAN extends AbstractDBSCAN {
 		return numNoisey;
 	}
 	
-	/** {@inheritDoc} */
+	/**
+	 * A search structure over only the core samples of a fit model and
+	 * their labels, which is all that prediction needs. A new record 
+	 * belongs to the cluster of its nearest core sample only if it is
+	 * within eps of it, just as a border point in the training data is.
+	 * Also used by {@link OPTICS}, where each core sample may carry
+	 * the eps of its own cluster.
+	 * @author Taylor G Smith
+	 */
+	final static class CoreIndex implements java.io.Serializable {
+		private static final long serialVersionUID = -2230614538437316473L;
+		final double[][] cores;
+		final int[] labels;
+		final GeometricallySeparable metric;
+		/** The eps within which each core sample reaches a new record */
+		final double[] eps;
+		/** Null if there are no core samples, or the metric is supported by neither KD nor ball trees */
+		final NearestNeighborHeapSearch tree;
+		
+		CoreIndex(final DBSCAN model) {
+			this(model.data.getDataRef(), model.coreSamples, model.labels, 
+				model.getSeparabilityMetric(), model.eps, model);
+		}
+		
+		/**
+		 * @param X - the training data
+		 * @param core - which of the records to index
+		 * @param fitLabels - the label of each record
+		 * @param metric
+		 * @param eps
+		 * @param logger
+		 */
+		CoreIndex(final double[][] X, final boolean[] core, final int[] fitLabels, 
+				final GeometricallySeparable metric, final double eps, final Loggable logger) {
+			this(X, core, fitLabels, metric, VecUtils.rep(eps, X.length), logger);
+		}
+		
+		/**
+		 * @param X - the training data
+		 * @param core - which of the records to index
+		 * @param fitLabels - the label of each record
+		 * @param metric
+		 * @param eps - the eps of each record
+		 * @param logger
+		 */
+		CoreIndex(final double[][] X, final boolean[] core, final int[] fitLabels, 
+				final GeometricallySeparable metric, final double[] eps, final Loggable logger) {
+			this.metric = metric;
+			
+			int count = 0;
+			for(boolean b: core)
+				if(b)
+					count++;
+			
+			cores = new double[count][];
+			labels = new int[count];
+			this.eps = new double[count];
+			for(int i = 0, j = 0; i < core.length; i++) {
+				if(core[i]) {
+					cores[j] = X[i];
+					this.eps[j] = eps[i];
+					labels[j++] = fitLabels[i];
+				}
+			}
+			
+			final Class<? extends GeometricallySeparable> clz = metric.getClass();
+			if(0 == count)
+				tree = null;
+			else if(KDTree.VALID_METRICS.contains(clz))
+				tree = new KDTree(cores, BaseNeighborsModel.DEF_LEAF_SIZE, (DistanceMetric)metric, logger);
+			else if(BallTree.VALID_METRICS.contains(clz))
+				tree = new BallTree(cores, BaseNeighborsModel.DEF_LEAF_SIZE, (DistanceMetric)metric, logger);
+			else
+				tree = null;
+		}
+		
+		/**
+		 * Label the rows from <tt>lo</tt> to <tt>hi</tt> from their
+		 * nearest core samples, or as noise if that is not within its eps
+		 * @param rows
+		 * @param lo
+		 * @param hi
+		 * @param predicted - the predicted labels are written here
+		 */
+		void predict(final double[][] rows, final int lo, final int hi, final int[] predicted) {
+			if(0 == cores.length) {
+				Arrays.fill(predicted, lo, hi, NOISE_CLASS);
+				return;
+			}
+			
+			if(null != tree) {
+				final Neighborhood nearest = tree.query(Arrays.copyOfRange(rows, lo, hi), 1, false, false);
+				final double[][] dists = nearest.getDistances();
+				final int[][] idcs = nearest.getIndices();
+				
+				int j;
+				for(int i = lo; i < hi; i++) {
+					j = idcs[i - lo][0];
+					predicted[i] = dists[i - lo][0] <= eps[j] ? labels[j] : NOISE_CLASS;
+				}
+				return;
+			}
+			
+			// Exhaustive search
+			double dist, minDist;
+			int nearest;
+			for(int i = lo; i < hi; i++) {
+				nearest = -1;
+				minDist = Double.POSITIVE_INFINITY;
+				
+				for(int j = 0; j < cores.length; j++) {
+					dist = metric.getDistance(rows[i], cores[j]);
+					if(nearest < 0 || dist < minDist) {
+						minDist = dist;
+						nearest = j;
+					}
+				}
+				
+				predicted[i] = minDist <= eps[nearest] ? labels[nearest] : NOISE_CLASS;
+			}
+		}
+	}
+	
+	/**
+	 * The core index is built on the first prediction, and then shared by all.
+	 * @return the core index
+	 */
+	CoreIndex getCoreIndex() {
+		CoreIndex c = coreIndex;
+		if(null == c) {
+			synchronized(fitLock) {
+				if(null == (c = coreIndex))
+					coreIndex = c = new CoreIndex(this);
+			}
+		}
+		
+		return c;
+	}
+	
+	/**
+	 * Predict the clusters of new records from their nearest core samples. A new
+	 * record takes the label of its nearest core sample if it is within eps, and is
+	 * otherwise noise. The search structure over the core samples is built on the
+	 * first call and reused by the rest, and chunks of records are predicted in 
+	 * parallel if the model allows it.
+	 * @param newData
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws DimensionMismatchException if the number of columns differ
+	 * @return the predicted labels
+	 */
 	@Override
 	public int[] predict(RealMatrix newData) {
+		@SuppressWarnings("unused")
 		final int[] fit_labels = getLabels(); // propagates errors
 		final int n = newData.getColumnDimension();
 		
@@ -330,50 +1028,25 @@ final public class DBSCAN extends AbstractDBSCAN {
 		if(n != this.data.getColumnDimension())
 			throw new DimensionMismatchException(n, data.getColumnDimension());
 		
-		// Fit a radius model
-		RadiusNeighbors radiusModel = 
-			new RadiusNeighborsParameters(eps) // no scale necessary; may already have been done
-				.setMetric(dist_metric)
-				.setSeed(getSeed())
-				.fitNewModel(data);
-		
-		final int[] newLabels = new int[newData.getRowDimension()];
-		Neighborhood theHood = radiusModel.getNeighbors(newData);
-		
-		int[][] indices = theHood.getIndices();
-		
-		int[] idx_row;
-		for(int i = 0; i < indices.length; i++) {
-			idx_row = indices[i];
-			
-			int current_class = NOISE_CLASS;
-			if(idx_row.length == 0) { 
-				/* 
-				 * If there are no indices in this point's radius,
-				 * we can just avoid the next step and exit early
-				 */
-			} else { // otherwise, we know there is something in the radius--noise or other
-				int j = 0;
-				while(j < idx_row.length) {
-					current_class = fit_labels[idx_row[j]];
-					
-					/*
-					 * The indices are ordered ascendingly by dist.
-					 * Even if the closest point is a noise point, it
-					 * could be within a border point's radius, so we
-					 * need to keep going.
-					 */
-					if(NOISE_CLASS == current_class) {
-						j++;
-					} else {
-						break;
+		final CoreIndex index = getCoreIndex();
+		final double[][] rows = newData.getData();
+		final int[] newLabels = new int[rows.length];
+		
+		if(parallel && rows.length > 0) {
+			try {
+				ParallelChunkedPredict.doAll(new ParallelChunkedPredict.RowPredictor() {
+					@Override
+					public void predict(double[][] rows, int lo, int hi) {
+						index.predict(rows, lo, hi, newLabels);
 					}
-				}
+				}, rows);
+				return newLabels;
+			} catch(RejectedExecutionException r) {
+				warn("parallel prediction failed; falling back to serial");
 			}
-			
-			newLabels[i] = current_class;
 		}
 		
+		index.predict(rows, 0, rows.length, newLabels);
 		return newLabels;
 	}
 }
@@ -21,6 +21,7 @@ import java.util.Random;
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractDBSCAN.AbstractDBSCANParameters;
+import com.clust4j.algo.DBSCAN.DBSCANAlgorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 
 /**
@@ -32,6 +33,7 @@ final public class DBSCANParameters extends AbstractDBSCANParameters<DBSCAN> {
 	private static final long serialVersionUID = -5285244186285768512L;
 	
 	private double eps = DBSCAN.DEF_EPS;
+	private DBSCANAlgorithm algo = DBSCAN.DEF_ALGO;
 	
 	
 	public DBSCANParameters() { }
@@ -51,6 +53,7 @@ final public class DBSCANParameters extends AbstractDBSCANParameters<DBSCAN> {
 			.setMinPts(minPts)
 			.setMetric(metric)
 			.setSeed(seed)
+			.setAlgorithm(algo)
 			.setVerbose(verbose)
 			.setForceParallel(parallel);
 	}
@@ -64,6 +67,15 @@ final public class DBSCANParameters extends AbstractDBSCANParameters<DBSCAN> {
 		return this;
 	}
 	
+	public DBSCANAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
+	public DBSCANParameters setAlgorithm(final DBSCANAlgorithm algo) {
+		this.algo = algo;
+		return this;
+	}
+	
 	@Override
 	public DBSCANParameters setMinPts(final int minPts) {
 		this.minPts = minPts;
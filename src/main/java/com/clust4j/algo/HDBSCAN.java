@@ -18,12 +18,11 @@ package com.clust4j.algo;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
@@ -33,15 +32,15 @@ import org.apache.commons.math3.util.Precision;
 import com.clust4j.GlobalState;
 import com.clust4j.utils.QuadTup;
 import com.clust4j.algo.Neighborhood;
+import com.clust4j.except.ModelNotFitException;
 import com.clust4j.log.LogTimer;
 import com.clust4j.log.Loggable;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
-import com.clust4j.metrics.pairwise.Pairwise;
-import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.Series.Inequality;
+import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.MatUtils.MatSeries;
 import com.clust4j.utils.VecUtils;
@@ -66,6 +65,9 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	public static final boolean DEF_APPROX_MIN_SPAN = true;
 	public static final int DEF_LEAF_SIZE = 40;
 	public static final int DEF_MIN_CLUST_SIZE = 5;
+	public static final ClusterSelection DEF_CLUSTER_SELECTION = ClusterSelection.EOM;
+	public static final boolean DEF_KEEP_TREE = false;
+	public static final boolean DEF_PREDICTION_DATA = false;
 	/** The number of features that should trigger a boruvka implementation */
 	static final int boruvka_n_features_ = 60;
 	static final Set<Class<? extends GeometricallySeparable>> fast_metrics_;
@@ -76,10 +78,25 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	private final boolean approxMinSpanTree;
 	private final int min_cluster_size;
 	private final int leafSize;
+	private final ClusterSelection clusterSelection;
+	/** Whether to retain the single linkage tree for re-extraction */
+	private final boolean keepTree;
+	/** Whether to build the prediction data at fit time rather than on the first prediction */
+	private final boolean predictionData;
 
 	private volatile HDBSCANLinkageTree tree = null;
-	private volatile double[][] dist_mat = null;
+	/** The fitted single linkage tree, if retained */
+	private volatile SingleLinkageTree linkageTree = null;
+	/** The fitted condensed tree, and the label each of its clusters predicts */
+	private volatile CondensedTree condensed = null;
+	private volatile int[] clusterLabels = null;
+	/** The fitted core distances, and the number of neighbors, counting the record itself, that define them */
+	private volatile double[] coreDistances = null;
+	private volatile int coreNeighbors = -1;
+	/** Volatile because it may be built lazily on the first prediction */
+	private volatile PredictionData prediction = null;
 	private volatile int[] labels = null;
+	private volatile double[] outlierScores = null;
 	private volatile int numClusters = -1;
 	private volatile int numNoisey = -1;
 	/** A copy of the data array inside the data matrix */
@@ -124,11 +141,11 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		},
 		
 		/**
-		 * Generates a minimum spanning tree using a pairwise,
-		 * full distance matrix. Generally performs slower than
-		 * the other algorithms for larger datasets, but has less
-		 * setup overhead.
-		 * @see Pairwise
+		 * Generates a minimum spanning tree by brute force, with
+		 * Prim's algorithm over mutual reachability distances computed
+		 * as they are needed. Quadratic in time but linear in memory, 
+		 * and supports any metric, including those the trees cannot.
+		 * @see MutualReachabilityPrim
 		 */
 		GENERIC {
 			@Override
@@ -257,6 +274,25 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		}
 	}
 	
+	/**
+	 * How clusters are selected from the condensed tree
+	 * @author Taylor G Smith
+	 */
+	public static enum ClusterSelection {
+		/**
+		 * Excess of mass: select the most stable clusters,
+		 * keeping a cluster over its descendants if its stability 
+		 * is at least the sum of theirs
+		 */
+		EOM,
+		
+		/**
+		 * Select the leaves of the condensed tree, which 
+		 * favors many small, homogeneous clusters
+		 */
+		LEAF
+	}
+	
 	
 	
 	static {
@@ -306,9 +342,13 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		this.approxMinSpanTree = planner.getApprox();
 		this.min_cluster_size = planner.getMinClusterSize();
 		this.leafSize = planner.getLeafSize();
+		this.clusterSelection = planner.getClusterSelection();
+		this.keepTree = planner.getKeepTree();
+		this.predictionData = planner.getPredictionData();
 		
 		if(alpha <= 0.0) throw new IllegalArgumentException("alpha must be greater than 0");
 		if(leafSize < 1) throw new IllegalArgumentException("leafsize must be greater than 0");
+		if(null == clusterSelection) throw new IllegalArgumentException("cluster selection cannot be null");
 		
 		logModelSummary();
 	}
@@ -316,12 +356,12 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	@Override
 	final protected ModelSummary modelSummary() {
 		return new ModelSummary(new Object[]{
-				"Num Rows","Num Cols","Metric","Algo.","Allow Par.","Min Pts.","Min Clust. Size","Alpha"
+				"Num Rows","Num Cols","Metric","Algo.","Allow Par.","Min Pts.","Min Clust. Size","Selection","Alpha"
 			}, new Object[]{
 				data.getRowDimension(),data.getColumnDimension(),
 				getSeparabilityMetric(),algo,
 				parallel,
-				minPts, min_cluster_size,alpha
+				minPts, min_cluster_size,clusterSelection,alpha
 			});
 	}
 	
@@ -348,7 +388,8 @@ final public class HDBSCAN extends AbstractDBSCAN {
 				&& this.algo.equals(h.algo)
 				&& this.alpha == h.alpha
 				&& this.leafSize == h.leafSize
-				&& this.min_cluster_size == h.min_cluster_size;
+				&& this.min_cluster_size == h.min_cluster_size
+				&& this.clusterSelection.equals(h.clusterSelection);
 		}
 		
 		return false;
@@ -424,20 +465,142 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	
 	
 	
-	/** Classes that will explicitly need to define 
-	 *  reachability will have to implement this interface */
-	interface ExplicitMutualReachability { double[][] mutualReachability(); }
+	/**
+	 * The labeled single linkage tree in compact form. The <tt>j</tt>th merge joins
+	 * the nodes <tt>left[j]</tt> and <tt>right[j]</tt> at distance <tt>delta[j]</tt> into
+	 * the node <tt>numPoints + j</tt> of <tt>size[j]</tt> records, where the nodes below
+	 * <tt>numPoints</tt> are the records themselves. This is all the condensed tree 
+	 * depends on, so it can be retained to re-extract clusters without a refit.
+	 * @author Taylor G Smith
+	 */
+	final static class SingleLinkageTree implements java.io.Serializable {
+		private static final long serialVersionUID = -6725236329542371093L;
+		final int[] left, right, size;
+		final double[] delta;
+		final int numPoints;
+		
+		/**
+		 * @param hierarchy - the labeled single linkage tree, as 
+		 * rows of (node, node, distance, size)
+		 */
+		SingleLinkageTree(final double[][] hierarchy) {
+			final int m = hierarchy.length;
+			this.numPoints = m + 1;
+			this.left = new int[m];
+			this.right = new int[m];
+			this.size = new int[m];
+			this.delta = new double[m];
+			
+			for(int j = 0; j < m; j++) {
+				left[j] = (int) hierarchy[j][0];
+				right[j] = (int) hierarchy[j][1];
+				delta[j] = hierarchy[j][2];
+				size[j] = (int) hierarchy[j][3];
+			}
+		}
+		
+		/** The number of records under the node */
+		int count(final int node) {
+			return node < numPoints ? 1 : size[node - numPoints];
+		}
+		
+		/** The label of the root node */
+		int root() {
+			return 2 * (numPoints - 1);
+		}
+	}
+	
+	/**
+	 * The condensed tree as parallel primitive arrays, one entry per row of
+	 * <tt>[parent, child, lambda, child size]</tt>. The root cluster is labeled 
+	 * with the number of records, and the other clusters are labeled in increasing
+	 * order as they split, so a cluster's label always exceeds its parent's.
+	 * 
+	 * <p>
+	 * The cluster tree is also indexed in compressed sparse row form: the child
+	 * clusters of cluster <tt>c</tt> (each indexed by its label less the root's) are
+	 * <tt>clusterChildren[clusterOffsets[c]]</tt> through 
+	 * <tt>clusterChildren[clusterOffsets[c + 1] - 1]</tt>, so traversals of the
+	 * cluster tree are linear in the number of clusters.
+	 * 
+	 * <p>
+	 * Each cluster's death, the greatest lambda at which anything in its
+	 * subtree falls out, is gathered in the same pass, as GLOSH needs it.
+	 * @author Taylor G Smith
+	 */
+	final static class CondensedTree implements java.io.Serializable {
+		private static final long serialVersionUID = 2452846217409539872L;
+		final int[] parent, child, childSize;
+		final double[] lambda;
+		final int size, numPoints, numClusters;
+		/** Each cluster's parent cluster, or -1 for the root */
+		final int[] clusterParent;
+		final int[] clusterOffsets, clusterChildren;
+		/** The greatest lambda in each cluster's subtree */
+		final double[] clusterDeath;
+		
+		CondensedTree(int[] parent, int[] child, double[] lambda, int[] childSize, int size, int numPoints) {
+			this.parent = parent;
+			this.child = child;
+			this.lambda = lambda;
+			this.childSize = childSize;
+			this.size = size;
+			this.numPoints = numPoints;
+			
+			int maxLabel = numPoints;
+			for(int i = 0; i < size; i++)
+				maxLabel = FastMath.max(maxLabel, FastMath.max(parent[i], child[i]));
+			this.numClusters = maxLabel - numPoints + 1;
+			
+			// Index the cluster tree
+			clusterParent = VecUtils.repInt(-1, numClusters);
+			clusterOffsets = new int[numClusters + 1];
+			clusterDeath = new double[numClusters];
+			for(int i = 0; i < size; i++) {
+				if(lambda[i] > clusterDeath[parent[i] - numPoints])
+					clusterDeath[parent[i] - numPoints] = lambda[i];
+				
+				if(child[i] >= numPoints) {
+					clusterParent[child[i] - numPoints] = parent[i] - numPoints;
+					clusterOffsets[parent[i] - numPoints + 1]++;
+				}
+			}
+			
+			for(int c = 0; c < numClusters; c++)
+				clusterOffsets[c + 1] += clusterOffsets[c];
+			
+			// Filled in label order, so each cluster's children are ascending
+			clusterChildren = new int[clusterOffsets[numClusters]];
+			final int[] fill = Arrays.copyOf(clusterOffsets, numClusters);
+			for(int c = 1; c < numClusters; c++)
+				clusterChildren[fill[clusterParent[c]]++] = c;
+			
+			// Descending the labels visits children before their parents
+			for(int c = numClusters - 1; c > 0; c--)
+				if(clusterDeath[c] > clusterDeath[clusterParent[c]])
+					clusterDeath[clusterParent[c]] = clusterDeath[c];
+		}
+		
+		/** The label of the root cluster */
+		int root() {
+			return numPoints;
+		}
+		
+		/** The number of clusters, including the root */
+		int numClusters() {
+			return numClusters;
+		}
+	}
+	
 	/**
 	 * Mutual reachability is implicit when using 
 	 * {@link BoruvkaAlgorithm},
-	 * thus we don't need these classes to implement 
-	 * {@link ExplicitMutualReachability#mutualReachability()} */
+	 * thus these classes never materialize it */
 	interface Boruvka {}
 	/**
 	 * Mutual reachability is implicit when using 
-	 * {@link LinkageTreeUtils#mstLinkageCore_cdist},
-	 * thus we don't need these classes to implement 
-	 * {@link ExplicitMutualReachability#mutualReachability()} */
+	 * {@link LinkageTreeUtils#minSpanTreeLinkageCore_cdist},
+	 * thus these classes never materialize it */
 	interface Prim {}
 	
 	
@@ -448,261 +611,204 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	protected static abstract class LinkageTreeUtils {	
 		
 		/**
-		 * Perform a breadth first search on a tree
-		 * @param hierarchy
-		 * @param root
-		 * @return
+		 * Compute the stability of each cluster in the condensed tree: the sum, over 
+		 * everything that falls out of it, of the lambda at which it falls out less 
+		 * the lambda at which the cluster was born, weighted by its size
+		 * @param condensed
+		 * @return the stability of each cluster, indexed by its label less the root's
 		 */
 		// Tested: passing
-		static ArrayList<Integer> breadthFirstSearch(final double[][] hierarchy, final int root) {
-			ArrayList<Integer> toProcess = new ArrayList<>(), tmp;
-			int dim = hierarchy.length, maxNode = 2*dim, numPoints = maxNode - dim+1;
-			
-			toProcess.add(root);
-			ArrayList<Integer> result = new ArrayList<>();
-			while(!toProcess.isEmpty()) {
-				result.addAll(toProcess);
-				
-				tmp = new ArrayList<>();
-				for(Integer x: toProcess)
-					if(x >= numPoints)
-						tmp.add(x - numPoints);
-				toProcess = tmp;
+		static double[] computeStability(final CondensedTree condensed) {
+			final int root = condensed.root(), numClusters = condensed.numClusters();
+			final int[] parents = condensed.parent, children = condensed.child, sizes = condensed.childSize;
+			final double[] lambdas = condensed.lambda;
+			final double[] births = VecUtils.rep(Double.NaN, numClusters);
+			final double[] result = new double[numClusters];
+			int idx, child;
+			
+			// A cluster is born at the smallest lambda at which it is a child
+			boolean split = false;
+			for(idx = 0; idx < condensed.size; idx++) {
+				if((child = children[idx]) < root)
+					continue;
 				
-				tmp = new ArrayList<>();
-				if(!toProcess.isEmpty()) {
-					for(Integer row: toProcess)
-						for(int i = 0; i < 2; i++)
-							tmp.add((int) hierarchy[row][wraparoundIdxGet(hierarchy[row].length, i)]);
-					
-					toProcess = tmp;
-				}
+				child -= root;
+				births[child] = Double.isNaN(births[child]) ? 
+					lambdas[idx] : FastMath.min(births[child], lambdas[idx]);
+				split = true;
 			}
 			
-			return result;
-		}
-		
-		// Tested: passing
-		static TreeMap<Integer, Double> computeStability(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed) {
-			double[] resultArr, births, lambdas = new double[condensed.size()];
-			int[] sizes = new int[condensed.size()], parents = new int[condensed.size()];
-			int child, parent, childSize, resultIdx, currentChild = -1, idx = 0, row = 0;
-			double lambda, minLambda = 0;
-			
+			// The root is never a child. The cython exploits the C contiguous 
+			// pointer array's out of bounds allowance (2.12325E-314) when no 
+			// cluster ever splits from it, and otherwise reads the NaN births...
+			if(!split)
+				births[0] = GlobalState.Mathematics.TINY;
 			
-			/* Populate parents, sizes and lambdas pre-sort and get min/max parent info
-			 * ['parent', 'child', 'lambda', 'childSize']
-			 */
-			int largestChild = Integer.MIN_VALUE,
-				minParent = Integer.MAX_VALUE,
-				maxParent = Integer.MIN_VALUE;
-			for(CompQuadTup<Integer, Integer, Double, Integer> q: condensed) {
-				parent= q.getFirst();
-				child = q.getSecond();
-				lambda= q.getThird();
-				childSize= q.getFourth();
-				
-				if(child > largestChild)
-					largestChild = child;
-				if(parent < minParent)
-					minParent = parent;
-				if(parent > maxParent)
-					maxParent = parent;
-				
-				parents[idx] = parent;
-				sizes  [idx] = childSize;
-				lambdas[idx] = lambda;
-				idx++;
+			for(idx = 0; idx < condensed.size; idx++) {
+				child = parents[idx] - root;
+				result[child] += (lambdas[idx] - births[child]) * sizes[idx];
 			}
-
-			int numClusters = maxParent - minParent + 1;
-			births = VecUtils.rep(Double.NaN, largestChild + 1);
 			
-			/*
-			 * Perform sort, then get sorted lambdas and children
-			 */
-			Collections.sort(condensed, new Comparator<QuadTup<Integer, Integer, Double, Integer>>(){
-				@Override
-				public int compare(QuadTup<Integer, Integer, Double, Integer> q1, 
-						QuadTup<Integer, Integer, Double, Integer> q2) {
-					int cmp = q1.getSecond().compareTo(q2.getSecond());
-					
-					if(cmp == 0) {
-						cmp = q1.getThird().compareTo(q2.getThird());
-						return cmp;
-					}
-					
-					return cmp;
-				}
-			});
-			
-			
-			/*
-			 * Go through sorted list...
-			 */
-			for(row = 0; row < condensed.size(); row++) {
-				CompQuadTup<Integer, Integer, Double, Integer> q = condensed.get(row);
-				child = q.getSecond();
-				lambda= q.getThird();
-				
-				if(child == currentChild)
-					minLambda = FastMath.min(minLambda, lambda);
-				else if(currentChild != -1) {
-					// Already been initialized
-					births[currentChild] = minLambda;
-					currentChild = child;
-					minLambda = lambda;
-				} else {
-					// Initialize
-					currentChild = child;
-					minLambda = lambda;
-				}
-			}
-
-			resultArr = new double[numClusters];
-			
-			
-			// Second loop
-			double birthParent;
-			for(idx = 0; idx < condensed.size(); idx++) {
-				parent = parents[idx];
-				lambda = lambdas[idx];
-				childSize= sizes[idx];
-				resultIdx = parent - minParent;
+			return result;
+		}
+		
+		/**
+		 * Compute the GLOSH outlier score of each record: one less the ratio of 
+		 * the lambda at which it falls out of its cluster to that cluster's death,
+		 * so zero in the densest part of a cluster, approaching one far outside it.
+		 * A finite lambda in a cluster of infinite death (i.e., of duplicates) scores 
+		 * one, and an infinite lambda or a cluster of no density scores zero.
+		 * @param condensed
+		 * @return the scores, indexed by record
+		 */
+		static double[] outlierScores(final CondensedTree condensed) {
+			final int root = condensed.root();
+			final double[] deaths = condensed.clusterDeath;
+			final double[] result = new double[root];
+			double lambda, death;
+			
+			for(int i = 0; i < condensed.size; i++) {
+				if(condensed.child[i] >= root)
+					continue;
 				
-				// the Cython exploits the C contiguous pointer array's
-				// out of bounds allowance (2.12325E-314), but we have to
-				// do a check for that...
-				birthParent = parent >= births.length ? GlobalState.Mathematics.TINY : births[parent];
-				resultArr[resultIdx] += (lambda - birthParent) * childSize;
+				lambda = condensed.lambda[i];
+				death = deaths[condensed.parent[i] - root];
+				if(0.0 == death || Double.isInfinite(lambda))
+					result[condensed.child[i]] = 0.0;
+				else if(Double.isInfinite(death))
+					result[condensed.child[i]] = 1.0;
+				else
+					result[condensed.child[i]] = (death - lambda) / death;
 			}
 			
-			
-			double[] top = VecUtils.asDouble(VecUtils.arange(minParent, maxParent + 1));
-			double[][] mat = MatUtils.transpose(VecUtils.vstack(top, resultArr));
-			
-			TreeMap<Integer, Double> result = new TreeMap<>();
-			for(idx = 0; idx < mat.length; idx++)
-				result.put( (int)mat[idx][0], mat[idx][1]);
-			
 			return result;
 		}
 		
+		/**
+		 * Condense the single linkage tree into the clusters of at least 
+		 * <tt>minSize</tt> records, and the records and smaller clusters 
+		 * which fall out of them
+		 * @param hierarchy - the labeled single linkage tree
+		 * @param minSize - the minimum cluster size
+		 * @return the condensed tree
+		 */
 		// Tested: passing
-		static ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condenseTree(final double[][] hierarchy, final int minSize) {
-			final int m = hierarchy.length;
-			int root = 2 * m, 
-					numPoints = root/2 + 1 /*Integer division*/, 
-					nextLabel = numPoints+1;
-			
-			// Get node list from BFS
-			ArrayList<Integer> nodeList = breadthFirstSearch(hierarchy, root), tmpList;
-			ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> resultList = new ArrayList<>();
-			
-			// Indices needing relabeling -- cython code assigns this to nodeList.size()
-			// but often times this is way too small and causes out of bounds exceptions...
-			// Changed to root + 1 on 02/01/2016; this should be the max node ever in the resultList
-			int[] relabel = new int[root + 1]; //nodeList.size()
-			boolean[] ignore = new boolean[root + 1];
-			double[] children;
-			
-			double lambda;
-			int left, right, leftCount, rightCount;
-			
-			// Sanity check
-			// System.out.println("Root: " + root + ", Relabel length: " + relabel.length + ", m: " + m + ", Relabel array: " + Arrays.toString(relabel));
-			
-			// The cython code doesn't check for bounds and sloppily 
-			// assigns this even if root > relabel.length. 
+		static CondensedTree condenseTree(final double[][] hierarchy, final int minSize) {
+			return condenseTree(new SingleLinkageTree(hierarchy), minSize);
+		}
+		
+		/**
+		 * Condense the single linkage tree into the clusters of at least 
+		 * <tt>minSize</tt> records, and the records and smaller clusters 
+		 * which fall out of them
+		 * @param hierarchy - the single linkage tree
+		 * @param minSize - the minimum cluster size
+		 * @return the condensed tree
+		 */
+		static CondensedTree condenseTree(final SingleLinkageTree hierarchy, final int minSize) {
+			final int root = hierarchy.root(), numPoints = hierarchy.numPoints;
+			int nextLabel = numPoints + 1;
+			
+			// Every record falls out exactly once, and there are fewer 
+			// than numPoints / minSize splits, each adding two clusters
+			final int capacity = numPoints + 2 * (numPoints / FastMath.max(minSize, 1));
+			final int[] parents = new int[capacity], children = new int[capacity], sizes = new int[capacity];
+			final double[] lambdas = new double[capacity];
+			int size = 0;
+			
+			final int[] relabel = new int[root + 1];
+			final boolean[] ignore = new boolean[root + 1];
 			relabel[root] = numPoints;
 			
+			// The breadth-first node order, and a queue to dissolve subtrees
+			final int[] nodeList = breadthFirstOrder(hierarchy, root, new int[root + 1]);
+			final int[] queue = new int[root + 1];
 			
+			double delta, lambda;
+			int left, right, leftCount, rightCount, parent, sub, qHead, qTail;
 			
-			for(Integer node: nodeList) {
-				
+			for(int node: nodeList) {
 				if(ignore[node] || node < numPoints)
 					continue;
 				
-				children = hierarchy[wraparoundIdxGet(hierarchy.length, node-numPoints)];
-				left = (int) children[0];
-				right= (int) children[1];
-				
-				if(children[2] > 0)
-					lambda = 1.0 / children[2];
-				else lambda = Double.POSITIVE_INFINITY;
-				
-				if(left >= numPoints)
-					leftCount = (int) (hierarchy[wraparoundIdxGet(hierarchy.length, left-numPoints)][3]);
-				else leftCount = 1;
-				
-				if(right >= numPoints)
-					rightCount = (int)(hierarchy[wraparoundIdxGet(hierarchy.length,right-numPoints)][3]);
-				else rightCount = 1;
-				
-				
+				left = hierarchy.left[node - numPoints];
+				right= hierarchy.right[node - numPoints];
+				delta = hierarchy.delta[node - numPoints];
+				lambda = delta > 0 ? 1.0 / delta : Double.POSITIVE_INFINITY;
+				leftCount = hierarchy.count(left);
+				rightCount = hierarchy.count(right);
+				parent = relabel[node];
 				
 				if(leftCount >= minSize && rightCount >= minSize) {
 					relabel[left] = nextLabel++;
-					resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-						relabel[wraparoundIdxGet(relabel.length, node)],
-						relabel[wraparoundIdxGet(relabel.length, left)],
-						lambda, leftCount ));
-					
-					relabel[wraparoundIdxGet(relabel.length, right)] = nextLabel++;
-					resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-						relabel[wraparoundIdxGet(relabel.length, node)],
-						relabel[wraparoundIdxGet(relabel.length,right)],
-						lambda, rightCount ));
-					
-					
-				} else if(leftCount < minSize && rightCount < minSize) {
-					tmpList = breadthFirstSearch(hierarchy, left);
-					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
+					parents[size] = parent;
+					children[size] = relabel[left];
+					lambdas[size] = lambda;
+					sizes[size++] = leftCount;
 					
-					tmpList = breadthFirstSearch(hierarchy, right);
-					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
-					
-					
- 				} else if(leftCount < minSize) {
- 					relabel[right] = relabel[node];
- 					tmpList = breadthFirstSearch(hierarchy, left);
- 					
- 					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
-					}
- 				}
+					relabel[right] = nextLabel++;
+					parents[size] = parent;
+					children[size] = relabel[right];
+					lambdas[size] = lambda;
+					sizes[size++] = rightCount;
+					continue;
+				}
 				
+				if(leftCount >= minSize)
+					relabel[left] = parent;
+				if(rightCount >= minSize)
+					relabel[right] = parent;
 				
- 				else {
- 					relabel[left] = relabel[node];
- 					tmpList = breadthFirstSearch(hierarchy, right);
- 					for(Integer subnode: tmpList) {
-						if(subnode < numPoints)
-							resultList.add(new CompQuadTup<Integer, Integer, Double, Integer>(
-								relabel[wraparoundIdxGet(relabel.length, node)], subnode,
-								lambda, 1));
-						ignore[subnode] = true;
+				// Dissolve the small side(s): each record falls out at this lambda
+				for(int side = 0; side < 2; side++) {
+					sub = 0 == side ? left : right;
+					if((0 == side ? leftCount : rightCount) >= minSize)
+						continue;
+					
+					qHead = 0;
+					qTail = 0;
+					queue[qTail++] = sub;
+					while(qHead < qTail) {
+						sub = queue[qHead++];
+						ignore[sub] = true;
+						
+						if(sub < numPoints) {
+							parents[size] = parent;
+							children[size] = sub;
+							lambdas[size] = lambda;
+							sizes[size++] = 1;
+						} else {
+							queue[qTail++] = hierarchy.left[sub - numPoints];
+							queue[qTail++] = hierarchy.right[sub - numPoints];
+						}
 					}
- 				}
+				}
 			}
 			
-			return resultList;
+			return new CondensedTree(parents, children, lambdas, sizes, size, numPoints);
+		}
+		
+		/**
+		 * The nodes of the tree in breadth-first order from <tt>root</tt>
+		 * @param hierarchy
+		 * @param root
+		 * @param buffer - an array large enough to hold the subtree
+		 * @return the nodes, in the buffer
+		 */
+		static int[] breadthFirstOrder(final SingleLinkageTree hierarchy, final int root, final int[] buffer) {
+			final int numPoints = hierarchy.numPoints;
+			int head = 0, tail = 0, node;
+			
+			buffer[tail++] = root;
+			while(head < tail) {
+				node = buffer[head++];
+				if(node >= numPoints) {
+					buffer[tail++] = hierarchy.left[node - numPoints];
+					buffer[tail++] = hierarchy.right[node - numPoints];
+				}
+			}
+			
+			return tail == buffer.length ? buffer : Arrays.copyOf(buffer, tail);
 		}
 		
 		/**
@@ -902,6 +1008,9 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		final HDBSCAN model;
 		final GeometricallySeparable metric;
 		final int m, n;
+		/** Set by {@link #link()}: the core distances and the number of neighbors, counting the record itself, that define them */
+		double[] coreDistances;
+		int coreNeighbors;
 		
 		HDBSCANLinkageTree() {
 			model = HDBSCAN.this;
@@ -948,7 +1057,8 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			// Query for dists to k nearest neighbors -- no longer use breadth first!
 			Neighborhood query = tree.query(dt, min_points, true, true);
 			double[][] dists = query.getDistances();
-			double[] coreDistances = MatUtils.getColumn(dists, dists[0].length - 1);
+			coreDistances = MatUtils.getColumn(dists, dists[0].length - 1);
+			coreNeighbors = min_points;
 			
 			double[][] minSpanningTree = LinkageTreeUtils
 				.minSpanTreeLinkageCore_cdist(dt, 
@@ -976,9 +1086,11 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			// We can safely cast the metric to DistanceMetric at this point
 			final BoruvkaAlgorithm alg = new BoruvkaAlgorithm(tree, min_points, 
 					(DistanceMetric)metric, ls / 3, approxMinSpanTree, 
-					alpha, model);
+					alpha, model, model.parallel);
 			
 			double[][] minSpanningTree = alg.spanningTree();
+			coreDistances = alg.coreDistances();
+			coreNeighbors = alg.coreNeighbors();
 			return label(MatUtils.sortAscByCol(minSpanningTree, 2));
 		}
 	}
@@ -1022,43 +1134,261 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	}
 	
 	/**
-	 * Generic single linkage tree that uses an 
-	 * upper triangular distance matrix to compute
-	 * mutual reachability
+	 * Generic single linkage tree that computes mutual reachability 
+	 * on the fly, so it never holds more than linear memory
 	 * @author Taylor G Smith
 	 */
-	class GenericTree extends HDBSCANLinkageTree implements ExplicitMutualReachability {
+	class GenericTree extends HDBSCANLinkageTree {
 		GenericTree() {
 			super();
-			
-			// The generic implementation requires the computation of an UT dist mat
-			final LogTimer s = new LogTimer();
-			dist_mat = Pairwise.getDistance(data, getSeparabilityMetric(), false, false);
-			info("completed distance matrix computation in " + s.toString());
 		}
 		
 		@Override
 		double[][] link() {
-			final double[][] mutual_reachability = mutualReachability();
-			double[][] min_spanning_tree = LinkageTreeUtils
-					.minSpanTreeLinkageCore(mutual_reachability, m);
+			final MutualReachabilityPrim prim = 
+				new MutualReachabilityPrim(dataData, metric, alpha, parallel, model);
+			
+			// Same as the dense core distances: the minPts-th neighbor, past the record itself
+			final LogTimer s = new LogTimer();
+			coreNeighbors = FastMath.min(m - 1, minPts) + 1;
+			coreDistances = prim.coreDistances(coreNeighbors);
+			info("completed core distance computation in " + s.toString());
+			
+			double[][] min_spanning_tree = prim.spanningTree(coreDistances);
 			
 			// Sort edges of the min_spanning_tree by weight
 			min_spanning_tree = MatUtils.sortAscByCol(min_spanning_tree, 2);
 			return label(min_spanning_tree);
 		}
+	}
+	
+	/**
+	 * Prim's minimum spanning tree over the mutual reachability graph of any metric,
+	 * without materializing a distance matrix. Core distances come from a bounded
+	 * nearest neighbor pass over each row, and each mutual reachability distance is 
+	 * computed when Prim's sweep needs it, so time is quadratic and memory linear in 
+	 * the number of records. Both the core distance rows and each Prim's sweep over
+	 * the records not yet in the tree are split across the fork-join pool if allowed.
+	 * 
+	 * <p>Each sweep updates every outside record's distance to the tree with
+	 * the record that last joined it, then picks the nearest, breaking ties by
+	 * the lower index so the tree is the same whether or not it is parallel.
+	 * @author Taylor G Smith
+	 */
+	static class MutualReachabilityPrim {
+		/** The fewest rows worth splitting off into a separate task */
+		static final int MIN_TASK_SIZE = 1024;
 		
-		@Override
-		public double[][] mutualReachability() {
-			/*// this shouldn't be able to happen...
-			if(null == dist_mat)
-				throw new IllegalClusterStateException("dist matrix is null; "
-					+ "this only can happen when the model attempts to invoke "
-					+ "mutualReachability on a tree without proper initialization "
-					+ "or after the model has already been fit.");
-			*/
+		final double[][] X;
+		final GeometricallySeparable metric;
+		final double alpha;
+		final Loggable logger;
+		private boolean parallel;
+		
+		MutualReachabilityPrim(double[][] X, GeometricallySeparable metric, 
+				double alpha, boolean parallel, Loggable logger) {
+			this.X = X;
+			this.metric = metric;
+			this.alpha = alpha;
+			this.parallel = parallel;
+			this.logger = logger;
+		}
+		
+		/**
+		 * The distance to each record's <tt>k</tt>th nearest neighbor, counting itself
+		 * @param k
+		 * @return the core distances
+		 */
+		double[] coreDistances(final int k) {
+			final double[] core = new double[X.length];
+			
+			if(parallel && X.length >= 2 * MIN_TASK_SIZE) {
+				try {
+					GlobalState.ParallelismConf.FJ_THREADPOOL
+						.invoke(new CoreDistanceTask(this, core, k, 0, X.length));
+					return core;
+				} catch(RejectedExecutionException r) {
+					rejected();
+				}
+			}
+			
+			coreDistances(core, k, 0, X.length);
+			return core;
+		}
+		
+		void coreDistances(final double[] core, final int k, final int lo, final int hi) {
+			final double[] nearest = new double[k];
+			double dist;
+			int pos;
+			
+			for(int i = lo; i < hi; i++) {
+				Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+				
+				// An insertion sort into the k nearest
+				for(int j = 0; j < X.length; j++) {
+					dist = i == j ? 0.0 : metric.getDistance(X[i], X[j]);
+					if(dist >= nearest[k - 1])
+						continue;
+					
+					for(pos = k - 1; pos > 0 && nearest[pos - 1] > dist; pos--)
+						nearest[pos] = nearest[pos - 1];
+					nearest[pos] = dist;
+				}
+				
+				core[i] = nearest[k - 1];
+			}
+		}
+		
+		/**
+		 * The minimum spanning tree, as rows of (node, node, distance)
+		 * @param core - the core distances
+		 * @return the unsorted tree
+		 */
+		double[][] spanningTree(final double[] core) {
+			final int m = X.length;
+			final double[][] result = new double[m - 1][];
+			
+			// The records not yet in the tree, compacted 
+			// into a prefix, and their distances to it
+			final int[] outside = VecUtils.arange(m);
+			final double[] dists = VecUtils.rep(Double.POSITIVE_INFINITY, m);
+			int size = m, current = 0, best;
+			
+			// Remove the first record
+			outside[0] = outside[--size];
+			
+			for(int i = 0; i < m - 1; i++) {
+				best = -1;
+				if(parallel && size >= 2 * MIN_TASK_SIZE) {
+					try {
+						best = GlobalState.ParallelismConf.FJ_THREADPOOL
+							.invoke(new SweepTask(this, core, outside, dists, current, 0, size));
+					} catch(RejectedExecutionException r) {
+						rejected();
+					}
+				}
+				
+				if(best < 0)
+					best = sweep(core, outside, dists, current, 0, size);
+				
+				result[i] = new double[]{current, outside[best], dists[best]};
+				current = outside[best];
+				
+				// Swap the new tree record out of the prefix
+				outside[best] = outside[--size];
+				dists[best] = dists[size];
+			}
+			
+			return result;
+		}
+		
+		/**
+		 * Update the distances to the tree of the outside records in 
+		 * <tt>[lo, hi)</tt> with the record that last joined it
+		 * @return the position of the nearest, with ties to the lowest index
+		 */
+		int sweep(final double[] core, final int[] outside, final double[] dists, 
+				final int current, final int lo, final int hi) {
+			final double currentCore = core[current];
+			double mr;
+			int j, best = lo;
+			
+			for(int r = lo; r < hi; r++) {
+				j = outside[r];
+				
+				// Neither core distance may exceed the current distance for it to improve
+				if(currentCore < dists[r] && core[j] < dists[r]) {
+					mr = metric.getDistance(X[current], X[j]);
+					if(alpha != 1.0)
+						mr /= alpha;
+					
+					mr = FastMath.max(mr, FastMath.max(currentCore, core[j]));
+					if(mr < dists[r])
+						dists[r] = mr;
+				}
+				
+				if(precedes(dists, outside, r, best))
+					best = r;
+			}
+			
+			return best;
+		}
+		
+		static boolean precedes(final double[] dists, final int[] outside, final int a, final int b) {
+			return dists[a] < dists[b] || (dists[a] == dists[b] && outside[a] < outside[b]);
+		}
+		
+		private void rejected() {
+			logger.warn("parallel mutual reachability search failed; falling back to serial");
+			parallel = false;
+		}
+		
+		/**
+		 * Computes the core distances of a range of rows, splitting it in half
+		 * @author Taylor G Smith
+		 */
+		static class CoreDistanceTask extends RecursiveAction {
+			private static final long serialVersionUID = -1730921340925306173L;
+			final MutualReachabilityPrim prim;
+			final double[] core;
+			final int k, lo, hi;
+			
+			CoreDistanceTask(MutualReachabilityPrim prim, double[] core, int k, int lo, int hi) {
+				this.prim = prim;
+				this.core = core;
+				this.k = k;
+				this.lo = lo;
+				this.hi = hi;
+			}
+			
+			@Override
+			protected void compute() {
+				if(hi - lo < 2 * MIN_TASK_SIZE) {
+					prim.coreDistances(core, k, lo, hi);
+					return;
+				}
+				
+				final int mid = lo + (hi - lo) / 2;
+				invokeAll(new CoreDistanceTask(prim, core, k, lo, mid), 
+						new CoreDistanceTask(prim, core, k, mid, hi));
+			}
+		}
+		
+		/**
+		 * Sweeps a range of the outside records, splitting it in half
+		 * @author Taylor G Smith
+		 */
+		static class SweepTask extends RecursiveTask<Integer> {
+			private static final long serialVersionUID = 2874160393582043725L;
+			final MutualReachabilityPrim prim;
+			final double[] core, dists;
+			final int[] outside;
+			final int current, lo, hi;
+			
+			SweepTask(MutualReachabilityPrim prim, double[] core, int[] outside, 
+					double[] dists, int current, int lo, int hi) {
+				this.prim = prim;
+				this.core = core;
+				this.outside = outside;
+				this.dists = dists;
+				this.current = current;
+				this.lo = lo;
+				this.hi = hi;
+			}
 			
-			return LinkageTreeUtils.mutualReachability(dist_mat, minPts, alpha);
+			@Override
+			protected Integer compute() {
+				if(hi - lo < 2 * MIN_TASK_SIZE)
+					return prim.sweep(core, outside, dists, current, lo, hi);
+				
+				final int mid = lo + (hi - lo) / 2;
+				final SweepTask left = new SweepTask(prim, core, outside, dists, current, lo, mid);
+				left.fork();
+				
+				final int r = new SweepTask(prim, core, outside, dists, current, mid, hi).compute();
+				final int l = left.join();
+				return precedes(dists, outside, r, l) ? r : l;
+			}
 		}
 	}
 	
@@ -1286,50 +1616,45 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	
 
 
-	protected static int[] doLabeling(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tree,
-			ArrayList<Integer> clusters, TreeMap<Integer, Integer> clusterMap) {
-		
-		CompQuadTup<Integer, Integer, Double, Integer> quad;
-		int rootCluster, parent, child, n = tree.size(), cluster, i;
-		int[] resultArr, parentArr = new int[n], childArr = new int[n];
-		UnifiedFinder unionFind;
-		
-		// [parent, child, lambda, size]
-		int maxParent = Integer.MIN_VALUE;
-		int minParent = Integer.MAX_VALUE;
-		for(i = 0; i < n; i++) {
-			quad = tree.get(i);
-			parentArr[i]= quad.getFirst();
-			childArr[i] = quad.getSecond();
-			
-			if(quad.getFirst() < minParent)
-				minParent = quad.getFirst();
-			if(quad.getFirst() > maxParent)
-				maxParent = quad.getFirst();
-		}
-		
-		rootCluster = minParent;
-		resultArr = new int[rootCluster];
-		unionFind = new TreeUnionFind(maxParent + 1);
-		
-		for(i = 0; i < n; i++) {
-			child = childArr[i];
-			parent= parentArr[i];
-			if(!clusters.contains(child))
-				unionFind.union(parent, child);
-		}
-		
-		for(i = 0; i < rootCluster; i++) {
-			cluster = unionFind.find(i);
-			if(cluster <= rootCluster)
-				resultArr[i] = NOISE_CLASS;
-			else
-				resultArr[i] = clusterMap.get(cluster);
-		}
+	/**
+	 * Label each record with the selected cluster it falls out of, or any 
+	 * selected ancestor of that cluster, or as noise if there is none
+	 * @param tree - the condensed tree
+	 * @param selected - whether each cluster is selected, indexed by its label less the root's
+	 * @return the labels: the selected clusters' labels less the root's, or noise
+	 */
+	protected static int[] doLabeling(final CondensedTree tree, final boolean[] selected) {
+		final int root = tree.root(), n = tree.size;
+		final int[] parents = tree.parent, children = tree.child;
+		final int[] resultArr = VecUtils.repInt(NOISE_CLASS, root);
+		final int[] owner = owners(tree, selected);
+		
+		for(int i = 0; i < n; i++)
+			if(children[i] < root)
+				resultArr[children[i]] = owner[parents[i] - root];
 		
 		return resultArr;
 	}
 	
+	/**
+	 * The selected cluster each cluster belongs to: itself if selected,
+	 * else its nearest selected ancestor, or noise if there is none
+	 * @param tree - the condensed tree
+	 * @param selected - whether each cluster is selected, indexed by its label less the root's
+	 * @return the owners, indexed by label less the root's
+	 */
+	static int[] owners(final CondensedTree tree, final boolean[] selected) {
+		final int[] clusterParent = tree.clusterParent;
+		
+		// Children are always labeled after their parents, so 
+		// each cluster's parent has already been resolved
+		final int[] owner = VecUtils.repInt(NOISE_CLASS, selected.length);
+		for(int c = 1; c < selected.length; c++) // the root is never selected
+			owner[c] = selected[c] ? c : clusterParent[c] < 0 ? NOISE_CLASS : owner[clusterParent[c]];
+		
+		return owner;
+	}
+	
 	@Override
 	protected HDBSCAN fit() {
 		synchronized(fitLock) {
@@ -1348,12 +1673,20 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			
 			LogTimer treeTimer = new LogTimer();
 			final double[][] lab_tree = tree.link(); // returns the result of the label(..) function
+			coreDistances = tree.coreDistances;
+			coreNeighbors = tree.coreNeighbors;
 			info("completed tree building in " + treeTimer.toString());
 			
 
 			info("converting tree to labels ("+lab_tree.length+" x "+lab_tree[0].length+")");
 			LogTimer labTimer = new LogTimer();
-			labels = treeToLabels(dataData, lab_tree, min_cluster_size, this);
+			final SingleLinkageTree singleLinkage = new SingleLinkageTree(lab_tree);
+			final CondensedTree condensedTree = LinkageTreeUtils.condenseTree(singleLinkage, min_cluster_size);
+			final boolean[] selected = selectClusters(condensedTree, clusterSelection);
+			labels = doLabeling(condensedTree, selected);
+			outlierScores = LinkageTreeUtils.outlierScores(condensedTree);
+			if(keepTree)
+				linkageTree = singleLinkage;
 			
 			
 			// Wrap up...
@@ -1372,8 +1705,17 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			
 			// Need to encode labels to maintain order
 			final NoiseyLabelEncoder encoder = new NoiseyLabelEncoder(labels).fit();
+			final int[] rawLabels = labels;
 			labels = encoder.getEncodedLabels();
 			
+			// Retain what prediction needs from the condensed tree
+			condensed = condensedTree;
+			clusterLabels = clusterLabels(condensedTree, selected, rawLabels, labels);
+			if(predictionData) {
+				info("building prediction data");
+				prediction = new PredictionData(this);
+			}
+			
 			
 			
 			/*
@@ -1407,7 +1749,6 @@ final public class HDBSCAN extends AbstractDBSCAN {
 			
 			// Clean anything with big overhead..
 			dataData = null;
-			dist_mat = null;
 			tree = null;
 			
 			return this;
@@ -1420,6 +1761,20 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		return super.handleLabelCopy(labels);
 	}
 
+	/**
+	 * The GLOSH outlier score of each record, computed from the condensed tree
+	 * of the fit: how far below its cluster's peak density the record falls out, 
+	 * in [0, 1], where greater is more outlying. Unlike the labels, this ranks
+	 * the noise points, as well as the members of each cluster.
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the outlier scores
+	 */
+	public double[] getOutlierScores() {
+		if(null == outlierScores)
+			error(new ModelNotFitException("model has not been fit yet"));
+		return VecUtils.copy(outlierScores);
+	}
+
 	@Override
 	public Algo getLoggerTag() {
 		return com.clust4j.log.Log.Tag.Algo.HDBSCAN;
@@ -1447,149 +1802,122 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	 */
 	abstract static class GetLabelUtils {
 		/**
-		 * Descendingly sort the keys of the map and return
-		 * them in order, but eliminate the very smallest key
+		 * The sum of the stabilities of a cluster's children
+		 * @param tree
+		 * @param node - the cluster, indexed by its label less the root's
 		 * @param stability
-		 * @return
+		 * @return the sum
 		 */
-		protected static <T,P> ArrayList<T> descSortedKeySet(TreeMap<T,P> stability) {
-			int ct = 0;
-			ArrayList<T> nodeList = new ArrayList<>();
-			for(T d: stability.descendingKeySet())
-				if(++ct < stability.size()) // exclude the root...
-					nodeList.add(d);
-			
-			return nodeList;
+		protected static double subTreeStability(final CondensedTree tree, 
+				final int node, final double[] stability) {
+			double sum = 0;
+			for(int j = tree.clusterOffsets[node]; j < tree.clusterOffsets[node + 1]; j++)
+				sum += stability[tree.clusterChildren[j]];
+			return sum;
 		}
 		
 		/**
-		 * Get tuples where child size is over one
+		 * The clusters of the subtree rooted at <tt>node</tt>, in breadth first order
 		 * @param tree
-		 * @return
+		 * @param node - the cluster, indexed by its label less the root's
+		 * @return the clusters, each indexed by its label less the root's
 		 */
-		protected static EntryPair<ArrayList<double[]>, Integer> childSizeGtOneAndMaxChild(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tree) {
-			ArrayList<double[]> out = new ArrayList<>();
-			int max = Integer.MIN_VALUE;
-			
-			// [parent, child, lambda, size]
-			for(CompQuadTup<Integer, Integer, Double, Integer> tup: tree) {
-				if(tup.getFourth() > 1)
-					out.add(new double[]{
-						tup.getFirst(),
-						tup.getSecond(),
-						tup.getThird(),
-						tup.getFourth()
-					});
-				else if(tup.getFourth() == 1)
-					max = FastMath.max(max, tup.getSecond());
+		protected static int[] breadthFirstSearchFromClusterTree(final CondensedTree tree, final int node) {
+			final int[] queue = new int[tree.numClusters];
+			int head = 0, tail = 0, c;
+			
+			queue[tail++] = node;
+			while(head < tail) {
+				c = queue[head++];
+				for(int j = tree.clusterOffsets[c]; j < tree.clusterOffsets[c + 1]; j++)
+					queue[tail++] = tree.clusterChildren[j];
 			}
 			
-			return new EntryPair<>(out, max + 1);
-		}
-		
-		protected static TreeMap<Integer, Boolean> initNodeMap(ArrayList<Integer> nodes) {
-			TreeMap<Integer, Boolean> out = new TreeMap<>();
-			for(Integer i: nodes)
-				out.put(i, true);
-			return out;
+			return Arrays.copyOf(queue, tail);
 		}
+	}
+	
+	/**
+	 * Select the clusters by excess of mass: from the leaves up, a cluster is kept
+	 * over its descendants if its stability is at least the sum of theirs
+	 * @param condensed
+	 * @param stabilityArr - as returned by {@link LinkageTreeUtils#computeStability(CondensedTree)}
+	 * @return the labels
+	 */
+	protected static int[] getLabels(final CondensedTree condensed, final double[] stabilityArr) {
+		return doLabeling(condensed, selectExcessOfMass(condensed, stabilityArr));
+	}
+	
+	/**
+	 * The clusters selected by excess of mass, as in {@link #getLabels(CondensedTree, double[])}
+	 * @param condensed
+	 * @param stabilityArr
+	 * @return whether each cluster is selected, indexed by its label less the root's
+	 */
+	static boolean[] selectExcessOfMass(final CondensedTree condensed, final double[] stabilityArr) {
+		final int numClusters = stabilityArr.length;
+		final double[] stability = VecUtils.copy(stabilityArr);
+		final boolean[] kept = new boolean[numClusters];
+		double subTreeStability;
+		int c;
 		
-		protected static double subTreeStability(ArrayList<double[]> clusterTree, 
-				int node, TreeMap<Integer, Double> stability) {
-			double sum = 0;
+		// Children have greater labels than their parents, so descending
+		// the labels visits the tree from the leaves up. The root is excluded.
+		for(c = numClusters - 1; c > 0; c--) {
+			subTreeStability = GetLabelUtils.subTreeStability(condensed, c, stability);
 			
-			// [parent, child, lambda, size]
-			for(double[] d: clusterTree)
-				if((int)d[0] == node)
-					sum += stability.get((int)d[1]);
-			
-			return sum;
+			if(subTreeStability > stability[c])
+				stability[c] = subTreeStability;
+			else
+				kept[c] = true;
 		}
 		
-		protected static ArrayList<Integer> breadthFirstSearchFromClusterTree(ArrayList<double[]> tree, Integer bfsRoot) {
-			int child, parent;
-			ArrayList<Integer> result = new ArrayList<>();
-			ArrayList<Integer> toProcess = new ArrayList<Integer>();
-			ArrayList<Integer> tmp;
-			
-			toProcess.add(bfsRoot);
-			
-			// [parent, child, lambda, size]
-			while(toProcess.size() > 0) {
-				result.addAll(toProcess);
-				
-				// python code: 
-				// to_process = tree['child'][np.in1d(tree['parent'], to_process)]
-				// For all tuples, if the parent is in toProcess, then
-				// add the child to the new list
-				tmp = new ArrayList<Integer>();
-				for(double[] d: tree) {
-					parent	= (int)d[0];
-					child	= (int)d[1];
-					
-					if(toProcess.contains(parent))
-						tmp.add(child);
-				}
-				
-				toProcess = tmp;
-			}
-			
-			return result;
+		// A kept cluster is selected unless an ancestor was also kept,
+		// which is resolved from the root down
+		final boolean[] selected = new boolean[numClusters], 
+			blocked = new boolean[numClusters];
+		for(c = 1; c < numClusters; c++) {
+			final boolean parentBlocked = blocked[condensed.clusterParent[c]];
+			selected[c] = kept[c] && !parentBlocked;
+			blocked[c] = kept[c] || parentBlocked;
 		}
+		
+		return selected;
 	}
 	
-	protected static int[] getLabels(ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed,
-									TreeMap<Integer, Double> stability) {
-		
-		double subTreeStability;
-		ArrayList<Integer> clusters = new ArrayList<Integer>();
-		HSet<Integer> clusterSet;
-		TreeMap<Integer, Integer> clusterMap = new TreeMap<>(), 
-				reverseClusterMap = new TreeMap<>();
-		
-		// Get descending sorted key set
-		ArrayList<Integer> nodeList = GetLabelUtils.descSortedKeySet(stability);
-		
-		// Get tuples where child size > 1
-		EntryPair<ArrayList<double[]>, Integer> entry = GetLabelUtils.childSizeGtOneAndMaxChild(condensed);
-		ArrayList<double[]> clusterTree = entry.getKey();
-		
-		// Map of nodes to whether it's a cluster
-		TreeMap<Integer, Boolean> isCluster = GetLabelUtils.initNodeMap(nodeList);
-		
-		// Get num points
-		//int numPoints = entry.getValue();
-		
-		// Iter over nodes
-		for(Integer node: nodeList) {
-			subTreeStability = GetLabelUtils.subTreeStability(clusterTree, node, stability);
-			
-			if(subTreeStability > stability.get(node)) {
-				isCluster.put(node, false);
-				stability.put(node, subTreeStability);
-			} else {
-				for(Integer subNode: GetLabelUtils.breadthFirstSearchFromClusterTree(clusterTree, node))
-					if(subNode.intValue() != node)
-						isCluster.put(subNode, false);
-			}
-			
-		}
-		
-		// Now add to clusters
-		for(Map.Entry<Integer, Boolean> c: isCluster.entrySet())
-			if(c.getValue())
-				clusters.add(c.getKey());
-		clusterSet = new HSet<Integer>(clusters);
+	/**
+	 * Select the leaves of the cluster tree, if the root has split at all
+	 * @param condensed
+	 * @return the labels
+	 */
+	protected static int[] getLeafLabels(final CondensedTree condensed) {
+		return doLabeling(condensed, selectLeaves(condensed));
+	}
+	
+	/**
+	 * The leaves of the cluster tree, as in {@link #getLeafLabels(CondensedTree)}
+	 * @param condensed
+	 * @return whether each cluster is selected, indexed by its label less the root's
+	 */
+	static boolean[] selectLeaves(final CondensedTree condensed) {
+		final int numClusters = condensed.numClusters();
+		final boolean[] selected = new boolean[numClusters];
+		for(int c = 1; c < numClusters; c++) // the root is never selected
+			selected[c] = condensed.clusterOffsets[c] == condensed.clusterOffsets[c + 1];
 		
-		// Build cluster map
-		int n = 0;
-		for(Integer clust: clusterSet) {
-			clusterMap.put(clust, n);
-			reverseClusterMap.put(n, clust);
-			n++;
-		}
-
-		return doLabeling(condensed, clusters, clusterMap);
+		return selected;
+	}
+	
+	/**
+	 * Select the clusters of the condensed tree by the given method
+	 * @param condensed
+	 * @param selection
+	 * @return whether each cluster is selected, indexed by its label less the root's
+	 */
+	static boolean[] selectClusters(final CondensedTree condensed, final ClusterSelection selection) {
+		if(ClusterSelection.LEAF.equals(selection))
+			return selectLeaves(condensed);
+		return selectExcessOfMass(condensed, LinkageTreeUtils.computeStability(condensed));
 	}
 	
 	// Tested: passing
@@ -1637,10 +1965,58 @@ final public class HDBSCAN extends AbstractDBSCAN {
 	protected static int[] treeToLabels(final double[][] X, 
 			final double[][] single_linkage_tree, final int min_size, Loggable logger) {
 		
-		final ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = 
-				LinkageTreeUtils.condenseTree(single_linkage_tree, min_size);
-		final TreeMap<Integer, Double> stability = LinkageTreeUtils.computeStability(condensed);
-		return getLabels(condensed, stability);
+		return treeToLabels(new SingleLinkageTree(single_linkage_tree), min_size, DEF_CLUSTER_SELECTION);
+	}
+	
+	static int[] treeToLabels(final SingleLinkageTree single_linkage_tree, 
+			final int min_size, final ClusterSelection selection) {
+		
+		final CondensedTree condensed = LinkageTreeUtils.condenseTree(single_linkage_tree, min_size);
+		return doLabeling(condensed, selectClusters(condensed, selection));
+	}
+	
+	/**
+	 * Re-extract the clusters from the fitted single linkage tree at a new
+	 * minimum cluster size, using the model's cluster selection method. 
+	 * Neither the model nor its labels are changed.
+	 * @param minClusterSize
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalStateException if the model did not retain its tree
+	 * @throws IllegalArgumentException if <tt>minClusterSize</tt> is less than 1
+	 * @return the labels, encoded as in {@link #getLabels()}
+	 */
+	public int[] extractLabels(final int minClusterSize) {
+		return extractLabels(minClusterSize, clusterSelection);
+	}
+	
+	/**
+	 * Re-extract the clusters from the fitted single linkage tree at a new minimum
+	 * cluster size and selection method. Only the condensing and selection are redone, 
+	 * which is near-linear in the number of records, so a sweep over either costs a
+	 * single minimum spanning tree. Neither the model nor its labels are changed.
+	 * @param minClusterSize
+	 * @param selection
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalStateException if the model did not retain its tree
+	 * @throws IllegalArgumentException if <tt>minClusterSize</tt> is less than 1
+	 * or <tt>selection</tt> is null
+	 * @return the labels, encoded as in {@link #getLabels()}
+	 */
+	public int[] extractLabels(final int minClusterSize, final ClusterSelection selection) {
+		synchronized(fitLock) {
+			if(null == labels)
+				error(new ModelNotFitException("model has not been fit yet"));
+			if(null == linkageTree)
+				error(new IllegalStateException("the single linkage tree was not "
+					+ "retained; fit with HDBSCANParameters.setKeepTree(true)"));
+			if(minClusterSize < 1)
+				error(new IllegalArgumentException("min cluster size must be greater than 0"));
+			if(null == selection)
+				error(new IllegalArgumentException("cluster selection cannot be null"));
+			
+			return new NoiseyLabelEncoder(treeToLabels(linkageTree, minClusterSize, selection))
+				.fit().getEncodedLabels();
+		}
 	}
 	
 	@Override
@@ -1650,16 +2026,269 @@ final public class HDBSCAN extends AbstractDBSCAN {
 		};
 	}
 	
-	@Override
-	public int[] predict(RealMatrix newData) {
+	/**
+	 * The encoded label each cluster of the condensed tree predicts: that of
+	 * the selected cluster it belongs to, or noise if there is none
+	 * @param condensed
+	 * @param selected
+	 * @param rawLabels - the labels as returned by {@link #doLabeling(CondensedTree, boolean[])}
+	 * @param encodedLabels - the same labels after encoding
+	 * @return the labels, indexed by cluster label less the root's
+	 */
+	static int[] clusterLabels(final CondensedTree condensed, final boolean[] selected, 
+			final int[] rawLabels, final int[] encodedLabels) {
+		final int[] encoded = VecUtils.repInt(NOISE_CLASS, selected.length);
+		for(int i = 0; i < rawLabels.length; i++)
+			if(NOISE_CLASS != rawLabels[i])
+				encoded[rawLabels[i]] = encodedLabels[i];
+		
+		final int[] owner = owners(condensed, selected);
+		final int[] result = new int[owner.length];
+		for(int c = 0; c < owner.length; c++)
+			result[c] = NOISE_CLASS == owner[c] ? NOISE_CLASS : encoded[owner[c]];
+		
+		return result;
+	}
+	
+	/**
+	 * What approximate prediction needs from a fitted model: a search structure over 
+	 * the training records and their core distances, and the condensed tree, with the
+	 * cluster each record falls out of and the lambda at which it does, and for each 
+	 * cluster the lambda at which it is born, the label it predicts and the greatest 
+	 * lambda of any record with that label.
+	 * 
+	 * <p>A new record's nearest training record in mutual reachability gives it a 
+	 * lambda. If that is below the lambda at which the neighbor falls out, the new 
+	 * record walks up the tree from the neighbor's cluster until it reaches the first
+	 * cluster born at a lower lambda than its own. Its membership strength is its
+	 * lambda relative to the greatest in its cluster. Nothing is ever added to the 
+	 * model, so the structure is immutable and predictions may run concurrently.
+	 * @author Taylor G Smith
+	 */
+	final static class PredictionData implements java.io.Serializable {
+		private static final long serialVersionUID = 4106720950962136853L;
+		final double[][] X;
+		final GeometricallySeparable metric;
+		/** Null if the metric is supported by neither KD nor ball trees */
+		final NearestNeighborHeapSearch tree;
+		final double[] coreDistances;
+		/** The number of neighbors, counting the record itself, that define the core distances */
+		final int coreNeighbors;
+		final double alpha;
+		
+		final int[] pointCluster;
+		final double[] pointLambda;
+		final int[] clusterParent;
+		final double[] clusterBirth;
+		final int[] clusterLabel;
+		final double[] maxLambda;
+		
+		PredictionData(final HDBSCAN model) {
+			this.X = model.data.getDataRef();
+			this.metric = model.getSeparabilityMetric();
+			this.alpha = model.alpha;
+			this.coreDistances = model.coreDistances;
+			this.coreNeighbors = model.coreNeighbors;
+			
+			final Class<? extends GeometricallySeparable> clz = metric.getClass();
+			if(KDTree.VALID_METRICS.contains(clz))
+				tree = new KDTree(X, model.leafSize, (DistanceMetric)metric, model);
+			else if(BallTree.VALID_METRICS.contains(clz))
+				tree = new BallTree(X, model.leafSize, (DistanceMetric)metric, model);
+			else
+				tree = null;
+			
+			// Index the condensed tree
+			final CondensedTree condensed = model.condensed;
+			final int root = condensed.root(), numClusters = condensed.numClusters();
+			pointCluster = new int[root];
+			pointLambda = new double[root];
+			clusterParent = condensed.clusterParent;
+			clusterBirth = new double[numClusters];
+			clusterLabel = model.clusterLabels;
+			
+			final double[] labelMax = new double[numClusters];
+			for(int i = 0; i < condensed.size; i++) {
+				final int child = condensed.child[i], parent = condensed.parent[i] - root;
+				final double lambda = condensed.lambda[i];
+				
+				if(child >= root) {
+					clusterBirth[child - root] = lambda;
+				} else {
+					pointCluster[child] = parent;
+					pointLambda[child] = lambda;
+					
+					final int owner = clusterLabel[parent];
+					if(NOISE_CLASS != owner && lambda > labelMax[owner])
+						labelMax[owner] = lambda;
+				}
+			}
+			
+			maxLambda = new double[numClusters];
+			for(int c = 0; c < numClusters; c++)
+				if(NOISE_CLASS != clusterLabel[c])
+					maxLambda[c] = labelMax[clusterLabel[c]];
+		}
+		
+		/**
+		 * The <tt>k</tt> nearest training records to each of the rows, ascending
+		 */
+		Neighborhood neighbors(final double[][] rows, final int k) {
+			if(null != tree)
+				return tree.query(rows, k, false, true);
+			
+			// Exhaustive search, with an insertion sort into the k best
+			final double[][] dists = new double[rows.length][];
+			final int[][] idcs = new int[rows.length][];
+			for(int i = 0; i < rows.length; i++) {
+				final double[] d = VecUtils.rep(Double.POSITIVE_INFINITY, k);
+				final int[] idx = new int[k];
+				
+				for(int j = 0; j < X.length; j++) {
+					final double dist = metric.getDistance(rows[i], X[j]);
+					if(dist >= d[k - 1])
+						continue;
+					
+					int pos = k - 1;
+					for(; pos > 0 && d[pos - 1] > dist; pos--) {
+						d[pos] = d[pos - 1];
+						idx[pos] = idx[pos - 1];
+					}
+					
+					d[pos] = dist;
+					idx[pos] = j;
+				}
+				
+				dists[i] = d;
+				idcs[i] = idx;
+			}
+			
+			return new Neighborhood(dists, idcs);
+		}
+		
+		/**
+		 * Approximately predict the rows from <tt>lo</tt> to <tt>hi</tt>
+		 * @param rows
+		 * @param lo
+		 * @param hi
+		 * @param labels - the predicted labels are written here
+		 * @param strengths - the membership strengths are written here
+		 */
+		void predict(final double[][] rows, final int lo, final int hi, 
+				final int[] labels, final double[] strengths) {
+			final int k = FastMath.min(2 * coreNeighbors, X.length);
+			final Neighborhood neighborhood = neighbors(Arrays.copyOfRange(rows, lo, hi), k);
+			final double[][] dists = neighborhood.getDistances();
+			final int[][] idcs = neighborhood.getIndices();
+			
+			for(int i = lo; i < hi; i++) {
+				final double[] d = dists[i - lo];
+				final int[] idx = idcs[i - lo];
+				// Over the same number of neighbors as the training records, so
+				// a training record is its own nearest neighbor in reachability
+				final double core = d[coreNeighbors - 1];
+				
+				// The nearest neighbor in mutual reachability
+				double best = Double.POSITIVE_INFINITY, mr;
+				int nearest = idx[0];
+				for(int j = 0; j < k; j++) {
+					mr = FastMath.max(FastMath.max(core, coreDistances[idx[j]]), d[j] / alpha);
+					if(mr < best) {
+						best = mr;
+						nearest = idx[j];
+					}
+				}
+				
+				// A new record falls out with its neighbor unless it is 
+				// less dense, in which case it may fall out of an ancestor
+				final double lambda = best > 0 ? 1.0 / best : Double.POSITIVE_INFINITY;
+				int cluster = pointCluster[nearest];
+				if(lambda < pointLambda[nearest])
+					while(cluster > 0 && clusterBirth[cluster] >= lambda)
+						cluster = clusterParent[cluster];
+				
+				labels[i] = clusterLabel[cluster];
+				if(NOISE_CLASS == labels[i])
+					strengths[i] = 0.0;
+				else if(lambda >= maxLambda[cluster])
+					strengths[i] = 1.0;
+				else
+					strengths[i] = lambda / maxLambda[cluster];
+			}
+		}
+	}
+	
+	/**
+	 * The prediction data is built at fit time if requested via 
+	 * {@link HDBSCANParameters#setPredictionData(boolean)}, and 
+	 * otherwise on the first prediction, and then shared by all.
+	 * @return the prediction data
+	 */
+	private PredictionData getPredictionData() {
+		PredictionData p = prediction;
+		if(null == p) {
+			synchronized(fitLock) {
+				if(null == (p = prediction))
+					prediction = p = new PredictionData(this);
+			}
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Approximately predict the clusters of new records without refitting, labeling 
+	 * each as the cluster it would have fallen out of had it been in the training data,
+	 * via its nearest training record in mutual reachability and a walk up the condensed 
+	 * tree. The model is not changed. This is near-logarithmic per record for metrics 
+	 * supported by KD or ball trees, and chunks of records are predicted in parallel 
+	 * if the model allows it.
+	 * @param newData
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws DimensionMismatchException if the number of columns differ
+	 * @return the predicted labels, and the membership strength of each 
+	 * in [0, 1]: zero for noise and one for the core of its cluster
+	 */
+	public EntryPair<int[], double[]> approximatePredict(RealMatrix newData) {
 		@SuppressWarnings("unused")
 		final int[] fit_labels = getLabels(); // throws the exception if not fit
 		final int n = newData.getColumnDimension();
 		
 		if(n != this.data.getColumnDimension())
-			throw new DimensionMismatchException(n, newData.getColumnDimension());
+			throw new DimensionMismatchException(n, this.data.getColumnDimension());
+		
+		final PredictionData p = getPredictionData();
+		final double[][] rows = newData.getData();
+		final int[] predicted = new int[rows.length];
+		final double[] strengths = new double[rows.length];
+		
+		if(parallel && rows.length > 0) {
+			try {
+				ParallelChunkedPredict.doAll(new ParallelChunkedPredict.RowPredictor() {
+					@Override
+					public void predict(double[][] rows, int lo, int hi) {
+						p.predict(rows, lo, hi, predicted, strengths);
+					}
+				}, rows);
+				return new EntryPair<>(predicted, strengths);
+			} catch(RejectedExecutionException r) {
+				warn("parallel prediction failed; falling back to serial");
+			}
+		}
 		
-		// TODO: how to predict these???
-		throw new UnsupportedOperationException("HDBSCAN does not currently support predictions");
+		p.predict(rows, 0, rows.length, predicted, strengths);
+		return new EntryPair<>(predicted, strengths);
+	}
+	
+	/**
+	 * Approximately predict the clusters of new records, as in {@link #approximatePredict(RealMatrix)}
+	 * @param newData
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws DimensionMismatchException if the number of columns differ
+	 * @return the predicted labels
+	 */
+	@Override
+	public int[] predict(RealMatrix newData) {
+		return approximatePredict(newData).getKey();
 	}
 }
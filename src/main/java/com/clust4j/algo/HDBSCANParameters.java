@@ -21,6 +21,7 @@ import java.util.Random;
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractDBSCAN.AbstractDBSCANParameters;
+import com.clust4j.algo.HDBSCAN.ClusterSelection;
 import com.clust4j.algo.HDBSCAN.HDBSCAN_Algorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 
@@ -37,6 +38,9 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 	private boolean approxMinSpanTree = HDBSCAN.DEF_APPROX_MIN_SPAN;
 	private int min_cluster_size = HDBSCAN.DEF_MIN_CLUST_SIZE;
 	private int leafSize = HDBSCAN.DEF_LEAF_SIZE;
+	private ClusterSelection clusterSelection = HDBSCAN.DEF_CLUSTER_SELECTION;
+	private boolean keepTree = HDBSCAN.DEF_KEEP_TREE;
+	private boolean predictionData = HDBSCAN.DEF_PREDICTION_DATA;
 	
 	
 	public HDBSCANParameters() { this(HDBSCAN.DEF_MIN_PTS); }
@@ -58,6 +62,9 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 			.setApprox(approxMinSpanTree)
 			.setLeafSize(leafSize)
 			.setMinClustSize(min_cluster_size)
+			.setClusterSelection(clusterSelection)
+			.setKeepTree(keepTree)
+			.setPredictionData(predictionData)
 			.setMinPts(minPts)
 			.setMetric(metric)
 			.setSeed(seed)
@@ -110,6 +117,47 @@ final public class HDBSCANParameters extends AbstractDBSCANParameters<HDBSCAN> {
 		return this;
 	}
 	
+	public ClusterSelection getClusterSelection() {
+		return clusterSelection;
+	}
+	
+	public HDBSCANParameters setClusterSelection(final ClusterSelection selection) {
+		this.clusterSelection = selection;
+		return this;
+	}
+	
+	public boolean getKeepTree() {
+		return keepTree;
+	}
+	
+	/**
+	 * Whether the fitted model should retain its single linkage tree, 
+	 * so clusters can be re-extracted at a new min cluster size or 
+	 * selection method via {@link HDBSCAN#extractLabels(int, ClusterSelection)}
+	 * @param b
+	 * @return this
+	 */
+	public HDBSCANParameters setKeepTree(final boolean b) {
+		this.keepTree = b;
+		return this;
+	}
+	
+	public boolean getPredictionData() {
+		return predictionData;
+	}
+	
+	/**
+	 * Whether the fitted model should build its prediction data at fit time. 
+	 * Otherwise it is built on the first call to {@link HDBSCAN#predict(RealMatrix)}
+	 * or {@link HDBSCAN#approximatePredict(RealMatrix)}, which then bears the cost.
+	 * @param b
+	 * @return this
+	 */
+	public HDBSCANParameters setPredictionData(final boolean b) {
+		this.predictionData = b;
+		return this;
+	}
+	
 	@Override
 	public HDBSCANParameters setMinPts(final int minPts) {
 		this.minPts = minPts;
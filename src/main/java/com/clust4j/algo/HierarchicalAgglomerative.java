@@ -16,18 +16,23 @@
 package com.clust4j.algo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.PriorityQueue;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
 import com.clust4j.NamedEntity;
+import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.CircularKernel;
 import com.clust4j.kernel.LogKernel;
 import com.clust4j.log.LogTimer;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 import com.clust4j.metrics.scoring.SupervisedMetric;
 import com.clust4j.utils.SimpleHeap;
@@ -70,6 +75,11 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	 */
 	final Linkage linkage;
 	
+	/**
+	 * The neighbors of each record to which merges are constrained, or null
+	 */
+	final private int[][] connectivity;
+	
 	interface LinkageTreeBuilder extends MetricValidator {
 		public HierarchicalDendrogram buildTree(HierarchicalAgglomerative h);
 	}
@@ -113,6 +123,23 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 			public boolean isValidMetric(GeometricallySeparable geo) {
 				return geo.equals(Distance.EUCLIDEAN);
 			}
+		},
+		
+		/**
+		 * Merges the clusters with the closest pair of members. This is computed as a
+		 * minimum spanning tree without a distance matrix, so it requires only linear memory.
+		 * @see SingleLinkageTree
+		 */
+		SINGLE {
+			@Override
+			public SingleLinkageTree buildTree(HierarchicalAgglomerative h) {
+				return h.new SingleLinkageTree();
+			}
+			
+			@Override
+			public boolean isValidMetric(GeometricallySeparable geo) {
+				return !comp_avg_unsupported.contains(geo.getClass());
+			}
 		};
 	}
 	
@@ -140,6 +167,14 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 	 */
 	volatile private EfficientDistanceMatrix dist_vec = null;
 	volatile HierarchicalDendrogram tree = null;
+	/**
+	 * The fitted merges, retained to re-cut the tree
+	 */
+	volatile private MergeTree merges = null;
+	/**
+	 * The centroid model used for prediction, built lazily
+	 */
+	volatile private NearestCentroid predictor = null;
 	/** 
 	 * Volatile because if null will later change during build
 	 */
@@ -168,6 +203,17 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 		this.m = data.getRowDimension();
 		this.num_clusters = super.k;
 		
+		this.connectivity = planner.getConnectivity();
+		if(null != connectivity) {
+			if(connectivity.length != m)
+				error(new DimensionMismatchException(connectivity.length, m));
+			for(int[] neighbors: connectivity)
+				for(int j: neighbors)
+					if(j < 0 || j >= m)
+						error(new IllegalArgumentException("connectivity "
+							+ "index " + j + " out of range"));
+		}
+		
 		logModelSummary();
 	}
 	
@@ -309,37 +355,93 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 		public final GeometricallySeparable dist;
 		
 		HierarchicalDendrogram() {
+			this(true);
+		}
+		
+		/**
+		 * @param needsDistances - whether the tree links 
+		 * the clusters via the condensed distance matrix
+		 */
+		HierarchicalDendrogram(boolean needsDistances) {
 			ref = HierarchicalAgglomerative.this;
 			dist = ref.getSeparabilityMetric();
 			
-			if(null == dist_vec) // why would this happen?
-				dist_vec = new EfficientDistanceMatrix(data, dist, true);
+			if(needsDistances && null == dist_vec) {
+				final LogTimer timer = new LogTimer();
+				dist_vec = new EfficientDistanceMatrix(data, dist, linksPartialDistances());
+				info("computed distance matrix in " + timer.toString());
+			}
 		}
 		
 		double[][] linkage() {
+			// Final linkage tree out...
+			return MatUtils.getColumns(mergeMatrix(), new int[]{0,1});
+		}
+		
+		/**
+		 * The merges, in ascending order of height, as rows of 
+		 * (child, child, height, size), where the heights are 
+		 * in terms of the metric's full (not partial) distance
+		 */
+		double[][] mergeMatrix() {
 			// Perform the linkage logic in the tree
 			//EfficientDistanceMatrix y = dist_vec.copy(); // Copy the dist_vec
 			
 			double[][] Z = new double[m - 1][4];  // Holding matrix
 			link(dist_vec, Z, m); // Immutabily change Z
-			
-			// Final linkage tree out...
-			return MatUtils.getColumns(Z, new int[]{0,1});
+			if(linksPartialDistances())
+				partialToFullHeights(Z);
+			return Z;
 		}
 		
+		/**
+		 * Whether the condensed distance matrix holds partial distances, 
+		 * which are cheaper to compute and preserve the order of the distances
+		 */
+		boolean linksPartialDistances() {
+			return true;
+		}
+		
+		/**
+		 * The linkages are computed over partial distances, which for
+		 * distance metrics are monotone in, but not equal to, the distance
+		 */
+		void partialToFullHeights(final double[][] Z) {
+			if(dist instanceof DistanceMetric)
+				for(double[] merge: Z)
+					merge[2] = ((DistanceMetric)dist).partialDistanceToDistance(merge[2]);
+		}
+		
+		/**
+		 * Builds the linkage via the nearest-neighbor chain algorithm, which is valid
+		 * for any reducible linkage (all of {@link Linkage}'s). Starting from any cluster, the
+		 * chain follows each cluster's nearest neighbor until two clusters are each other's
+		 * nearest neighbors, and merges them. Since the linkage is reducible, the merge
+		 * cannot change the nearest neighbors of the rest of the chain, so the chain is 
+		 * kept, and the whole linkage is built in O(n<sup>2</sup>) time rather than the
+		 * O(n<sup>3</sup>) of repeatedly scanning for the closest pair.
+		 * 
+		 * <p>
+		 * The merges are found out of order, so are finally sorted by distance and
+		 * relabeled, producing the same <tt>Z</tt> the closest-pair search would.
+		 * @param dists
+		 * @param Z
+		 * @param n
+		 */
 		private void link(final EfficientDistanceMatrix dists, final double[][] Z, final int n) {
-			int i, j, k, x = -1, y = -1, i_start, nx, ny, ni, id_x, id_y, id_i, c_idx;
-			double current_min;
+			int i, k, x, y, nx, ny, ni, c_idx, chain_len = 0;
+			double current_min, d;
 			
 			// Inter cluster dists
 			EfficientDistanceMatrix D = dists; //VecUtils.copy(dists);
 			
-			// Map the indices to node ids
+			// Map the clusters to their sizes; zero if merged into another
 			ref.info("initializing node mappings ("+getClass().getName().split("\\$")[1]+")");
-			int[] id_map = new int[n];
+			final int[] size = new int[n];
 			for(i = 0; i < n; i++) 
-				id_map[i] = i;
+				size[i] = 1;
 			
+			final int[] chain = new int[n];
 			LogTimer link_timer = new LogTimer(), iterTimer;
 			int incrementor = n/10, pct = 1;
 			for(k = 0; k < n - 1; k++) {
@@ -347,55 +449,73 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 					ref.info("node mapping progress - " + 10*pct++ + "%. Total link time: "+
 						link_timer.toString()+"");
 				
-				// get two closest x, y
-				current_min = Double.POSITIVE_INFINITY;
-				
 				iterTimer = new LogTimer();
-				for(i = 0; i < n - 1; i++) {
-					if(id_map[i] == -1)
-						continue;
+				
+				// Start a new chain at the first remaining cluster
+				if(0 == chain_len) {
+					for(i = 0; size[i] == 0; i++);
+					chain[chain_len++] = i;
+				}
+				
+				// Follow nearest neighbors until two are mutual
+				while(true) {
+					x = chain[chain_len - 1];
 					
+					// Prefer the previous link on ties, so the chain terminates
+					if(chain_len > 1) {
+						y = chain[chain_len - 2];
+						current_min = D.navigate(n, x, y);
+					} else {
+						y = -1;
+						current_min = Double.POSITIVE_INFINITY;
+					}
 					
-					i_start = EfficientDistanceMatrix.getIndexFromFlattenedVec(n, i, i + 1);
-					for(j = 0; j < n - i - 1; j++) {
-						if(D.dists[i_start + j] < current_min) {
-							current_min = D.dists[i_start + j];
-							x = i;
-							y = i + j + 1;
+					for(i = 0; i < n; i++) {
+						if(size[i] == 0 || i == x)
+							continue;
+						
+						d = D.navigate(n, x, i);
+						if(d < current_min || -1 == y) {
+							current_min = d;
+							y = i;
 						}
 					}
+					
+					if(chain_len > 1 && y == chain[chain_len - 2])
+						break;
+					chain[chain_len++] = y;
 				}
 				
-				id_x = id_map[x];
-				id_y = id_map[y];
+				// Merge the mutual nearest neighbors into the larger index
+				chain_len -= 2;
+				if(x > y) {
+					i = x;
+					x = y;
+					y = i;
+				}
 				
-				// Get original num points in clusters x,y
-				nx = id_x < n ? 1 : (int)Z[id_x - n][3];
-				ny = id_y < n ? 1 : (int)Z[id_y - n][3];
+				nx = size[x];
+				ny = size[y];
 				
-				// Record new node
-				Z[k][0] = FastMath.min(id_x, id_y);
-				Z[k][1] = FastMath.max(id_y, id_x);
+				// Record new node in terms of the cluster indices for now
+				Z[k][0] = x;
+				Z[k][1] = y;
 				Z[k][2] = current_min;
 				Z[k][3] = nx + ny;
-				id_map[x] = -1; // cluster x to be dropped
-				id_map[y] = n + k; // cluster y replaced
+				size[x] = 0; // cluster x to be dropped
+				size[y] = nx + ny; // cluster y replaced
 				
 				// update dist mat
 				int cont = 0;
 				for(i = 0; i < n; i++) {
-					id_i = id_map[i];
-					if(id_i == -1 || id_i == n + k) {
+					ni = size[i];
+					if(ni == 0 || i == y) {
 						cont++;
 						continue;
 					}
 					
-					ni = id_i < n ? 1 : (int)Z[id_i - n][3];
 					c_idx = EfficientDistanceMatrix.getIndexFromFlattenedVec(n, i, y);
 					D.dists[c_idx] = getDist(D.navigate(n, i, x), D.dists[c_idx], current_min, nx, ny, ni);
-					
-					if(i < x)
-						D.dists[EfficientDistanceMatrix.getIndexFromFlattenedVec(n,i,x)] = Double.POSITIVE_INFINITY;
 				}
 				
 				fitSummary.add(new Object[]{
@@ -403,16 +523,504 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 					link_timer.formatTime(),link_timer.wallMsg()
 				});
 			}
+			
+			labelMerges(Z, n);
 		}
 		
 		abstract protected double getDist(final double dx, final double dy, 
 			final double current_min, final int nx, final int ny, final int ni);
 	}
 	
+	/**
+	 * Sort merges found out of order (i.e., by the nearest-neighbor chain) by 
+	 * their distance, and relabel them such that each merge's children are the
+	 * node ids they had at the time: an original record, <tt>i &lt; n</tt>, or the
+	 * cluster formed by the <tt>(i - n)</tt>th merge. Ties retain their order.
+	 * @param Z - rows of (cluster idx, cluster idx, distance, size), relabeled in place
+	 * @param n - the number of records
+	 */
+	static void labelMerges(final double[][] Z, final int n) {
+		Arrays.sort(Z, new Comparator<double[]>() {
+			@Override
+			public int compare(double[] a, double[] b) {
+				return Double.compare(a[2], b[2]);
+			}
+		});
+		
+		// Union-find over node ids, where merge k creates node n + k
+		final int[] parent = new int[2 * n - 1], nodeSize = new int[2 * n - 1];
+		for(int i = 0; i < parent.length; i++) {
+			parent[i] = i;
+			nodeSize[i] = 1;
+		}
+		
+		int x, y, next = n;
+		for(double[] merge: Z) {
+			x = find(parent, (int)merge[0]);
+			y = find(parent, (int)merge[1]);
+			
+			merge[0] = FastMath.min(x, y);
+			merge[1] = FastMath.max(x, y);
+			merge[3] = nodeSize[next] = nodeSize[x] + nodeSize[y];
+			parent[x] = parent[y] = next++;
+		}
+	}
+	
+	/** Find the root of a node, compressing its path */
+	private static int find(final int[] parent, int x) {
+		int root = x;
+		while(parent[root] != root)
+			root = parent[root];
+		
+		int next;
+		while(parent[x] != root) {
+			next = parent[x];
+			parent[x] = root;
+			x = next;
+		}
+		
+		return root;
+	}
+	
+	/**
+	 * Single linkage, built from a minimum spanning tree of the records, whose edges,
+	 * in ascending order, are exactly the single linkage merges. For metrics a {@link KDTree}
+	 * supports, the tree is found by the dual-tree {@link BoruvkaAlgorithm}; otherwise by
+	 * Prim's algorithm, computing each distance on demand in O(n<sup>2</sup>) time and 
+	 * O(n) memory. Neither ever builds the distance matrix.
+	 * @author Taylor G Smith
+	 */
+	class SingleLinkageTree extends HierarchicalDendrogram {
+		private static final long serialVersionUID = -4512734905236574913L;
+		
+		public SingleLinkageTree() { super(false); }
+		
+		@Override
+		double[][] mergeMatrix() {
+			final double[][] X = data.getDataRef();
+			final double[][] Z;
+			if(KDTree.VALID_METRICS.contains(dist.getClass())) {
+				Z = boruvka(X);
+			} else {
+				Z = prim(X);
+				partialToFullHeights(Z);
+			}
+			
+			labelMerges(Z, m);
+			return Z;
+		}
+		
+		/**
+		 * The minimum spanning tree via Boruvka's algorithm. With 
+		 * a single core sample, the mutual reachability it spans
+		 * is simply the distance.
+		 */
+		private double[][] boruvka(final double[][] X) {
+			final LogTimer timer = new LogTimer();
+			final int leafSize = HDBSCAN.DEF_LEAF_SIZE;
+			final KDTree tree = new KDTree(X, leafSize, (DistanceMetric)dist, ref);
+			final double[][] edges = new BoruvkaAlgorithm(tree, 1, (DistanceMetric)dist, 
+				leafSize / 3, false, 1.0, ref, parallel).spanningTree();
+			
+			final double[][] Z = new double[m - 1][];
+			for(int i = 0; i < Z.length; i++)
+				Z[i] = new double[]{edges[i][0], edges[i][1], edges[i][2], 0};
+			
+			fitSummary.add(new Object[]{
+				m - 2,Double.NaN,0,timer.formatTime(),
+				timer.formatTime(),timer.wallMsg()
+			});
+			
+			return Z;
+		}
+		
+		/**
+		 * The minimum spanning tree via Prim's algorithm, growing
+		 * the tree by the closest record outside of it
+		 */
+		private double[][] prim(final double[][] X) {
+			final double[][] Z = new double[m - 1][];
+			final double[] minDist = VecUtils.rep(Double.POSITIVE_INFINITY, m);
+			final int[] from = new int[m];
+			final boolean[] inTree = new boolean[m];
+			
+			LogTimer link_timer = new LogTimer(), iterTimer = new LogTimer();
+			int incrementor = m/10, pct = 1, current = 0, next, j;
+			double d;
+			
+			for(int k = 0; k < m - 1; k++) {
+				if(incrementor>0 && k%incrementor == 0) {
+					ref.info("node mapping progress - " + 10*pct++ + "%. Total link time: "+
+						link_timer.toString()+"");
+					iterTimer = new LogTimer();
+				}
+				
+				inTree[current] = true;
+				next = -1;
+				for(j = 0; j < m; j++) {
+					if(inTree[j])
+						continue;
+					
+					d = dist.getPartialDistance(X[current], X[j]);
+					if(d < minDist[j]) {
+						minDist[j] = d;
+						from[j] = current;
+					}
+					
+					if(-1 == next || minDist[j] < minDist[next])
+						next = j;
+				}
+				
+				Z[k] = new double[]{from[next], next, minDist[next], 0};
+				current = next;
+				
+				if(incrementor>0 && (k + 1)%incrementor == 0 || k == m - 2) {
+					fitSummary.add(new Object[]{
+						k,minDist[next],k + 1,iterTimer.formatTime(),
+						link_timer.formatTime(),link_timer.wallMsg()
+					});
+				}
+			}
+			
+			return Z;
+		}
+		
+		@Override
+		protected double getDist(double dx, double dy, 
+			double current_min, int nx, int ny, int ni) {
+				return FastMath.min(dx, dy);
+		}
+		
+		@Override
+		public String getName() {
+			return "Single Linkage Tree";
+		}
+	}
+	
+	/**
+	 * A linkage constrained by a sparse neighbor graph: clusters may only merge
+	 * if some pair of their members are neighbors. Only the distances between
+	 * neighboring clusters are tracked, in a heap of candidate merges, so the tree 
+	 * is built in roughly O(<i>nk</i> log <i>n</i>) time and O(<i>nk</i>) memory for 
+	 * <i>k</i> neighbors per record, and the distance matrix is never computed.
+	 * 
+	 * <p>
+	 * When two clusters merge, the distance to each neighbor of either is 
+	 * updated by the linkage's rule if it neighbors both, or else carried
+	 * over from the one it neighbors. {@link Linkage#WARD} is instead computed
+	 * exactly from the cluster centroids, which requires no missing distances
+	 * and gives the same distances as {@link WardTree} over a complete graph.
+	 * If the graph is disconnected, its components are finally merged at an
+	 * infinite distance.
+	 * @author Taylor G Smith
+	 */
+	class ConnectivityTree extends HierarchicalDendrogram {
+		private static final long serialVersionUID = 2934675037912735318L;
+		final boolean ward;
+		
+		public ConnectivityTree() { 
+			super(false);
+			ward = Linkage.WARD.equals(linkage);
+		}
+		
+		@Override
+		double[][] mergeMatrix() {
+			final double[][] X = data.getDataRef();
+			final int n = m, nodes = 2 * n - 1;
+			final double[][] Z = new double[n - 1][];
+			
+			// Sorted neighbors of, and distances to, each active cluster
+			final int[][] nbrs = Arrays.copyOf(symmetricGraph(connectivity, n), nodes);
+			final double[][] dists = new double[nodes][];
+			final int[] size = new int[nodes];
+			final double[][] sums = ward ? new double[nodes][] : null;
+			final PriorityQueue<Edge> heap = new PriorityQueue<>();
+			
+			int i, j, idx, x, y, z;
+			double d;
+			for(i = 0; i < n; i++) {
+				size[i] = 1;
+				dists[i] = new double[nbrs[i].length];
+				if(ward)
+					sums[i] = VecUtils.copy(X[i]);
+			}
+			
+			for(i = 0; i < n; i++) {
+				for(idx = 0; idx < nbrs[i].length; idx++) {
+					if((j = nbrs[i][idx]) < i)
+						continue;
+					
+					d = ward ? dist.getDistance(X[i], X[j]) : 
+						dist.getPartialDistance(X[i], X[j]);
+					dists[i][idx] = d;
+					dists[j][Arrays.binarySearch(nbrs[j], i)] = d;
+					heap.add(new Edge(d, i, j));
+				}
+			}
+			
+			LogTimer link_timer = new LogTimer(), iterTimer = new LogTimer();
+			int incrementor = n/10, pct = 1, stale = 0, k = 0;
+			while(k < n - 1 && !heap.isEmpty()) {
+				final Edge e = heap.poll();
+				x = e.a;
+				y = e.b;
+				
+				// One or the other has since merged
+				if(null == nbrs[x] || null == nbrs[y]) {
+					stale++;
+					continue;
+				}
+				
+				if(incrementor>0 && k%incrementor == 0) {
+					ref.info("node mapping progress - " + 10*pct++ + "%. Total link time: "+
+						link_timer.toString()+"");
+					iterTimer = new LogTimer();
+				}
+				
+				z = n + k;
+				Z[k] = new double[]{x, y, e.dist, size[x] + size[y]};
+				size[z] = size[x] + size[y];
+				if(ward) {
+					sums[z] = VecUtils.add(sums[x], sums[y]);
+					sums[x] = sums[y] = null;
+				}
+				
+				merge(nbrs, dists, size, sums, x, y, z, e.dist);
+				for(idx = 0; idx < nbrs[z].length; idx++) {
+					i = nbrs[z][idx];
+					d = dists[z][idx];
+					replaceNeighbors(nbrs, dists, i, x, y, z, d);
+					heap.add(new Edge(d, i, z));
+				}
+				
+				if(incrementor>0 && (k + 1)%incrementor == 0 || k == n - 2) {
+					fitSummary.add(new Object[]{
+						k,e.dist,stale,iterTimer.formatTime(),
+						link_timer.formatTime(),link_timer.wallMsg()
+					});
+				}
+				
+				k++;
+			}
+			
+			// Join any disconnected components
+			if(k < n - 1) {
+				warn("connectivity graph has " + (n - k) + " connected components; "
+					+ "merging them at an infinite distance");
+				
+				final int top = n + k;
+				for(x = -1, i = 0; i < top; i++) {
+					if(null == nbrs[i])
+						continue;
+					
+					if(-1 != x) {
+						z = n + k;
+						size[z] = size[x] + size[i];
+						Z[k++] = new double[]{x, i, Double.POSITIVE_INFINITY, size[z]};
+						x = z;
+					} else {
+						x = i;
+					}
+				}
+			}
+			
+			if(!ward)
+				partialToFullHeights(Z);
+			return Z;
+		}
+		
+		/**
+		 * Merge the neighbors of clusters <tt>x</tt> and <tt>y</tt> into <tt>z</tt>,
+		 * computing the distance from <tt>z</tt> to each
+		 */
+		private void merge(int[][] nbrs, double[][] dists, int[] size, double[][] sums,
+				int x, int y, int z, double dxy) {
+			final int[] nx = nbrs[x], ny = nbrs[y];
+			final double[] dx = dists[x], dy = dists[y];
+			final int[] nz = new int[nx.length + ny.length];
+			final double[] dz = new double[nz.length];
+			
+			int a = 0, b = 0, c = 0, i;
+			double d;
+			while(a < nx.length || b < ny.length) {
+				if(b == ny.length || (a < nx.length && nx[a] < ny[b])) {
+					i = nx[a];
+					d = dx[a++];
+					if(i == y)
+						continue;
+					d = ward ? wardDist(sums, size, z, i) : d;
+				} else if(a == nx.length || ny[b] < nx[a]) {
+					i = ny[b];
+					d = dy[b++];
+					if(i == x)
+						continue;
+					d = ward ? wardDist(sums, size, z, i) : d;
+				} else { // neighbors both
+					i = nx[a];
+					d = ward ? wardDist(sums, size, z, i) : 
+						getDist(dx[a], dy[b], dxy, size[x], size[y], size[i]);
+					a++;
+					b++;
+				}
+				
+				nz[c] = i;
+				dz[c++] = d;
+			}
+			
+			nbrs[z] = Arrays.copyOf(nz, c);
+			dists[z] = Arrays.copyOf(dz, c);
+			nbrs[x] = nbrs[y] = null;
+			dists[x] = dists[y] = null;
+		}
+		
+		/**
+		 * Replace <tt>x</tt> and <tt>y</tt> among the neighbors of <tt>i</tt> 
+		 * with <tt>z</tt>, which is greater than any, so the order is kept
+		 */
+		private void replaceNeighbors(int[][] nbrs, double[][] dists, int i, int x, int y, int z, double d) {
+			final int[] ni = nbrs[i];
+			final double[] di = dists[i];
+			final int[] nn = new int[ni.length + 1];
+			final double[] dn = new double[nn.length];
+			
+			int c = 0;
+			for(int idx = 0; idx < ni.length; idx++) {
+				if(ni[idx] == x || ni[idx] == y)
+					continue;
+				nn[c] = ni[idx];
+				dn[c++] = di[idx];
+			}
+			
+			nn[c] = z;
+			dn[c++] = d;
+			nbrs[i] = Arrays.copyOf(nn, c);
+			dists[i] = Arrays.copyOf(dn, c);
+		}
+		
+		/**
+		 * The Ward distance between two clusters: the square root of twice the
+		 * increase in the within-cluster sum of squares were they merged, which 
+		 * for two records is simply the Euclidean distance between them
+		 */
+		private double wardDist(double[][] sums, int[] size, int a, int b) {
+			final double na = size[a], nb = size[b];
+			final double[] sa = sums[a], sb = sums[b];
+			
+			double diff, sq = 0.0;
+			for(int f = 0; f < sa.length; f++) {
+				diff = sa[f] / na - sb[f] / nb;
+				sq += diff * diff;
+			}
+			
+			return FastMath.sqrt(2.0 * na * nb / (na + nb) * sq);
+		}
+		
+		@Override
+		protected double getDist(double dx, double dy, 
+			double current_min, int nx, int ny, int ni) {
+			switch(linkage) {
+				case AVERAGE:
+					return (nx * dx + ny * dy) / (double)(nx + ny);
+				case COMPLETE:
+					return FastMath.max(dx, dy);
+				default: // SINGLE; WARD is computed from the centroids
+					return FastMath.min(dx, dy);
+			}
+		}
+		
+		@Override
+		public String getName() {
+			return "Connectivity-constrained " + linkage + " Tree";
+		}
+	}
+	
+	/**
+	 * A candidate merge of two neighboring clusters, <tt>a &lt; b</tt>.
+	 * Ties are broken by the cluster ids, so the merge order is deterministic.
+	 */
+	final static class Edge implements Comparable<Edge>, java.io.Serializable {
+		private static final long serialVersionUID = -3101418392451726583L;
+		final double dist;
+		final int a, b;
+		
+		Edge(double dist, int a, int b) {
+			this.dist = dist;
+			this.a = a;
+			this.b = b;
+		}
+		
+		@Override
+		public int compareTo(Edge o) {
+			int c = Double.compare(dist, o.dist);
+			if(0 != c)
+				return c;
+			c = Integer.compare(a, o.a);
+			return 0 != c ? c : Integer.compare(b, o.b);
+		}
+	}
+	
+	/**
+	 * Symmetrize a neighbor graph, dropping self-loops and
+	 * duplicates, and sort each record's neighbors
+	 * @param graph - each record's neighbors
+	 * @param n - the number of records
+	 * @return the undirected graph as sorted adjacency lists
+	 */
+	static int[][] symmetricGraph(final int[][] graph, final int n) {
+		final int[] degree = new int[n];
+		for(int i = 0; i < n; i++) {
+			for(int j: graph[i]) {
+				if(i != j) {
+					degree[i]++;
+					degree[j]++;
+				}
+			}
+		}
+		
+		final int[][] adj = new int[n][];
+		for(int i = 0; i < n; i++)
+			adj[i] = new int[degree[i]];
+		
+		final int[] fill = new int[n];
+		for(int i = 0; i < n; i++) {
+			for(int j: graph[i]) {
+				if(i != j) {
+					adj[i][fill[i]++] = j;
+					adj[j][fill[j]++] = i;
+				}
+			}
+		}
+		
+		// sort and remove duplicates
+		for(int i = 0; i < n; i++) {
+			final int[] row = adj[i];
+			Arrays.sort(row);
+			
+			int c = 0;
+			for(int idx = 0; idx < row.length; idx++)
+				if(0 == idx || row[idx] != row[idx - 1])
+					row[c++] = row[idx];
+			adj[i] = Arrays.copyOf(row, c);
+		}
+		
+		return adj;
+	}
+	
+	/**
+	 * Ward's linkage by the Lance-Williams update, which holds for Euclidean
+	 * (not squared) distances, so the tree links over full distances. Each
+	 * height is then the Ward distance that {@link ConnectivityTree} computes
+	 * from the cluster centroids.
+	 */
 	class WardTree extends HierarchicalDendrogram {
 		private static final long serialVersionUID = -2336170779406847047L;
 		
 		public WardTree() { super(); }
+		
+		@Override
+		boolean linksPartialDistances() {
+			return false;
+		}
 
 		@Override
 		protected double getDist(double dx, double dy, 
@@ -503,25 +1111,19 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 				return this;
 			}
 			
-			dist_vec = new EfficientDistanceMatrix(data, getSeparabilityMetric(), true);
-			
-			// Log info...
-			info("computed distance matrix in " + timer.toString());
-			
-			
-			// Get the tree class for logging...
+			// Get the tree class for logging... (computes the distances if needed)
 			LogTimer treeTimer = new LogTimer();
-			this.tree = this.linkage.buildTree(this);
+			this.tree = null == connectivity ? 
+				this.linkage.buildTree(this) : new ConnectivityTree();
 			
 			// Tree build
 			info("constructed " + tree.getName() + " HierarchicalDendrogram in " + treeTimer.toString());
-			double[][] children = tree.linkage();
+			merges = new MergeTree(tree.mergeMatrix(), m);
 			
 			
 			
 			// Cut the tree
-			labels = hcCut(num_clusters, children, m);
-			labels = new SafeLabelEncoder(labels).fit().getEncodedLabels();
+			labels = merges.cut(num_clusters);
 			
 			
 			sayBye(timer);
@@ -531,6 +1133,133 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 		
 	} // End train
 	
+	/**
+	 * The merges of a fitted model in compact form: the child node ids and the height 
+	 * of each merge, in ascending order of height. Node ids below <tt>n</tt> are the 
+	 * records, and the <tt>j</tt>th merge creates the node <tt>n + j</tt>. Any number 
+	 * of clusters is a prefix of the merges, so cuts never revisit the linkage.
+	 * @author Taylor G Smith
+	 */
+	static class MergeTree implements java.io.Serializable {
+		private static final long serialVersionUID = -2163427893542712309L;
+		final int n;
+		final int[] left, right;
+		final double[] heights;
+		
+		MergeTree(final double[][] Z, final int n) {
+			this.n = n;
+			this.left = new int[Z.length];
+			this.right = new int[Z.length];
+			this.heights = new double[Z.length];
+			
+			for(int j = 0; j < Z.length; j++) {
+				left[j] = (int)Z[j][0];
+				right[j] = (int)Z[j][1];
+				heights[j] = Z[j][2];
+			}
+		}
+		
+		/**
+		 * The number of clusters remaining when all
+		 * merges at or below the threshold have been made
+		 */
+		int numClusters(final double threshold) {
+			int j = 0;
+			while(j < heights.length && heights[j] <= threshold)
+				j++;
+			return n - j;
+		}
+		
+		/**
+		 * Cut the tree into <tt>k</tt> clusters by making the first <tt>n - k</tt> merges
+		 * @param k
+		 * @return the labels, in order of appearance
+		 */
+		int[] cut(final int k) {
+			final int[] parent = VecUtils.arange(2 * n - 1);
+			for(int j = 0; j < n - k; j++)
+				parent[left[j]] = parent[right[j]] = n + j;
+			
+			final int[] labelOf = VecUtils.repInt(-1, 2 * n - 1);
+			final int[] labels = new int[n];
+			
+			int root, next = 0;
+			for(int i = 0; i < n; i++) {
+				root = find(parent, i);
+				if(-1 == labelOf[root])
+					labelOf[root] = next++;
+				labels[i] = labelOf[root];
+			}
+			
+			return labels;
+		}
+	}
+	
+	private void checkCut() {
+		if(null == labels)
+			error(new ModelNotFitException("model has not been fit yet"));
+	}
+	
+	/**
+	 * Cut the fitted tree into <tt>k</tt> clusters, which are the clusters the
+	 * model would have produced had it been fit with <tt>k</tt> clusters. No 
+	 * distances are recomputed, so any number of cuts costs a single fit.
+	 * @param k - the number of clusters, between 1 and the number of records
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalArgumentException if <tt>k</tt> is out of range, or the model
+	 * was fit with a single cluster, in which case it builds no tree
+	 * @return the labels, in order of appearance
+	 */
+	public int[] cut(final int k) {
+		synchronized(fitLock) {
+			checkCut();
+			if(k < 1 || k > m)
+				error(new IllegalArgumentException("k must be between 1 and " + m));
+			
+			if(null == merges) {
+				if(1 == k)
+					return new int[m];
+				error(new IllegalArgumentException("model was fit "
+					+ "with a single cluster, and has no tree to cut"));
+			}
+			
+			return merges.cut(k);
+		}
+	}
+	
+	/**
+	 * Cut the fitted tree at a distance threshold, making every merge
+	 * whose linkage distance does not exceed it
+	 * @param threshold - the largest merge distance
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalArgumentException if the model was fit with a single 
+	 * cluster, in which case it builds no tree
+	 * @return the labels, in order of appearance
+	 */
+	public int[] cutAtDistance(final double threshold) {
+		synchronized(fitLock) {
+			checkCut();
+			if(null == merges)
+				error(new IllegalArgumentException("model was fit "
+					+ "with a single cluster, and has no tree to cut"));
+			
+			return merges.cut(merges.numClusters(threshold));
+		}
+	}
+	
+	/**
+	 * The linkage distance of each merge in the fitted
+	 * tree, in ascending order
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the merge heights
+	 */
+	public double[] getMergeHeights() {
+		synchronized(fitLock) {
+			checkCut();
+			return null == merges ? new double[0] : VecUtils.copy(merges.heights);
+		}
+	}
+	
 	static int[] hcCut(final int n_clusters, final double[][] children, final int n_leaves) {
 		/*
 		 * Leave children as a double[][] despite it
@@ -645,10 +1374,29 @@ final public class HierarchicalAgglomerative extends AbstractPartitionalClustere
 		if(1 == num_clusters)
 			return VecUtils.repInt(fit_labels[0], numSamples);
 		
-		return new NearestCentroidParameters()
-			.setMetric(this.dist_metric) // if it fails, falls back to default Euclidean...
-			.setVerbose(false) // just to be sure in case default ever changes...
-			.fitNewModel(this.getData(), fit_labels)
-		.predict(newData);
+		return getPredictor(fit_labels).predict(newData);
+	}
+	
+	/**
+	 * The centroid model is fit on the first call to predict and shared by all 
+	 * later ones. It is never modified once fit, so concurrent predictions are safe.
+	 * @param fit_labels - the labels of the fitted model
+	 * @return the centroid model
+	 */
+	private NearestCentroid getPredictor(final int[] fit_labels) {
+		NearestCentroid p = predictor;
+		if(null == p) {
+			synchronized(fitLock) {
+				if(null == (p = predictor)) {
+					// NearestCentroid copies the data itself
+					predictor = p = new NearestCentroidParameters()
+						.setMetric(this.dist_metric) // if it fails, falls back to default Euclidean...
+						.setVerbose(false) // just to be sure in case default ever changes...
+						.fitNewModel(this.data, fit_labels);
+				}
+			}
+		}
+		
+		return p;
 	}
 }
@@ -22,6 +22,7 @@ import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.HierarchicalAgglomerative.Linkage;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.utils.MatUtils;
 
 final public class HierarchicalAgglomerativeParameters 
 		extends BaseClustererParameters 
@@ -31,6 +32,7 @@ final public class HierarchicalAgglomerativeParameters
 	private static int DEF_K = 2;
 	private Linkage linkage = HierarchicalAgglomerative.DEF_LINKAGE;
 	private int num_clusters = DEF_K;
+	private int[][] connectivity = null;
 
 	public HierarchicalAgglomerativeParameters() { this(DEF_K); }
 	public HierarchicalAgglomerativeParameters(int k) { this.num_clusters = k; }
@@ -51,6 +53,7 @@ final public class HierarchicalAgglomerativeParameters
 			.setSeed(seed)
 			.setVerbose(verbose)
 			.setNumClusters(num_clusters)
+			.setConnectivity(connectivity)
 			.setForceParallel(parallel);
 	}
 
@@ -72,6 +75,33 @@ final public class HierarchicalAgglomerativeParameters
 		return this;
 	}
 
+	public int[][] getConnectivity() {
+		return connectivity;
+	}
+	
+	/**
+	 * Constrain merges to clusters containing neighboring records. The graph
+	 * need not be symmetric; an edge in either direction makes records neighbors.
+	 * Over a complete graph, every linkage builds the same tree as without one.
+	 * @param connectivity - the indices of each record's neighbors, or null to
+	 * allow merges between any clusters
+	 * @return this
+	 */
+	public HierarchicalAgglomerativeParameters setConnectivity(final int[][] connectivity) {
+		this.connectivity = null == connectivity ? null : MatUtils.copy(connectivity);
+		return this;
+	}
+	
+	/**
+	 * Constrain merges to clusters containing neighboring records, as found by
+	 * {@link NearestNeighbors} or {@link RadiusNeighbors} on the training data
+	 * @param neighbors - the neighborhood of each record
+	 * @return this
+	 */
+	public HierarchicalAgglomerativeParameters setConnectivity(final Neighborhood neighbors) {
+		return setConnectivity(neighbors.getIndices());
+	}
+	
 	@Override
 	public HierarchicalAgglomerativeParameters setForceParallel(boolean b) {
 		this.parallel = b;
@@ -16,11 +16,15 @@
 package com.clust4j.algo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.TreeMap;
 
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.NamedEntity;
 import com.clust4j.algo.NearestCentroidParameters;
 import com.clust4j.except.NaNException;
 import com.clust4j.log.Log.Tag.Algo;
@@ -44,6 +48,56 @@ final public class KMeans extends AbstractCentroidClusterer {
 	private static final long serialVersionUID = 1102324012006818767L;
 	final public static GeometricallySeparable DEF_DIST = Distance.EUCLIDEAN;
 	final public static int DEF_MAX_ITER = 100;
+	final public static KMeansAlgorithm DEF_ALGO = KMeansAlgorithm.LLOYD;
+	
+	/** The approximate number of centroids per group in {@link KMeansAlgorithm#YINYANG} */
+	final static int YINYANG_GROUP_SIZE = 10;
+	/** The number of Lloyd iterations used to group the centroids in {@link KMeansAlgorithm#YINYANG} */
+	final static int YINYANG_GROUP_ITER = 5;
+	
+	/** Not final because can change if the metric is unsupported */
+	protected KMeansAlgorithm algo;
+	
+	/** 
+	 * The number of record-to-centroid distance computations
+	 * avoided during the fit, relative to a full Lloyd sweep
+	 */
+	volatile private long distancesSaved = 0L;
+	
+	
+	
+	/**
+	 * The algorithm used to assign each record to its
+	 * nearest centroid on each {@link KMeans} iteration.
+	 * @author Taylor G Smith
+	 */
+	public static enum KMeansAlgorithm implements NamedEntity, java.io.Serializable {
+		/**
+		 * The traditional Lloyd iteration, which computes the distance
+		 * between every record and every centroid on each iteration.
+		 */
+		LLOYD {
+			@Override public String getName() {
+				return "Lloyd";
+			}
+		},
+		
+		/**
+		 * Groups the centroids and maintains, for each record, an upper bound on
+		 * the distance to its assigned centroid and a lower bound on the distance
+		 * to each group of centroids. After each update, the bounds are loosened by
+		 * the centroid drift, and only the groups whose lower bound falls beneath the
+		 * upper bound are re-examined. Produces the same assignments as {@link #LLOYD}
+		 * while skipping the majority of distance computations for large <i>k</i>. 
+		 * Only supported for {@link Distance#EUCLIDEAN}.
+		 * @see <a href="http://proceedings.mlr.press/v37/ding15.pdf">Yinyang K-Means</a>
+		 */
+		YINYANG {
+			@Override public String getName() {
+				return "Yinyang";
+			}
+		};
+	}
 	
 	
 	
@@ -57,6 +111,13 @@ final public class KMeans extends AbstractCentroidClusterer {
 	
 	protected KMeans(final RealMatrix data, final KMeansParameters planner) {
 		super(data, planner);
+		this.algo = planner.getAlgorithm();
+		
+		if(KMeansAlgorithm.YINYANG.equals(algo) && !Distance.EUCLIDEAN.equals(dist_metric)) {
+			warn(dist_metric.getName() + " is unsupported by the " + algo.getName() 
+				+ " algorithm; falling back to " + KMeansAlgorithm.LLOYD.getName());
+			this.algo = KMeansAlgorithm.LLOYD;
+		}
 	}
 	
 	
@@ -84,12 +145,19 @@ final public class KMeans extends AbstractCentroidClusterer {
 			// Corner case: K = 1 or all singular values
 			if(1 == k) {
 				labelFromSingularK(X);
-				fitSummary.add(new Object[]{ iter, converged, tss, tss, nan, timer.wallTime() });
+				fitSummary.add(new Object[]{ iter, converged, tss, tss, nan, 0, timer.wallTime() });
 				sayBye(timer);
 				return this;
 			}
 			
 			
+			// Bounded assignments don't use the nearest centroid model
+			if(KMeansAlgorithm.YINYANG.equals(algo)) {
+				fitYinyang(X, timer);
+				sayBye(timer);
+				return this;
+			}
+			
 			
 			// Nearest centroid model to predict labels
 			NearestCentroid model = null;
@@ -126,7 +194,7 @@ final public class KMeans extends AbstractCentroidClusterer {
 					warn("(dis)similarity metric ("+dist_metric+") cannot partition space without propagating Infs. Returning one cluster");
 					
 					labelFromSingularK(X);
-					fitSummary.add(new Object[]{ iter, converged, tss, tss, nan, timer.wallTime() });
+					fitSummary.add(new Object[]{ iter, converged, tss, tss, nan, 0, timer.wallTime() });
 					sayBye(timer);
 					return this;
 				}
@@ -189,6 +257,7 @@ final public class KMeans extends AbstractCentroidClusterer {
 					converged ? iter++ : iter, 
 					converged, 
 					tss, wss_sum, bss, 
+					(long)m * (long)k,
 					timer.wallTime() });
 				
 				if(converged) {
@@ -218,6 +287,435 @@ final public class KMeans extends AbstractCentroidClusterer {
 			
 	}
 	
+	/**
+	 * Fits the model using the {@link KMeansAlgorithm#YINYANG} bounded
+	 * assignments. Follows the same iteration and convergence semantics
+	 * as the Lloyd fit, so the two produce equivalent results.
+	 * @param X
+	 * @param timer
+	 */
+	private void fitYinyang(final double[][] X, final LogTimer timer) {
+		final int n = X[0].length;
+		final YinyangBounds bounds = new YinyangBounds(X, centroids, getSeed());
+		info("partitioned " + k + " centroids into " + bounds.t + " group" + (bounds.t != 1 ? "s" : ""));
+		
+		final long fullSweep = (long)m * (long)k;
+		double last_wss_sum = Double.POSITIVE_INFINITY, wss_sum = 0;
+		long calcs;
+		
+		for(iter = 0; iter < maxIter; iter++) {
+			
+			// Get labels for nearest centroids, the first pass is exhaustive
+			final boolean initial = 0 == iter;
+			calcs = parallel ? 
+				ParallelYinyangAssignment.doAll(bounds, initial) : 
+					bounds.assign(0, m, initial);
+			distancesSaved += fullSweep - calcs;
+			labels = bounds.labels;
+			
+			
+			int label;
+			wss = new double[k];
+			int[] centroid_counts = new int[k];
+			double[] centroid;
+			double[][] new_centroid_arrays = new double[k][n];
+			for(int i = 0; i < m; i++) {
+				label = labels[i];
+				centroid = bounds.centroids[label];
+				
+				double this_cost = 0;
+				centroid_counts[label]++;
+				for(int j = 0; j < n; j++) {
+					double diff = X[i][j] - centroid[j];
+					this_cost += (diff * diff);
+					new_centroid_arrays[label][j] += X[i][j];
+				}
+				
+				wss[label] += this_cost;
+			}
+			
+			// meanify; empty centroids stay put so the bounds remain valid
+			wss_sum = 0;
+			for(int i = 0; i < k; i++) {
+				wss_sum += wss[i];
+				
+				if(0 == centroid_counts[i]) {
+					new_centroid_arrays[i] = VecUtils.copy(bounds.centroids[i]);
+					continue;
+				}
+				
+				for(int j = 0; j < n; j++)
+					new_centroid_arrays[i][j] /= (double)centroid_counts[i];
+			}
+			
+			bss = tss - wss_sum;
+			double diff = last_wss_sum - wss_sum;
+			last_wss_sum = wss_sum;
+			
+			converged = FastMath.abs(diff) < tolerance;
+			fitSummary.add(new Object[]{ 
+				converged ? iter++ : iter, 
+				converged, 
+				tss, wss_sum, bss, 
+				calcs,
+				timer.wallTime() });
+			
+			if(converged) {
+				break;
+			} else {
+				// otherwise move the centroids and loosen the bounds
+				bounds.update(new_centroid_arrays);
+			}
+		}
+		
+		centroids = new ArrayList<>(k);
+		for(double[] c: bounds.centroids)
+			centroids.add(c);
+		
+		reorderLabelsAndCentroids();
+		info("avoided " + distancesSaved + " of " + (fullSweep * iter) + " distance computations");
+		
+		if(!converged)
+			warn("algorithm did not converge");
+	}
+	
+	
+	/**
+	 * Maintains the centroid groups and the per-record bounds for
+	 * the {@link KMeansAlgorithm#YINYANG} algorithm. Each record's bounds
+	 * are only ever touched by the task assigning that record, so
+	 * disjoint ranges of records can be assigned concurrently.
+	 * @author Taylor G Smith
+	 */
+	static class YinyangBounds implements java.io.Serializable {
+		private static final long serialVersionUID = -3216735542098133612L;
+		final double[][] X;
+		final int m, k, t;
+		
+		/** Maps each centroid to its group */
+		final int[] group;
+		/** Maps each group to its member centroids */
+		final int[][] members;
+		
+		final int[] labels;
+		/** Upper bound on the distance from each record to its centroid */
+		final double[] upper;
+		/** Lower bound on the distance from each record to each group, excluding its centroid */
+		final double[][] lower;
+		
+		final double[] drift;
+		final double[] groupDrift;
+		volatile double[][] centroids;
+		
+		YinyangBounds(final double[][] X, final ArrayList<double[]> init, final Random seed) {
+			this.X = X;
+			this.m = X.length;
+			this.k = init.size();
+			this.t = FastMath.max(1, k / YINYANG_GROUP_SIZE);
+			
+			this.centroids = new double[k][];
+			for(int i = 0; i < k; i++)
+				centroids[i] = VecUtils.copy(init.get(i));
+			
+			this.group = groupCentroids(centroids, t, seed);
+			
+			int[] counts = new int[t];
+			for(int g: group)
+				counts[g]++;
+			
+			this.members = new int[t][];
+			for(int g = 0; g < t; g++)
+				members[g] = new int[counts[g]];
+			
+			int[] next = new int[t];
+			for(int j = 0; j < k; j++)
+				members[group[j]][next[group[j]]++] = j;
+			
+			this.labels = new int[m];
+			this.upper = new double[m];
+			this.lower = new double[m][t];
+			this.drift = new double[k];
+			this.groupDrift = new double[t];
+		}
+		
+		/**
+		 * Clusters the centroids into <tt>t</tt> groups using a few
+		 * Lloyd iterations over the centroids themselves.
+		 * @param C
+		 * @param t
+		 * @param seed
+		 * @return the group of each centroid
+		 */
+		static int[] groupCentroids(final double[][] C, final int t, final Random seed) {
+			final int k = C.length, n = C[0].length;
+			final int[] assn = new int[k];
+			if(1 == t)
+				return assn;
+			
+			final int[] perm = VecUtils.permutation(VecUtils.arange(k), seed);
+			double[][] centers = new double[t][];
+			for(int g = 0; g < t; g++)
+				centers[g] = VecUtils.copy(C[perm[g]]);
+			
+			for(int it = 0; it < YINYANG_GROUP_ITER; it++) {
+				for(int j = 0; j < k; j++) {
+					double minDist = Double.POSITIVE_INFINITY, dist;
+					for(int g = 0; g < t; g++) {
+						dist = Distance.EUCLIDEAN.getPartialDistance(C[j], centers[g]);
+						if(dist < minDist) {
+							minDist = dist;
+							assn[j] = g;
+						}
+					}
+				}
+				
+				final int[] counts = new int[t];
+				final double[][] sums = new double[t][n];
+				for(int j = 0; j < k; j++) {
+					counts[assn[j]]++;
+					for(int p = 0; p < n; p++)
+						sums[assn[j]][p] += C[j][p];
+				}
+				
+				for(int g = 0; g < t; g++) {
+					if(0 == counts[g]) // leave the empty group's center alone
+						continue;
+					for(int p = 0; p < n; p++)
+						sums[g][p] /= (double)counts[g];
+					centers[g] = sums[g];
+				}
+			}
+			
+			return assn;
+		}
+		
+		/**
+		 * Replaces the centroids and computes the drift of each
+		 * centroid and the maximum drift within each group
+		 * @param newCentroids
+		 */
+		void update(final double[][] newCentroids) {
+			Arrays.fill(groupDrift, 0.0);
+			
+			int g;
+			for(int j = 0; j < k; j++) {
+				drift[j] = Distance.EUCLIDEAN.getDistance(centroids[j], newCentroids[j]);
+				g = group[j];
+				
+				if(drift[j] > groupDrift[g])
+					groupDrift[g] = drift[j];
+			}
+			
+			centroids = newCentroids;
+		}
+		
+		/**
+		 * Assign the records in the range [from, to) to their nearest centroid
+		 * @param from
+		 * @param to
+		 * @param initial - whether this is the first, exhaustive pass
+		 * @return the number of distance computations performed
+		 */
+		long assign(final int from, final int to, final boolean initial) {
+			final double[] min1 = new double[t], min2 = new double[t];
+			final int[] arg1 = new int[t];
+			final boolean[] examined = new boolean[t];
+			
+			long calcs = 0;
+			for(int i = from; i < to; i++)
+				calcs += initial ? 
+					assignExhaustive(i, min1, min2, arg1) : 
+						assignBounded(i, min1, min2, arg1, examined);
+			
+			return calcs;
+		}
+		
+		private int assignExhaustive(final int i, final double[] min1, final double[] min2, final int[] arg1) {
+			final double[] x = X[i];
+			final double[][] C = centroids;
+			Arrays.fill(min1, Double.POSITIVE_INFINITY);
+			Arrays.fill(min2, Double.POSITIVE_INFINITY);
+			
+			int g;
+			double d;
+			for(int j = 0; j < k; j++) {
+				d = Distance.EUCLIDEAN.getDistance(x, C[j]);
+				g = group[j];
+				
+				if(d < min1[g]) {
+					min2[g] = min1[g];
+					min1[g] = d;
+					arg1[g] = j;
+				} else if(d < min2[g]) {
+					min2[g] = d;
+				}
+			}
+			
+			// ties resolve to the lowest centroid index, same as Lloyd
+			int best = -1;
+			double bestD = Double.POSITIVE_INFINITY;
+			for(g = 0; g < t; g++) {
+				if(0 == members[g].length)
+					continue;
+				if(-1 == best || min1[g] < bestD || (min1[g] == bestD && arg1[g] < best)) {
+					best = arg1[g];
+					bestD = min1[g];
+				}
+			}
+			
+			labels[i] = best;
+			upper[i] = bestD;
+			for(g = 0; g < t; g++)
+				lower[i][g] = arg1[g] == best ? min2[g] : min1[g];
+			
+			return k;
+		}
+		
+		private int assignBounded(final int i, final double[] min1, final double[] min2, 
+				final int[] arg1, final boolean[] examined) {
+			
+			final double[] x = X[i], lb = lower[i];
+			final double[][] C = centroids;
+			final int a = labels[i];
+			
+			// loosen the bounds by the drift
+			double ub = upper[i] + drift[a], glb = Double.POSITIVE_INFINITY;
+			for(int g = 0; g < t; g++) {
+				lb[g] -= groupDrift[g];
+				if(lb[g] < glb)
+					glb = lb[g];
+			}
+			
+			// global filter. The filters are strict, since a centroid at a
+			// tied distance must still be examined in case its index is lower
+			if(ub < glb) {
+				upper[i] = ub;
+				return 0;
+			}
+			
+			// tighten the upper bound and try again
+			int calcs = 1;
+			final double da = Distance.EUCLIDEAN.getDistance(x, C[a]);
+			if(da < glb) {
+				upper[i] = da;
+				return calcs;
+			}
+			
+			int best = a;
+			double bestD = da, d, oldLb;
+			for(int g = 0; g < t; g++) {
+				
+				// group filter
+				examined[g] = lb[g] <= bestD;
+				if(!examined[g])
+					continue;
+				
+				oldLb = lb[g] + groupDrift[g];
+				min1[g] = Double.POSITIVE_INFINITY;
+				min2[g] = Double.POSITIVE_INFINITY;
+				arg1[g] = -1;
+				
+				for(int j: members[g]) {
+					if(j == a) {
+						d = da;
+					} else {
+						// local filter: bound is never less than the
+						// best, so it can only serve as a lower bound
+						d = oldLb - drift[j];
+						if(d <= bestD) {
+							d = Distance.EUCLIDEAN.getDistance(x, C[j]);
+							calcs++;
+						
+							// ties resolve to the lowest centroid index, same as Lloyd
+							if(d < bestD || (d == bestD && j < best)) {
+								bestD = d;
+								best = j;
+							}
+						}
+					}
+					
+					if(d < min1[g]) {
+						min2[g] = min1[g];
+						min1[g] = d;
+						arg1[g] = j;
+					} else if(d < min2[g]) {
+						min2[g] = d;
+					}
+				}
+			}
+			
+			// reset the lower bounds around the new assignment
+			final int aGroup = group[a];
+			for(int g = 0; g < t; g++) {
+				if(examined[g])
+					lb[g] = arg1[g] == best ? min2[g] : min1[g];
+				else if(g == aGroup && best != a)
+					lb[g] = FastMath.min(lb[g], da);
+			}
+			
+			labels[i] = best;
+			upper[i] = bestD;
+			return calcs;
+		}
+	}
+	
+	/**
+	 * Assigns chunks of records to their nearest centroids in 
+	 * parallel for the {@link KMeansAlgorithm#YINYANG} algorithm
+	 * @author Taylor G Smith
+	 */
+	static class ParallelYinyangAssignment extends ParallelChunkingTask<Long> {
+		private static final long serialVersionUID = 6329541021137924421L;
+		final YinyangBounds bounds;
+		final boolean initial;
+		final int low;
+		final int high;
+		
+		ParallelYinyangAssignment(YinyangBounds bounds, boolean initial) {
+			super(bounds.X);
+			
+			this.bounds = bounds;
+			this.initial = initial;
+			this.low = 0;
+			this.high = strategy.getNumChunks(bounds.X);
+		}
+		
+		ParallelYinyangAssignment(ParallelYinyangAssignment task, int low, int high) {
+			super(task);
+			
+			this.bounds = task.bounds;
+			this.initial = task.initial;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected Long compute() {
+			if(high - low <= 1) { // generally should equal one...
+				return reduce(chunks.get(low));
+			} else {
+				int mid = this.low + (this.high - this.low) / 2;
+				ParallelYinyangAssignment left  = new ParallelYinyangAssignment(this, low, mid);
+				ParallelYinyangAssignment right = new ParallelYinyangAssignment(this, mid, high);
+				
+				left.fork();
+				Long r = right.compute();
+				Long l = left.join();
+				
+				return l + r;
+			}
+		}
+		
+		@Override
+		public Long reduce(Chunk chunk) {
+			return bounds.assign(chunk.start, chunk.start + chunk.size(), initial);
+		}
+		
+		static long doAll(YinyangBounds bounds, boolean initial) {
+			return getThreadPool().invoke(new ParallelYinyangAssignment(bounds, initial));
+		}
+	}
+	
 
 	@Override
 	public Algo getLoggerTag() {
@@ -227,10 +725,47 @@ final public class KMeans extends AbstractCentroidClusterer {
 	@Override
 	protected Object[] getModelFitSummaryHeaders() {
 		return new Object[]{
-			"Iter. #","Converged","TSS","WSS","BSS","Wall"
+			"Iter. #","Converged","TSS","WSS","BSS","Dist. Calcs","Wall"
 		};
 	}
 	
+	/** {@inheritDoc} */
+	@Override
+	public KMeans refit(final RealMatrix appended) {
+		final Array2DRowRealMatrix combined = appendRows(appended);
+		
+		return new KMeans(combined, new KMeansParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setMetric(dist_metric)
+			.setVerbose(getVerbose())
+			.setSeed(getSeed())
+			.setInitializationStrategy(init)
+			.setInitialCentroids(getCentroids())
+			.setAlgorithm(algo)
+			.setForceParallel(parallel)).fit();
+	}
+	
+	/**
+	 * Get the algorithm used to assign records to centroids
+	 * @return the assignment algorithm
+	 */
+	public KMeansAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
+	/**
+	 * Returns the number of record-to-centroid distance computations
+	 * the fit avoided relative to an exhaustive Lloyd sweep on every
+	 * iteration. Always zero for {@link KMeansAlgorithm#LLOYD}.
+	 * @return the number of distance computations saved
+	 */
+	public long getDistanceComputationsSaved() {
+		synchronized(fitLock) {
+			return distancesSaved;
+		}
+	}
+	
 	/**
 	 * Reorder the labels in order of appearance using the 
 	 * {@link LabelEncoder}. Also reorder the centroids to correspond
@@ -16,11 +16,14 @@
 
 package com.clust4j.algo;
 
+import java.util.Collection;
 import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.algo.KMeans.KMeansAlgorithm;
+import com.clust4j.data.RowBlockSource;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
 
 final public class KMeansParameters extends CentroidClustererParameters<KMeans> {
@@ -28,6 +31,7 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 	
 	private InitializationStrategy strat = KMeans.DEF_INIT;
 	private int maxIter = KMeans.DEF_MAX_ITER;
+	private KMeansAlgorithm algo = KMeans.DEF_ALGO;
 	
 	public KMeansParameters() { }
 	public KMeansParameters(int k) {
@@ -39,6 +43,16 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 		return new KMeans(data, this.copy()).fit();
 	}
 	
+	/**
+	 * Fit a new {@link OutOfCoreKMeans} model, streaming the
+	 * row blocks from the source on each iteration
+	 * @param source
+	 * @return the fit model
+	 */
+	public OutOfCoreKMeans fitOutOfCore(final RowBlockSource source) {
+		return new OutOfCoreKMeans(source, this.copy()).fit();
+	}
+	
 	@Override
 	public KMeansParameters copy() {
 		return new KMeansParameters(k)
@@ -48,9 +62,20 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 			.setVerbose(verbose)
 			.setSeed(seed)
 			.setInitializationStrategy(strat)
+			.setInitialCentroids(initCentroids)
+			.setAlgorithm(algo)
 			.setForceParallel(parallel);
 	}
 	
+	public KMeansAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
+	public KMeansParameters setAlgorithm(final KMeansAlgorithm algo) {
+		this.algo = algo;
+		return this;
+	}
+	
 	@Override
 	public InitializationStrategy getInitializationStrategy() {
 		return strat;
@@ -90,6 +115,17 @@ final public class KMeansParameters extends CentroidClustererParameters<KMeans>
 		return this;
 	}
 	
+	/**
+	 * Warm-start the model from previously fit centroids (e.g., from
+	 * {@link AbstractCentroidClusterer#getCentroids()}) rather than seeding
+	 * via the {@link InitializationStrategy}. Pass null to revert to a cold start.
+	 */
+	@Override
+	public KMeansParameters setInitialCentroids(final Collection<double[]> centroids) {
+		this.initCentroids = copyCentroids(centroids);
+		return this;
+	}
+	
 	@Override
 	public KMeansParameters setSeed(final Random seed) {
 		this.seed = seed;
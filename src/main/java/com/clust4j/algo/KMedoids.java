@@ -16,13 +16,22 @@
 package com.clust4j.algo;
 
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
 
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.util.FastMath;
 
+import com.clust4j.GlobalState;
+import com.clust4j.NamedEntity;
 import com.clust4j.except.IllegalClusterStateException;
+import com.clust4j.except.ModelNotFitException;
 import com.clust4j.log.Log.Tag.Algo;
 import com.clust4j.log.LogTimer;
 import com.clust4j.metrics.pairwise.Distance;
@@ -43,11 +52,11 @@ import com.clust4j.utils.VecUtils;
  * 1987 for the work with Manhattan distance (l1 norm) and other distances.
  * 
  * <p>
- * clust4j utilizes the <a href="https://en.wikipedia.org/wiki/Lloyd%27s_algorithm">
- * Voronoi iteration</a> technique to identify clusters. Alternative greedy searches, 
- * including PAM (partitioning around medoids), are faster yet may not find the optimal
- * solution. For this reason, clust4j's implementation of KMedoids almost always surpasses
- * the performance of {@link KMeans}, however it can typically take longer  as well.
+ * By default, clust4j utilizes the <a href="https://en.wikipedia.org/wiki/Lloyd%27s_algorithm">
+ * Voronoi iteration</a> technique to identify clusters. Alternatively, the 
+ * {@link KMedoidsAlgorithm#FASTER_PAM} swap search may be selected via 
+ * {@link KMedoidsParameters#setAlgorithm(KMedoidsAlgorithm)}, which typically finds
+ * solutions of PAM (partitioning around medoids) quality in far fewer iterations.
  * 
  * @see {@link AbstractPartitionalClusterer}
  * @author Taylor G Smith &lt;tgsmith61591@gmail.com&gt;
@@ -60,6 +69,22 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	private static final long serialVersionUID = -4468316488158880820L;
 	final public static GeometricallySeparable DEF_DIST = Distance.MANHATTAN;
 	final public static int DEF_MAX_ITER = 10;
+	final public static KMedoidsAlgorithm DEF_ALGO = KMedoidsAlgorithm.VORONOI;
+	/** CLARA sampling is disabled by default */
+	final public static int DEF_CLARA_SAMPLES = 0;
+	/** Zero denotes the default CLARA sample size of <tt>40 + 2k</tt> */
+	final public static int DEF_CLARA_SAMPLE_SIZE = 0;
+	/** The default number of local minima CLARANS searches for */
+	final public static int DEF_NUM_LOCAL = 2;
+	/** Zero denotes the default CLARANS neighbor count */
+	final public static int DEF_MAX_NEIGHBOR = 0;
+	/** Distances are stored in double precision by default */
+	final public static boolean DEF_FLOAT_DISTANCES = false;
+	
+	/** The fewest records a parallel assignment task will split */
+	final static int MIN_ASSIGN_TASK_RECORDS = 2048;
+	/** The fewest distances a parallel medoid reassignment task will split */
+	final static int MIN_CANDIDATE_TASK_DISTANCES = 1 << 15;
 	
 	/**
 	 * Stores the indices of the current medoids. Each index,
@@ -68,18 +93,90 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	volatile private int[] medoid_indices = new int[k];
 	
 	/**
-	 * Upper triangular, M x M matrix denoting distances between records.
+	 * Condensed (strictly upper triangular, row-major) distances between records.
 	 * Is only populated during training phase and then set to null for 
-	 * garbage collection, as a large-M matrix has a high space footprint: O(N^2).
-	 * This is only needed during training and then can safely be collected
-	 * to free up heap space.
+	 * garbage collection, as even a condensed matrix has a high space footprint: O(N^2).
+	 * At most one of the double and single precision arrays is populated.
+	 * @see Pairwise#condensedIndex(int, int, int)
 	 */
-	volatile private double[][] dist_mat = null;
+	volatile private double[] dist_mat = null;
+	volatile private float[] dist_mat32 = null;
 	
 	/**
-	 * Map the index to the WSS
+	 * The distance of each record to its medoid, summed
+	 * into the {@link #wss} when the labels are encoded
 	 */
-	volatile private TreeMap<Integer, Double> med_to_wss = new TreeMap<>();
+	volatile private double[] costs = null;
+	
+	/** The algorithm used to search for the medoids */
+	final private KMedoidsAlgorithm algo;
+	
+	/** The number of CLARA samples, or zero if not sampling */
+	final private int claraSamples;
+	final private int claraSampleSize;
+	
+	/* CLARANS search params */
+	final private int numLocal;
+	final private int maxNeighbor;
+	
+	/** Whether to store the distance matrix in single precision */
+	final private boolean floatDistances;
+	
+	/** 
+	 * The CLARA and CLARANS params as given, where zero is a default 
+	 * resolved from <tt>m</tt>, so a {@link #refit(RealMatrix)} can
+	 * resolve them again for the grown data
+	 */
+	final private int givenClaraSamples, givenClaraSampleSize, givenMaxNeighbor;
+	
+	
+	
+	/**
+	 * The algorithm used to search for the medoids in {@link KMedoids}
+	 * @author Taylor G Smith
+	 */
+	public static enum KMedoidsAlgorithm implements NamedEntity, java.io.Serializable {
+		/**
+		 * Alternates between assigning each record to its nearest medoid
+		 * and selecting, within each cluster, the record that minimizes the
+		 * sum of distances to the other members as the new medoid.
+		 */
+		VORONOI {
+			@Override public String getName() {
+				return "Voronoi iteration";
+			}
+		},
+		
+		/**
+		 * A PAM swap search that caches, for each record, the distance to its nearest
+		 * and second-nearest medoids, as well as the loss of removing each medoid. This
+		 * allows the change in total deviation for swapping a candidate with <i>each</i> of
+		 * the <i>k</i> medoids to be evaluated in a single O(<i>n</i>) pass, and the best
+		 * of the <i>k</i> swaps is applied eagerly whenever it reduces the deviation.
+		 * @see <a href="https://arxiv.org/abs/2008.05171">Fast and Eager k-Medoids Clustering</a>
+		 */
+		FASTER_PAM {
+			@Override public String getName() {
+				return "FasterPAM";
+			}
+		},
+		
+		/**
+		 * A randomized search that, from a random set of medoids, examines random
+		 * neighbors (single swaps of a medoid with a non-medoid) and moves to the first
+		 * that reduces the total deviation, until a configurable number of consecutive
+		 * neighbors fail to improve it. The best of several such local minima is kept.
+		 * Distances are computed lazily, so the distance matrix is never materialized.
+		 * @see KMedoidsParameters#setNumLocal(int)
+		 * @see KMedoidsParameters#setMaxNeighbor(int)
+		 * @see <a href="https://doi.org/10.1109/TKDE.2002.1033770">CLARANS: A Method for Clustering Objects for Spatial Data Mining</a>
+		 */
+		CLARANS {
+			@Override public String getName() {
+				return "CLARANS";
+			}
+		};
+	}
 	
 	
 	
@@ -93,6 +190,40 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	
 	protected KMedoids(final RealMatrix data, final KMedoidsParameters planner) {
 		super(data, planner);
+		this.algo = planner.getAlgorithm();
+		this.givenClaraSamples = planner.getClaraSamples();
+		this.givenClaraSampleSize = planner.getClaraSampleSize();
+		this.givenMaxNeighbor = planner.getMaxNeighbor();
+		
+		int samples = planner.getClaraSamples();
+		this.claraSampleSize = 0 == planner.getClaraSampleSize() ? 
+			40 + 2 * k : planner.getClaraSampleSize();
+		
+		if(samples < 0)
+			error(new IllegalArgumentException("claraSamples must not be negative"));
+		if(samples > 0) {
+			if(claraSampleSize <= k)
+				error(new IllegalArgumentException("CLARA sample size must exceed k"));
+			
+			if(claraSampleSize >= m) {
+				warn("CLARA sample size ("+claraSampleSize+") is not less than the number "
+					+ "of records; searching all records instead");
+				samples = 0;
+			}
+		}
+		
+		this.claraSamples = samples;
+		
+		this.numLocal = planner.getNumLocal();
+		this.maxNeighbor = 0 == planner.getMaxNeighbor() ?
+			(int)FastMath.max(250, 0.0125 * k * (m - k)) : planner.getMaxNeighbor();
+		
+		if(numLocal < 1)
+			error(new IllegalArgumentException("numLocal must exceed 0"));
+		if(maxNeighbor < 1)
+			error(new IllegalArgumentException("maxNeighbor must exceed 0"));
+		
+		this.floatDistances = planner.getFloatDistances();
 		
 		// Check if is Manhattan
 		if(!this.dist_metric.equals(Distance.MANHATTAN)) {
@@ -121,6 +252,10 @@ final public class KMedoids extends AbstractCentroidClusterer {
 			final double nan = Double.NaN;
 			
 			
+			// Initialize labels
+			medoid_indices = init_centroid_indices;
+			
+			
 			// Corner case: K = 1 or all singular
 			if(1 == k) {
 				labelFromSingularK(X);
@@ -135,14 +270,35 @@ final public class KMedoids extends AbstractCentroidClusterer {
 			}
 			
 			
+			// Sampling never computes the full distance matrix
+			if(claraSamples > 0) {
+				fitClara(X, timer);
+				sayBye(timer);
+				return this;
+			}
+			
+			
+			// Nor does the randomized search
+			if(KMedoidsAlgorithm.CLARANS.equals(algo)) {
+				fitClarans(X, timer);
+				sayBye(timer);
+				return this;
+			}
+			
+			
 			// We do this in KMedoids and not KMeans, because KMedoids uses
 			// real points as medoids and not means for centroids, thus
 			// the recomputation of distances is unnecessary with the dist mat
-			dist_mat = Pairwise.getDistance(X, getSeparabilityMetric(), true, false);
+			computeDistances(X);
 			info("distance matrix computed in " + timer.toString());
 			
-			// Initialize labels
-			medoid_indices = init_centroid_indices;
+			
+			// The swap search doesn't alternate assignments and updates
+			if(KMedoidsAlgorithm.FASTER_PAM.equals(algo)) {
+				fitFasterPAM(timer);
+				sayBye(timer);
+				return this;
+			}
 			
 			
 			ClusterAssignments clusterAssignments;
@@ -231,7 +387,7 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				if(tmp_wss_sum < bestCost) {
 					bestCost = wss_sum = tmp_wss_sum;
 					labels = rassn.new_clusters.assn; // will be medoid idcs until encoded at end
-					med_to_wss = rassn.new_clusters.costs;
+					costs = rassn.new_clusters.costs;
 					centroids = rassn.centers;
 					medoid_indices = newMedoids;
 					bss = tmp_bss;
@@ -277,6 +433,582 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	} // End train
 	
 	
+	/**
+	 * Compute the condensed distance matrix, in parallel if enabled
+	 * @param X
+	 */
+	private void computeDistances(final double[][] X) {
+		if(parallel) {
+			try {
+				if(floatDistances)
+					dist_mat32 = Pairwise.getCondensedDistanceFloat(X, getSeparabilityMetric(), true);
+				else
+					dist_mat = Pairwise.getCondensedDistance(X, getSeparabilityMetric(), true);
+				return;
+			} catch(RejectedExecutionException r) {
+				warn("parallel distance computation failed; falling back to serial");
+			}
+		}
+		
+		if(floatDistances)
+			dist_mat32 = Pairwise.getCondensedDistanceFloat(X, getSeparabilityMetric(), false);
+		else
+			dist_mat = Pairwise.getCondensedDistance(X, getSeparabilityMetric(), false);
+	}
+	
+	/**
+	 * The distance between two records from the condensed distance 
+	 * matrix, or computed on demand if the matrix was not materialized
+	 */
+	private double dist(final int a, final int b) {
+		if(a == b)
+			return 0.0;
+		if(null != dist_mat)
+			return dist_mat[Pairwise.condensedIndex(m, a, b)];
+		if(null != dist_mat32)
+			return dist_mat32[Pairwise.condensedIndex(m, a, b)];
+		
+		final double[][] X = data.getDataRef();
+		return dist_metric.getDistance(X[a], X[b]);
+	}
+	
+	/**
+	 * Fits the model using the {@link KMedoidsAlgorithm#FASTER_PAM} swap search,
+	 * beginning from the initial medoids. Each pass considers every non-medoid
+	 * as a swap candidate, and the search ends once a full cycle of candidates
+	 * passes without a swap.
+	 * @param timer
+	 */
+	private void fitFasterPAM(final LogTimer timer) {
+		final PAMCache cache = new PAMCache(medoid_indices);
+		final double[] delta = new double[k];
+		
+		double wss_sum = cache.updateRemovalLoss();
+		int sinceSwap = 0;
+		
+		while(!converged && iter < maxIter) {
+			for(int xc = 0; xc < m && !converged; xc++) {
+				if(!cache.isMedoid[xc]) {
+					
+					// Evaluate the swap of xc with each of the k medoids at once
+					System.arraycopy(cache.removalLoss, 0, delta, 0, k);
+					double acc = 0.0, doc;
+					for(int o = 0; o < m; o++) {
+						doc = dist(o, xc);
+						
+						if(doc < cache.dn[o]) { // xc would become nearest
+							acc += doc - cache.dn[o];
+							delta[cache.near[o]] += cache.dn[o] - cache.ds[o];
+						} else if(doc < cache.ds[o]) { // xc would become second nearest
+							delta[cache.near[o]] += doc - cache.ds[o];
+						}
+					}
+					
+					int best = 0;
+					for(int j = 1; j < k; j++)
+						if(delta[j] < delta[best])
+							best = j;
+					
+					// Eagerly apply the best swap if it helps
+					if(delta[best] + acc < -tolerance) {
+						cache.swap(best, xc);
+						wss_sum = cache.updateRemovalLoss();
+						sinceSwap = 0;
+						continue;
+					}
+				}
+				
+				converged = ++sinceSwap >= m;
+			}
+			
+			bss = tss - wss_sum;
+			fitSummary.add(new Object[]{ iter++, 
+				converged,
+				tss, 
+				wss_sum / (double)k, 
+				wss_sum, 
+				bss, 
+				timer.wallTime()
+			});
+		}
+		
+		// Labels are medoid indices until encoded
+		labels = new int[m];
+		for(int o = 0; o < m; o++)
+			labels[o] = cache.medoids[cache.near[o]];
+		costs = cache.dn;
+		
+		reorderLabelsAndCentroids();
+		
+		if(!converged)
+			warn("algorithm did not converge");
+		else
+			info("algorithm converged; no swap further reduces the total deviation");
+	}
+	
+	/**
+	 * Caches, for each record, the slot (0 thru k-1) of and distance to its nearest 
+	 * and second-nearest medoids, and for each medoid the loss in total deviation
+	 * were it removed. Swaps update the caches in O(<i>n</i>) time, save for the
+	 * records whose second-nearest medoid must be searched for anew.
+	 */
+	private class PAMCache {
+		final int[] medoids;
+		final boolean[] isMedoid = new boolean[m];
+		final int[] near = new int[m], second = new int[m];
+		final double[] dn = new double[m], ds = new double[m];
+		final double[] removalLoss = new double[k];
+		
+		PAMCache(int[] init) {
+			medoids = VecUtils.copy(init);
+			for(int j = 0; j < k; j++)
+				isMedoid[medoids[j]] = true;
+			
+			// Find the nearest and second nearest in one scan
+			double d;
+			for(int o = 0; o < m; o++) {
+				near[o] = second[o] = -1;
+				dn[o] = ds[o] = Double.POSITIVE_INFINITY;
+				
+				for(int j = 0; j < k; j++) {
+					// a medoid is always nearest to itself
+					d = medoids[j] == o ? -1.0 : dist(o, medoids[j]);
+					if(-1 == near[o] || d < dn[o]) {
+						second[o] = near[o];
+						ds[o] = dn[o];
+						near[o] = j;
+						dn[o] = d;
+					} else if(-1 == second[o] || d < ds[o]) {
+						second[o] = j;
+						ds[o] = d;
+					}
+				}
+				
+				if(dn[o] < 0)
+					dn[o] = 0.0;
+			}
+		}
+		
+		/**
+		 * Search every medoid but the nearest for the second nearest
+		 */
+		void findSecond(final int o) {
+			second[o] = -1;
+			ds[o] = Double.POSITIVE_INFINITY;
+			
+			for(int j = 0; j < k; j++) {
+				if(j == near[o])
+					continue;
+				
+				double d = dist(o, medoids[j]);
+				if(-1 == second[o] || d < ds[o]) {
+					second[o] = j;
+					ds[o] = d;
+				}
+			}
+		}
+		
+		/**
+		 * The total deviation of the current medoids
+		 */
+		double deviation() {
+			double total = 0.0;
+			for(int o = 0; o < m; o++)
+				total += dn[o];
+			return total;
+		}
+		
+		/**
+		 * Recompute the removal loss of each medoid
+		 * @return the total deviation
+		 */
+		double updateRemovalLoss() {
+			double total = 0.0;
+			Arrays.fill(removalLoss, 0.0);
+			
+			for(int o = 0; o < m; o++) {
+				removalLoss[near[o]] += ds[o] - dn[o];
+				total += dn[o];
+			}
+			
+			return total;
+		}
+		
+		/**
+		 * Replace the medoid in slot <tt>i</tt> with record <tt>xc</tt>
+		 */
+		void swap(final int i, final int xc) {
+			isMedoid[medoids[i]] = false;
+			isMedoid[xc] = true;
+			medoids[i] = xc;
+			
+			double doc;
+			for(int o = 0; o < m; o++) {
+				doc = dist(o, xc);
+				
+				if(o == xc) {
+					if(near[o] != i) {
+						second[o] = near[o];
+						ds[o] = dn[o];
+					}
+					
+					near[o] = i;
+					dn[o] = 0.0;
+					if(second[o] == i)
+						findSecond(o);
+				} else if(near[o] == i) { // the nearest medoid was removed
+					if(doc <= ds[o]) {
+						dn[o] = doc;
+					} else {
+						near[o] = second[o];
+						dn[o] = ds[o];
+						findSecond(o);
+					}
+				} else if(doc < dn[o]) {
+					second[o] = near[o];
+					ds[o] = dn[o];
+					near[o] = i;
+					dn[o] = doc;
+				} else if(second[o] == i) { // the second nearest was removed
+					if(doc <= ds[o])
+						ds[o] = doc;
+					else
+						findSecond(o);
+				} else if(doc < ds[o]) {
+					second[o] = i;
+					ds[o] = doc;
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * The medoids found by a single independent search (a CLARA sample 
+	 * or CLARANS local search), and their cost over the full data
+	 */
+	static class SearchResult {
+		final int[] medoids;
+		final double cost;
+		final boolean converged;
+		final int iters;
+		
+		SearchResult(int[] medoids, double cost, boolean converged, int iters) {
+			this.medoids = medoids;
+			this.cost = cost;
+			this.converged = converged;
+			this.iters = iters;
+		}
+	}
+	
+	/**
+	 * Fits the model in CLARA mode: the medoids are searched for in several
+	 * random samples, each sample's medoids are scored against the full data, and
+	 * the best are kept. Only the sample distance matrices are ever computed.
+	 * @param X
+	 * @param timer
+	 */
+	private void fitClara(final double[][] X, final LogTimer timer) {
+		info("searching " + claraSamples + " CLARA sample" + (claraSamples==1?"":"s") 
+			+ " of " + claraSampleSize + " records");
+		fitFromSearches(X, claraSamples, timer);
+	}
+	
+	/**
+	 * Fits the model using the {@link KMedoidsAlgorithm#CLARANS} search: 
+	 * <tt>numLocal</tt> independent local searches, keeping the best.
+	 * @param X
+	 * @param timer
+	 */
+	private void fitClarans(final double[][] X, final LogTimer timer) {
+		info("searching for " + numLocal + " local minim" + (numLocal==1?"um":"a") 
+			+ ", examining up to " + maxNeighbor + " neighbors each");
+		fitFromSearches(X, numLocal, timer);
+	}
+	
+	/**
+	 * Run a single independent search: a CLARA sample if 
+	 * sampling, otherwise a CLARANS local search
+	 */
+	private SearchResult search(final double[][] X, final int s, final long base) {
+		return claraSamples > 0 ? claraSample(X, s, base) : claransSearch(s, base);
+	}
+	
+	/**
+	 * Run several independent searches (in parallel, if enabled), 
+	 * keep the one of least cost and label the records from it
+	 * @param X
+	 * @param numSearches
+	 * @param timer
+	 */
+	private void fitFromSearches(final double[][] X, final int numSearches, final LogTimer timer) {
+		final long base = getSeed().nextLong();
+		final SearchResult[] results = new SearchResult[numSearches];
+		
+		boolean done = false;
+		if(parallel) {
+			try {
+				ParallelSearchTask.doAll(this, X, base, results);
+				done = true;
+			} catch(RejectedExecutionException r) {
+				warn("parallel search failed; falling back to serial");
+			}
+		}
+		
+		if(!done)
+			for(int s = 0; s < numSearches; s++)
+				results[s] = search(X, s, base);
+		
+		// Keep the best, in search order so ties are deterministic
+		SearchResult best = null;
+		for(int s = 0; s < numSearches; s++) {
+			SearchResult res = results[s];
+			if(null == res)
+				continue;
+			
+			fitSummary.add(new Object[]{ s, 
+				res.converged,
+				tss, 
+				res.cost / (double)k, 
+				res.cost, 
+				tss - res.cost, 
+				timer.wallTime()
+			});
+			
+			if(null == best || res.cost < best.cost)
+				best = res;
+		}
+		
+		if(null == best) {
+			warn("no search could partition the data; using the initial medoids");
+			best = new SearchResult(init_centroid_indices, 
+				score(X, init_centroid_indices, null), false, 0);
+		}
+		
+		// Labels are medoid indices until encoded
+		costs = new double[m];
+		labels = new int[m];
+		score(X, best.medoids, costs);
+		
+		medoid_indices = best.medoids;
+		converged = best.converged;
+		iter = best.iters;
+		bss = tss - best.cost;
+		reorderLabelsAndCentroids();
+		
+		if(!converged)
+			warn("algorithm did not converge");
+	}
+	
+	/**
+	 * A single CLARANS local search. The first starts from the initial
+	 * medoids; the rest from random medoids. Random neighbors are examined
+	 * until <tt>maxNeighbor</tt> consecutive neighbors fail to improve the
+	 * total deviation, computing only the distances each neighbor needs.
+	 * @param r - the search number
+	 * @param base - the base seed
+	 * @return the local minimum, where the iterations are the swaps made
+	 */
+	private SearchResult claransSearch(final int r, final long base) {
+		final Random rand = new Random(base + r);
+		
+		final int[] start;
+		if(0 == r) {
+			start = init_centroid_indices;
+		} else {
+			final LinkedHashSet<Integer> chosen = new LinkedHashSet<>();
+			while(chosen.size() < k)
+				chosen.add(rand.nextInt(m));
+			
+			int i = 0;
+			start = new int[k];
+			for(Integer idx: chosen)
+				start[i++] = idx;
+		}
+		
+		final PAMCache cache = new PAMCache(start);
+		int swaps = 0, examined = 0;
+		
+		while(examined < maxNeighbor && m > k) {
+			final int i = rand.nextInt(k);
+			int xc;
+			do {
+				xc = rand.nextInt(m);
+			} while(cache.isMedoid[xc]);
+			
+			// The change in deviation for swapping slot i with xc
+			double delta = 0.0, doc;
+			for(int o = 0; o < m; o++) {
+				doc = dist(o, xc);
+				
+				if(cache.near[o] == i)
+					delta += FastMath.min(doc, cache.ds[o]) - cache.dn[o];
+				else if(doc < cache.dn[o])
+					delta += doc - cache.dn[o];
+			}
+			
+			if(delta < -tolerance) {
+				cache.swap(i, xc);
+				swaps++;
+				examined = 0;
+			} else {
+				examined++;
+			}
+		}
+		
+		return new SearchResult(VecUtils.copy(cache.medoids), 
+			cache.deviation(), true, swaps);
+	}
+	
+	/**
+	 * Search for the medoids in a single random sample. The first sample contains,
+	 * and starts from, the initial medoids; the rest are seeded independently.
+	 * @param X
+	 * @param s - the sample number
+	 * @param base - the base seed
+	 * @return the result, or null if the sample could not be partitioned
+	 */
+	private SearchResult claraSample(final double[][] X, final int s, final long base) {
+		final Random rand = new Random(base + s);
+		final TreeSet<Integer> chosen = new TreeSet<>();
+		if(0 == s)
+			for(int i: init_centroid_indices)
+				chosen.add(i);
+		while(chosen.size() < claraSampleSize)
+			chosen.add(rand.nextInt(m));
+		
+		int i = 0;
+		final int[] idcs = new int[chosen.size()];
+		for(Integer idx: chosen)
+			idcs[i++] = idx;
+		
+		final KMedoids model = claraSampleModel(X, idcs, s, rand);
+		if(model.getK() != k) // the sample is entirely equal
+			return null;
+		
+		model.fit();
+		final int[] medoids = model.getMedoidIndices();
+		if(medoids.length != k)
+			return null;
+		for(int j = 0; j < k; j++)
+			medoids[j] = idcs[medoids[j]];
+		
+		return new SearchResult(medoids, score(X, medoids, null), 
+			model.didConverge(), model.itersElapsed());
+	}
+	
+	/**
+	 * The unfit model over a single CLARA sample. Its CLARANS neighbor budget
+	 * is resolved from the sample, not the full data, unless one was given.
+	 * @param X
+	 * @param idcs - the sampled record indices, ascending
+	 * @param s - the sample number
+	 * @param rand - the sample's seed
+	 * @return the sample model
+	 */
+	KMedoids claraSampleModel(final double[][] X, final int[] idcs, final int s, final Random rand) {
+		final double[][] sub = new double[idcs.length][];
+		for(int i = 0; i < idcs.length; i++)
+			sub[i] = X[idcs[i]];
+		
+		final KMedoidsParameters planner = new KMedoidsParameters(k)
+			.setMetric(dist_metric)
+			.setAlgorithm(algo)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setInitializationStrategy(init)
+			.setNumLocal(numLocal)
+			.setMaxNeighbor(givenMaxNeighbor)
+			.setFloatDistances(floatDistances)
+			.setSeed(rand)
+			.setVerbose(false);
+		
+		if(0 == s) {
+			final int[] start = new int[k];
+			for(int j = 0; j < k; j++)
+				start[j] = Arrays.binarySearch(idcs, init_centroid_indices[j]);
+			planner.setInitialMedoids(start);
+		}
+		
+		return new KMedoids(new Array2DRowRealMatrix(sub, false), planner);
+	}
+	
+	/**
+	 * Score a set of medoids against the full data in a single linear pass.
+	 * If <tt>costs</tt> is provided, also assigns the {@link #labels} as medoid indices.
+	 * @param X
+	 * @param medoids
+	 * @param costs - the per-record cost, or null
+	 * @return the total cost
+	 */
+	private double score(final double[][] X, final int[] medoids, final double[] costs) {
+		double total = 0.0, d, min;
+		int nearest;
+		
+		for(int o = 0; o < X.length; o++) {
+			nearest = -1;
+			min = Double.POSITIVE_INFINITY;
+			
+			for(int med: medoids) {
+				// a medoid is always nearest to itself
+				d = med == o ? -1.0 : dist_metric.getDistance(X[o], X[med]);
+				if(-1 == nearest || d < min) {
+					min = d;
+					nearest = med;
+				}
+			}
+			
+			min = FastMath.max(min, 0.0);
+			total += min;
+			if(null != costs) {
+				costs[o] = min;
+				labels[o] = nearest;
+			}
+		}
+		
+		return total;
+	}
+	
+	/**
+	 * Runs the independent searches in parallel. Each leaf task 
+	 * handles one search, and writes only its own result slot.
+	 */
+	static class ParallelSearchTask extends RecursiveAction {
+		private static final long serialVersionUID = -3925094413462017655L;
+		final KMedoids model;
+		final double[][] X;
+		final long base;
+		final SearchResult[] results;
+		final int low, high;
+		
+		ParallelSearchTask(KMedoids model, double[][] X, long base, SearchResult[] results, int low, int high) {
+			this.model = model;
+			this.X = X;
+			this.base = base;
+			this.results = results;
+			this.low = low;
+			this.high = high;
+		}
+		
+		@Override
+		protected void compute() {
+			if(high - low <= 1) {
+				results[low] = model.search(X, low, base);
+				return;
+			}
+			
+			int mid = low + (high - low) / 2;
+			invokeAll(new ParallelSearchTask(model, X, base, results, low, mid),
+				new ParallelSearchTask(model, X, base, results, mid, high));
+		}
+		
+		static void doAll(KMedoids model, double[][] X, long base, SearchResult[] results) {
+			GlobalState.ParallelismConf.FJ_THREADPOOL
+				.invoke(new ParallelSearchTask(model, X, base, results, 0, results.length));
+		}
+	}
+	
+	
 	/**
 	 * Some metrics produce entirely equal dist matrices...
 	 */
@@ -288,19 +1020,70 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	}
 	
 	
+	/**
+	 * Assign each record to its closest medoid, splitting the records
+	 * across the fork-join pool if the model is parallel.
+	 * @param medoidIdcs
+	 * @throws IllegalClusterStateException if all distances are equal
+	 * @return the assignments
+	 */
 	private ClusterAssignments assignClosestMedoid(int[] medoidIdcs) {
-		double minDist;
-		boolean all_tied = true;
-		int nearest, rowIdx, colIdx;
 		final int[] assn = new int[m];
 		final double[] costs = new double[m];
-		for(int i = 0; i < m; i++) {
+		
+		boolean all_tied = true, done = false;
+		if(parallel) {
+			try {
+				all_tied = ParallelAssignTask.doAll(this, medoidIdcs, assn, costs);
+				done = true;
+			} catch(RejectedExecutionException r) {
+				warn("parallel medoid assignment failed; falling back to serial");
+			}
+		}
+		
+		if(!done)
+			all_tied = assignRange(medoidIdcs, assn, costs, 0, m);
+		
+		/*
+		 * If all of the distances are equal, we can end up with a -1 idx...
+		 * These are resolved in record order, so the random state is drawn
+		 * upon identically whether or not the assignment ran in parallel.
+		 */
+		for(int i = 0; i < m; i++)
+			if(-1 == assn[i])
+				assn[i] = medoidIdcs[getSeed().nextInt(k)]; // select random nearby
+		
+		
+		/*
+		 * If everything is tied, we need to bail. Shouldn't happen, now
+		 * that we explicitly check earlier on... but we can just label from
+		 * a singular K at this point.
+		 */
+		if(all_tied) {
+			throw new IllegalClusterStateException("entirely "
+				+ "stochastic process: all distances are equal");
+		}
+		
+		return new ClusterAssignments(assn, costs);
+	}
+	
+	/**
+	 * Assign records <tt>[low, high)</tt> to their closest medoid. Ties go
+	 * to the first medoid in <tt>medoidIdcs</tt>, and records equidistant
+	 * from none (i.e., all distances are NaN) are assigned -1.
+	 * @return true if every record in the range is a medoid
+	 */
+	private boolean assignRange(int[] medoidIdcs, int[] assn, double[] costs, int low, int high) {
+		double minDist, d;
+		boolean all_tied = true;
+		int nearest;
+		for(int i = low; i < high; i++) {
 			boolean is_a_medoid = false;
 			minDist = Double.POSITIVE_INFINITY;
 			
 			/*
 			 * The dist_mat is already computed. We just need to traverse
-			 * the upper triangular matrix and identify which corresponding
+			 * the condensed matrix and identify which corresponding
 			 * minimum distance per record.
 			 */
 			nearest = -1;
@@ -309,45 +1092,65 @@ final public class KMedoids extends AbstractCentroidClusterer {
 				// Corner case: i is a medoid
 				if(i == medoid) {
 					nearest = medoid;
-					minDist = dist_mat[i][i];
+					minDist = 0.0;
 					is_a_medoid = true;
 					break;
 				}
 				
-				rowIdx = FastMath.min(i, medoid);
-				colIdx = FastMath.max(i, medoid);
-				
-				if(dist_mat[rowIdx][colIdx] < minDist) {
-					minDist = dist_mat[rowIdx][colIdx];
+				d = dist(i, medoid);
+				if(d < minDist) {
+					minDist = d;
 					nearest = medoid;
 				}
 			}
 			
-			/*
-			 * If all of the distances are equal, we can end up with a -1 idx...
-			 */
-			if(-1 == nearest)
-				nearest = medoidIdcs[getSeed().nextInt(k)]; // select random nearby
 			if(!is_a_medoid)
 				all_tied = false;
 			
-			
 			assn[i]	 = nearest;
 			costs[i] = minDist; 
 		}
 		
+		return all_tied;
+	}
+	
+	/**
+	 * Assigns ranges of records to their closest medoids in parallel. 
+	 * Each record's assignment is independent, so the results are 
+	 * identical to the serial assignment.
+	 */
+	static class ParallelAssignTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 5395286404196046297L;
+		final KMedoids model;
+		final int[] medoidIdcs, assn;
+		final double[] costs;
+		final int low, high;
+		
+		ParallelAssignTask(KMedoids model, int[] medoidIdcs, int[] assn, double[] costs, int low, int high) {
+			this.model = model;
+			this.medoidIdcs = medoidIdcs;
+			this.assn = assn;
+			this.costs = costs;
+			this.low = low;
+			this.high = high;
+		}
 		
-		/*
-		 * If everything is tied, we need to bail. Shouldn't happen, now
-		 * that we explicitly check earlier on... but we can just label from
-		 * a singular K at this point.
-		 */
-		if(all_tied) {
-			throw new IllegalClusterStateException("entirely "
-				+ "stochastic process: all distances are equal");
+		@Override
+		protected Boolean compute() {
+			if(high - low <= MIN_ASSIGN_TASK_RECORDS)
+				return model.assignRange(medoidIdcs, assn, costs, low, high);
+			
+			int mid = low + (high - low) / 2;
+			ParallelAssignTask left = new ParallelAssignTask(model, medoidIdcs, assn, costs, low, mid);
+			left.fork();
+			boolean right = new ParallelAssignTask(model, medoidIdcs, assn, costs, mid, high).compute();
+			return left.join() && right;
 		}
 		
-		return new ClusterAssignments(assn, costs);
+		static boolean doAll(KMedoids model, int[] medoidIdcs, int[] assn, double[] costs) {
+			return GlobalState.ParallelismConf.FJ_THREADPOOL
+				.invoke(new ParallelAssignTask(model, medoidIdcs, assn, costs, 0, assn.length));
+		}
 	}
 	
 	
@@ -364,7 +1167,7 @@ final public class KMedoids extends AbstractCentroidClusterer {
 	private class MedoidReassignmentHandler {
 		final ClusterAssignments init_clusters;
 		final ArrayList<double[]> centers = new ArrayList<double[]>(k);
-		final int[] reassignedMedoidIdcs  = new int[k];
+		final int[] reassignedMedoidIdcs;
 		
 		// Holds the costs of each cluster in order
 		final ClusterAssignments new_clusters;
@@ -375,86 +1178,187 @@ final public class KMedoids extends AbstractCentroidClusterer {
 		 */
 		MedoidReassignmentHandler(ClusterAssignments assn) {
 			this.init_clusters = assn;
+			this.reassignedMedoidIdcs = new int[assn.size()];
 			medoidAssn();
 			this.new_clusters = assignClosestMedoid(reassignedMedoidIdcs);
 		}
 		
 		void medoidAssn() {
-			ArrayList<Integer> members;
+			final int[] members = init_clusters.members;
 			
-			int i = 0;
-			for(Map.Entry<Integer, ArrayList<Integer>> pair: init_clusters.entrySet()) {
-				members = pair.getValue();
+			// The cost of each candidate, as ordered in members
+			final double[] candidateCosts = new double[members.length];
+			boolean done = false;
+			if(parallel) {
+				try {
+					ParallelCandidateTask.doAll(KMedoids.this, init_clusters, candidateCosts);
+					done = true;
+				} catch(RejectedExecutionException r) {
+					warn("parallel medoid reassignment failed; falling back to serial");
+				}
+			}
+			
+			if(!done)
+				candidateCostRange(init_clusters, candidateCosts, 0, members.length);
+			
+			// Select the least cost candidates in member order, so ties are deterministic
+			for(int c = 0; c < init_clusters.size(); c++) {
+				final int from = init_clusters.offsets[c], to = init_clusters.offsets[c + 1];
 				
 				double medoidCost, minCost = Double.POSITIVE_INFINITY;
-				int rowIdx, colIdx, bestMedoid = 0; // start at 0, not -1 in case of all ties...
-				for(int a: members) { // check cost if A is the medoid...
-					
-					medoidCost = 0.0;
-					for(int b: members) {
-						if(a == b)
-							continue;
-						
-						rowIdx = FastMath.min(a, b);
-						colIdx = FastMath.max(a, b);
-						
-						medoidCost += dist_mat[rowIdx][colIdx];
-					}
+				int bestMedoid = 0; // start at 0, not -1 in case of all ties...
+				for(int a = from; a < to; a++) { // check cost if A is the medoid...
+					medoidCost = candidateCosts[a];
 
 					if(medoidCost < minCost) {
 						minCost = medoidCost;
-						bestMedoid = a;
+						bestMedoid = members[a];
 					}
 				}
 				
-				this.reassignedMedoidIdcs[i] = bestMedoid;
+				this.reassignedMedoidIdcs[c] = bestMedoid;
 				this.centers.add(data.getRow(bestMedoid));
-				i++;
 			}
 		}
 	}
 	
+	/**
+	 * Compute the cost, were it the medoid, of each candidate in 
+	 * <tt>members[low]</tt> thru <tt>members[high - 1]</tt>: the sum of 
+	 * its distances to the other members of its cluster
+	 * @param assn
+	 * @param candidateCosts
+	 * @param low
+	 * @param high
+	 */
+	private void candidateCostRange(ClusterAssignments assn, double[] candidateCosts, int low, int high) {
+		final int[] members = assn.members, offsets = assn.offsets;
+		
+		// Find the cluster of the first candidate (clusters are never empty)
+		int c = Arrays.binarySearch(offsets, low);
+		c = c < 0 ? -c - 2 : c;
+		
+		double medoidCost;
+		for(int a = low; a < high; a++) {
+			while(offsets[c + 1] <= a)
+				c++;
+			
+			medoidCost = 0.0;
+			for(int b = offsets[c]; b < offsets[c + 1]; b++)
+				if(a != b)
+					medoidCost += dist(members[a], members[b]);
+			
+			candidateCosts[a] = medoidCost;
+		}
+	}
+	
+	/**
+	 * Computes the medoid candidates' costs in parallel. A candidate's cost
+	 * is independent of the others', so the costs are identical to the serial
+	 * computation. Tasks split on the number of distances they compute, since the
+	 * candidates of larger clusters are more expensive.
+	 */
+	static class ParallelCandidateTask extends RecursiveAction {
+		private static final long serialVersionUID = -1870356702549581380L;
+		final KMedoids model;
+		final ClusterAssignments assn;
+		final double[] candidateCosts;
+		final int low, high;
+		
+		ParallelCandidateTask(KMedoids model, ClusterAssignments assn, double[] candidateCosts, int low, int high) {
+			this.model = model;
+			this.assn = assn;
+			this.candidateCosts = candidateCosts;
+			this.low = low;
+			this.high = high;
+		}
+		
+		/** An upper bound on the distances computed for candidates [low, high) */
+		private long work() {
+			final int[] offsets = assn.offsets;
+			int c = Arrays.binarySearch(offsets, low);
+			c = c < 0 ? -c - 2 : c;
+			
+			long work = 0;
+			for(int a = low; a < high; a++) {
+				while(offsets[c + 1] <= a)
+					c++;
+				work += offsets[c + 1] - offsets[c];
+			}
+			
+			return work;
+		}
+		
+		@Override
+		protected void compute() {
+			if(high - low < 2 || work() <= MIN_CANDIDATE_TASK_DISTANCES) {
+				model.candidateCostRange(assn, candidateCosts, low, high);
+				return;
+			}
+			
+			int mid = low + (high - low) / 2;
+			invokeAll(new ParallelCandidateTask(model, assn, candidateCosts, low, mid),
+				new ParallelCandidateTask(model, assn, candidateCosts, mid, high));
+		}
+		
+		static void doAll(KMedoids model, ClusterAssignments assn, double[] candidateCosts) {
+			GlobalState.ParallelismConf.FJ_THREADPOOL
+				.invoke(new ParallelCandidateTask(model, assn, candidateCosts, 0, candidateCosts.length));
+		}
+	}
+	
 	/**
 	 * Simple container for handling cluster assignments. Given
 	 * an array of length m of medoid assignments, and an array of length m
 	 * of distances to the medoid, organize the new clusters and compute the total
-	 * cost of the new system.
+	 * cost of the new system. The clusters are ordered by ascending medoid index, and 
+	 * the members of cluster <tt>c</tt> are held, in ascending order, in 
+	 * <tt>members[offsets[c]]</tt> thru <tt>members[offsets[c + 1] - 1]</tt>.
 	 * @author Taylor G Smith
 	 */
-	private class ClusterAssignments extends TreeMap<Integer, ArrayList<Integer>> {
-		private static final long serialVersionUID = -7488380079772496168L;
+	private static class ClusterAssignments {
 		final int[] assn;
-		TreeMap<Integer, Double> costs; // maps medoid idx to cluster cost
+		final double[] costs; // each record's cost
+		final int[] medoids;
+		final int[] offsets;
+		final int[] members;
 		double total_cst;
 		
 		ClusterAssignments(int[] assn, double[] costs) {
-			super();
-			
 			// should be equal in length to costs arg
 			this.assn = assn;
-			this.costs = new TreeMap<>();
+			this.costs = costs;
+			
+			// Ascending, distinct medoids
+			final int[] distinct = VecUtils.copy(assn);
+			Arrays.sort(distinct);
+			int n = 0;
+			for(int i = 0; i < distinct.length; i++)
+				if(0 == i || distinct[i] != distinct[i - 1])
+					distinct[n++] = distinct[i];
+			this.medoids = Arrays.copyOf(distinct, n);
 			
-			int medoid;
-			double cost;
-			ArrayList<Integer> ref;
+			// Bucket the members by medoid, preserving record order
+			final int[] slot = new int[assn.length];
+			this.offsets = new int[n + 1];
 			for(int i = 0; i < assn.length; i++) {
-				medoid = assn[i];
-				cost = costs[i];
-				
-				ref = get(medoid); // helps avoid double lookup later
-				if(null == ref) { // not here.
-					ref =  new ArrayList<Integer>();
-					ref.add(i);
-					put(medoid, ref);
-					this.costs.put(medoid, cost);
-				} else {
-					ref.add(i);
-					double d = this.costs.get(medoid);
-					this.costs.put(medoid, d + cost);
-				}
-				
-				total_cst += cost;
+				slot[i] = Arrays.binarySearch(medoids, assn[i]);
+				offsets[slot[i] + 1]++;
+				total_cst += costs[i];
 			}
+			
+			for(int c = 0; c < n; c++)
+				offsets[c + 1] += offsets[c];
+			
+			final int[] next = Arrays.copyOf(offsets, n);
+			this.members = new int[assn.length];
+			for(int i = 0; i < assn.length; i++)
+				members[next[slot[i]]++] = i;
+		}
+		
+		/** The number of clusters */
+		int size() {
+			return medoids.length;
 		}
 	}
 
@@ -464,6 +1368,14 @@ final public class KMedoids extends AbstractCentroidClusterer {
 		return Algo.KMEDOIDS;
 	}
 	
+	/** Also releases the distance matrix, which is only needed while fitting */
+	@Override
+	public void sayBye(final LogTimer timer) {
+		dist_mat = null;
+		dist_mat32 = null;
+		super.sayBye(timer);
+	}
+	
 	@Override
 	protected Object[] getModelFitSummaryHeaders() {
 		return new Object[]{
@@ -484,14 +1396,75 @@ final public class KMedoids extends AbstractCentroidClusterer {
 		final LabelEncoder encoder = new LabelEncoder(labels).fit();
 		labels = encoder.getEncodedLabels();
 		
-		int i = 0;
 		centroids = new ArrayList<>();
 		int[] classes = encoder.getClasses();
-		for(int claz: classes) {
-			centroids.add(data.getRow(claz)); // an index, not a counter 0 thru k
-			wss[i++] = med_to_wss.get(claz);
+		for(int i = 0; i < classes.length; i++) {
+			centroids.add(data.getRow(classes[i])); // an index, not a counter 0 thru k
+			wss[i] = 0.0;
 		}
+		
+		for(int o = 0; o < m; o++)
+			wss[labels[o]] += costs[o];
+		costs = null;
+		
+		// medoids in label order
+		medoid_indices = VecUtils.copy(classes);
+	}
+	
+	/**
+	 * Returns the record indices of the medoids, where the index
+	 * at position <tt>i</tt> is the medoid for the cluster labeled <tt>i</tt>
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the medoid indices
+	 */
+	public int[] getMedoidIndices() {
+		synchronized(fitLock) {
+			getLabels(); // throws the MNF exception if not fit
+			return VecUtils.copy(medoid_indices);
+		}
+	}
+	
+	/** {@inheritDoc} */
+	@Override
+	public KMedoids refit(final RealMatrix appended) {
+		final Array2DRowRealMatrix combined = appendRows(appended);
+		
+		// Appended rows sit beneath the old, so the medoid indices still apply
+		return new KMedoids(combined, new KMedoidsParameters(k)
+			.setMaxIter(maxIter)
+			.setConvergenceCriteria(tolerance)
+			.setMetric(dist_metric)
+			.setVerbose(getVerbose())
+			.setSeed(getSeed())
+			.setInitializationStrategy(init)
+			.setInitialMedoids(getMedoidIndices())
+			.setAlgorithm(algo)
+			.setClaraSamples(givenClaraSamples)
+			.setClaraSampleSize(givenClaraSampleSize)
+			.setNumLocal(numLocal)
+			.setMaxNeighbor(givenMaxNeighbor)
+			.setFloatDistances(floatDistances)
+			.setForceParallel(parallel)).fit();
+	}
+	
+	/**
+	 * Get the algorithm used to search for the medoids
+	 * @return the search algorithm
+	 */
+	public KMedoidsAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
+	/** The number of CLARA samples as resolved, or zero if not sampling */
+	int getClaraSamples() {
+		return claraSamples;
+	}
+	
+	/** The CLARANS neighbor budget as resolved */
+	int getMaxNeighbor() {
+		return maxNeighbor;
 	}
 	
+	@Override final protected boolean centroidsMustBeRecords() { return true; }
 	@Override final protected GeometricallySeparable defMetric() { return KMedoids.DEF_DIST; }
 }
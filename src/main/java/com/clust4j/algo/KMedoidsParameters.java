@@ -16,18 +16,27 @@
 
 package com.clust4j.algo;
 
+import java.util.Collection;
 import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.algo.KMedoids.KMedoidsAlgorithm;
 import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.utils.VecUtils;
 
 public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 	private static final long serialVersionUID = -3288579217568576647L;
 	
 	private InitializationStrategy strat = KMedoids.DEF_INIT;
 	private int maxIter = KMedoids.DEF_MAX_ITER;
+	private KMedoidsAlgorithm algo = KMedoids.DEF_ALGO;
+	private int claraSamples = KMedoids.DEF_CLARA_SAMPLES;
+	private int claraSampleSize = KMedoids.DEF_CLARA_SAMPLE_SIZE;
+	private int numLocal = KMedoids.DEF_NUM_LOCAL;
+	private int maxNeighbor = KMedoids.DEF_MAX_NEIGHBOR;
+	private boolean floatDistances = KMedoids.DEF_FLOAT_DISTANCES;
 	
 	public KMedoidsParameters() {
 		this.metric = KMedoids.DEF_DIST;
@@ -52,9 +61,105 @@ public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 			.setVerbose(verbose)
 			.setSeed(seed)
 			.setInitializationStrategy(strat)
+			.setInitialCentroids(initCentroids)
+			.setInitialMedoids(initIndices)
+			.setAlgorithm(algo)
+			.setClaraSamples(claraSamples)
+			.setClaraSampleSize(claraSampleSize)
+			.setNumLocal(numLocal)
+			.setMaxNeighbor(maxNeighbor)
+			.setFloatDistances(floatDistances)
 			.setForceParallel(parallel);
 	}
 	
+	public KMedoidsAlgorithm getAlgorithm() {
+		return algo;
+	}
+	
+	public KMedoidsParameters setAlgorithm(final KMedoidsAlgorithm algo) {
+		this.algo = algo;
+		return this;
+	}
+	
+	public int getClaraSamples() {
+		return claraSamples;
+	}
+	
+	/**
+	 * Enables CLARA (clustering large applications) mode when positive. Rather than
+	 * computing the distance matrix over all records, the medoids are searched for
+	 * in this many random samples, each sample's medoids are scored against the
+	 * full data in a linear pass, and the best are kept. Zero disables sampling.
+	 * @param samples
+	 * @return this
+	 */
+	public KMedoidsParameters setClaraSamples(final int samples) {
+		this.claraSamples = samples;
+		return this;
+	}
+	
+	public int getClaraSampleSize() {
+		return claraSampleSize;
+	}
+	
+	/**
+	 * The number of records in each CLARA sample. If zero, 
+	 * defaults to <tt>40 + 2k</tt>, as suggested by Kaufman and Rousseeuw.
+	 * @param size
+	 * @return this
+	 */
+	public KMedoidsParameters setClaraSampleSize(final int size) {
+		this.claraSampleSize = size;
+		return this;
+	}
+	
+	public int getNumLocal() {
+		return numLocal;
+	}
+	
+	/**
+	 * The number of local minima {@link KMedoidsAlgorithm#CLARANS} searches
+	 * for, each from a different random start
+	 * @param numLocal
+	 * @return this
+	 */
+	public KMedoidsParameters setNumLocal(final int numLocal) {
+		this.numLocal = numLocal;
+		return this;
+	}
+	
+	public int getMaxNeighbor() {
+		return maxNeighbor;
+	}
+	
+	/**
+	 * The number of consecutive random neighbors (swaps) {@link KMedoidsAlgorithm#CLARANS}
+	 * examines without improvement before declaring a local minimum. If zero, defaults
+	 * to 1.25% of <tt>k(m - k)</tt>, but no fewer than 250, as suggested by Ng and Han.
+	 * @param maxNeighbor
+	 * @return this
+	 */
+	public KMedoidsParameters setMaxNeighbor(final int maxNeighbor) {
+		this.maxNeighbor = maxNeighbor;
+		return this;
+	}
+	
+	public boolean getFloatDistances() {
+		return floatDistances;
+	}
+	
+	/**
+	 * Whether to store the distance matrix in single precision. This halves
+	 * its memory footprint, at the cost of distances accurate only to roughly
+	 * seven significant digits.
+	 * @param floatDistances
+	 * @return this
+	 */
+	public KMedoidsParameters setFloatDistances(final boolean floatDistances) {
+		this.floatDistances = floatDistances;
+		return this;
+	}
+	
 	@Override
 	public InitializationStrategy getInitializationStrategy() {
 		return strat;
@@ -94,6 +199,28 @@ public class KMedoidsParameters extends CentroidClustererParameters<KMedoids> {
 		return this;
 	}
 	
+	/**
+	 * Warm-start the model from previously fit centroids (e.g., from
+	 * {@link AbstractCentroidClusterer#getCentroids()}) rather than seeding
+	 * via the {@link InitializationStrategy}. Pass null to revert to a cold start.
+	 */
+	@Override
+	public KMedoidsParameters setInitialCentroids(final Collection<double[]> centroids) {
+		this.initCentroids = copyCentroids(centroids);
+		return this;
+	}
+	
+	/**
+	 * Warm-start the model from the record indices of previously 
+	 * identified medoids (e.g., from {@link KMedoids#getMedoidIndices()}).
+	 * Takes precedence over {@link #setInitialCentroids(Collection)}. 
+	 * Pass null to revert to a cold start.
+	 */
+	public KMedoidsParameters setInitialMedoids(final int[] medoids) {
+		this.initIndices = null == medoids ? null : VecUtils.copy(medoids);
+		return this;
+	}
+	
 	@Override
 	public KMedoidsParameters setSeed(final Random seed) {
 		this.seed = seed;
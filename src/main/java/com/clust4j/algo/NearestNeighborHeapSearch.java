@@ -933,6 +933,14 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 	
 	// Tested: passing
 	public static int findNodeSplitDim(double[][] data, int[] idcs) {
+		return findNodeSplitDim(data, idcs, 0, idcs.length);
+	}
+	
+	/**
+	 * Find the split dimension of the node holding the
+	 * indices in the range [idx_start, idx_end)
+	 */
+	static int findNodeSplitDim(double[][] data, int[] idcs, int idx_start, int idx_end) {
 		// Gets the difference between the vector of column
 		// maxes and the vector of column mins, then finds the
 		// arg max.
@@ -946,7 +954,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		double diff, maxDiff = Double.NEGATIVE_INFINITY;
 		
 		// Optimized to one KxN pass
-		for(int i = 0; i < idcs.length; i++) {
+		for(int i = idx_start; i < idx_end; i++) {
 			idx = idcs[i];
 			current = data[idx];
 			
@@ -957,7 +965,7 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 					minVec[j] = current[j];
 				
 				// If the last iter, we can calc difference right now
-				if(i == idcs.length-1) {
+				if(i == idx_end-1) {
 					diff = maxVec[j] - minVec[j];
 					if(diff > maxDiff) {
 						maxDiff = diff;
@@ -1056,9 +1064,19 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 	public static void partitionNodeIndices(double[][] data,
 			int[] nodeIndices, int splitDim, int splitIndex,
 			int nFeatures, int nPoints) {
-			 
-		int left = 0;
-		int right = nPoints - 1;
+		partitionNodeSlice(data, nodeIndices, 0, splitDim, splitIndex, nPoints);
+	}
+	
+	/**
+	 * Partition the nPoints indices beginning at idx_start 
+	 * about the (idx_start + splitIndex)th along splitDim
+	 */
+	static void partitionNodeSlice(double[][] data, int[] nodeIndices, 
+			int idx_start, int splitDim, int splitIndex, int nPoints) {
+		
+		int left = idx_start;
+		int right = idx_start + nPoints - 1;
+		splitIndex += idx_start;
 		double d1, d2;
 		
 		while(true) {
@@ -1113,9 +1131,10 @@ abstract class NearestNeighborHeapSearch implements java.io.Serializable {
 		} else {
 			// split node and recursively build child nodes
 			node_data[i_node].is_leaf = false;
-			i_max = findNodeSplitDim(data_arr, idx_array);
-			partitionNodeIndices(data_arr, idx_array, 
-					i_max, n_mid, N_FEATURES, n_points);
+			// Only the node's own slice of the indices is split
+			i_max = findNodeSplitDim(data_arr, idx_array, idx_start, idx_end);
+			partitionNodeSlice(data_arr, idx_array, idx_start,
+					i_max, n_mid, n_points);
 			
 			recursiveBuild(2 * i_node + 1, idx_start, idx_start + n_mid);
 			recursiveBuild(2 * i_node + 2, idx_start + n_mid, idx_end);
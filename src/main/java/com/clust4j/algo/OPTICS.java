@@ -0,0 +1,973 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import com.clust4j.NamedEntity;
+import com.clust4j.algo.DBSCAN.CoreIndex;
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.log.LogTimer;
+import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.metrics.pairwise.SimilarityMetric;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+
+
+/**
+ * <a href="https://en.wikipedia.org/wiki/OPTICS_algorithm">OPTICS</a> (Ordering Points
+ * To Identify the Clustering Structure) is a density-based algorithm proposed by Mihael
+ * Ankerst, Markus M. Breunig, Hans-Peter Kriegel and Jorg Sander in 1999. Rather than
+ * a single clustering, it orders the records so that those closest in density are
+ * adjacent, and records the reachability distance of each. {@link DBSCAN} clusterings
+ * for any eps up to {@link #getMaxEps()} can then be extracted from the ordering in
+ * linear time, as can clusters of varying density via the steepness (xi) of the
+ * reachability plot, so a sweep over either costs a single neighborhood search.
+ *
+ * <p>
+ * As in {@link DBSCAN}, a record is core at eps if at least <tt>minPts</tt>
+ * <i>other</i> records lie within eps of it.
+ *
+ * @see <a href="http://www.dbs.ifi.lmu.de/Publikationen/Papers/OPTICS.pdf">OPTICS:
+ * Ordering Points To Identify the Clustering Structure</a>
+ * @see {@link AbstractDensityClusterer}
+ * @author Taylor G Smith &lt;tgsmith61591@gmail.com&gt;, adapted from sklearn implementation
+ */
+final public class OPTICS extends AbstractDBSCAN {
+	private static final long serialVersionUID = -1879153460208153637L;
+	final public static double DEF_MAX_EPS = Double.POSITIVE_INFINITY;
+	final public static ClusterMethod DEF_CLUSTER_METHOD = ClusterMethod.XI;
+	final public static double DEF_XI = 0.05;
+	final public static int DEF_MIN_CLUST_SIZE = 5;
+
+	final private int m;
+	final private double maxEps;
+	final private ClusterMethod clusterMethod;
+	final private double xi;
+	final private int minClusterSize;
+
+	// Race conditions exist in retrieving any one of these...
+	private volatile int[] labels = null;
+	private volatile int[] ordering = null;
+	private volatile double[] reachability = null;
+	private volatile double[] coreDistances = null;
+	private volatile int[] predecessors = null;
+	/** Each record's neighbors nearer than its core distance, and their distances */
+	private volatile int[][] neighborhoods = null;
+	private volatile double[][] neighborDistances = null;
+	private volatile int numClusters;
+	private volatile int numNoisey;
+	/** Volatile because it is built lazily on the first prediction */
+	private volatile CoreIndex coreIndex = null;
+
+
+	/**
+	 * How the labels of the fitted model are extracted from the ordering
+	 * @author Taylor G Smith
+	 */
+	public static enum ClusterMethod implements NamedEntity, java.io.Serializable {
+		/**
+		 * Clusters are regions of the reachability plot bounded by a steep
+		 * descent and a steep ascent, where each step changes the reachability
+		 * by at least a factor of xi. Finds clusters of varying density.
+		 */
+		XI {
+			@Override public String getName() {
+				return "Xi";
+			}
+		},
+
+		/**
+		 * The {@link DBSCAN} clustering at a single eps
+		 */
+		DBSCAN {
+			@Override public String getName() {
+				return "DBSCAN";
+			}
+		};
+	}
+
+
+
+	/**
+	 * Constructs an instance of OPTICS from the default values
+	 * @param data
+	 */
+	protected OPTICS(final RealMatrix data) {
+		this(data, new OPTICSParameters());
+	}
+
+	/**
+	 * Constructs an instance of OPTICS from the provided builder
+	 * @param builder
+	 * @param data
+	 */
+	protected OPTICS(final RealMatrix data, final OPTICSParameters planner) {
+		super(data, planner);
+		this.m = data.getRowDimension();
+		this.maxEps = planner.getMaxEps();
+		this.eps = planner.getEps();
+		this.clusterMethod = planner.getClusterMethod();
+		this.xi = planner.getXi();
+		this.minClusterSize = planner.getMinClusterSize();
+
+		// Error handle...
+		if(Double.isNaN(maxEps) || maxEps <= 0.0)
+			error(new IllegalArgumentException("max eps must be greater than 0.0"));
+		if(null == clusterMethod)
+			error(new IllegalArgumentException("cluster method cannot be null"));
+		if(ClusterMethod.DBSCAN.equals(clusterMethod))
+			validateEps(eps);
+		if(!(xi > 0.0 && xi < 1.0))
+			error(new IllegalArgumentException("xi must be between 0.0 and 1.0"));
+		if(minClusterSize < 1)
+			error(new IllegalArgumentException("min cluster size must be greater than 0"));
+
+		if(!isValidMetric(this.dist_metric)) {
+			warn(this.dist_metric.getName() + " is not valid for "+getName()+". "
+				+ "Falling back to default Euclidean dist");
+			setSeparabilityMetric(DEF_DIST);
+		}
+
+		logModelSummary();
+	}
+
+	private void validateEps(final double eps) {
+		if(!(eps > 0.0 && eps <= maxEps))
+			error(new IllegalArgumentException("eps must be greater than 0.0 "
+				+ "and no greater than max eps (" + maxEps + ")"));
+	}
+
+	@Override final public boolean isValidMetric(GeometricallySeparable geo) {
+		return !(geo instanceof SimilarityMetric);
+	}
+
+	@Override
+	final protected ModelSummary modelSummary() {
+		return new ModelSummary(new Object[]{
+				"Num Rows","Num Cols","Metric","Max Eps.","Min Pts.","Method",
+				"Epsilon","Xi","Min Clust. Size","Allow Par."
+			}, new Object[]{
+				m,data.getColumnDimension(),getSeparabilityMetric(),
+				maxEps, minPts, clusterMethod.getName(),
+				eps, xi, minClusterSize,
+				parallel
+			});
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(o instanceof OPTICS) {
+			OPTICS op = (OPTICS)o;
+
+			/*
+			 * This is a litmus test of
+			 * whether the model has been fit yet.
+			 */
+			if(null == this.labels ^ null == op.labels)
+				return false;
+
+			return super.equals(o) // tests for UUID
+				&& MatUtils.equalsExactly(this.data.getDataRef(), op.data.getDataRef())
+				&& this.maxEps == op.maxEps
+				&& this.clusterMethod.equals(op.clusterMethod)
+				&& this.eps == op.eps
+				&& this.xi == op.xi
+				&& this.minClusterSize == op.minClusterSize;
+		}
+
+		return false;
+	}
+
+	public double getMaxEps() {
+		return maxEps;
+	}
+
+	public double getEps() {
+		return eps;
+	}
+
+	public ClusterMethod getClusterMethod() {
+		return clusterMethod;
+	}
+
+	public double getXi() {
+		return xi;
+	}
+
+	public int getMinClusterSize() {
+		return minClusterSize;
+	}
+
+	@Override
+	public int[] getLabels() {
+		return super.handleLabelCopy(labels);
+	}
+
+	/**
+	 * The records in the order in which they were reached
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the ordering
+	 */
+	public int[] getOrdering() {
+		if(null == ordering)
+			error(new ModelNotFitException("model has not been fit yet"));
+		return VecUtils.copy(ordering);
+	}
+
+	/**
+	 * The reachability distance of each record, in record order: the least
+	 * distance at which it is density-reachable from a record earlier in the
+	 * ordering, or infinity for the first record of each ordering run
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the reachability distances
+	 */
+	public double[] getReachability() {
+		if(null == reachability)
+			error(new ModelNotFitException("model has not been fit yet"));
+		return VecUtils.copy(reachability);
+	}
+
+	/**
+	 * The least eps at which each record is core, or infinity
+	 * if it is not core at {@link #getMaxEps()}
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the core distances
+	 */
+	public double[] getCoreDistances() {
+		if(null == coreDistances)
+			error(new ModelNotFitException("model has not been fit yet"));
+		return VecUtils.copy(coreDistances);
+	}
+
+	/**
+	 * The record from which each record was reached, or -1 for
+	 * the first record of each ordering run
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @return a copy of the predecessors
+	 */
+	public int[] getPredecessors() {
+		if(null == predecessors)
+			error(new ModelNotFitException("model has not been fit yet"));
+		return VecUtils.copy(predecessors);
+	}
+
+	@Override
+	public String getName() {
+		return "OPTICS";
+	}
+
+	@Override
+	protected OPTICS fit() {
+		synchronized(fitLock) {
+
+			if(null!=labels) // Then we've already fit this...
+				return this;
+
+
+			final LogTimer timer = new LogTimer();
+			if(Double.isInfinite(maxEps))
+				warn("max eps is infinite; the fit searches every pair of records "
+					+ "and holds all of their distances. Set a finite max eps "
+					+ "to bound its time and memory");
+
+			// Fit the nearest neighbor model once, at the max eps
+			final LogTimer rnTimer = new LogTimer();
+			final RadiusNeighbors rnModel = new RadiusNeighbors(data,
+				new RadiusNeighborsParameters(maxEps)
+					.setSeed(getSeed())
+					.setMetric(getSeparabilityMetric())
+					.setForceParallel(parallel)
+					.setVerbose(false))
+				.fit();
+
+			info("fit RadiusNeighbors model in " + rnTimer.toString());
+			final Neighborhood neighborhood = rnModel.getNeighbors();
+			final int[][] neighborhoods = neighborhood.getIndices();
+			final double[][] neighborDistances = neighborhood.getDistances();
+
+
+			// The core distance is that of the minPts-th nearest other record
+			final LogTimer orderTimer = new LogTimer();
+			coreDistances = new double[m];
+			int numCorePts = 0;
+			double[] sorted;
+			for(int i = 0; i < m; i++) {
+				if(neighborhoods[i].length < minPts) {
+					coreDistances[i] = Double.POSITIVE_INFINITY;
+					continue;
+				}
+
+				sorted = VecUtils.copy(neighborDistances[i]);
+				Arrays.sort(sorted);
+				coreDistances[i] = sorted[minPts - 1];
+				numCorePts++;
+			}
+
+			info(numCorePts + " core point"+(numCorePts!=1?"s":"")+" found at max eps");
+
+
+			// Order the records
+			reachability = VecUtils.rep(Double.POSITIVE_INFINITY, m);
+			predecessors = VecUtils.repInt(-1, m);
+			ordering = order(neighborhoods, neighborDistances, coreDistances, reachability, predecessors);
+			info("computed reachability ordering in " + orderTimer.toString());
+
+			// Only the neighbors nearer than its core distance can make a record a
+			// border record at any eps, so fewer than minPts are kept for each
+			retainBorderNeighbors(neighborhoods, neighborDistances, coreDistances);
+			this.neighborhoods = neighborhoods;
+			this.neighborDistances = neighborDistances;
+
+
+			// Extract the labels
+			final LogTimer labelTimer = new LogTimer();
+			labels = ClusterMethod.DBSCAN.equals(clusterMethod) ?
+				dbscanLabels(eps) : xiLabels(xi, minClusterSize);
+			info("extracted " + clusterMethod.getName() + " clusters in " + labelTimer.toString());
+
+
+			// Count clusters and noise
+			numNoisey = 0;
+			numClusters = 0;
+			for(int lab: labels) {
+				if(lab == NOISE_CLASS)
+					numNoisey++;
+				else
+					numClusters = Math.max(numClusters, lab + 1);
+			}
+
+			info(numClusters+" cluster"+(numClusters!=1?"s":"")+
+				" identified, "+numNoisey+" record"+(numNoisey!=1?"s":"")+
+					" classified noise");
+
+
+			// Summarize the labels, the noise first
+			final int[] counts = new int[numClusters + 1];
+			for(int lab: labels)
+				counts[lab + 1]++;
+			for(int lab = NOISE_CLASS; lab < numClusters; lab++) {
+				if(0 == counts[lab + 1])
+					continue;
+
+				fitSummary.add(new Object[]{
+					lab + (NOISE_CLASS == lab ? " (noise)" : ""),
+					counts[lab + 1],
+					(double)counts[lab + 1] / (double)m,
+					timer.wallTime()
+				});
+			}
+
+			sayBye(timer);
+			return this;
+		}
+
+	}// End train
+
+	/**
+	 * Drop, in place, each record's neighbors that are no nearer than its
+	 * core distance. A record is a border record at eps only if it is not
+	 * core, i.e., eps is less than its core distance, so only the neighbors
+	 * nearer than that can border it on a core record within eps.
+	 * @param neighborhoods - each record's neighbors within max eps
+	 * @param distances - the distance to each neighbor
+	 * @param core - the core distance of each record
+	 */
+	static void retainBorderNeighbors(final int[][] neighborhoods,
+			final double[][] distances, final double[] core) {
+		int count;
+		int[] idcs;
+		double[] dists;
+		for(int i = 0; i < core.length; i++) {
+			count = 0;
+			for(double d: distances[i])
+				if(d < core[i])
+					count++;
+			if(count == distances[i].length)
+				continue;
+
+			idcs = new int[count];
+			dists = new double[count];
+			for(int k = 0, j = 0; k < distances[i].length; k++) {
+				if(distances[i][k] < core[i]) {
+					idcs[j] = neighborhoods[i][k];
+					dists[j++] = distances[i][k];
+				}
+			}
+
+			neighborhoods[i] = idcs;
+			distances[i] = dists;
+		}
+	}
+
+	/**
+	 * Order the records, always expanding next the unprocessed record of least
+	 * reachability (the least such, if tied), and starting a new run from the
+	 * least unprocessed record whenever none is reachable.
+	 * @param neighborhoods - each record's neighbors within max eps
+	 * @param distances - the distance to each neighbor
+	 * @param core - the core distance of each record
+	 * @param reach - the reachability distances, initialized to infinity, are written here
+	 * @param pred - the predecessors, initialized to -1, are written here
+	 * @return the ordering
+	 */
+	static int[] order(final int[][] neighborhoods, final double[][] distances,
+			final double[] core, final double[] reach, final int[] pred) {
+		final int m = core.length;
+		final int[] ordering = new int[m];
+		final boolean[] processed = new boolean[m];
+		final ReachabilityHeap seeds = new ReachabilityHeap(reach);
+
+		int next = 0, p, o;
+		double r;
+		for(int start = 0; start < m; start++) {
+			if(processed[start])
+				continue;
+
+			p = start;
+			while(true) {
+				processed[p] = true;
+				ordering[next++] = p;
+
+				// Only core records reach their neighbors
+				if(!Double.isInfinite(core[p])) {
+					for(int j = 0; j < neighborhoods[p].length; j++) {
+						o = neighborhoods[p][j];
+						if(processed[o])
+							continue;
+
+						r = Math.max(core[p], distances[p][j]);
+						if(r < reach[o]) {
+							reach[o] = r;
+							pred[o] = p;
+							seeds.update(o);
+						}
+					}
+				}
+
+				if(seeds.isEmpty())
+					break;
+				p = seeds.pop();
+			}
+		}
+
+		return ordering;
+	}
+
+	/**
+	 * An indexed binary min-heap of records keyed by their reachability,
+	 * least record first on ties. Keys may only decrease while in the heap.
+	 * @author Taylor G Smith
+	 */
+	final static class ReachabilityHeap {
+		final double[] keys;
+		final int[] heap;
+		/** The position of each record in the heap, or -1 */
+		final int[] position;
+		int size = 0;
+
+		ReachabilityHeap(final double[] keys) {
+			this.keys = keys;
+			this.heap = new int[keys.length];
+			this.position = VecUtils.repInt(-1, keys.length);
+		}
+
+		boolean isEmpty() {
+			return 0 == size;
+		}
+
+		private boolean less(final int a, final int b) {
+			return keys[a] < keys[b] || (keys[a] == keys[b] && a < b);
+		}
+
+		private void place(final int record, final int i) {
+			heap[i] = record;
+			position[record] = i;
+		}
+
+		/**
+		 * Insert the record, or restore the heap after its key decreased
+		 * @param record
+		 */
+		void update(final int record) {
+			int i = position[record];
+			if(i < 0)
+				i = size++;
+
+			int parent;
+			while(i > 0 && less(record, heap[parent = (i - 1) / 2])) {
+				place(heap[parent], i);
+				i = parent;
+			}
+
+			place(record, i);
+		}
+
+		int pop() {
+			final int top = heap[0], last = heap[--size];
+			position[top] = -1;
+
+			if(size > 0) {
+				int i = 0, child;
+				while((child = 2 * i + 1) < size) {
+					if(child + 1 < size && less(heap[child + 1], heap[child]))
+						child++;
+					if(!less(heap[child], last))
+						break;
+
+					place(heap[child], i);
+					i = child;
+				}
+
+				place(last, i);
+			}
+
+			return top;
+		}
+	}
+
+	/**
+	 * Extract the {@link DBSCAN} clustering at a new eps from the ordering,
+	 * without refitting. The core records are partitioned exactly as by
+	 * {@link DBSCAN}, and each border record takes the label of its nearest
+	 * core record (the least such, if tied), as in a parallel {@link DBSCAN}
+	 * fit. This is linear in the number of records and neighbors, so a sweep
+	 * over eps costs a single neighborhood search. Neither the model nor
+	 * its labels are changed.
+	 * @param eps
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalArgumentException if <tt>eps</tt> is not positive or exceeds max eps
+	 * @return the labels, encoded as in {@link #getLabels()}
+	 */
+	public int[] extractDBSCAN(final double eps) {
+		synchronized(fitLock) {
+			if(null == labels)
+				error(new ModelNotFitException("model has not been fit yet"));
+			validateEps(eps);
+
+			return dbscanLabels(eps);
+		}
+	}
+
+	/**
+	 * Extract the clusters from the steepness of the reachability plot at
+	 * a new xi and minimum cluster size, without refitting. Neither the
+	 * model nor its labels are changed.
+	 * @param xi
+	 * @param minClusterSize
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws IllegalArgumentException if <tt>xi</tt> is not between 0 and 1,
+	 * or <tt>minClusterSize</tt> is less than 1
+	 * @return the labels, encoded as in {@link #getLabels()}
+	 */
+	public int[] extractXi(final double xi, final int minClusterSize) {
+		synchronized(fitLock) {
+			if(null == labels)
+				error(new ModelNotFitException("model has not been fit yet"));
+			if(!(xi > 0.0 && xi < 1.0))
+				error(new IllegalArgumentException("xi must be between 0.0 and 1.0"));
+			if(minClusterSize < 1)
+				error(new IllegalArgumentException("min cluster size must be greater than 0"));
+
+			return xiLabels(xi, minClusterSize);
+		}
+	}
+
+	private int[] dbscanLabels(final double eps) {
+		final int[] raw = VecUtils.repInt(NOISE_CLASS, m);
+		final boolean[] core = new boolean[m];
+		for(int i = 0; i < m; i++)
+			core[i] = coreDistances[i] <= eps;
+
+		// A core record either continues the current cluster or starts a new one
+		int cluster = -1;
+		final int[] least = new int[m];
+		for(int p: ordering) {
+			if(!core[p])
+				continue;
+
+			if(reachability[p] > eps)
+				least[++cluster] = p;
+			raw[p] = cluster;
+			least[cluster] = Math.min(least[cluster], p);
+		}
+
+		// Each border record joins its nearest core record
+		int nearest, j;
+		double[] dists;
+		for(int i = 0; i < m; i++) {
+			if(core[i])
+				continue;
+
+			nearest = -1;
+			dists = neighborDistances[i];
+			for(int k = 0; k < neighborhoods[i].length; k++) {
+				j = neighborhoods[i][k];
+				if(core[j] && dists[k] <= eps && (nearest < 0 || dists[k] < dists[nearest]
+						|| (dists[k] == dists[nearest] && j < neighborhoods[i][nearest])))
+					nearest = k;
+			}
+
+			if(nearest >= 0)
+				raw[i] = raw[neighborhoods[i][nearest]];
+		}
+
+		// Key each cluster by its least core record
+		for(int i = 0; i < m; i++)
+			if(NOISE_CLASS != raw[i])
+				raw[i] = least[raw[i]];
+
+		return new NoiseyLabelEncoder(raw).fit().getEncodedLabels();
+	}
+
+	private int[] xiLabels(final double xi, final int minClusterSize) {
+		// The reachability plot, with a trailing infinity
+		final double[] plot = new double[m + 1];
+		final int[] predecessorPlot = new int[m];
+		for(int i = 0; i < m; i++) {
+			plot[i] = reachability[ordering[i]];
+			predecessorPlot[i] = predecessors[ordering[i]];
+		}
+		plot[m] = Double.POSITIVE_INFINITY;
+
+		final ArrayList<int[]> clusters = xiClusters(plot,
+			predecessorPlot, ordering, xi, minPts, minClusterSize);
+
+		// Label the leaf clusters, which come before their parents
+		final int[] ordered = VecUtils.repInt(NOISE_CLASS, m);
+		int label = 0;
+
+		clusters:
+		for(int[] c: clusters) {
+			for(int i = c[0]; i <= c[1]; i++)
+				if(NOISE_CLASS != ordered[i])
+					continue clusters;
+
+			Arrays.fill(ordered, c[0], c[1] + 1, label++);
+		}
+
+		final int[] raw = new int[m];
+		for(int i = 0; i < m; i++)
+			raw[ordering[i]] = ordered[i];
+
+		return new NoiseyLabelEncoder(raw).fit().getEncodedLabels();
+	}
+
+	/**
+	 * A region of steep descent in the reachability plot, and the
+	 * greatest reachability between its end and the current index
+	 */
+	final static class SteepDownArea {
+		final int start, end;
+		double mib = 0.0;
+
+		SteepDownArea(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Find the clusters in the reachability plot as in Definition 11 of the
+	 * OPTICS paper, with the predecessor correction. Each cluster is a range
+	 * of positions in the ordering, inclusive, and each cluster comes after
+	 * the clusters it contains.
+	 * @param plot - the reachability of each position, with a trailing infinity
+	 * @param predecessorPlot - the predecessor of each position
+	 * @param ordering
+	 * @param xi
+	 * @param minPts
+	 * @param minClusterSize
+	 * @return the clusters
+	 */
+	static ArrayList<int[]> xiClusters(final double[] plot, final int[] predecessorPlot,
+			final int[] ordering, final double xi, final int minPts, final int minClusterSize) {
+		final int n = plot.length - 1;
+		final double xiComplement = 1.0 - xi;
+
+		// NaN ratios, i.e., 0/0 or inf/inf, are neither steep, up nor down
+		final boolean[] steepUp = new boolean[n], steepDown = new boolean[n],
+				up = new boolean[n], down = new boolean[n];
+		double ratio;
+		for(int i = 0; i < n; i++) {
+			ratio = plot[i] / plot[i + 1];
+			steepUp[i] = ratio <= xiComplement;
+			steepDown[i] = ratio >= 1.0 / xiComplement;
+			down[i] = ratio > 1;
+			up[i] = ratio < 1;
+		}
+
+		ArrayList<SteepDownArea> sdas = new ArrayList<>();
+		final ArrayList<int[]> clusters = new ArrayList<>();
+		int index = 0;
+		double mib = 0.0;
+
+		for(int steep = 0; steep < n; steep++) {
+			if(!(steepUp[steep] || steepDown[steep]) || steep < index)
+				continue;
+
+			for(int i = index; i <= steep; i++)
+				mib = Math.max(mib, plot[i]);
+
+			sdas = filterSteepDownAreas(sdas, mib, xiComplement, plot);
+			if(steepDown[steep]) {
+				final int end = extendRegion(steepDown, up, steep, minPts);
+				sdas.add(new SteepDownArea(steep, end));
+				index = end + 1;
+				mib = plot[index];
+
+			} else {
+				final int upStart = steep, upEnd = extendRegion(steepUp, down, steep, minPts);
+				index = upEnd + 1;
+				mib = plot[index];
+
+				final ArrayList<int[]> upClusters = new ArrayList<>();
+				for(SteepDownArea d: sdas) {
+					int start = d.start, end = upEnd;
+
+					if(plot[end + 1] * xiComplement < d.mib)
+						continue;
+
+					// Criterion 4
+					final double dMax = plot[d.start];
+					if(dMax * xiComplement >= plot[end + 1]) {
+						while(plot[start + 1] > plot[end + 1] && start < d.end)
+							start++;
+					} else if(plot[end + 1] * xiComplement >= dMax) {
+						// 4c of the paper has r(x) < r(sD), which should be r(x) > r(sD)
+						while(plot[end - 1] > dMax && end > upStart)
+							end--;
+					}
+
+					// Predecessor correction
+					final int[] corrected = correctPredecessor(plot, predecessorPlot, ordering, start, end);
+					if(null == corrected)
+						continue;
+					start = corrected[0];
+					end = corrected[1];
+
+					// Criteria 3a, 1 and 2
+					if(end - start + 1 < minClusterSize || start > d.end || end < upStart)
+						continue;
+
+					upClusters.add(new int[]{start, end});
+				}
+
+				// The smaller clusters first
+				Collections.reverse(upClusters);
+				clusters.addAll(upClusters);
+			}
+		}
+
+		return clusters;
+	}
+
+	/**
+	 * Extend a steep region from <tt>start</tt> for as long as it has no more
+	 * than <tt>minPts</tt> consecutive points that are not steep. It ends at
+	 * the first point that heads the other way, i.e., is <tt>xward</tt>.
+	 * @return the end of the region, inclusive
+	 */
+	static int extendRegion(final boolean[] steep, final boolean[] xward, final int start, final int minPts) {
+		int nonXward = 0, end = start;
+		for(int index = start; index < steep.length; index++) {
+			if(steep[index]) {
+				nonXward = 0;
+				end = index;
+			} else if(!xward[index]) {
+				if(++nonXward > minPts)
+					break;
+			} else {
+				break;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * Drop the steep down areas that can no longer start a cluster,
+	 * and raise the mib of those that remain
+	 */
+	static ArrayList<SteepDownArea> filterSteepDownAreas(final ArrayList<SteepDownArea> sdas,
+			final double mib, final double xiComplement, final double[] plot) {
+		final ArrayList<SteepDownArea> res = new ArrayList<>();
+		if(Double.isInfinite(mib))
+			return res;
+
+		for(SteepDownArea d: sdas) {
+			if(mib <= plot[d.start] * xiComplement) {
+				d.mib = Math.max(d.mib, mib);
+				res.add(d);
+			}
+		}
+
+		return res;
+	}
+
+	/**
+	 * Shrink the cluster from the right until its last point was reached
+	 * from inside it, or its first point is higher in the plot.
+	 * @return the corrected range, or null if none remains
+	 */
+	static int[] correctPredecessor(final double[] plot, final int[] predecessorPlot,
+			final int[] ordering, final int start, int end) {
+		while(start < end) {
+			if(plot[start] > plot[end])
+				return new int[]{start, end};
+
+			final int pred = predecessorPlot[end];
+			for(int i = start; i < end; i++)
+				if(pred == ordering[i])
+					return new int[]{start, end};
+
+			end--;
+		}
+
+		return null;
+	}
+
+	@Override
+	public Algo getLoggerTag() {
+		return com.clust4j.log.Log.Tag.Algo.OPTICS;
+	}
+
+	@Override
+	final protected Object[] getModelFitSummaryHeaders() {
+		return new Object[]{
+			"Class Label","Num. Instances","Pct. Instances","Wall"
+		};
+	}
+
+	@Override
+	public int getNumberOfIdentifiedClusters() {
+		return numClusters;
+	}
+
+	@Override
+	public int getNumberOfNoisePoints() {
+		return numNoisey;
+	}
+
+	/**
+	 * The records that are core at the eps of their cluster: eps itself under
+	 * {@link ClusterMethod#DBSCAN}, and otherwise the cluster's eps as given by
+	 * {@link #xiClusterEps()}. Only those in a cluster are indexed.
+	 * @return the core index
+	 */
+	private CoreIndex getCoreIndex() {
+		CoreIndex c = coreIndex;
+		if(null == c) {
+			synchronized(fitLock) {
+				if(null == (c = coreIndex)) {
+					final double[] radius = new double[m];
+					final double[] clusterEps = ClusterMethod.DBSCAN.equals(clusterMethod) ? 
+						null : xiClusterEps();
+
+					final boolean[] core = new boolean[m];
+					for(int i = 0; i < m; i++) {
+						if(NOISE_CLASS == labels[i])
+							continue;
+
+						radius[i] = null == clusterEps ? eps : clusterEps[labels[i]];
+						core[i] = coreDistances[i] <= radius[i];
+					}
+
+					coreIndex = c = new CoreIndex(data.getDataRef(), core,
+						labels, getSeparabilityMetric(), radius, this);
+				}
+			}
+		}
+
+		return c;
+	}
+
+	/**
+	 * The eps of each Xi cluster: the greatest reachability inside it, i.e., of
+	 * any of its records but the first in the ordering, which is reached from
+	 * outside the cluster. Its records are connected at this eps, while it is
+	 * always finite, unlike max eps.
+	 * @return the eps of each cluster, indexed by its label
+	 */
+	private double[] xiClusterEps() {
+		final double[] clusterEps = new double[numClusters];
+		final boolean[] entered = new boolean[numClusters];
+
+		int label;
+		for(int p: ordering) {
+			if(NOISE_CLASS == (label = labels[p]))
+				continue;
+
+			if(entered[label])
+				clusterEps[label] = Math.max(clusterEps[label], reachability[p]);
+			entered[label] = true;
+		}
+
+		return clusterEps;
+	}
+
+	/**
+	 * Predict the clusters of new records from their nearest clustered core records,
+	 * as in {@link DBSCAN#predict(RealMatrix)}. A new record takes the label of its
+	 * nearest clustered record that is core at the eps of its cluster, if it is within
+	 * that eps, and is otherwise noise. Under {@link ClusterMethod#XI}, a cluster's eps
+	 * is the greatest reachability inside it.
+	 * @param newData
+	 * @throws ModelNotFitException if the model has not been fit
+	 * @throws DimensionMismatchException if the number of columns differ
+	 * @return the predicted labels
+	 */
+	@Override
+	public int[] predict(RealMatrix newData) {
+		@SuppressWarnings("unused")
+		final int[] fit_labels = getLabels(); // propagates errors
+		final int n = newData.getColumnDimension();
+
+		// Make sure matches dimensionally
+		if(n != this.data.getColumnDimension())
+			throw new DimensionMismatchException(n, data.getColumnDimension());
+
+		final CoreIndex index = getCoreIndex();
+		final double[][] rows = newData.getData();
+		final int[] newLabels = new int[rows.length];
+
+		if(parallel && rows.length > 0) {
+			try {
+				ParallelChunkedPredict.doAll(new ParallelChunkedPredict.RowPredictor() {
+					@Override
+					public void predict(double[][] rows, int lo, int hi) {
+						index.predict(rows, lo, hi, newLabels);
+					}
+				}, rows);
+				return newLabels;
+			} catch(RejectedExecutionException r) {
+				warn("parallel prediction failed; falling back to serial");
+			}
+		}
+
+		index.predict(rows, 0, rows.length, newLabels);
+		return newLabels;
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+
+package com.clust4j.algo;
+
+import java.util.Random;
+
+import org.apache.commons.math3.linear.RealMatrix;
+
+import com.clust4j.algo.AbstractDBSCAN.AbstractDBSCANParameters;
+import com.clust4j.algo.OPTICS.ClusterMethod;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+
+/**
+ * A builder class to provide an easier constructing
+ * interface to set custom parameters for OPTICS
+ * @author Taylor G Smith
+ */
+final public class OPTICSParameters extends AbstractDBSCANParameters<OPTICS> {
+	private static final long serialVersionUID = -1383146537469830522L;
+
+	private double maxEps = OPTICS.DEF_MAX_EPS;
+	private ClusterMethod clusterMethod = OPTICS.DEF_CLUSTER_METHOD;
+	private double eps = OPTICS.DEF_EPS;
+	private double xi = OPTICS.DEF_XI;
+	private int minClusterSize = OPTICS.DEF_MIN_CLUST_SIZE;
+
+
+	public OPTICSParameters() { }
+	public OPTICSParameters(final int minPts) {
+		this.minPts = minPts;
+	}
+
+
+	@Override
+	public OPTICS fitNewModel(RealMatrix data) {
+		return new OPTICS(data, this.copy()).fit();
+	}
+
+	@Override
+	public OPTICSParameters copy() {
+		return new OPTICSParameters(minPts)
+			.setMaxEps(maxEps)
+			.setClusterMethod(clusterMethod)
+			.setEps(eps)
+			.setXi(xi)
+			.setMinClusterSize(minClusterSize)
+			.setMetric(metric)
+			.setSeed(seed)
+			.setVerbose(verbose)
+			.setForceParallel(parallel);
+	}
+
+	public double getMaxEps() {
+		return maxEps;
+	}
+
+	/**
+	 * The greatest distance at which records are considered neighbors. The
+	 * default, infinity, makes every pair of records neighbors, so this should
+	 * be bounded on large data, but clusters can only be extracted at eps values
+	 * up to this one.
+	 * @param maxEps
+	 * @return this
+	 */
+	public OPTICSParameters setMaxEps(final double maxEps) {
+		this.maxEps = maxEps;
+		return this;
+	}
+
+	public ClusterMethod getClusterMethod() {
+		return clusterMethod;
+	}
+
+	public OPTICSParameters setClusterMethod(final ClusterMethod method) {
+		this.clusterMethod = method;
+		return this;
+	}
+
+	public double getEps() {
+		return eps;
+	}
+
+	/**
+	 * The eps at which the labels are extracted under {@link ClusterMethod#DBSCAN}
+	 * @param eps
+	 * @return this
+	 */
+	public OPTICSParameters setEps(final double eps) {
+		this.eps = eps;
+		return this;
+	}
+
+	public double getXi() {
+		return xi;
+	}
+
+	/**
+	 * The minimum relative steepness of the reachability plot at
+	 * a cluster boundary under {@link ClusterMethod#XI}
+	 * @param xi
+	 * @return this
+	 */
+	public OPTICSParameters setXi(final double xi) {
+		this.xi = xi;
+		return this;
+	}
+
+	public int getMinClusterSize() {
+		return minClusterSize;
+	}
+
+	public OPTICSParameters setMinClusterSize(final int min) {
+		this.minClusterSize = min;
+		return this;
+	}
+
+	@Override
+	public OPTICSParameters setMinPts(final int minPts) {
+		this.minPts = minPts;
+		return this;
+	}
+
+	@Override
+	public OPTICSParameters setSeed(final Random seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	@Override
+	public OPTICSParameters setMetric(final GeometricallySeparable dist) {
+		this.metric = dist;
+		return this;
+	}
+
+	public OPTICSParameters setVerbose(final boolean v) {
+		this.verbose = v;
+		return this;
+	}
+
+	@Override
+	public OPTICSParameters setForceParallel(boolean b) {
+		this.parallel = b;
+		return this;
+	}
+}
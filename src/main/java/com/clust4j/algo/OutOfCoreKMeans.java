@@ -0,0 +1,616 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.GlobalState;
+import com.clust4j.NamedEntity;
+import com.clust4j.algo.KMeans.KMeansAlgorithm;
+import com.clust4j.data.RowBlockSource;
+import com.clust4j.except.MatrixParseException;
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.log.Log;
+import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.log.LogTimer;
+import com.clust4j.log.Loggable;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
+import com.clust4j.utils.VecUtils;
+
+/**
+ * An out-of-core variant of {@link KMeans} that runs Lloyd's algorithm over a
+ * {@link RowBlockSource} rather than an in-heap matrix. Each iteration streams
+ * the row blocks from the source, and only the centroids and the per-block
+ * partial sums (counts, coordinate sums and WSS) are ever resident, so matrices
+ * far larger than the heap can be clustered. When parallelism is enabled,
+ * blocks are read and reduced concurrently on the fork-join pool.
+ * 
+ * <p>
+ * The initial centroids are taken from {@link KMeansParameters#setInitialCentroids(Collection)}
+ * if provided, and otherwise are seeded by the configured {@link AbstractCentroidClusterer.InitializationStrategy}
+ * over a sample of whole blocks. As the labels of an out-of-core matrix may not fit
+ * in the heap, they are not retained; use {@link #predict(RealMatrix)} on each block instead.
+ * 
+ * @see KMeans
+ * @author Taylor G Smith
+ */
+final public class OutOfCoreKMeans extends BaseModel implements CentroidLearner, Convergeable, Loggable, NamedEntity {
+	private static final long serialVersionUID = -3306414958154658735L;
+	/** The minimum number of rows sampled to seed the centroids */
+	final public static int DEF_SAMPLE_ROWS = 10000;
+	
+	final private transient RowBlockSource source;
+	final private GeometricallySeparable dist_metric;
+	final private int maxIter;
+	final private double tolerance;
+	final private boolean verbose;
+	final private boolean parallel;
+	final private long m;
+	final private int n;
+	private int k;
+	
+	volatile private ArrayList<double[]> centroids;
+	volatile private boolean converged = false;
+	volatile private int iter = 0;
+	volatile private double[] wss = null;
+	volatile private double tss = 0.0;
+	volatile private double bss = Double.NaN;
+	
+	volatile private boolean hasWarnings = false;
+	final private ArrayList<String> warnings = new ArrayList<>();
+	
+	
+	public OutOfCoreKMeans(RowBlockSource source) {
+		this(source, KMeans.DEF_K);
+	}
+	
+	public OutOfCoreKMeans(RowBlockSource source, int k) {
+		this(source, new KMeansParameters(k));
+	}
+	
+	public OutOfCoreKMeans(RowBlockSource source, KMeansParameters planner) {
+		this.source = source;
+		this.dist_metric = planner.getMetric();
+		this.maxIter = planner.getMaxIter();
+		this.tolerance = planner.getConvergenceTolerance();
+		this.verbose = planner.getVerbose();
+		this.parallel = planner.getParallel() && GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		this.m = source.getRowDimension();
+		this.n = source.getColumnDimension();
+		this.k = planner.getK();
+		
+		if(k < 1)
+			error(new IllegalArgumentException("k must exceed 0"));
+		if(k > m)
+			error(new IllegalArgumentException("k exceeds number of records"));
+		if(maxIter < 0)
+			error(new IllegalArgumentException("maxIter must exceed 0"));
+		if(tolerance < 0)
+			error(new IllegalArgumentException("minChange must not be negative"));
+		
+		if(KMeansAlgorithm.YINYANG.equals(planner.getAlgorithm()))
+			warn("out-of-core fits do not keep per-record bounds; falling back to " + KMeansAlgorithm.LLOYD);
+		
+		info("streaming " + m + " record" + (m==1?"":"s") + " in " + source.getNumBlocks() 
+			+ " block" + (source.getNumBlocks()==1?"":"s") + (parallel ? " (parallel)" : ""));
+		this.centroids = seedCentroids(planner);
+	}
+	
+	/**
+	 * Either validate the warm-start centroids, or seed the
+	 * initialization strategy over a sample of whole blocks.
+	 * @param planner
+	 * @return the initial centroids
+	 */
+	private ArrayList<double[]> seedCentroids(KMeansParameters planner) {
+		final double[][] warm = planner.getInitialCentroids();
+		final ArrayList<double[]> cents = new ArrayList<>(k);
+		
+		if(null != warm) {
+			if(warm.length != k)
+				error(new IllegalArgumentException("expected " + k + " initial centroids, got " + warm.length));
+			
+			for(double[] c: warm) {
+				if(c.length != n)
+					error(new DimensionMismatchException(c.length, n));
+				cents.add(c);
+			}
+			
+			info("warm-starting from " + k + " provided centroid" + (k==1?"":"s"));
+			return cents;
+		}
+		
+		// Shuffle the block order and read until the sample is large enough
+		final int nb = source.getNumBlocks();
+		final int[] order = VecUtils.permutation(VecUtils.arange(nb), new Random(planner.getSeed().nextLong()));
+		final long target = FastMath.min(m, FastMath.max(DEF_SAMPLE_ROWS, k));
+		final ArrayList<double[]> sample = new ArrayList<>();
+		
+		for(int i = 0; i < nb && sample.size() < target; i++) {
+			for(double[] row: readBlock(order[i]))
+				sample.add(row);
+		}
+		
+		final KMeans seeder = new KMeans(
+			new Array2DRowRealMatrix(sample.toArray(new double[sample.size()][]), false), 
+			planner.copy()
+				.setAlgorithm(KMeansAlgorithm.LLOYD)
+				.setVerbose(false)
+				.setForceParallel(false));
+		
+		if(seeder.getK() != k) {
+			warn("coerced k to " + seeder.getK() + " due to equality of all elements in sampled blocks");
+			k = seeder.getK();
+		}
+		
+		info("seeded centroids from a sample of " + sample.size() + " record" + (sample.size()==1?"":"s"));
+		return seeder.getCentroids();
+	}
+	
+	/**
+	 * Read a block, wrapping any I/O failure
+	 * @param block
+	 * @return the rows in the block
+	 */
+	private double[][] readBlock(int block) {
+		try {
+			return source.readBlock(block);
+		} catch(IOException e) {
+			throw new MatrixParseException("unable to read block " + block, e);
+		}
+	}
+	
+	
+	
+	/**
+	 * The partial sums for one or more blocks. These are the only state
+	 * accumulated over the stream, and are combined pairwise.
+	 */
+	static class BlockStats {
+		final long[] counts;
+		final double[][] sums;
+		final double[] wss;
+		/** The (block, row) position of the first record in each cluster */
+		final long[] first;
+		/** Column means and the total squared deviation from them, for the TSS */
+		final double[] means;
+		long rows = 0;
+		double ssd = 0.0;
+		
+		BlockStats(int k, int n) {
+			counts = new long[k];
+			sums = new double[k][n];
+			wss = new double[k];
+			first = new long[k];
+			Arrays.fill(first, Long.MAX_VALUE);
+			means = new double[n];
+		}
+		
+		/**
+		 * Assign each record in the block to its nearest centroid and accumulate
+		 * @param X - the block
+		 * @param block - the block index
+		 * @param centroids
+		 * @param metric
+		 * @return this
+		 */
+		BlockStats accumulate(double[][] X, int block, double[][] centroids, GeometricallySeparable metric) {
+			final int k = centroids.length, n = means.length;
+			
+			double[] row, centroid;
+			double dist, min;
+			int label;
+			for(int i = 0; i < X.length; i++) {
+				row = X[i];
+				if(row.length != n)
+					throw new DimensionMismatchException(row.length, n);
+				
+				// ties go to the lowest index, as in the nearest centroid model
+				label = 0;
+				min = Double.POSITIVE_INFINITY;
+				for(int c = 0; c < k; c++) {
+					dist = metric.getPartialDistance(row, centroids[c]);
+					if(dist < min) {
+						min = dist;
+						label = c;
+					}
+				}
+				
+				centroid = centroids[label];
+				counts[label]++;
+				if(Long.MAX_VALUE == first[label])
+					first[label] = ((long)block << 32) | i;
+				
+				// Welford's update keeps the TSS stable far from the origin
+				rows++;
+				double this_cost = 0, diff, delta;
+				for(int j = 0; j < n; j++) {
+					diff = row[j] - centroid[j];
+					this_cost += diff * diff;
+					sums[label][j] += row[j];
+					
+					delta = row[j] - means[j];
+					means[j] += delta / (double)rows;
+					ssd += delta * (row[j] - means[j]);
+				}
+				
+				wss[label] += this_cost;
+			}
+			
+			return this;
+		}
+		
+		/**
+		 * Combine another set of partial sums into this one. The other
+		 * must come from blocks after this one's.
+		 * @param other
+		 * @return this
+		 */
+		BlockStats merge(BlockStats other) {
+			for(int c = 0; c < counts.length; c++) {
+				counts[c] += other.counts[c];
+				wss[c] += other.wss[c];
+				first[c] = FastMath.min(first[c], other.first[c]);
+				
+				for(int j = 0; j < means.length; j++)
+					sums[c][j] += other.sums[c][j];
+			}
+			
+			// Chan et al.'s pairwise update of the means and deviations
+			if(0 == other.rows)
+				return this;
+			
+			final double total = (double)(rows + other.rows);
+			final double weight = (double)rows * (double)other.rows / total;
+			double delta;
+			for(int j = 0; j < means.length; j++) {
+				delta = other.means[j] - means[j];
+				means[j] += delta * (double)other.rows / total;
+				ssd += delta * delta * weight;
+			}
+			
+			ssd += other.ssd;
+			rows += other.rows;
+			
+			return this;
+		}
+	}
+	
+	/**
+	 * Reduces a range of blocks into their partial sums in parallel.
+	 * Each leaf task reads and reduces a single block.
+	 */
+	static class ParallelBlockReducer extends RecursiveTask<BlockStats> {
+		private static final long serialVersionUID = 6391585419317453117L;
+		final OutOfCoreKMeans model;
+		final double[][] centroids;
+		final int low, high;
+		
+		ParallelBlockReducer(OutOfCoreKMeans model, double[][] centroids, int low, int high) {
+			this.model = model;
+			this.centroids = centroids;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected BlockStats compute() {
+			if(high - low <= 1)
+				return new BlockStats(centroids.length, model.n)
+					.accumulate(model.readBlock(low), low, centroids, model.dist_metric);
+			
+			int mid = low + (high - low) / 2;
+			ParallelBlockReducer left = new ParallelBlockReducer(model, centroids, low, mid);
+			ParallelBlockReducer right = new ParallelBlockReducer(model, centroids, mid, high);
+			
+			left.fork();
+			BlockStats r = right.compute();
+			return left.join().merge(r);
+		}
+		
+		static BlockStats doAll(OutOfCoreKMeans model, double[][] centroids) {
+			return GlobalState.ParallelismConf.FJ_THREADPOOL
+				.invoke(new ParallelBlockReducer(model, centroids, 0, model.source.getNumBlocks()));
+		}
+	}
+	
+	/**
+	 * Stream every block once, accumulating the partial sums
+	 * for the given centroids
+	 * @param centroids
+	 * @return the reduced stats
+	 */
+	private BlockStats pass(final double[][] centroids) {
+		if(parallel) {
+			try {
+				return ParallelBlockReducer.doAll(this, centroids);
+			} catch(RejectedExecutionException r) {
+				warn("parallel pass failed; falling back to serial");
+			}
+		}
+		
+		final BlockStats stats = new BlockStats(centroids.length, n);
+		for(int b = 0; b < source.getNumBlocks(); b++)
+			stats.accumulate(readBlock(b), b, centroids, dist_metric);
+		return stats;
+	}
+	
+	
+	
+	@Override
+	protected OutOfCoreKMeans fit() {
+		synchronized(fitLock) {
+			
+			if(null != wss) // already fit
+				return this;
+			
+			final LogTimer timer = new LogTimer();
+			double last_wss_sum = Double.POSITIVE_INFINITY, wss_sum = 0;
+			BlockStats stats = null;
+			
+			for(iter = 0; iter < maxIter; iter++) {
+				final double[][] C = centroids.toArray(new double[k][]);
+				stats = pass(C);
+				
+				// The TSS falls out of the first pass
+				if(0 == iter)
+					tss = stats.ssd;
+				
+				wss_sum = VecUtils.sum(stats.wss);
+				bss = tss - wss_sum;
+				
+				// Empty clusters keep their current centroid
+				final ArrayList<double[]> new_centroids = new ArrayList<>(k);
+				for(int c = 0; c < k; c++) {
+					if(0 == stats.counts[c]) {
+						new_centroids.add(C[c]);
+						continue;
+					}
+					
+					double[] cent = stats.sums[c];
+					for(int j = 0; j < n; j++)
+						cent[j] /= (double)stats.counts[c];
+					new_centroids.add(cent);
+				}
+				
+				double diff = last_wss_sum - wss_sum;
+				last_wss_sum = wss_sum;
+				converged = FastMath.abs(diff) < tolerance;
+				
+				info("iteration " + (iter + 1) + ": WSS=" + wss_sum + ", BSS=" + bss 
+					+ " (" + timer.wallTime() + ")");
+				
+				if(converged) {
+					iter++;
+					break;
+				} else {
+					centroids = new_centroids;
+				}
+			}
+			
+			// if maxIter was zero, still need the costs
+			if(null == stats)
+				stats = pass(centroids.toArray(new double[k][]));
+			reorderCentroids(stats);
+			
+			if(!converged)
+				warn("algorithm did not converge");
+			
+			sayBye(timer);
+			return this;
+		}
+	}
+	
+	/**
+	 * Reorder the centroids and WSS by the first appearance of each
+	 * cluster in the stream, as {@link KMeans} orders its labels.
+	 * Clusters that attracted no records go last.
+	 * @param stats
+	 */
+	private void reorderCentroids(BlockStats stats) {
+		final Integer[] order = new Integer[k];
+		for(int c = 0; c < k; c++)
+			order[c] = c;
+		
+		final long[] first = stats.first;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(first[a], first[b]);
+			}
+		});
+		
+		final ArrayList<double[]> cents = new ArrayList<>(k);
+		final double[] new_wss = new double[k];
+		for(int c = 0; c < k; c++) {
+			cents.add(centroids.get(order[c]));
+			new_wss[c] = stats.wss[order[c]];
+		}
+		
+		this.centroids = cents;
+		this.wss = new_wss;
+	}
+	
+	/**
+	 * Predict the nearest centroid for each record, e.g., each block in the source
+	 * @param newData
+	 * @return the predicted labels
+	 * @throws ModelNotFitException if the model isn't fit
+	 */
+	public int[] predict(RealMatrix newData) {
+		final double[][] C;
+		synchronized(fitLock) {
+			if(null == wss)
+				throw new ModelNotFitException("model has not been fit");
+			C = centroids.toArray(new double[k][]);
+		}
+		
+		if(newData.getColumnDimension() != n)
+			error(new DimensionMismatchException(newData.getColumnDimension(), n));
+		
+		final int[] labels = new int[newData.getRowDimension()];
+		double[] row;
+		double dist, min;
+		for(int i = 0; i < labels.length; i++) {
+			row = newData.getRow(i);
+			min = Double.POSITIVE_INFINITY;
+			for(int c = 0; c < k; c++) {
+				dist = dist_metric.getPartialDistance(row, C[c]);
+				if(dist < min) {
+					min = dist;
+					labels[i] = c;
+				}
+			}
+		}
+		
+		return labels;
+	}
+	
+	
+	
+	@Override
+	public ArrayList<double[]> getCentroids() {
+		synchronized(fitLock) {
+			final ArrayList<double[]> cent = new ArrayList<double[]>();
+			for(double[] d : centroids)
+				cent.add(VecUtils.copy(d));
+			
+			return cent;
+		}
+	}
+	
+	public int getK() {
+		return k;
+	}
+	
+	/**
+	 * The number of records streamed from the source
+	 * @return the row dimension of the source
+	 */
+	public long getNumRows() {
+		return m;
+	}
+	
+	public double getTSS() {
+		synchronized(fitLock) {
+			return tss;
+		}
+	}
+	
+	public double[] getWSS() {
+		synchronized(fitLock) {
+			if(null == wss)
+				return VecUtils.rep(Double.NaN, k);
+			return VecUtils.copy(wss);
+		}
+	}
+	
+	public double getBSS() {
+		synchronized(fitLock) {
+			return bss;
+		}
+	}
+	
+	@Override
+	public boolean didConverge() {
+		synchronized(fitLock) {
+			return converged;
+		}
+	}
+	
+	@Override
+	public int itersElapsed() {
+		synchronized(fitLock) {
+			return iter;
+		}
+	}
+	
+	@Override
+	public int getMaxIter() {
+		return maxIter;
+	}
+	
+	@Override
+	public double getConvergenceTolerance() {
+		return tolerance;
+	}
+	
+	@Override
+	public String getName() {
+		return "OutOfCoreKMeans";
+	}
+	
+	/**
+	 * Get the warnings the model generated, or null if there were none
+	 * @return the warnings
+	 */
+	final public Collection<String> getWarnings() {
+		return warnings.isEmpty() ? null : warnings;
+	}
+	
+	
+	/* -- LOGGER METHODS --  */
+	@Override public void error(String msg) {
+		if(verbose) Log.err(getLoggerTag(), msg);
+	}
+	
+	@Override public void error(RuntimeException thrown) {
+		error(thrown.getMessage());
+		throw thrown;
+	}
+	
+	@Override public void warn(String msg) {
+		hasWarnings = true;
+		warnings.add(msg);
+		if(verbose) Log.warn(getLoggerTag(), msg);
+	}
+	
+	@Override public void info(String msg) {
+		if(verbose) Log.info(getLoggerTag(), msg);
+	}
+	
+	@Override public void trace(String msg) {
+		if(verbose) Log.trace(getLoggerTag(), msg);
+	}
+	
+	@Override public void debug(String msg) {
+		if(verbose) Log.debug(getLoggerTag(), msg);
+	}
+	
+	@Override public void sayBye(final LogTimer timer) {
+		info("model fit completed in " + timer.toString());
+	}
+	
+	@Override public Algo getLoggerTag() {
+		return Algo.KMEANS;
+	}
+	
+	@Override public boolean hasWarnings() {
+		return hasWarnings;
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+
+package com.clust4j.algo;
+
+/**
+ * Predicts chunks of new records in parallel. Each chunk is handed
+ * to a {@link RowPredictor}, which writes its predictions for the
+ * chunk's rows into its own output arrays.
+ * @author Taylor G Smith
+ */
+class ParallelChunkedPredict extends ParallelChunkingTask<Integer> {
+	private static final long serialVersionUID = 6250937312084496218L;
+	final RowPredictor predictor;
+	final double[][] rows;
+	final int low;
+	final int high;
+
+	/**
+	 * Predicts a range of rows
+	 * @author Taylor G Smith
+	 */
+	interface RowPredictor {
+		/**
+		 * Predict the rows from <tt>lo</tt> to <tt>hi</tt>
+		 * @param rows
+		 * @param lo
+		 * @param hi
+		 */
+		void predict(final double[][] rows, final int lo, final int hi);
+	}
+
+	ParallelChunkedPredict(RowPredictor predictor, double[][] rows) {
+		super(rows);
+
+		this.predictor = predictor;
+		this.rows = rows;
+		this.low = 0;
+		this.high = strategy.getNumChunks(rows);
+	}
+
+	ParallelChunkedPredict(ParallelChunkedPredict task, int low, int high) {
+		super(task);
+
+		this.predictor = task.predictor;
+		this.rows = task.rows;
+		this.low = low;
+		this.high = high;
+	}
+
+	@Override
+	protected Integer compute() {
+		if(high - low <= 1) { // generally should equal one...
+			return reduce(chunks.get(low));
+		} else {
+			int mid = this.low + (this.high - this.low) / 2;
+			ParallelChunkedPredict left  = new ParallelChunkedPredict(this, low, mid);
+			ParallelChunkedPredict right = new ParallelChunkedPredict(this, mid, high);
+
+			left.fork();
+			Integer r = right.compute();
+			Integer l = left.join();
+
+			return l + r;
+		}
+	}
+
+	@Override
+	public Integer reduce(Chunk chunk) {
+		predictor.predict(rows, chunk.start, chunk.start + chunk.size());
+		return chunk.size();
+	}
+
+	static int doAll(RowPredictor predictor, double[][] rows) {
+		return getThreadPool().invoke(new ParallelChunkedPredict(predictor, rows));
+	}
+}
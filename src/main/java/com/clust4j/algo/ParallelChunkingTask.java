@@ -126,8 +126,10 @@ public abstract class ParallelChunkingTask<T> extends RecursiveTask<T> implement
 			final ArrayList<Chunk> out = new ArrayList<>();
 			final int numChunks = getNumChunks(X);
 			
+			// A single chunk (i.e., on a single core) must hold all of X
+			final int size = 1 == numChunks ? X.length : chunkSize;
 			for(int i = 0; i < numChunks; i++)
-				out.add(getChunk(X, chunkSize, i));
+				out.add(getChunk(X, size, i));
 			
 			return out;
 		}
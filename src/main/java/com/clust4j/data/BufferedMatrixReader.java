@@ -101,7 +101,7 @@ public class BufferedMatrixReader implements Loggable {
 	private static final byte DQUOTE = '"';
 	private static final byte SQUOTE = '\'';
 	//private static final byte DECIMAL = '.';
-	private static final byte GUESS_SEP = -1;
+	static final byte GUESS_SEP = -1;
 	
 	/* More statics */
 	static final long LARGEST_DIGIT_NUM = Long.MAX_VALUE/10;
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.commons.math3.util.FastMath;
+
+import com.clust4j.except.MatrixParseException;
+import com.clust4j.log.Log;
+import com.clust4j.log.LogTimer;
+import com.clust4j.log.Loggable;
+import com.clust4j.log.Log.Tag.Algo;
+import com.clust4j.utils.VecUtils;
+
+/**
+ * A {@link RowBlockSource} over a delimited text file which, unlike the
+ * {@link BufferedMatrixReader}, never holds the whole file in the heap.
+ * The setup (separator, header and number of columns) is estimated from
+ * the head of the file only, and a single streaming pass records the
+ * byte offset of each block. Blocks are then parsed on demand with the same
+ * tokenizing rules as the {@link BufferedMatrixReader}.
+ * 
+ * @author Taylor G Smith
+ */
+public class ChunkedMatrixReader implements RowBlockSource, Loggable {
+	/** The number of bytes read from the head of the file to estimate the setup */
+	static final int HEAD_BYTES = 1 << 16;
+	
+	private boolean hasWarnings = false;
+	private final BufferedMatrixReader.MatrixReaderSetup setup;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int blockRows;
+	private final long numRows;
+	/** The byte offset of the first row in each block, plus the file length */
+	private final long[] offsets;
+	
+	
+	/**
+	 * Create an instance from a file
+	 * @param file
+	 * @throws MatrixParseException
+	 * @throws IOException
+	 */
+	public ChunkedMatrixReader(final File file) throws MatrixParseException, IOException {
+		this(file, DEF_BLOCK_ROWS);
+	}
+	
+	/**
+	 * Create an instance from a file
+	 * @param file
+	 * @param blockRows - the number of rows in each block
+	 * @throws MatrixParseException
+	 * @throws IOException
+	 */
+	public ChunkedMatrixReader(final File file, int blockRows) throws MatrixParseException, IOException {
+		this(file, false, BufferedMatrixReader.GUESS_SEP, blockRows);
+	}
+	
+	/**
+	 * Create an instance from a file
+	 * @param file
+	 * @param sep
+	 * @param blockRows - the number of rows in each block
+	 * @throws MatrixParseException
+	 * @throws IOException
+	 */
+	public ChunkedMatrixReader(final File file, byte sep, int blockRows) throws MatrixParseException, IOException {
+		this(file, false, sep, blockRows);
+	}
+	
+	/**
+	 * Create an instance from a file
+	 * @param file
+	 * @param single_quotes
+	 * @param sep
+	 * @param blockRows - the number of rows in each block
+	 * @throws MatrixParseException
+	 * @throws IOException
+	 */
+	public ChunkedMatrixReader(final File file, boolean single_quotes, byte sep, int blockRows) throws MatrixParseException, IOException {
+		if(blockRows < 1)
+			throw new IllegalArgumentException("blockRows must exceed 0");
+		
+		final LogTimer timer = new LogTimer();
+		this.blockRows = blockRows;
+		this.setup = new BufferedMatrixReader.MatrixReaderSetup(head(file), single_quotes, sep);
+		this.hasWarnings = setup.hasWarnings();
+		
+		/*
+		 * Stream through the file once to find where each block begins.
+		 * The line rules mirror BufferedMatrixReader.getLines: comment lines
+		 * and blank lines are skipped, and the header (if any) is the first
+		 * line that survives.
+		 */
+		final ArrayList<Long> starts = new ArrayList<>();
+		final InputStream in = new FileInputStream(file);
+		final byte[] buf = new byte[HEAD_BYTES];
+		
+		long lines = 0, pos = 0, lineStart = 0;
+		boolean first = true, comment = false, content = false;
+		
+		try {
+			int n;
+			byte b;
+			while(-1 != (n = in.read(buf))) {
+				for(int i = 0; i < n; i++, pos++) {
+					b = buf[i];
+					
+					if(BufferedMatrixReader.isEOL(b)) {
+						if(!first && !comment && content) {
+							long row = lines - setup.header_offset;
+							if(row >= 0 && row % blockRows == 0)
+								starts.add(lineStart);
+							lines++;
+						}
+						
+						first = true;
+						comment = content = false;
+						lineStart = pos + 1;
+					} else {
+						if(first) {
+							comment = BufferedMatrixReader.isComment(b);
+							first = false;
+						}
+						
+						if((b & 0xff) > ' ')
+							content = true;
+					}
+				}
+			}
+		} finally {
+			in.close();
+		}
+		
+		// The last line may not be terminated
+		if(!first && !comment && content) {
+			long row = lines - setup.header_offset;
+			if(row >= 0 && row % blockRows == 0)
+				starts.add(lineStart);
+			lines++;
+		}
+		
+		final long length = pos;
+		this.numRows = FastMath.max(0, lines - setup.header_offset);
+		if(0 == numRows)
+			error(new MatrixParseException("data is empty!"));
+		
+		this.offsets = new long[starts.size() + 1];
+		for(int i = 0; i < starts.size(); i++)
+			offsets[i] = starts.get(i);
+		offsets[starts.size()] = length;
+		
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		
+		info(numRows + " record" + (numRows==1?"":"s") + " (" + length + " byte" 
+			+ (length==1?"":"s") + ") indexed in " + getNumBlocks() + " block" 
+			+ (getNumBlocks()==1?"":"s"));
+		sayBye(timer);
+	}
+	
+	/**
+	 * Read the head of the file, truncated to the last full line
+	 * @param file
+	 * @return the head bytes
+	 * @throws IOException
+	 */
+	static byte[] head(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		
+		try {
+			final byte[] buf = new byte[HEAD_BYTES];
+			int n = 0, r;
+			while(n < buf.length && -1 != (r = in.read(buf, n, buf.length - n)))
+				n += r;
+			
+			// If we didn't hit the end of the file, drop the partial last line
+			if(n == buf.length) {
+				int end = n;
+				while(end > 0 && !BufferedMatrixReader.isEOL(buf[end - 1]))
+					end--;
+				if(end > 0)
+					n = end;
+			}
+			
+			return Arrays.copyOf(buf, n);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * The column headers, if the file has them
+	 * @return the headers or null
+	 */
+	public String[] getHeaders() {
+		return VecUtils.copy(setup.headers);
+	}
+	
+	@Override
+	public int getColumnDimension() {
+		return setup.num_cols;
+	}
+
+	@Override
+	public long getRowDimension() {
+		return numRows;
+	}
+
+	@Override
+	public int getNumBlocks() {
+		return offsets.length - 1;
+	}
+
+	@Override
+	public double[][] readBlock(final int block) throws IOException {
+		if(block < 0 || block >= getNumBlocks())
+			throw new IndexOutOfBoundsException("block " + block + " out of range");
+		
+		final long start = offsets[block], len = offsets[block + 1] - start;
+		if(len > Integer.MAX_VALUE)
+			error(new MatrixParseException("block " + block + " exceeds the maximum "
+				+ "array size; use a smaller block size"));
+		
+		// Positional reads are safe for concurrent use of the channel
+		final ByteBuffer buf = ByteBuffer.allocate((int)len);
+		while(buf.hasRemaining())
+			if(-1 == channel.read(buf, start + buf.position()))
+				break;
+		
+		final String[] lines = BufferedMatrixReader.getLines(buf.array(), blockRows);
+		final double[][] out = new double[lines.length][];
+		
+		String msg;
+		for(int i = 0; i < lines.length; i++) {
+			try {
+				out[i] = BufferedMatrixReader.tokenize(
+					BufferedMatrixReader.getTokens(lines[i], setup.separator, setup.single_quotes));
+			} catch(NumberFormatException e) {
+				msg = "non-numeric row found: " + lines[i];
+				error(msg);
+				throw new MatrixParseException(msg);
+			}
+			
+			if(out[i].length != setup.num_cols) {
+				msg = "expected row of length " + setup.num_cols + 
+					"; got row of length " + out[i].length + " in block " + block;
+				error(msg);
+				throw new MatrixParseException(msg);
+			}
+		}
+		
+		return out;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+	
+	
+	@Override public void error(String msg) {
+		Log.err(getLoggerTag(), msg);
+	}
+	
+	@Override public void error(RuntimeException thrown) {
+		error(thrown.getMessage());
+		throw thrown;
+	}
+
+	@Override public void warn(String msg) {
+		hasWarnings = true;
+		Log.warn(getLoggerTag(), msg);
+	}
+	
+	@Override public void info(String msg) {
+		Log.info(getLoggerTag(), msg);
+	}
+	
+	@Override public void trace(String msg) {
+		Log.trace(getLoggerTag(), msg);
+	}
+	
+	@Override public void debug(String msg) {
+		Log.debug(getLoggerTag(), msg);
+	}
+
+	@Override public void sayBye(LogTimer timer) {
+		info("dataset indexed from file in " + timer.toString());
+	}
+
+	@Override public Algo getLoggerTag() {
+		return BufferedMatrixReader.parserLoggerTag();
+	}
+
+	@Override public boolean hasWarnings() {
+		return hasWarnings;
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+import com.clust4j.except.MatrixParseException;
+
+/**
+ * A {@link RowBlockSource} backed by a memory-mapped binary file of
+ * row-major, big-endian doubles (the format written by {@link DataOutputStream}).
+ * Each block is mapped on demand, so the page cache rather than the heap
+ * holds the matrix, and no block mapping ever exceeds the 2GB limit of a
+ * single {@link java.nio.MappedByteBuffer}.
+ * 
+ * @author Taylor G Smith
+ */
+public class MappedMatrixSource implements RowBlockSource {
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int numCols;
+	private final int blockRows;
+	private final long numRows;
+	private final int numBlocks;
+	
+	/**
+	 * Map a binary matrix using the default block size
+	 * @param file
+	 * @param numCols - the number of columns in each row
+	 * @throws IOException
+	 */
+	public MappedMatrixSource(final File file, final int numCols) throws IOException {
+		this(file, numCols, DEF_BLOCK_ROWS);
+	}
+	
+	/**
+	 * Map a binary matrix
+	 * @param file
+	 * @param numCols - the number of columns in each row
+	 * @param blockRows - the number of rows in each block
+	 * @throws IOException
+	 */
+	public MappedMatrixSource(final File file, final int numCols, final int blockRows) throws IOException {
+		if(numCols < 1)
+			throw new IllegalArgumentException("numCols must exceed 0");
+		if(blockRows < 1)
+			throw new IllegalArgumentException("blockRows must exceed 0");
+		if((long)blockRows * numCols * 8L > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("blocks of " + blockRows 
+				+ " rows exceed the maximum mappable size");
+		
+		final long rowBytes = numCols * 8L;
+		final long len = file.length();
+		if(0 != len % rowBytes)
+			throw new MatrixParseException("file length ("+len+") is "
+				+ "not a multiple of the row length ("+rowBytes+")");
+		if(0 == len)
+			throw new MatrixParseException("data is empty!");
+		
+		this.numCols = numCols;
+		this.blockRows = blockRows;
+		this.numRows = len / rowBytes;
+		this.numBlocks = (int)((numRows + blockRows - 1) / blockRows);
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+	}
+	
+	/**
+	 * Write a matrix in the binary format this class maps
+	 * @param X
+	 * @param file
+	 * @param append - whether to append the rows to an existing file
+	 * @throws IOException
+	 */
+	public static void write(final double[][] X, final File file, final boolean append) throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+			new BufferedOutputStream(new FileOutputStream(file, append)));
+		
+		try {
+			final int n = X.length == 0 ? 0 : X[0].length;
+			for(double[] row: X) {
+				if(row.length != n)
+					throw new DimensionMismatchException(row.length, n);
+				
+				for(double d: row)
+					out.writeDouble(d);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public int getColumnDimension() {
+		return numCols;
+	}
+
+	@Override
+	public long getRowDimension() {
+		return numRows;
+	}
+
+	@Override
+	public int getNumBlocks() {
+		return numBlocks;
+	}
+	
+	/**
+	 * The number of rows in each block
+	 * @return the block size
+	 */
+	public int getBlockRows() {
+		return blockRows;
+	}
+
+	@Override
+	public double[][] readBlock(final int block) throws IOException {
+		if(block < 0 || block >= numBlocks)
+			throw new IndexOutOfBoundsException("block " + block + " out of range");
+		
+		final long start = (long)block * blockRows;
+		final int rows = (int)Math.min(blockRows, numRows - start);
+		final DoubleBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 
+			start * numCols * 8L, (long)rows * numCols * 8L).asDoubleBuffer();
+		
+		final double[][] out = new double[rows][numCols];
+		for(int i = 0; i < rows; i++)
+			buf.get(out[i]);
+		
+		return out;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A row-major matrix that lives outside of the heap and is exposed
+ * as a sequence of contiguous row blocks. Only one block ever needs to
+ * be resident at a time, which allows algorithms to make repeated passes
+ * over matrices far too large to be read in as a <tt>double[][]</tt>.
+ * 
+ * <p>
+ * Implementations must allow {@link #readBlock(int)} to be called
+ * concurrently from multiple threads, so that blocks may be processed in parallel.
+ * 
+ * @author Taylor G Smith
+ */
+public interface RowBlockSource extends Closeable {
+	/** The default number of rows per block */
+	public static final int DEF_BLOCK_ROWS = 65536;
+	
+	/**
+	 * The number of columns in each row
+	 * @return the column dimension
+	 */
+	public int getColumnDimension();
+	
+	/**
+	 * The total number of rows across all blocks
+	 * @return the row dimension
+	 */
+	public long getRowDimension();
+	
+	/**
+	 * The number of blocks in the source
+	 * @return the number of blocks
+	 */
+	public int getNumBlocks();
+	
+	/**
+	 * Read the rows in the given block into the heap. Every block but
+	 * the last contains the same number of rows.
+	 * @param block - the index of the block, in [0, {@link #getNumBlocks()})
+	 * @return the rows in the block
+	 * @throws IOException if the block cannot be read
+	 */
+	public double[][] readBlock(int block) throws IOException;
+}
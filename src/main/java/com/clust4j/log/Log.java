@@ -55,6 +55,7 @@ public abstract class Log {
 			KMEANS 			{ @Override public String toString(){return "K-MEANS";} },
 			MEANSHIFT		{ @Override public String toString(){return "MNSHIFT";} },
 			NEAREST			{ @Override public String toString(){return "NEAREST";} },
+			OPTICS			{ @Override public String toString(){return "OPTICS ";} },
 			RADIUS          { @Override public String toString(){return "RADIUS ";} },
 			
 			/*
@@ -15,9 +15,16 @@
  *******************************************************************************/
 package com.clust4j.metrics.pairwise;
 
+import java.util.concurrent.RecursiveAction;
+
 import org.apache.commons.math3.linear.AbstractRealMatrix;
 
+import com.clust4j.GlobalState;
+
 public abstract class Pairwise {
+	/** The fewest pairs a parallel condensed distance task will split */
+	final static int MIN_CONDENSED_TASK_PAIRS = 1 << 15;
+	
 	public static double[][] getDistance(AbstractRealMatrix a,
 			GeometricallySeparable geo,
 			boolean upperTriang, boolean partial) {
@@ -90,4 +97,134 @@ public abstract class Pairwise {
 		
 		return out;
 	}
+	
+	/**
+	 * The position of the distance between records <tt>i</tt> and <tt>j</tt> 
+	 * (where <tt>i != j</tt>) in a condensed distance array over <tt>m</tt> records
+	 * @param m - the number of records
+	 * @param i
+	 * @param j
+	 * @return the index into the condensed array
+	 */
+	public static int condensedIndex(final int m, final int i, final int j) {
+		final long a = i < j ? i : j, b = i < j ? j : i;
+		return (int)(m * a - a * (a + 1) / 2 + b - a - 1);
+	}
+	
+	/**
+	 * Computes the condensed distance array: the strictly upper triangular 
+	 * portion of the pairwise distance matrix, stored row-major. This holds only the 
+	 * <tt>m(m-1)/2</tt> distances that are unique, rather than allocating the full
+	 * <tt>m x m</tt> matrix. Look up entries with {@link #condensedIndex(int, int, int)}.
+	 * @param a
+	 * @param geo
+	 * @param parallel - whether to compute the rows in parallel
+	 * @throws IllegalArgumentException if there are too many records to index
+	 * @throws java.util.concurrent.RejectedExecutionException if the parallel computation fails
+	 * @return the condensed distances
+	 */
+	public static double[] getCondensedDistance(double[][] a, 
+			GeometricallySeparable geo, boolean parallel) {
+		final double[] out = new double[condensedLength(a.length)];
+		condensed(a, geo, out, null, parallel);
+		return out;
+	}
+	
+	/**
+	 * Computes the condensed distance array in single precision, 
+	 * halving the footprint of {@link #getCondensedDistance(double[][], GeometricallySeparable, boolean)}
+	 * at the cost of precision
+	 * @param a
+	 * @param geo
+	 * @param parallel - whether to compute the rows in parallel
+	 * @throws IllegalArgumentException if there are too many records to index
+	 * @throws java.util.concurrent.RejectedExecutionException if the parallel computation fails
+	 * @return the condensed distances
+	 */
+	public static float[] getCondensedDistanceFloat(double[][] a, 
+			GeometricallySeparable geo, boolean parallel) {
+		final float[] out = new float[condensedLength(a.length)];
+		condensed(a, geo, null, out, parallel);
+		return out;
+	}
+	
+	private static int condensedLength(final int m) {
+		final long len = (long)m * (m - 1) / 2;
+		if(len > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too many records ("+m+") "
+				+ "for a condensed distance array");
+		return (int)len;
+	}
+	
+	private static void condensed(double[][] a, GeometricallySeparable geo, 
+			double[] out, float[] out32, boolean parallel) {
+		final CondensedTask task = new CondensedTask(a, geo, out, out32, 0, a.length);
+		if(parallel)
+			GlobalState.ParallelismConf.FJ_THREADPOOL.invoke(task);
+		else
+			task.computeRows();
+	}
+	
+	/**
+	 * Computes a range of rows of the condensed distance array. As rows
+	 * shorten further down the matrix, tasks split on the number of pairs
+	 * rather than rows, so the work is evenly balanced.
+	 */
+	static class CondensedTask extends RecursiveAction {
+		private static final long serialVersionUID = 4711683546617127562L;
+		final double[][] a;
+		final GeometricallySeparable geo;
+		final double[] out;
+		final float[] out32;
+		final int low, high;
+		
+		CondensedTask(double[][] a, GeometricallySeparable geo, 
+				double[] out, float[] out32, int low, int high) {
+			this.a = a;
+			this.geo = geo;
+			this.out = out;
+			this.out32 = out32;
+			this.low = low;
+			this.high = high;
+		}
+		
+		/** The number of pairs in rows <tt>[low, high)</tt> */
+		private long pairs(final int low, final int high) {
+			final long m = a.length;
+			return (high - low) * (2 * m - low - high - 1) / 2;
+		}
+		
+		@Override
+		protected void compute() {
+			if(high - low < 2 || pairs(low, high) <= MIN_CONDENSED_TASK_PAIRS) {
+				computeRows();
+				return;
+			}
+			
+			// Find the row that halves the pairs
+			final long half = pairs(low, high) / 2;
+			int mid = low + 1;
+			while(mid < high - 1 && pairs(low, mid) < half)
+				mid++;
+			
+			invokeAll(new CondensedTask(a, geo, out, out32, low, mid),
+				new CondensedTask(a, geo, out, out32, mid, high));
+		}
+		
+		void computeRows() {
+			final int m = a.length;
+			double dist;
+			
+			for(int i = low; i < high; i++) {
+				int idx = condensedIndex(m, i, i + 1);
+				for(int j = i + 1; j < m; j++, idx++) {
+					dist = geo.getDistance(a[i], a[j]);
+					if(null != out)
+						out[idx] = dist;
+					else
+						out32[idx] = (float)dist;
+				}
+			}
+		}
+	}
 }
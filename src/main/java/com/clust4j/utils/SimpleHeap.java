@@ -111,6 +111,7 @@ public class SimpleHeap<T extends Comparable<? super T>> extends ArrayList<T> {
 		if(get(0).compareTo(item) < 0) {
 			T tmp = get(0);
 			set(0, item);
+			siftUp(0);
 			item = tmp;
 		}
 		
@@ -28,6 +28,7 @@ import org.junit.runners.Suite;
 import com.clust4j.TestClust4j;
 import com.clust4j.TestGlobals;
 import com.clust4j.algo.AffinityPropagationTests;
+import com.clust4j.algo.BisectingKMeansTests;
 import com.clust4j.algo.BoruvkaTests;
 import com.clust4j.algo.ClustTests;
 import com.clust4j.algo.DBSCANTests;
@@ -37,6 +38,7 @@ import com.clust4j.algo.KMeansTests;
 import com.clust4j.algo.KMedoidsTests;
 import com.clust4j.algo.MeanShiftTests;
 import com.clust4j.algo.NNHSTests;
+import com.clust4j.algo.OPTICSTests;
 import com.clust4j.algo.NearestCentroidTests;
 import com.clust4j.algo.NearestNeighborsTests;
 import com.clust4j.algo.ParallelTaskTests;
@@ -73,6 +75,7 @@ import com.clust4j.utils.parallel.ParallelTests;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	AffinityPropagationTests.class,
+	BisectingKMeansTests.class,
 	BootstrapTest.class,
 	BoruvkaTests.class,
 	BufferedMatrixReaderTests.class,
@@ -93,6 +96,7 @@ import com.clust4j.utils.parallel.ParallelTests;
 	NearestCentroidTests.class,
 	NearestNeighborsTests.class,
 	NNHSTests.class,
+	OPTICSTests.class,
 	PairwiseTests.class,
 	ParallelTaskTests.class,
 	ParallelTests.class,
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import static org.junit.Assert.*;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.junit.Test;
+
+import com.clust4j.GlobalState;
+import com.clust4j.TestSuite;
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+import com.clust4j.utils.Series.Inequality;
+
+public class BisectingKMeansTests implements ClassifierTest, ClusterTest, ConvergeableTest, BaseModelTest {
+	final Array2DRowRealMatrix data_ = TestSuite.IRIS_DATASET.getData();
+	final Array2DRowRealMatrix wine = TestSuite.WINE_DATASET.getData();
+	final Array2DRowRealMatrix bc = TestSuite.BC_DATASET.getData();
+
+	@Test
+	@Override
+	public void testItersElapsed() {
+		assertTrue(new BisectingKMeans(data_).fit().itersElapsed() == BisectingKMeans.DEF_K - 1);
+		assertTrue(new BisectingKMeans(data_, 3).fit().itersElapsed() == 2);
+		assertTrue(new BisectingKMeans(data_, new BisectingKMeansParameters(3)).fit().itersElapsed() == 2);
+	}
+
+	@Test
+	@Override
+	public void testConverged() {
+		assertTrue(new BisectingKMeans(data_).fit().didConverge());
+		assertTrue(new BisectingKMeans(data_, 3).fit().didConverge());
+		assertTrue(new BisectingKMeans(data_, new BisectingKMeansParameters(3)).fit().didConverge());
+	}
+
+	@Test
+	@Override
+	public void testDefConst() {
+		new BisectingKMeans(data_);
+	}
+
+	@Test
+	@Override
+	public void testArgConst() {
+		new BisectingKMeans(data_, 3);
+	}
+
+	@Test
+	@Override
+	public void testPlannerConst() {
+		new BisectingKMeans(data_, new BisectingKMeansParameters());
+		new BisectingKMeans(data_, new BisectingKMeansParameters(3));
+	}
+
+	@Test
+	@Override
+	public void testFit() {
+		new BisectingKMeans(data_).fit();
+		new BisectingKMeans(data_, 3).fit();
+		new BisectingKMeans(data_, new BisectingKMeansParameters()).fit();
+		new BisectingKMeans(data_, new BisectingKMeansParameters(3)).fit();
+	}
+
+	@Test
+	@Override
+	public void testFromPlanner() {
+		new BisectingKMeansParameters().fitNewModel(data_);
+		new BisectingKMeansParameters(3).fitNewModel(data_);
+	}
+
+	@Test
+	@Override
+	public void testScoring() {
+		new BisectingKMeans(data_, 3).fit().silhouetteScore();
+		new BisectingKMeans(data_, 5).fit().silhouetteScore();
+	}
+	
+	@Override
+	@Test
+	public void testAllSame() {
+		final double[][] x = MatUtils.rep(-1, 3, 3);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+		
+		BisectingKMeans model = new BisectingKMeans(X, new BisectingKMeansParameters(3).setVerbose(true)).fit();
+		assertTrue(model.getK() == 1);
+		assertTrue(new VecUtils.IntSeries(model.getLabels(), Inequality.EQUAL_TO, 0).all());
+		System.out.println();
+	}
+
+	@Test
+	@Override
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		BisectingKMeans km = new BisectingKMeans(data_,
+			new BisectingKMeansParameters(3)
+				.setVerbose(true)).fit();
+		System.out.println();
+		
+		final double c = km.getTSS();
+		km.saveObject(new FileOutputStream(TestSuite.tmpSerPath));
+		assertTrue(TestSuite.file.exists());
+		
+		BisectingKMeans km2 = (BisectingKMeans)BisectingKMeans.loadObject(new FileInputStream(TestSuite.tmpSerPath));
+		assertTrue(km2.getTSS() == c);
+		assertTrue(VecUtils.equalsExactly(km.cut(2), km2.cut(2)));
+		assertTrue(km.equals(km2));
+		Files.delete(TestSuite.path);
+	}
+	
+	@Test
+	public void testTreeStructure() {
+		final int k = 8;
+		BisectingKMeans model = new BisectingKMeans(wine, 
+			new BisectingKMeansParameters(k).setSeed(new Random(42))).fit();
+		
+		assertTrue(model.getNumNodes() == 2 * k - 1);
+		assertTrue(model.getParent(0) == -1);
+		assertTrue(model.getNodeSize(0) == wine.getRowDimension());
+		assertEquals(model.getTSS(), model.getNodeWSS(0), 1e-6);
+		
+		int leaves = 0;
+		for(int node = 0; node < model.getNumNodes(); node++) {
+			int[] children = model.getChildren(node);
+			if(null == children) {
+				leaves++;
+				continue;
+			}
+			
+			// children partition the parent and never increase the WSS
+			assertTrue(model.getParent(children[0]) == node);
+			assertTrue(model.getParent(children[1]) == node);
+			assertTrue(model.getNodeSize(children[0]) + model.getNodeSize(children[1]) == model.getNodeSize(node));
+			assertTrue(model.getNodeWSS(children[0]) + model.getNodeWSS(children[1]) <= model.getNodeWSS(node));
+		}
+		
+		assertTrue(leaves == k);
+		assertEquals(model.getTSS(), model.getBSS() + VecUtils.sum(model.getWSS()), 1e-6);
+	}
+	
+	@Test
+	public void testCut() {
+		final int k = 6;
+		BisectingKMeans model = new BisectingKMeans(wine, 
+			new BisectingKMeansParameters(k).setSeed(new Random(42))).fit();
+		
+		assertTrue(VecUtils.equalsExactly(model.cut(k), model.getLabels()));
+		assertTrue(MatUtils.equalsExactly(
+			model.cutCentroids(k).toArray(new double[k][]), 
+			model.getCentroids().toArray(new double[k][])));
+		assertTrue(VecUtils.equalsExactly(model.cut(1), new int[wine.getRowDimension()]));
+		
+		// cutting at j must match a fit that stopped at j
+		for(int j = 2; j < k; j++) {
+			BisectingKMeans smaller = new BisectingKMeans(wine, 
+				new BisectingKMeansParameters(j).setSeed(new Random(42))).fit();
+			
+			int[] labels = model.cut(j);
+			assertTrue(VecUtils.unique(labels).size() == j);
+			assertTrue(VecUtils.equalsExactly(labels, smaller.getLabels()));
+			assertTrue(MatUtils.equalsExactly(
+				model.cutCentroids(j).toArray(new double[j][]), 
+				smaller.getCentroids().toArray(new double[j][])));
+		}
+	}
+	
+	@Test
+	public void testPredict() {
+		BisectingKMeans model = new BisectingKMeans(data_, 3).fit();
+		assertTrue(model.predict(data_).length == data_.getRowDimension());
+	}
+	
+	@Test
+	public void testParallel() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			
+			BisectingKMeans serial = new BisectingKMeans(data_, 
+				new BisectingKMeansParameters(10).setSeed(new Random(7))).fit();
+			BisectingKMeans parallel = new BisectingKMeans(data_, 
+				new BisectingKMeansParameters(10).setSeed(new Random(7)).setForceParallel(true)).fit();
+			
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			assertTrue(VecUtils.equalsExactly(serial.getWSS(), parallel.getWSS()));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testLargerK() {
+		BisectingKMeans model = new BisectingKMeans(bc, 
+			new BisectingKMeansParameters(50).setSeed(new Random(42))).fit();
+		
+		assertTrue(model.getK() == 50);
+		assertTrue(VecUtils.unique(model.getLabels()).size() == 50);
+		assertTrue(VecUtils.sum(model.getWSS()) < model.getTSS());
+	}
+	
+	@Test
+	public void testRefit() {
+		final double[][] X = wine.getData();
+		final int split = X.length - 4;
+		BisectingKMeans model = new BisectingKMeans(
+			new Array2DRowRealMatrix(MatUtils.slice(X, 0, split), false), 4).fit();
+		
+		BisectingKMeans refit = model.refit(
+			new Array2DRowRealMatrix(MatUtils.slice(X, split, X.length), false));
+		assertTrue(refit.getLabels().length == X.length);
+		assertTrue(refit.getK() == 4);
+	}
+	
+	@Test
+	public void testInitialCentroidsIgnored() {
+		ArrayList<double[]> cents = new KMeans(data_, 3).fit().getCentroids();
+		BisectingKMeans model = new BisectingKMeans(data_, 
+			new BisectingKMeansParameters(3).setInitialCentroids(cents)).fit();
+		assertTrue(model.hasWarnings());
+	}
+	
+	@Test(expected=ModelNotFitException.class)
+	public void testCutNotFit() {
+		new BisectingKMeans(data_, 3).cut(2);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCutTooLarge() {
+		new BisectingKMeans(data_, 3).fit().cut(4);
+	}
+}
@@ -17,8 +17,14 @@ package com.clust4j.algo;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.junit.Test;
 
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.utils.MatUtils;
+
 public class BoruvkaTests {
 
 	@Test
@@ -32,5 +38,35 @@ public class BoruvkaTests {
 		double rad1 = 0.5, rad2 = 0.75;
 		assertTrue(BoruvkaAlgorithm.ballTreeMinDistDual(rad1, rad2, 1, 2, d) == 4.75);
 	}
-
+	
+	static double[][] spanningTree(NearestNeighborHeapSearch tree, int minSamples, boolean approx, boolean parallel) {
+		return MatUtils.sortAscByCol(new BoruvkaAlgorithm(tree, minSamples, Distance.EUCLIDEAN, 
+			HDBSCAN.DEF_LEAF_SIZE / 3, approx, 1.0, null, parallel).spanningTree(), 2);
+	}
+	
+	@Test
+	public void testParallelMatchesSerial() {
+		final double[][] X = MatUtils.randomGaussian(2000, 3, new Random(42));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		
+		for(boolean kd: new boolean[]{true, false}) {
+			for(int minSamples: new int[]{1, 5}) {
+				for(boolean approx: new boolean[]{true, false}) {
+					final NearestNeighborHeapSearch tree = kd ?
+						new KDTree(mat, HDBSCAN.DEF_LEAF_SIZE, Distance.EUCLIDEAN) :
+						new BallTree(mat, HDBSCAN.DEF_LEAF_SIZE, Distance.EUCLIDEAN);
+					
+					final double[][] serial = spanningTree(tree, minSamples, approx, false);
+					final double[][] parallel = spanningTree(tree, minSamples, approx, true);
+					assertTrue(serial.length == X.length - 1);
+					
+					// the trees may only differ among edges of equal weight
+					assertTrue(MatUtils.equalsExactly(MatUtils.getColumns(serial, new int[]{2}), 
+						MatUtils.getColumns(parallel, new int[]{2})));
+					if(!approx)
+						assertTrue(kd + ", " + minSamples, MatUtils.equalsExactly(serial, parallel));
+				}
+			}
+		}
+	}
 }
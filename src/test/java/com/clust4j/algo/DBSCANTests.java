@@ -21,6 +21,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Random;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
@@ -30,8 +31,10 @@ import static com.clust4j.TestSuite.getRandom;
 
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.DBSCANParameters;
+import com.clust4j.algo.DBSCAN.DBSCANAlgorithm;
 import com.clust4j.algo.preprocess.StandardScaler;
 import com.clust4j.data.DataSet;
 import com.clust4j.except.ModelNotFitException;
@@ -376,4 +379,280 @@ public class DBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest {
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testDepthFirstVisitsEveryCorePoint() {
+		// The expansion of the first cluster ends past the second, 
+		// which must still be found
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(new double[][]{
+			new double[]{0.0},
+			new double[]{10.0},
+			new double[]{10.1},
+			new double[]{10.2},
+			new double[]{0.1},
+			new double[]{0.2}
+		}, false);
+		
+		final DBSCAN model = new DBSCANParameters(0.5).setMinPts(2).fitNewModel(X);
+		assertTrue(VecUtils.equalsExactly(model.getLabels(), new int[]{0, 1, 1, 1, 0, 0}));
+		assertTrue(model.getNumberOfIdentifiedClusters() == 2);
+		assertTrue(model.getNumberOfNoisePoints() == 0);
+	}
+	
+	/**
+	 * Whether the core points are partitioned the same
+	 */
+	static boolean samePartition(int[] a, int[] b, boolean[] core) {
+		for(int i = 0; i < a.length; i++)
+			for(int j = 0; j < a.length; j++)
+				if(core[i] && core[j] && (a[i] == a[j]) != (b[i] == b[j]))
+					return false;
+		return true;
+	}
+	
+	@Test
+	public void testUnionFindMatchesDepthFirst() {
+		final Array2DRowRealMatrix X = TestSuite.IRIS_DATASET.getData();
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			for(double eps: new double[]{0.3, 0.5, 1.0}) {
+				final DBSCAN serial = new DBSCANParameters(eps).fitNewModel(X);
+				final DBSCAN parallel = new DBSCANParameters(eps).setForceParallel(true).fitNewModel(X);
+				final int[] s = serial.getLabels(), p = parallel.getLabels();
+				final int[][] neighbors = new RadiusNeighborsParameters(eps)
+					.fitNewModel(X).getNeighbors().getIndices();
+				final boolean[] core = new boolean[neighbors.length];
+				for(int i = 0; i < core.length; i++)
+					core[i] = neighbors[i].length >= DBSCAN.DEF_MIN_PTS;
+				
+				assertTrue(serial.getNumberOfIdentifiedClusters() == parallel.getNumberOfIdentifiedClusters());
+				assertTrue(serial.getNumberOfNoisePoints() == parallel.getNumberOfNoisePoints());
+				assertTrue(samePartition(s, p, core));
+				for(int i = 0; i < s.length; i++)
+					assertTrue((DBSCAN.NOISE_CLASS == s[i]) == (DBSCAN.NOISE_CLASS == p[i]));
+				
+				// deterministic
+				assertTrue(VecUtils.equalsExactly(p, new DBSCANParameters(eps)
+					.setForceParallel(true).fitNewModel(X).getLabels()));
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testConcurrentUnionFind() throws InterruptedException {
+		final int n = 10000, numThreads = 8;
+		final DBSCAN.ConcurrentUnionFind sets = new DBSCAN.ConcurrentUnionFind(n);
+		
+		// Chains of 100, unioned in interleaved order from many threads
+		final Thread[] threads = new Thread[numThreads];
+		for(int t = 0; t < numThreads; t++) {
+			final int offset = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int i = n - 1 - offset; i > 0; i -= numThreads)
+						if(0 != i % 100)
+							sets.union(i, i - 1);
+				}
+			});
+			threads[t].start();
+		}
+		
+		for(Thread thread: threads)
+			thread.join();
+		
+		// Each set's root is its least member
+		for(int i = 0; i < n; i++)
+			assertTrue(sets.find(i) == i - i % 100);
+	}
+	
+	/**
+	 * Blobs of points around lat/lon-like centers, with some
+	 * exact duplicates and uniform background noise
+	 */
+	static Array2DRowRealMatrix latLon(final int m, final int d, final Random rand) {
+		final double[][] centers = new double[4][d];
+		for(double[] center: centers)
+			for(int k = 0; k < d; k++)
+				center[k] = (0 == k ? 37.0 : -122.0) + rand.nextDouble();
+		
+		final double[][] X = new double[m][d];
+		for(int i = 0; i < m; i++) {
+			if(i % 10 == 9) { // duplicates
+				X[i] = X[i - 1].clone();
+			} else if(i % 10 == 8) { // background
+				for(int k = 0; k < d; k++)
+					X[i][k] = (0 == k ? 37.0 : -122.0) + rand.nextDouble();
+			} else {
+				for(int k = 0; k < d; k++)
+					X[i][k] = centers[i % centers.length][k] + rand.nextGaussian() * 0.02;
+			}
+		}
+		
+		return new Array2DRowRealMatrix(X, false);
+	}
+	
+	@Test
+	public void testGridMatchesUnionFind() {
+		final Random rand = new Random(11);
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			for(int d = 2; d <= 3; d++) {
+				final Array2DRowRealMatrix X = latLon(2000, d, rand);
+				
+				for(double eps: new double[]{0.005, 0.01, 0.05}) {
+					for(int minPts: new int[]{1, 5, 20}) {
+						final DBSCAN grid = new DBSCANParameters(eps).setMinPts(minPts)
+							.setAlgorithm(DBSCANAlgorithm.GRID).fitNewModel(X);
+						final DBSCAN union = new DBSCANParameters(eps).setMinPts(minPts)
+							.setForceParallel(true).fitNewModel(X);
+						
+						assertTrue(grid.getAlgorithm().equals(DBSCANAlgorithm.GRID));
+						assertTrue(VecUtils.equalsExactly(grid.getLabels(), union.getLabels()));
+						assertTrue(grid.getNumberOfIdentifiedClusters() == union.getNumberOfIdentifiedClusters());
+						assertTrue(grid.getNumberOfNoisePoints() == union.getNumberOfNoisePoints());
+					}
+				}
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testGridCells() {
+		final double[][] X = latLon(500, 2, new Random(3)).getDataRef();
+		final double eps = 0.01;
+		final DBSCAN.CellGrid grid = new DBSCAN.CellGrid(X, eps);
+		
+		// Every point is in exactly one cell, and cell-mates are within eps
+		final boolean[] seen = new boolean[X.length];
+		for(int c = 0; c < grid.numCells(); c++) {
+			for(int a = grid.start[c]; a < grid.start[c + 1]; a++) {
+				final int i = grid.order[a];
+				assertFalse(seen[i]);
+				assertTrue(grid.cellOf[i] == c);
+				seen[i] = true;
+				
+				for(int b = grid.start[c]; b < grid.start[c + 1]; b++)
+					assertTrue(Distance.EUCLIDEAN.getDistance(X[i], X[grid.order[b]]) <= eps);
+			}
+		}
+		
+		// Any neighbor in another cell is in an adjacent one
+		for(int i = 0; i < X.length; i++) {
+			for(int j = 0; j < X.length; j++) {
+				if(grid.cellOf[i] == grid.cellOf[j] || Distance.EUCLIDEAN.getDistance(X[i], X[j]) > eps)
+					continue;
+				
+				boolean adjacent = false;
+				for(int c: grid.adjacent(grid.cellOf[i]))
+					adjacent |= c == grid.cellOf[j];
+				assertTrue(adjacent);
+			}
+		}
+	}
+	
+	@Test
+	public void testGridFallback() {
+		// Too many dimensions
+		DBSCAN model = new DBSCANParameters(0.5)
+			.setAlgorithm(DBSCANAlgorithm.GRID)
+			.fitNewModel(TestSuite.IRIS_DATASET.getData());
+		assertTrue(model.getAlgorithm().equals(DBSCANAlgorithm.RADIUS_NEIGHBORS));
+		
+		// Unsupported metric
+		model = new DBSCANParameters(0.01)
+			.setAlgorithm(DBSCANAlgorithm.GRID)
+			.setMetric(Distance.MANHATTAN)
+			.fitNewModel(latLon(100, 2, new Random(5)));
+		assertTrue(model.getAlgorithm().equals(DBSCANAlgorithm.RADIUS_NEIGHBORS));
+	}
+	
+	@Test
+	public void testPredictFromCoreSamples() {
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(new double[][]{
+			new double[]{0.0},
+			new double[]{0.1},
+			new double[]{0.2},
+			new double[]{0.65}, // border
+			new double[]{5.0}   // noise
+		}, false);
+		
+		final DBSCAN model = new DBSCANParameters(0.5).setMinPts(2).fitNewModel(X);
+		assertTrue(VecUtils.equalsExactly(model.getLabels(), new int[]{0, 0, 0, 0, -1}));
+		
+		// Only within eps of the border or noise points
+		final int[] predicted = model.predict(new Array2DRowRealMatrix(new double[][]{
+			new double[]{0.6},
+			new double[]{1.0},
+			new double[]{5.0}
+		}, false));
+		assertTrue(VecUtils.equalsExactly(predicted, new int[]{0, -1, -1}));
+		
+		// The index holds only the core samples, and is reused
+		final DBSCAN.CoreIndex index = model.getCoreIndex();
+		assertTrue(index.cores.length == 3);
+		assertTrue(index == model.getCoreIndex());
+	}
+	
+	@Test
+	public void testPredictMatchesExhaustive() {
+		final Array2DRowRealMatrix X = TestSuite.IRIS_DATASET.getData();
+		final double[][] x = X.getDataRef();
+		final Random rand = new Random(13);
+		final double eps = 0.5;
+		final DBSCAN model = new DBSCANParameters(eps).fitNewModel(X);
+		final int[] labels = model.getLabels();
+		
+		final int[][] neighbors = new RadiusNeighborsParameters(eps)
+			.fitNewModel(X).getNeighbors().getIndices();
+		
+		final double[][] newData = new double[300][];
+		for(int i = 0; i < newData.length; i++) {
+			newData[i] = x[i % x.length].clone();
+			for(int k = 0; k < newData[i].length; k++)
+				newData[i][k] += rand.nextGaussian() * 0.3;
+		}
+		
+		// Each takes the label of its nearest core sample within eps
+		final int[] expected = new int[newData.length];
+		for(int i = 0; i < newData.length; i++) {
+			double best = Double.POSITIVE_INFINITY, dist;
+			expected[i] = DBSCAN.NOISE_CLASS;
+			
+			for(int j = 0; j < x.length; j++) {
+				dist = Distance.EUCLIDEAN.getDistance(newData[i], x[j]);
+				if(neighbors[j].length >= DBSCAN.DEF_MIN_PTS && dist <= eps && dist < best) {
+					best = dist;
+					expected[i] = labels[j];
+				}
+			}
+		}
+		
+		final Array2DRowRealMatrix newMatrix = new Array2DRowRealMatrix(newData, false);
+		assertTrue(VecUtils.equalsExactly(model.predict(newMatrix), expected));
+		
+		// Training records in a cluster predict their own labels if core
+		final int[] self = model.predict(X);
+		for(int i = 0; i < x.length; i++)
+			if(neighbors[i].length >= DBSCAN.DEF_MIN_PTS)
+				assertTrue(self[i] == labels[i]);
+		
+		// Also in parallel
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			final DBSCAN parallel = new DBSCANParameters(eps).setForceParallel(true).fitNewModel(X);
+			assertTrue(VecUtils.equalsExactly(parallel.predict(newMatrix), expected));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
 }
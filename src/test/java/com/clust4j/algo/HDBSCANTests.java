@@ -35,9 +35,12 @@ import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.Precision;
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
+import com.clust4j.algo.HDBSCAN.ClusterSelection;
 import com.clust4j.algo.HDBSCAN.HDBSCAN_Algorithm;
 import com.clust4j.algo.HDBSCAN.CompQuadTup;
+import com.clust4j.algo.HDBSCAN.CondensedTree;
 import com.clust4j.algo.HDBSCANParameters;
 import com.clust4j.algo.HDBSCAN.LinkageTreeUtils;
 import com.clust4j.algo.HDBSCAN.TreeUnionFind;
@@ -51,11 +54,12 @@ import com.clust4j.kernel.Kernel;
 import com.clust4j.kernel.KernelTestCases;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
+import com.clust4j.metrics.pairwise.GeometricallySeparable;
 import com.clust4j.metrics.pairwise.MinkowskiDistance;
 import com.clust4j.metrics.pairwise.Pairwise;
 import com.clust4j.metrics.pairwise.Similarity;
-import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.Series.Inequality;
+import com.clust4j.utils.EntryPair;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.VecUtils;
 import com.clust4j.utils.MatUtils.MatSeries;
@@ -175,16 +179,16 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			new double[]{3.0, 1.0, 0.6, 3.0}
 		};
 		
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> h = HDBSCAN.LinkageTreeUtils.condenseTree(slt, 5);
-		QuadTup<Integer, Integer, Double, Integer> q = h.get(0);
-		assertTrue(q.getFirst() == 3);
-		assertTrue(q.getSecond() == 0);
+		CondensedTree h = HDBSCAN.LinkageTreeUtils.condenseTree(slt, 5);
+		assertTrue(h.size == 3);
+		assertTrue(h.parent[0] == 3);
+		assertTrue(h.child[0] == 0);
 		// Three is a repeating decimal...
-		assertTrue(q.getFourth() == 1);
+		assertTrue(h.childSize[0] == 1);
 		
-		TreeMap<Integer, Double> computedStability = HDBSCAN.LinkageTreeUtils.computeStability(h);
-		assertTrue(computedStability.size() == 1);
-		assertTrue(computedStability.get(3) == 5);
+		double[] computedStability = HDBSCAN.LinkageTreeUtils.computeStability(h);
+		assertTrue(computedStability.length == 1);
+		assertTrue(computedStability[0] == 5);
 		
 		int[] labels = HDBSCAN.getLabels(h, computedStability);
 		assertTrue(labels.length == 3);
@@ -383,39 +387,21 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 			new double[]{0,1,1.414,2},
 			new double[]{3,2,10.05,3}
 		};
+		final HDBSCAN.SingleLinkageTree tree = new HDBSCAN.SingleLinkageTree(x);
 		
-		ArrayList<Integer> result;
-		int root;
+		int[] result;
 		
-		// Test with root == 0
-		root = 0;
-		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		// The records are leaves
+		for(int root = -2; root <= 2; root++) {
+			result = HDBSCAN.LinkageTreeUtils.breadthFirstOrder(tree, root, new int[5]);
+			assertTrue(VecUtils.equalsExactly(result, new int[]{root}));
+		}
 		
-		// Test with root == 1
-		root = 1;
-		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
-
-		// Test with root == 2
-		root = 2;
-		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
-		
-		// Test with root == -1
-		root = -1;
-		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
-		
-		// Test with root == -2
-		root = -2;
-		result = HDBSCAN.LinkageTreeUtils.breadthFirstSearch(x, root);
-		assertTrue(result.size() == 1);
-		assertTrue(result.get(0) == root);
+		result = HDBSCAN.LinkageTreeUtils.breadthFirstOrder(tree, 3, new int[5]);
+		assertTrue(VecUtils.equalsExactly(result, new int[]{3, 0, 1}));
+		
+		result = HDBSCAN.LinkageTreeUtils.breadthFirstOrder(tree, 4, new int[5]);
+		assertTrue(VecUtils.equalsExactly(result, new int[]{4, 3, 2, 0, 1}));
 	}
 	
 	@Test
@@ -435,33 +421,57 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		System.out.println();
 	}
 	
+	/**
+	 * A condensed tree over 6 records: the root (6) splits into 7 and 8,
+	 * and 8 into 9 and 10, each of which the records fall out of
+	 */
+	static CondensedTree smallCondensedTree() {
+		return new CondensedTree(
+			new int[]{6, 6, 7, 7, 8, 8, 9, 9, 10},
+			new int[]{7, 8, 0, 1, 9, 10, 2, 3, 4},
+			new double[]{1.0, 1.0, 2.0, 2.0, 2.0, 2.0, 4.0, 4.0, 3.0},
+			new int[]{2, 4, 1, 1, 2, 2, 1, 1, 1},
+			9, 6);
+	}
+	
 	@Test
-	public void testDescKeySet() {
-		TreeMap<Integer, Double> stability = new TreeMap<>();
-		stability.put(1, 456.0);
-		stability.put(9, 23.0);
-		stability.put(-5, 89.0);
-			
-		ArrayList<Integer> nodes = HDBSCAN.GetLabelUtils.descSortedKeySet(stability);
-		assertTrue(nodes.size() == 2);
-		assertTrue(nodes.get(0) == 9);
-		assertTrue(nodes.get(1) == 1);
-		// It should trim the last one
+	public void testClusterIndex() {
+		final CondensedTree tree = smallCondensedTree();
+		assertTrue(tree.root() == 6);
+		assertTrue(tree.numClusters() == 5);
+		
+		// clusters are indexed by label less the root's
+		assertTrue(VecUtils.equalsExactly(tree.clusterParent, new int[]{-1, 0, 0, 2, 2}));
+		assertTrue(VecUtils.equalsExactly(tree.clusterOffsets, new int[]{0, 2, 2, 4, 4, 4}));
+		assertTrue(VecUtils.equalsExactly(tree.clusterChildren, new int[]{1, 2, 3, 4}));
+		
+		assertTrue(VecUtils.equalsExactly(
+			HDBSCAN.GetLabelUtils.breadthFirstSearchFromClusterTree(tree, 0), new int[]{0, 1, 2, 3, 4}));
+		assertTrue(VecUtils.equalsExactly(
+			HDBSCAN.GetLabelUtils.breadthFirstSearchFromClusterTree(tree, 2), new int[]{2, 3, 4}));
+		assertTrue(HDBSCAN.GetLabelUtils.subTreeStability(tree, 2, new double[]{0, 1, 2, 3, 4}) == 7.0);
 	}
 	
 	@Test
-	public void testSizeOverOne() {
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> tup = new ArrayList<>();
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,2,1.0,1));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		tup.add(new CompQuadTup<Integer, Integer, Double, Integer>(1,1,1.0,2));
-		
-		EntryPair<ArrayList<double[]>, Integer> entry = 
-			HDBSCAN.GetLabelUtils.childSizeGtOneAndMaxChild(tup);
-		
-		assertTrue(entry.getKey().size() == 3);
-		assertTrue(entry.getValue() == 3);
+	public void testSmallCondensedTreeLabels() {
+		final CondensedTree tree = smallCondensedTree();
+		
+		// 9 is born at 2 and its records fall out at 4: (4 - 2) * 2 = 4
+		final double[] stability = HDBSCAN.LinkageTreeUtils.computeStability(tree);
+		assertArrayEquals(new double[]{Double.NaN, 2.0, 4.0, 4.0, 1.0}, stability, 1e-12);
+		
+		// 9 and 10 (4 + 1) outweigh 8 (4), and 7 stands alone. 
+		// Record 5 never falls out of a cluster, so is noise
+		assertTrue(VecUtils.equalsExactly(HDBSCAN.getLabels(tree, stability), 
+			new int[]{1, 1, 3, 3, 4, HDBSCAN.NOISE_CLASS}));
+		
+		// the selection doesn't modify the stability
+		assertTrue(stability[2] == 4.0);
+		
+		// without 10, 8 outweighs 9 alone
+		stability[4] = 0.0;
+		assertTrue(VecUtils.equalsExactly(HDBSCAN.getLabels(tree, stability), 
+			new int[]{1, 1, 2, 2, 2, HDBSCAN.NOISE_CLASS}));
 	}
 	
 	@Test
@@ -1314,8 +1324,12 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		
 		
 		// test the condense tree label
-		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = 
-			HDBSCAN.LinkageTreeUtils.condenseTree(expected_labMat, 5);
+		CondensedTree tree = HDBSCAN.LinkageTreeUtils.condenseTree(expected_labMat, 5);
+		ArrayList<CompQuadTup<Integer, Integer, Double, Integer>> condensed = new ArrayList<>();
+		for(int i = 0; i < tree.size; i++)
+			condensed.add(new CompQuadTup<Integer, Integer, Double, Integer>(
+				tree.parent[i], tree.child[i], tree.lambda[i], tree.childSize[i]));
+		
 		// Now sort it for the sake of comparing to the sklearn res...
 		Collections.sort(condensed, new Comparator<QuadTup<Integer, Integer, Double, Integer>>(){
 			@Override
@@ -1353,7 +1367,11 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		
 		
 		// If we get here, the condensed labels works!!
-		TreeMap<Integer, Double> stability = HDBSCAN.LinkageTreeUtils.computeStability(condensed);
+		double[] stabilityArr = HDBSCAN.LinkageTreeUtils.computeStability(tree);
+		TreeMap<Integer, Double> stability = new TreeMap<>();
+		for(int i = 0; i < stabilityArr.length; i++)
+			stability.put(tree.root() + i, stabilityArr[i]);
+		assertTrue(stability.size() == 11);
 		TreeMap<Integer, Double> exp_stab  = new TreeMap<>();
 		exp_stab.put(150, Double.NaN);
 		exp_stab.put(151, 128.9165546745262);
@@ -1365,7 +1383,7 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		exp_stab.put(157, 8.4148537644752253);
 		exp_stab.put(158, 1.7956828073404498);
 		exp_stab.put(159, 2.99248898237368);
-		exp_stab.put(160, Double.NaN);
+		exp_stab.put(160, 3.7008195376198154);
 		
 		/*
 		 * Assert near equality...
@@ -1613,18 +1631,287 @@ public class HDBSCANTests implements ClusterTest, ClassifierTest, BaseModelTest
 		}
 		
 		/*
-		 * Ensure unsupportedOperation
+		 * A record far from everything is noise
 		 */
 		newData = new Array2DRowRealMatrix(new double[][]{
 			new double[]{150,150,150,150}
 		}, false);
+		EntryPair<int[], double[]> pred = d.approximatePredict(newData);
+		assertTrue(pred.getKey()[0] == HDBSCAN.NOISE_CLASS);
+		assertTrue(pred.getValue()[0] == 0.0);
+	}
+	
+	/**
+	 * Three well separated blobs of 100 records each
+	 */
+	static Array2DRowRealMatrix blobs() {
+		final double[][] X = MatUtils.randomGaussian(300, 2, new java.util.Random(7));
+		for(int i = 0; i < X.length; i++) {
+			X[i][0] += 10 * (i / 100);
+			X[i][1] -= 10 * (i / 100);
+		}
+		
+		return new Array2DRowRealMatrix(X, false);
+	}
+	
+	@Test
+	public void testApproximatePredictTrainingData() {
+		final Array2DRowRealMatrix X = blobs();
+		
+		// Every training record's nearest neighbor in mutual reachability is 
+		// itself, so each is predicted as it was labeled. CANBERRA forces
+		// an exhaustive neighbor search.
+		for(HDBSCAN_Algorithm algo: HDBSCAN_Algorithm.values()) {
+			final HDBSCAN model = new HDBSCANParameters(10)
+				.setAlgo(algo).fitNewModel(X);
+			assertTrue(algo.toString(), VecUtils.equalsExactly(model.getLabels(), model.predict(X)));
+		}
+		
+		final HDBSCAN model = new HDBSCANParameters(10)
+			.setAlgo(HDBSCAN_Algorithm.GENERIC)
+			.setMetric(Distance.CANBERRA)
+			.fitNewModel(X);
+		assertTrue(VecUtils.equalsExactly(model.getLabels(), model.predict(X)));
+	}
+	
+	@Test
+	public void testApproximatePredictTrainingDataOverlapping() {
+		// Blobs of unequal spread that run into each other, so predicting a 
+		// training record relies on the exact core distances the fit used
+		final double[] spread = new double[]{0.5, 1.0, 2.0};
+		for(int seed = 0; seed < 5; seed++) {
+			final double[][] X = MatUtils.randomGaussian(300, 2, new java.util.Random(seed));
+			for(int i = 0; i < X.length; i++) {
+				X[i][0] = X[i][0] * spread[i / 100] + 3 * (i / 100);
+				X[i][1] = X[i][1] * spread[i / 100];
+			}
+			
+			final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+			for(HDBSCAN_Algorithm algo: HDBSCAN_Algorithm.values()) {
+				final HDBSCAN model = new HDBSCANParameters(5)
+					.setAlgo(algo).fitNewModel(mat);
+				assertTrue(algo + ", seed " + seed, 
+					VecUtils.equalsExactly(model.getLabels(), model.predict(mat)));
+			}
+		}
+	}
+	
+	@Test
+	public void testApproximatePredictNewData() {
+		final HDBSCAN model = new HDBSCANParameters(10)
+			.setPredictionData(true).fitNewModel(blobs());
+		final int[] labels = model.getLabels();
+		assertTrue(model.getNumberOfIdentifiedClusters() == 3);
+		
+		// The centers are in their blobs' cores, the halfway point is
+		// only loosely in a blob, and the far point is noise
+		final Array2DRowRealMatrix newData = new Array2DRowRealMatrix(new double[][]{
+			new double[]{0.1, 0.1},
+			new double[]{10.1, -9.9},
+			new double[]{20.1, -19.9},
+			new double[]{5, -5},
+			new double[]{1000, 1000}
+		}, false);
+		
+		final EntryPair<int[], double[]> pred = model.approximatePredict(newData);
+		final int[] predicted = pred.getKey();
+		final double[] strengths = pred.getValue();
+		for(int blob = 0; blob < 3; blob++) {
+			assertTrue(predicted[blob] == labels[100 * blob]);
+			assertTrue(strengths[blob] > 0.5 && strengths[blob] <= 1.0);
+		}
+		
+		assertTrue(predicted[3] == labels[0] || predicted[3] == labels[100]);
+		assertTrue(strengths[3] > 0.0 && strengths[3] < 0.5);
+		assertTrue(predicted[4] == HDBSCAN.NOISE_CLASS);
+		assertTrue(strengths[4] == 0.0);
+	}
+	
+	@Test
+	public void testApproximatePredictParallel() {
+		final Array2DRowRealMatrix X = blobs();
+		final Array2DRowRealMatrix newData = new Array2DRowRealMatrix(
+			MatUtils.randomGaussian(2000, 2, 8.0, new java.util.Random(3)), false);
+		
+		final EntryPair<int[], double[]> serial = new HDBSCANParameters(10)
+			.fitNewModel(X).approximatePredict(newData);
+		
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			final EntryPair<int[], double[]> parallel = new HDBSCANParameters(10)
+				.setForceParallel(true).fitNewModel(X).approximatePredict(newData);
+			
+			assertTrue(VecUtils.equalsExactly(serial.getKey(), parallel.getKey()));
+			assertTrue(VecUtils.equalsExactly(serial.getValue(), parallel.getValue()));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testExtractLabelsMatchesRefit() {
+		final HDBSCAN model = new HDBSCANParameters()
+			.setKeepTree(true).fitNewModel(DATA);
+		
+		for(ClusterSelection selection: ClusterSelection.values()) {
+			for(int minSize: new int[]{1, 2, 5, 10, 25, 150}) {
+				final int[] refit = new HDBSCANParameters()
+					.setMinClustSize(minSize)
+					.setClusterSelection(selection)
+					.fitNewModel(DATA).getLabels();
+				
+				assertTrue(selection + ", " + minSize, 
+					VecUtils.equalsExactly(refit, model.extractLabels(minSize, selection)));
+			}
+		}
+		
+		// The model's own labels are untouched
+		assertTrue(VecUtils.equalsExactly(model.getLabels(), 
+			new HDBSCANParameters().fitNewModel(DATA).getLabels()));
+		assertTrue(VecUtils.equalsExactly(model.getLabels(), 
+			model.extractLabels(HDBSCAN.DEF_MIN_CLUST_SIZE)));
+	}
+	
+	@Test
+	public void testLeafSelection() {
+		final CondensedTree tree = smallCondensedTree();
+		
+		// The leaves 7, 9 and 10 are selected regardless of stability,
+		// where excess of mass would prefer 8 over 9 alone
+		final double[] stability = new double[]{Double.NaN, 2.0, 4.0, 4.0, 0.0};
+		assertTrue(VecUtils.equalsExactly(HDBSCAN.getLabels(tree, stability), 
+			new int[]{1, 1, 2, 2, 2, HDBSCAN.NOISE_CLASS}));
+		assertTrue(VecUtils.equalsExactly(HDBSCAN.getLeafLabels(tree), 
+			new int[]{1, 1, 3, 3, 4, HDBSCAN.NOISE_CLASS}));
+	}
+	
+	@Test
+	public void testExtractLabelsErrors() {
+		boolean a = false;
+		try {
+			new HDBSCAN(DATA).extractLabels(5);
+		} catch(ModelNotFitException m) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		// Not retained by default
 		a = false;
 		try {
-			d.predict(newData);
-		} catch(UnsupportedOperationException u) {
+			new HDBSCAN(DATA).fit().extractLabels(5);
+		} catch(IllegalStateException i) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		final HDBSCAN model = new HDBSCANParameters().setKeepTree(true).fitNewModel(DATA);
+		a = false;
+		try {
+			model.extractLabels(0);
+		} catch(IllegalArgumentException i) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		a = false;
+		try {
+			model.extractLabels(5, null);
+		} catch(IllegalArgumentException i) {
 			a = true;
 		} finally {
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testOutlierScores() {
+		// The root (6) splits into 7 and 8 at 1, then the records fall out
+		final CondensedTree tree = new CondensedTree(
+			new int[]{6, 6, 7, 7, 7, 8, 8, 8},
+			new int[]{7, 8, 0, 1, 2, 3, 4, 5},
+			new double[]{1.0, 1.0, 2.0, 4.0, 4.0, 1.5, 3.0, 6.0},
+			new int[]{3, 3, 1, 1, 1, 1, 1, 1},
+			8, 6);
+		
+		// the death of the root is that of its densest descendant
+		assertArrayEquals(new double[]{6.0, 4.0, 6.0}, tree.clusterDeath, 0.0);
+		assertArrayEquals(new double[]{0.5, 0.0, 0.0, 0.75, 0.5, 0.0}, 
+			LinkageTreeUtils.outlierScores(tree), 1e-12);
+	}
+	
+	@Test
+	public void testOutlierScoresFit() {
+		// A lone record far from the blobs is the most outlying
+		final double[][] X = MatUtils.rbind(blobs().getData(), new double[][]{new double[]{30, 30}});
+		final HDBSCAN model = new HDBSCANParameters(10).fitNewModel(new Array2DRowRealMatrix(X, false));
+		final double[] scores = model.getOutlierScores();
+		
+		assertTrue(scores.length == X.length);
+		assertTrue(VecUtils.argMax(scores) == X.length - 1);
+		for(double score: scores)
+			assertTrue(score >= 0.0 && score <= 1.0);
+		
+		boolean a = false;
+		try {
+			new HDBSCAN(DATA).getOutlierScores();
+		} catch(ModelNotFitException m) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+	}
+	
+	/**
+	 * The single linkage tree from the dense distance and 
+	 * mutual reachability matrices that GENERIC once used
+	 */
+	static double[][] denseGenericTree(double[][] X, GeometricallySeparable metric, int minPts, double alpha) {
+		final double[][] mr = LinkageTreeUtils.mutualReachability(
+			Pairwise.getDistance(X, metric, false, false), minPts, alpha);
+		return HDBSCAN.label(MatUtils.sortAscByCol(LinkageTreeUtils.minSpanTreeLinkageCore(mr, X.length), 2));
+	}
+	
+	@Test
+	public void testGenericMatchesDense() {
+		final double[][] X = MatUtils.abs(blobs().getData()); // bray curtis needs non-negative data
+		final int minPts = 10;
+		
+		for(DistanceMetric metric: new DistanceMetric[]{Distance.EUCLIDEAN, Distance.CANBERRA, Distance.BRAY_CURTIS}) {
+			for(double alpha: new double[]{1.0, 1.5}) {
+				final double[][] dense = denseGenericTree(X, metric, minPts, alpha);
+				final HDBSCAN.MutualReachabilityPrim prim = 
+					new HDBSCAN.MutualReachabilityPrim(X, metric, alpha, false, null);
+				final double[][] light = HDBSCAN.label(MatUtils.sortAscByCol(
+					prim.spanningTree(prim.coreDistances(minPts + 1)), 2));
+				
+				// The trees may only differ among edges of equal weight
+				assertArrayEquals(metric.getName(), MatUtils.getColumn(dense, 2), MatUtils.getColumn(light, 2), 1e-12);
+				
+				final int[] labels = new HDBSCANParameters(minPts)
+					.setAlgo(HDBSCAN_Algorithm.GENERIC)
+					.setMetric(metric).setAlpha(alpha)
+					.fitNewModel(new Array2DRowRealMatrix(X, false)).getLabels();
+				assertTrue(metric.getName(), VecUtils.equalsExactly(labels, 
+					new NoiseyLabelEncoder(HDBSCAN.treeToLabels(X, dense, HDBSCAN.DEF_MIN_CLUST_SIZE))
+						.fit().getEncodedLabels()));
+			}
+		}
+	}
+	
+	@Test
+	public void testGenericParallel() {
+		final double[][] X = MatUtils.randomGaussian(2500, 3, new java.util.Random(11));
+		final HDBSCAN.MutualReachabilityPrim serial = 
+			new HDBSCAN.MutualReachabilityPrim(X, Distance.MANHATTAN, 1.0, false, null);
+		final HDBSCAN.MutualReachabilityPrim parallel = 
+			new HDBSCAN.MutualReachabilityPrim(X, Distance.MANHATTAN, 1.0, true, null);
+		
+		final double[] core = serial.coreDistances(6);
+		assertTrue(VecUtils.equalsExactly(core, parallel.coreDistances(6)));
+		assertTrue(MatUtils.equalsExactly(serial.spanningTree(core), parallel.spanningTree(core)));
+	}
 }
@@ -28,6 +28,7 @@ import static com.clust4j.TestSuite.getRandom;
 
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.util.FastMath;
 import org.junit.Test;
 
 import com.clust4j.TestSuite;
@@ -42,6 +43,7 @@ import com.clust4j.kernel.KernelTestCases;
 import com.clust4j.metrics.pairwise.Distance;
 import com.clust4j.metrics.pairwise.DistanceMetric;
 import com.clust4j.metrics.pairwise.MinkowskiDistance;
+import com.clust4j.metrics.pairwise.Pairwise;
 import com.clust4j.utils.MatUtils;
 import com.clust4j.utils.MatrixFormatter;
 import com.clust4j.utils.VecUtils;
@@ -423,4 +425,385 @@ public class HierarchicalTests implements ClusterTest, ClassifierTest, BaseModel
 			assertTrue(a);
 		}
 	}
+	
+	@Test
+	public void testPredictConcurrent() throws InterruptedException {
+		final HierarchicalAgglomerative h = new HierarchicalAgglomerativeParameters(3)
+			.setVerbose(false).fitNewModel(data_);
+		final int[] expected = new NearestCentroidParameters().setVerbose(false)
+			.fitNewModel(data_, h.getLabels()).predict(data_);
+		
+		// the first predictions race to build the shared centroid model
+		final int nThreads = 8;
+		final int[][] results = new int[nThreads][];
+		final Thread[] threads = new Thread[nThreads];
+		for(int t = 0; t < nThreads; t++) {
+			final int idx = t;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int rep = 0; rep < 25; rep++)
+						results[idx] = h.predict(data_);
+				}
+			});
+			threads[t].start();
+		}
+		
+		for(Thread t: threads)
+			t.join();
+		for(int[] result: results)
+			assertTrue(VecUtils.equalsExactly(expected, result));
+		assertTrue(VecUtils.equalsExactly(expected, h.predict(data_)));
+	}
+	
+	/**
+	 * The children of each merge via a brute force search for the 
+	 * closest pair of clusters, as a reference for the NN-chain linkage
+	 */
+	static double[][] bruteForceChildren(HierarchicalAgglomerative.HierarchicalDendrogram tree, double[][] X) {
+		final int n = X.length;
+		final double[][] D = Pairwise.getDistance(X, tree.dist, false, tree.linksPartialDistances());
+		final int[] id_map = VecUtils.arange(n), size = VecUtils.repInt(1, n);
+		final double[][] children = new double[n - 1][2];
+		
+		for(int k = 0; k < n - 1; k++) {
+			int x = -1, y = -1;
+			double min = Double.POSITIVE_INFINITY;
+			for(int i = 0; i < n - 1; i++)
+				for(int j = i + 1; j < n; j++)
+					if(id_map[i] != -1 && id_map[j] != -1 && D[i][j] < min) {
+						min = D[i][j];
+						x = i;
+						y = j;
+					}
+			
+			children[k][0] = FastMath.min(id_map[x], id_map[y]);
+			children[k][1] = FastMath.max(id_map[x], id_map[y]);
+			for(int i = 0; i < n; i++) {
+				if(id_map[i] == -1 || i == x || i == y)
+					continue;
+				D[i][y] = D[y][i] = tree.getDist(D[i][x], D[i][y], min, size[x], size[y], size[i]);
+			}
+			
+			size[y] += size[x];
+			id_map[x] = -1;
+			id_map[y] = n + k;
+		}
+		
+		return children;
+	}
+	
+	@Test
+	public void testNNChainMatchesBruteForce() {
+		final double[][] X = MatUtils.randomGaussian(150, 4, new java.util.Random(42));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		
+		for(Linkage linkage: Linkage.values()) {
+			HierarchicalAgglomerative hac = new HierarchicalAgglomerative(mat,
+				new HierarchicalAgglomerativeParameters(linkage).setVerbose(false));
+			HierarchicalAgglomerative.HierarchicalDendrogram tree = linkage.buildTree(hac);
+			
+			final double[][] expected = bruteForceChildren(tree, X);
+			final double[][] children = tree.linkage();
+			assertTrue(linkage.toString(), MatUtils.equalsExactly(expected, children));
+		}
+	}
+	
+	@Test
+	public void testLabelMerges() {
+		// merges of cluster indices, found out of distance order
+		final double[][] Z = new double[][]{
+			new double[]{2, 3, 0.5, 2},
+			new double[]{0, 3, 3.0, 4},
+			new double[]{0, 1, 0.1, 2}
+		};
+		
+		HierarchicalAgglomerative.labelMerges(Z, 4);
+		assertTrue(MatUtils.equalsExactly(Z, new double[][]{
+			new double[]{0, 1, 0.1, 2},
+			new double[]{2, 3, 0.5, 2},
+			new double[]{4, 5, 3.0, 4}
+		}));
+	}
+	
+	@Test
+	public void testSingleLinkageMatchesBruteForce() {
+		final double[][] X = MatUtils.randomGaussian(150, 4, new java.util.Random(42));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		
+		// Euclidean uses Boruvka, Canberra uses Prim
+		for(DistanceMetric metric: new DistanceMetric[]{Distance.EUCLIDEAN, Distance.CANBERRA}) {
+			HierarchicalAgglomerative hac = new HierarchicalAgglomerative(mat,
+				new HierarchicalAgglomerativeParameters(Linkage.SINGLE)
+					.setMetric(metric).setVerbose(false));
+			HierarchicalAgglomerative.HierarchicalDendrogram tree = Linkage.SINGLE.buildTree(hac);
+			
+			final double[][] expected = bruteForceChildren(tree, X);
+			assertTrue(metric.getName(), MatUtils.equalsExactly(expected, tree.linkage()));
+		}
+	}
+	
+	@Test
+	public void testSingleLinkageLarge() {
+		// The distance matrix alone would need over 1.5 GB
+		final int per = 7000, n = 3 * per;
+		final java.util.Random rand = new java.util.Random(42);
+		final double[][] X = new double[n][];
+		for(int i = 0; i < n; i++)
+			X[i] = new double[]{100 * (i / per) + rand.nextDouble(), rand.nextDouble()};
+		
+		HierarchicalAgglomerative hac = new HierarchicalAgglomerative(
+			new Array2DRowRealMatrix(X, false),
+			new HierarchicalAgglomerativeParameters(3)
+				.setLinkage(Linkage.SINGLE).setVerbose(false)).fit();
+		
+		final int[] labels = hac.getLabels();
+		for(int i = 0; i < n; i++)
+			assertTrue(labels[i] == labels[(i / per) * per]);
+		assertTrue(VecUtils.unique(labels).size() == 3);
+	}
+	
+	@Test
+	public void testRecut() {
+		for(Linkage linkage: Linkage.values()) {
+			HierarchicalAgglomerative hac = new HierarchicalAgglomerative(data_,
+				new HierarchicalAgglomerativeParameters(3).setLinkage(linkage).setVerbose(false)).fit();
+			assertTrue(VecUtils.equalsExactly(hac.getLabels(), hac.cut(3)));
+			
+			final double[] heights = hac.getMergeHeights();
+			assertTrue(heights.length == data_.getRowDimension() - 1);
+			for(int j = 1; j < heights.length; j++)
+				assertTrue(heights[j - 1] <= heights[j]);
+			
+			for(int k = 1; k <= 20; k++) {
+				final int[] cut = hac.cut(k);
+				assertTrue(VecUtils.unique(cut).size() == k);
+				
+				// cuts are the labels a fit with k clusters would produce
+				if(k > 1) {
+					HierarchicalAgglomerative refit = new HierarchicalAgglomerative(data_,
+						new HierarchicalAgglomerativeParameters(k).setLinkage(linkage).setVerbose(false)).fit();
+					assertTrue(linkage + ", " + k, VecUtils.equalsExactly(refit.getLabels(), cut));
+				}
+				
+				// cutting between merge heights yields the same clusters
+				final int made = heights.length - k + 1;
+				if(made > 0 && made < heights.length && heights[made - 1] < heights[made]) {
+					final double threshold = (heights[made - 1] + heights[made]) / 2.0;
+					assertTrue(VecUtils.equalsExactly(cut, hac.cutAtDistance(threshold)));
+				}
+			}
+			
+			assertTrue(VecUtils.unique(hac.cutAtDistance(Double.POSITIVE_INFINITY)).size() == 1);
+			assertTrue(VecUtils.unique(hac.cutAtDistance(-1.0)).size() == data_.getRowDimension());
+		}
+	}
+	
+	@Test
+	public void testRecutMatchesHcCut() {
+		HierarchicalAgglomerative hac = new HierarchicalAgglomerative(data_,
+			new HierarchicalAgglomerativeParameters(Linkage.AVERAGE).setVerbose(false));
+		final double[][] children = Linkage.AVERAGE.buildTree(hac).linkage();
+		final HierarchicalAgglomerative.MergeTree tree = new HierarchicalAgglomerative.MergeTree(
+			Linkage.AVERAGE.buildTree(new HierarchicalAgglomerative(data_,
+				new HierarchicalAgglomerativeParameters(Linkage.AVERAGE).setVerbose(false))).mergeMatrix(), 
+			children.length + 1);
+		
+		for(int k = 2; k <= 30; k++) {
+			final int[] expected = new SafeLabelEncoder(
+				HierarchicalAgglomerative.hcCut(k, children, children.length + 1)).fit().getEncodedLabels();
+			assertTrue(VecUtils.equalsExactly(expected, tree.cut(k)));
+		}
+	}
+	
+	@Test
+	public void testRecutExceptions() {
+		HierarchicalAgglomerative hac = new HierarchicalAgglomerative(data_,
+			new HierarchicalAgglomerativeParameters(3).setVerbose(false));
+		
+		boolean a = false;
+		try {
+			hac.cut(2);
+		} catch(ModelNotFitException m) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		hac.fit();
+		a = false;
+		try {
+			hac.cut(0);
+		} catch(IllegalArgumentException i) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+		
+		// k = 1 builds no tree
+		hac = new HierarchicalAgglomerative(data_,
+			new HierarchicalAgglomerativeParameters(1).setVerbose(false)).fit();
+		assertTrue(VecUtils.equalsExactly(hac.cut(1), new int[data_.getRowDimension()]));
+		assertTrue(hac.getMergeHeights().length == 0);
+		
+		a = false;
+		try {
+			hac.cut(2);
+		} catch(IllegalArgumentException i) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+	}
+	
+	static int[][] completeGraph(int n) {
+		final int[][] graph = new int[n][];
+		for(int i = 0; i < n; i++)
+			graph[i] = i + 1 < n ? VecUtils.arange(i + 1, n) : new int[0];
+		return graph;
+	}
+	
+	@Test
+	public void testConnectivityCompleteGraph() {
+		// with every pair connected, the constraint changes nothing
+		final double[][] X = MatUtils.randomGaussian(150, 4, new java.util.Random(42));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		
+		for(Linkage linkage: Linkage.values()) {
+			HierarchicalAgglomerative hac = new HierarchicalAgglomerative(mat,
+				new HierarchicalAgglomerativeParameters(5).setLinkage(linkage)
+					.setConnectivity(completeGraph(X.length)).setVerbose(false));
+			final double[][] children = hac.new ConnectivityTree().linkage();
+			
+			HierarchicalAgglomerativeParameters planner = 
+				new HierarchicalAgglomerativeParameters(5).setLinkage(linkage).setVerbose(false);
+			assertTrue(linkage.toString(), MatUtils.equalsExactly(
+				linkage.buildTree(new HierarchicalAgglomerative(mat, planner)).linkage(), children));
+			
+			// the dense linkage consumes its distances, so fit a new model
+			HierarchicalAgglomerative dense = planner.fitNewModel(mat);
+			hac.fit();
+			assertTrue(linkage.toString(), VecUtils.equalsExactly(hac.getLabels(), dense.getLabels()));
+			assertArrayEquals(hac.getMergeHeights(), dense.getMergeHeights(), 1e-8);
+		}
+	}
+	
+	@Test
+	public void testConnectivityWard() {
+		final double[][] X = MatUtils.randomGaussian(60, 3, new java.util.Random(7));
+		HierarchicalAgglomerative hac = new HierarchicalAgglomerative(
+			new Array2DRowRealMatrix(X, false),
+			new HierarchicalAgglomerativeParameters(4).setLinkage(Linkage.WARD)
+				.setConnectivity(completeGraph(X.length)).setVerbose(false));
+		final double[][] Z = hac.new ConnectivityTree().mergeMatrix();
+		
+		// brute force: merge the pair least increasing the within-cluster sum of squares
+		final ArrayList<ArrayList<Integer>> clusters = new ArrayList<>();
+		final ArrayList<Integer> ids = new ArrayList<>();
+		for(int i = 0; i < X.length; i++) {
+			clusters.add(new ArrayList<>(Arrays.asList(i)));
+			ids.add(i);
+		}
+		
+		for(int k = 0; k < X.length - 1; k++) {
+			int x = -1, y = -1;
+			double min = Double.POSITIVE_INFINITY;
+			for(int a = 0; a < clusters.size() - 1; a++) {
+				for(int b = a + 1; b < clusters.size(); b++) {
+					final ArrayList<Integer> both = new ArrayList<>(clusters.get(a));
+					both.addAll(clusters.get(b));
+					final double inc = wss(X, both) - wss(X, clusters.get(a)) - wss(X, clusters.get(b));
+					if(inc < min) {
+						min = inc;
+						x = a;
+						y = b;
+					}
+				}
+			}
+			
+			assertEquals(FastMath.min(ids.get(x), ids.get(y)), Z[k][0], 0.0);
+			assertEquals(FastMath.max(ids.get(x), ids.get(y)), Z[k][1], 0.0);
+			assertEquals(FastMath.sqrt(2 * min), Z[k][2], 1e-8);
+			
+			clusters.get(x).addAll(clusters.remove(y));
+			ids.remove(y);
+			ids.set(x, X.length + k);
+		}
+	}
+	
+	static double wss(double[][] X, ArrayList<Integer> members) {
+		final double[] centroid = new double[X[0].length];
+		for(int i: members)
+			for(int j = 0; j < centroid.length; j++)
+				centroid[j] += X[i][j] / members.size();
+		
+		double sum = 0;
+		for(int i: members)
+			for(int j = 0; j < centroid.length; j++)
+				sum += (X[i][j] - centroid[j]) * (X[i][j] - centroid[j]);
+		return sum;
+	}
+	
+	@Test
+	public void testConnectivityConstrains() {
+		// two interleaved strips: each record is closer to the other strip
+		// than to its own neighbors, but is only connected within its strip
+		final int per = 50, n = 2 * per;
+		final double[][] X = new double[n][];
+		final int[][] graph = new int[n][];
+		for(int i = 0; i < per; i++) {
+			X[i] = new double[]{i, 0.0};
+			X[i + per] = new double[]{i + 0.5, 0.1};
+			graph[i] = i + 1 < per ? new int[]{i + 1} : new int[0];
+			graph[i + per] = i + 1 < per ? new int[]{i + per + 1} : new int[0];
+		}
+		
+		for(Linkage linkage: Linkage.values()) {
+			HierarchicalAgglomerative hac = new HierarchicalAgglomerative(
+				new Array2DRowRealMatrix(X, false),
+				new HierarchicalAgglomerativeParameters(2).setLinkage(linkage)
+					.setConnectivity(graph).setVerbose(false)).fit();
+			
+			final int[] labels = hac.getLabels();
+			for(int i = 0; i < n; i++)
+				assertTrue(linkage.toString(), labels[i] == (i < per ? 0 : 1));
+			
+			// the strips are only joined by the last merge
+			final double[] heights = hac.getMergeHeights();
+			assertTrue(Double.isInfinite(heights[n - 2]));
+			assertFalse(Double.isInfinite(heights[n - 3]));
+		}
+	}
+	
+	@Test
+	public void testConnectivityFromNeighbors() {
+		final int k = 10;
+		Neighborhood neighbors = new NearestNeighbors(data_,
+			new NearestNeighborsParameters(k).setVerbose(false)).fit().getNeighbors();
+		HierarchicalAgglomerativeParameters planner = new HierarchicalAgglomerativeParameters(3)
+			.setLinkage(Linkage.WARD).setConnectivity(neighbors).setVerbose(false);
+		
+		// the planner keeps its own copy
+		assertTrue(MatUtils.equalsExactly(planner.getConnectivity(), neighbors.getIndices()));
+		assertFalse(planner.getConnectivity() == neighbors.getIndices());
+		assertTrue(MatUtils.equalsExactly(planner.copy().getConnectivity(), neighbors.getIndices()));
+		
+		HierarchicalAgglomerative hac = planner.fitNewModel(data_);
+		assertTrue(VecUtils.unique(hac.getLabels()).size() == 3);
+		assertTrue(VecUtils.equalsExactly(hac.getLabels(), hac.cut(3)));
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testConnectivityBadDims() {
+		new HierarchicalAgglomerative(data_, new HierarchicalAgglomerativeParameters()
+			.setConnectivity(completeGraph(10)));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testConnectivityBadIndex() {
+		final int[][] graph = completeGraph(data_.getRowDimension());
+		graph[0][0] = -1;
+		new HierarchicalAgglomerative(data_, new HierarchicalAgglomerativeParameters()
+			.setConnectivity(graph));
+	}
 }
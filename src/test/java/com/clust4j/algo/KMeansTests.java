@@ -25,6 +25,7 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -36,10 +37,13 @@ import org.junit.Test;
 import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
 import com.clust4j.algo.AbstractCentroidClusterer.InitializationStrategy;
+import com.clust4j.algo.KMeans.KMeansAlgorithm;
 import com.clust4j.algo.preprocess.PreProcessor;
 import com.clust4j.algo.preprocess.StandardScaler;
 import com.clust4j.algo.KMeansParameters;
+import com.clust4j.data.ChunkedMatrixReader;
 import com.clust4j.data.DataSet;
+import com.clust4j.data.MappedMatrixSource;
 import com.clust4j.except.ModelNotFitException;
 import com.clust4j.except.NaNException;
 import com.clust4j.kernel.GaussianKernel;
@@ -777,4 +781,271 @@ public class KMeansTests implements ClassifierTest, ClusterTest, ConvergeableTes
 		threadPool.execute(first);
 		threadPool.execute(second);
 	}
+	
+	@Test
+	public void testYinyangMatchesLloyd() {
+		for(Array2DRowRealMatrix mat: new Array2DRowRealMatrix[]{data_, wine, bc}) {
+			for(int k: new int[]{3, 25}) {
+				KMeans lloyd = new KMeans(mat, new KMeansParameters(k)
+					.setSeed(new Random(42))).fit();
+				KMeans yinyang = new KMeans(mat, new KMeansParameters(k)
+					.setSeed(new Random(42))
+					.setAlgorithm(KMeansAlgorithm.YINYANG)).fit();
+				
+				assertTrue(KMeansAlgorithm.YINYANG.equals(yinyang.getAlgorithm()));
+				assertTrue(VecUtils.equalsExactly(lloyd.getLabels(), yinyang.getLabels()));
+				assertTrue(lloyd.itersElapsed() == yinyang.itersElapsed());
+				assertTrue(VecUtils.equalsWithTolerance(lloyd.getWSS(), yinyang.getWSS(), 1e-8));
+				assertTrue(lloyd.getDistanceComputationsSaved() == 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testYinyangMatchesLloydOnTies() {
+		// Records on an integer grid are often equidistant from two centroids
+		for(int seed = 0; seed < 10; seed++) {
+			final Random rand = new Random(seed);
+			final double[][] X = new double[200][2];
+			for(double[] row: X) {
+				row[0] = rand.nextInt(6);
+				row[1] = rand.nextInt(6);
+			}
+			
+			final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+			for(int k: new int[]{4, 12, 25}) {
+				KMeans lloyd = new KMeans(mat, new KMeansParameters(k)
+					.setSeed(new Random(seed))).fit();
+				KMeans yinyang = new KMeans(mat, new KMeansParameters(k)
+					.setSeed(new Random(seed))
+					.setAlgorithm(KMeansAlgorithm.YINYANG)).fit();
+				
+				assertTrue(VecUtils.equalsExactly(lloyd.getLabels(), yinyang.getLabels()));
+			}
+		}
+	}
+	
+	@Test
+	public void testYinyangSavesDistances() {
+		KMeans yinyang = new KMeans(bc, new KMeansParameters(50)
+			.setSeed(new Random(42))
+			.setAlgorithm(KMeansAlgorithm.YINYANG)
+			.setVerbose(true)).fit();
+		
+		final long full = (long)bc.getRowDimension() * 50 * yinyang.itersElapsed();
+		assertTrue(yinyang.getDistanceComputationsSaved() > 0);
+		assertTrue(yinyang.getDistanceComputationsSaved() < full);
+	}
+	
+	@Test
+	public void testYinyangParallel() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMeans serial = new KMeans(data_, new KMeansParameters(12)
+				.setSeed(new Random(7))
+				.setAlgorithm(KMeansAlgorithm.YINYANG)).fit();
+			KMeans paral = new KMeans(data_, new KMeansParameters(12)
+				.setSeed(new Random(7))
+				.setAlgorithm(KMeansAlgorithm.YINYANG)
+				.setForceParallel(true)).fit();
+			
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), paral.getLabels()));
+			assertTrue(serial.getDistanceComputationsSaved() == paral.getDistanceComputationsSaved());
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testYinyangUnsupportedMetric() {
+		KMeans model = new KMeans(data_, new KMeansParameters(3)
+			.setAlgorithm(KMeansAlgorithm.YINYANG)
+			.setMetric(Distance.MANHATTAN));
+		
+		assertTrue(model.hasWarnings());
+		assertTrue(KMeansAlgorithm.LLOYD.equals(model.getAlgorithm()));
+		model.fit();
+	}
+	
+	@Test
+	public void testWarmStart() {
+		KMeans cold = new KMeans(wine, new KMeansParameters(3)
+			.setSeed(new Random(42))).fit();
+		KMeans warm = new KMeans(wine, new KMeansParameters(3)
+			.setInitialCentroids(cold.getCentroids())).fit();
+		
+		assertNull(warm.init_centroid_indices);
+		assertTrue(warm.didConverge());
+		assertTrue(warm.itersElapsed() <= 2);
+		assertTrue(warm.itersElapsed() < cold.itersElapsed());
+		assertTrue(VecUtils.equalsExactly(cold.getLabels(), warm.getLabels()));
+		
+		// copies carry the warm start
+		KMeansParameters planner = new KMeansParameters(3).setInitialCentroids(cold.getCentroids());
+		assertTrue(MatUtils.equalsExactly(planner.getInitialCentroids(), planner.copy().getInitialCentroids()));
+		assertNull(planner.setInitialCentroids(null).getInitialCentroids());
+	}
+	
+	@Test
+	public void testRefit() {
+		final double[][] X = wine.getData();
+		final int split = X.length - 4;
+		final Array2DRowRealMatrix head = new Array2DRowRealMatrix(
+			MatUtils.slice(X, 0, split), false);
+		final Array2DRowRealMatrix tail = new Array2DRowRealMatrix(
+			MatUtils.slice(X, split, X.length), false);
+		
+		for(KMeansAlgorithm algo: KMeansAlgorithm.values()) {
+			KMeans model = new KMeans(head, new KMeansParameters(3)
+				.setSeed(new Random(42))
+				.setAlgorithm(algo)).fit();
+			KMeans refit = model.refit(tail);
+			
+			assertTrue(refit.getLabels().length == X.length);
+			assertTrue(refit.getAlgorithm().equals(algo));
+			assertTrue(refit.didConverge());
+			assertTrue(refit.itersElapsed() < model.itersElapsed());
+		}
+	}
+	
+	@Test(expected=ModelNotFitException.class)
+	public void testRefitNotFit() {
+		new KMeans(data_, 3).refit(data_);
+	}
+	
+	@Test(expected=DimensionMismatchException.class)
+	public void testRefitDimMismatch() {
+		new KMeans(data_, 3).fit().refit(wine);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWarmStartWrongK() {
+		ArrayList<double[]> cents = new KMeans(data_, 3).fit().getCentroids();
+		new KMeans(data_, new KMeansParameters(4).setInitialCentroids(cents));
+	}
+	
+	static OutOfCoreKMeans fitOutOfCore(double[][] X, KMeansParameters planner, int blockRows) throws IOException {
+		java.io.File file = Files.createTempFile("clust4j", ".bin").toFile();
+		try {
+			MappedMatrixSource.write(X, file, false);
+			MappedMatrixSource source = new MappedMatrixSource(file, X[0].length, blockRows);
+			try {
+				return planner.fitOutOfCore(source);
+			} finally {
+				source.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testOutOfCoreMatchesInMemory() throws IOException {
+		for(Array2DRowRealMatrix mat: new Array2DRowRealMatrix[]{data_, wine}) {
+			KMeans mem = new KMeans(mat, new KMeansParameters(3).setSeed(new Random(42)));
+			final ArrayList<double[]> init = mem.getCentroids();
+			mem.fit();
+			
+			OutOfCoreKMeans ooc = fitOutOfCore(mat.getData(), 
+				new KMeansParameters(3).setInitialCentroids(init), 32);
+			
+			assertTrue(ooc.didConverge());
+			assertTrue(ooc.getNumRows() == mat.getRowDimension());
+			assertTrue(ooc.itersElapsed() == mem.itersElapsed());
+			assertTrue(VecUtils.equalsExactly(mem.getLabels(), ooc.predict(mat)));
+			assertEquals(mem.getTSS(), ooc.getTSS(), 1e-6);
+			assertEquals(VecUtils.sum(mem.getWSS()), VecUtils.sum(ooc.getWSS()), 1e-6);
+			assertTrue(MatUtils.equalsWithTolerance(
+				mem.getCentroids().toArray(new double[3][]), 
+				ooc.getCentroids().toArray(new double[3][]), 1e-8));
+		}
+	}
+	
+	@Test
+	public void testOutOfCoreTSSFarFromOrigin() throws IOException {
+		// The TSS is invariant to a shift, which a sum of squares cancels badly
+		final double[][] X = data_.getData();
+		for(double[] row: X)
+			for(int j = 0; j < row.length; j++)
+				row[j] += 1e6;
+		
+		KMeans mem = new KMeans(data_, new KMeansParameters(3).setSeed(new Random(42))).fit();
+		for(int blockRows: new int[]{1, 7, 32, X.length}) {
+			OutOfCoreKMeans ooc = fitOutOfCore(X, new KMeansParameters(3).setSeed(new Random(42)), blockRows);
+			assertEquals(mem.getTSS(), ooc.getTSS(), 1e-6 * mem.getTSS());
+			assertTrue(ooc.getBSS() > 0);
+		}
+	}
+	
+	@Test
+	public void testOutOfCoreParallel() throws IOException {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMeansParameters planner = new KMeansParameters(3).setSeed(new Random(7));
+			
+			OutOfCoreKMeans serial = fitOutOfCore(data_.getData(), planner, 16);
+			OutOfCoreKMeans parallel = fitOutOfCore(data_.getData(), planner.copy()
+				.setSeed(new Random(7)).setForceParallel(true), 16);
+			
+			assertTrue(parallel.didConverge());
+			assertTrue(VecUtils.equalsExactly(serial.predict(data_), parallel.predict(data_)));
+			assertEquals(VecUtils.sum(serial.getWSS()), VecUtils.sum(parallel.getWSS()), 1e-8);
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testOutOfCoreChunkedText() throws IOException {
+		java.io.File file = Files.createTempFile("clust4j", ".csv").toFile();
+		try {
+			final double[][] X = wine.getData();
+			java.io.PrintWriter out = new java.io.PrintWriter(file);
+			try {
+				for(double[] row: X) {
+					String s = Arrays.toString(row);
+					out.println(s.substring(1, s.length() - 1));
+				}
+			} finally {
+				out.close();
+			}
+			
+			ChunkedMatrixReader source = new ChunkedMatrixReader(file, 50);
+			try {
+				OutOfCoreKMeans ooc = new KMeansParameters(3)
+					.setSeed(new Random(42))
+					.setAlgorithm(KMeansAlgorithm.YINYANG)
+					.fitOutOfCore(source);
+				
+				assertTrue(ooc.didConverge());
+				assertTrue(ooc.hasWarnings()); // falls back to Lloyd
+				assertTrue(ooc.getCentroids().size() == 3);
+				assertTrue(VecUtils.unique(ooc.predict(wine)).size() == 3);
+				assertEquals(ooc.getTSS(), ooc.getBSS() + VecUtils.sum(ooc.getWSS()), 1e-6);
+			} finally {
+				source.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test(expected=ModelNotFitException.class)
+	public void testOutOfCoreNotFit() throws IOException {
+		java.io.File file = Files.createTempFile("clust4j", ".bin").toFile();
+		try {
+			MappedMatrixSource.write(data_.getData(), file, false);
+			MappedMatrixSource source = new MappedMatrixSource(file, 4);
+			try {
+				new OutOfCoreKMeans(source, 3).predict(data_);
+			} finally {
+				source.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
 }
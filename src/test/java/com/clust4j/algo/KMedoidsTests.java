@@ -24,16 +24,20 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.util.FastMath;
 import org.junit.Test;
 
+import com.clust4j.GlobalState;
 import com.clust4j.TestSuite;
+import com.clust4j.algo.KMedoids.KMedoidsAlgorithm;
 import com.clust4j.algo.KMedoidsParameters;
 import com.clust4j.algo.preprocess.StandardScaler;
 import com.clust4j.data.DataSet;
+import com.clust4j.except.ModelNotFitException;
 import com.clust4j.kernel.HyperbolicTangentKernel;
 import com.clust4j.kernel.Kernel;
 //import com.clust4j.kernel.KernelTestCases;
@@ -440,4 +444,383 @@ public class KMedoidsTests implements ClusterTest, ClassifierTest, ConvergeableT
 		int[] labels = new KMedoids(X, new KMedoidsParameters(3).setVerbose(true)).fit().getLabels();
 		assertTrue(new VecUtils.IntSeries(labels, Inequality.EQUAL_TO, 0).all());
 	}
+	
+	@Test
+	public void testWarmStart() {
+		KMedoids cold = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setSeed(new Random(42))).fit();
+		final int[] medoids = cold.getMedoidIndices();
+		
+		// the medoid indices are in label order
+		for(int i = 0; i < medoids.length; i++)
+			assertTrue(cold.getLabels()[medoids[i]] == i);
+		
+		// warm start from the indices
+		KMedoids warm = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setInitialMedoids(medoids)).fit();
+		assertTrue(VecUtils.equalsExactly(cold.getLabels(), warm.getLabels()));
+		assertTrue(warm.itersElapsed() <= 2);
+		
+		// warm start from the centroids, which snap onto the same records
+		KMedoids snapped = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setInitialCentroids(cold.getCentroids()));
+		assertTrue(VecUtils.equalsExactly(medoids, snapped.init_centroid_indices));
+		assertTrue(VecUtils.equalsExactly(cold.getLabels(), snapped.fit().getLabels()));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWarmStartDuplicateIndices() {
+		new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setInitialMedoids(new int[]{0, 50, 0}));
+	}
+	
+	@Test
+	public void testRefit() {
+		final double[][] X = irisdata.getData();
+		final int split = X.length - 5;
+		
+		KMedoids model = new KMedoids(new Array2DRowRealMatrix(
+			MatUtils.slice(X, 0, split), false), new KMedoidsParameters(3)
+				.setSeed(new Random(42))).fit();
+		KMedoids refit = model.refit(new Array2DRowRealMatrix(
+			MatUtils.slice(X, split, X.length), false));
+		
+		assertTrue(refit.getLabels().length == X.length);
+		assertTrue(refit.didConverge());
+		assertTrue(refit.itersElapsed() <= model.itersElapsed());
+	}
+	
+	@Test
+	public void testRefitResolvesSearchParams() {
+		final double[][] X = irisdata.getData();
+		
+		// A sample of every record disables CLARA, but only for the smaller data
+		KMedoids model = new KMedoids(new Array2DRowRealMatrix(
+			MatUtils.slice(X, 0, 30), false), new KMedoidsParameters(3)
+				.setSeed(new Random(42))
+				.setClaraSamples(2)
+				.setClaraSampleSize(40)).fit();
+		assertTrue(model.getClaraSamples() == 0);
+		
+		KMedoids refit = model.refit(new Array2DRowRealMatrix(
+			MatUtils.slice(X, 30, X.length), false));
+		assertTrue(refit.getClaraSamples() == 2);
+		assertTrue(refit.getLabels().length == X.length);
+		
+		// The default CLARANS neighbor budget grows with the data
+		final double[][] Y = MatUtils.randomGaussian(2000, 2, new Random(42));
+		model = new KMedoids(new Array2DRowRealMatrix(
+			MatUtils.slice(Y, 0, 1000), false), new KMedoidsParameters(20)
+				.setSeed(new Random(42))
+				.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+				.setNumLocal(1)).fit();
+		assertTrue(model.getMaxNeighbor() == 250);
+		
+		refit = model.refit(new Array2DRowRealMatrix(
+			MatUtils.slice(Y, 1000, Y.length), false));
+		assertTrue(refit.getMaxNeighbor() == (int)(0.0125 * 20 * (2000 - 20)));
+	}
+	
+	@Test
+	public void testClaraSampleResolvesMaxNeighbor() {
+		final double[][] X = MatUtils.randomGaussian(3000, 2, new Random(42));
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		
+		// The default budget comes from the sample, not the full data
+		KMedoids model = new KMedoids(mat, new KMedoidsParameters(10)
+			.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.setClaraSamples(2));
+		assertTrue(model.getMaxNeighbor() == (int)(0.0125 * 10 * (3000 - 10)));
+		
+		final int[] idcs = VecUtils.arange(60);
+		assertTrue(model.claraSampleModel(X, idcs, 1, new Random(7)).getMaxNeighbor() == 250);
+		
+		// But a given budget carries through
+		model = new KMedoids(mat, new KMedoidsParameters(10)
+			.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.setClaraSamples(2)
+			.setMaxNeighbor(40));
+		assertTrue(model.claraSampleModel(X, idcs, 1, new Random(7)).getMaxNeighbor() == 40);
+	}
+	
+	@Test(expected=ModelNotFitException.class)
+	public void testMedoidsNotFit() {
+		new KMedoids(irisdata, 3).getMedoidIndices();
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWarmStartBadIndex() {
+		new KMedoids(irisdata, new KMedoidsParameters(3).setInitialMedoids(new int[]{0, 1, 150}));
+	}
+	
+	/** The total deviation of a medoid configuration, by brute force */
+	static double totalDeviation(double[][] X, int[] medoids, GeometricallySeparable metric) {
+		double total = 0.0;
+		for(double[] x: X) {
+			double min = Double.POSITIVE_INFINITY;
+			for(int med: medoids)
+				min = FastMath.min(min, metric.getDistance(x, X[med]));
+			total += min;
+		}
+		
+		return total;
+	}
+	
+	@Test
+	public void testFasterPAM() {
+		for(Array2DRowRealMatrix mat: new Array2DRowRealMatrix[]{irisdata, winedata}) {
+			final double[][] X = mat.getData();
+			
+			KMedoids voronoi = new KMedoids(mat, new KMedoidsParameters(3)
+				.setSeed(new Random(42))).fit();
+			KMedoids pam = new KMedoids(mat, new KMedoidsParameters(3)
+				.setSeed(new Random(42))
+				.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)
+				.setMaxIter(100)).fit();
+			
+			assertTrue(pam.getAlgorithm().equals(KMedoidsAlgorithm.FASTER_PAM));
+			assertTrue(pam.didConverge());
+			
+			// the WSS is the total deviation, and never worse than the Voronoi iteration
+			final int[] medoids = pam.getMedoidIndices();
+			final double td = totalDeviation(X, medoids, Distance.MANHATTAN);
+			assertEquals(td, VecUtils.sum(pam.getWSS()), 1e-8);
+			assertTrue(td <= VecUtils.sum(voronoi.getWSS()) + 1e-8);
+			
+			// the medoid indices are in label order
+			for(int i = 0; i < medoids.length; i++)
+				assertTrue(pam.getLabels()[medoids[i]] == i);
+			
+			// no single swap can improve the solution
+			for(int j = 0; j < medoids.length; j++) {
+				for(int c = 0; c < X.length; c++) {
+					int[] swapped = VecUtils.copy(medoids);
+					swapped[j] = c;
+					assertTrue(totalDeviation(X, swapped, Distance.MANHATTAN) >= td - pam.getConvergenceTolerance() - 1e-8);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testFasterPAMWarmStart() {
+		KMedoids cold = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setSeed(new Random(42))
+			.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)).fit();
+		
+		// starting from a local optimum, the first pass swaps nothing
+		KMedoids warm = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)
+			.setInitialMedoids(cold.getMedoidIndices())).fit();
+		assertTrue(warm.itersElapsed() == 1);
+		assertTrue(VecUtils.equalsExactly(cold.getLabels(), warm.getLabels()));
+		
+		// the algorithm carries through copies and refits
+		KMedoidsParameters planner = new KMedoidsParameters(3).setAlgorithm(KMedoidsAlgorithm.FASTER_PAM);
+		assertTrue(planner.copy().getAlgorithm().equals(KMedoidsAlgorithm.FASTER_PAM));
+		assertTrue(cold.refit(irisdata.getSubMatrix(0, 4, 0, 3))
+			.getAlgorithm().equals(KMedoidsAlgorithm.FASTER_PAM));
+	}
+	
+	@Test
+	public void testFasterPAMLargerK() {
+		KMedoids pam = new KMedoids(bcdata, new KMedoidsParameters(20)
+			.setSeed(new Random(1))
+			.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)
+			.setMaxIter(100)).fit();
+		
+		assertTrue(pam.didConverge());
+		assertTrue(VecUtils.unique(pam.getLabels()).size() == 20);
+		assertEquals(totalDeviation(bcdata.getData(), pam.getMedoidIndices(), Distance.MANHATTAN), 
+			VecUtils.sum(pam.getWSS()), 1e-6);
+	}
+	
+	@Test
+	public void testClara() {
+		final double[][] X = bcdata.getData();
+		KMedoids full = new KMedoids(bcdata, new KMedoidsParameters(3)
+			.setSeed(new Random(42))
+			.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)
+			.setMaxIter(100)).fit();
+		
+		for(KMedoidsAlgorithm algo: KMedoidsAlgorithm.values()) {
+			KMedoids clara = new KMedoids(bcdata, new KMedoidsParameters(3)
+				.setSeed(new Random(42))
+				.setAlgorithm(algo)
+				.setMaxIter(100)
+				.setClaraSamples(5)).fit();
+			
+			// the WSS is the cost over the full data, not just the sample
+			final int[] medoids = clara.getMedoidIndices();
+			final double td = totalDeviation(X, medoids, Distance.MANHATTAN);
+			assertEquals(td, VecUtils.sum(clara.getWSS()), 1e-6);
+			assertTrue(clara.getLabels().length == X.length);
+			assertTrue(VecUtils.unique(clara.getLabels()).size() == 3);
+			
+			// close to a local optimum over all records
+			assertTrue(td < 1.1 * VecUtils.sum(full.getWSS()));
+			for(int i = 0; i < medoids.length; i++)
+				assertTrue(clara.getLabels()[medoids[i]] == i);
+		}
+	}
+	
+	@Test
+	public void testClaraParallel() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMedoidsParameters planner = new KMedoidsParameters(3)
+				.setClaraSamples(4)
+				.setClaraSampleSize(60);
+			
+			KMedoids serial = new KMedoids(winedata, planner.copy().setSeed(new Random(7))).fit();
+			KMedoids parallel = new KMedoids(winedata, planner.copy().setSeed(new Random(7))
+				.setForceParallel(true)).fit();
+			
+			assertTrue(VecUtils.equalsExactly(serial.getMedoidIndices(), parallel.getMedoidIndices()));
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testClaraLargeSample() {
+		// a sample of every record just searches all of them
+		KMedoids model = new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setClaraSamples(2)
+			.setClaraSampleSize(500)).fit();
+		assertTrue(model.hasWarnings());
+		assertTrue(model.getLabels().length == irisdata.getRowDimension());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testClaraSampleTooSmall() {
+		new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setClaraSamples(2)
+			.setClaraSampleSize(3));
+	}
+	
+	@Test
+	public void testClarans() {
+		for(Array2DRowRealMatrix mat: new Array2DRowRealMatrix[]{irisdata, winedata}) {
+			final double[][] X = mat.getData();
+			KMedoids pam = new KMedoids(mat, new KMedoidsParameters(3)
+				.setSeed(new Random(42))
+				.setAlgorithm(KMedoidsAlgorithm.FASTER_PAM)
+				.setMaxIter(100)).fit();
+			KMedoids clarans = new KMedoids(mat, new KMedoidsParameters(3)
+				.setSeed(new Random(42))
+				.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+				.setNumLocal(4)).fit();
+			
+			assertTrue(clarans.didConverge());
+			final int[] medoids = clarans.getMedoidIndices();
+			final double td = totalDeviation(X, medoids, Distance.MANHATTAN);
+			assertEquals(td, VecUtils.sum(clarans.getWSS()), 1e-6);
+			assertTrue(td < 1.05 * VecUtils.sum(pam.getWSS()));
+			
+			for(int i = 0; i < medoids.length; i++)
+				assertTrue(clarans.getLabels()[medoids[i]] == i);
+		}
+	}
+	
+	@Test
+	public void testClaransParallel() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			KMedoidsParameters planner = new KMedoidsParameters(4)
+				.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+				.setNumLocal(3)
+				.setMaxNeighbor(100);
+			
+			KMedoids serial = new KMedoids(irisdata, planner.copy().setSeed(new Random(7))).fit();
+			KMedoids parallel = new KMedoids(irisdata, planner.copy().setSeed(new Random(7))
+				.setForceParallel(true)).fit();
+			
+			assertTrue(VecUtils.equalsExactly(serial.getMedoidIndices(), parallel.getMedoidIndices()));
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			
+			// params carry through copies
+			assertTrue(planner.copy().getNumLocal() == 3);
+			assertTrue(planner.copy().getMaxNeighbor() == 100);
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testClaransWithClara() {
+		KMedoids model = new KMedoids(bcdata, new KMedoidsParameters(3)
+			.setSeed(new Random(42))
+			.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.setClaraSamples(3)).fit();
+		assertEquals(totalDeviation(bcdata.getData(), model.getMedoidIndices(), Distance.MANHATTAN), 
+			VecUtils.sum(model.getWSS()), 1e-6);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testClaransBadNumLocal() {
+		new KMedoids(irisdata, new KMedoidsParameters(3)
+			.setAlgorithm(KMedoidsAlgorithm.CLARANS)
+			.setNumLocal(0));
+	}
+	
+	@Test
+	public void testFloatDistances() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			
+			for(KMedoidsAlgorithm algo: new KMedoidsAlgorithm[]{KMedoidsAlgorithm.VORONOI, KMedoidsAlgorithm.FASTER_PAM}) {
+				KMedoidsParameters planner = new KMedoidsParameters(3).setAlgorithm(algo);
+				KMedoids doubles = new KMedoids(irisdata, planner.copy().setSeed(new Random(42))).fit();
+				KMedoids floats = new KMedoids(irisdata, planner.copy().setSeed(new Random(42))
+					.setFloatDistances(true)).fit();
+				KMedoids parallel = new KMedoids(irisdata, planner.copy().setSeed(new Random(42))
+					.setForceParallel(true)).fit();
+				
+				assertTrue(planner.copy().setFloatDistances(true).copy().getFloatDistances());
+				assertTrue(VecUtils.equalsExactly(doubles.getMedoidIndices(), parallel.getMedoidIndices()));
+				assertTrue(VecUtils.equalsExactly(doubles.getLabels(), parallel.getLabels()));
+				
+				// the WSS is consistent with the medoids
+				assertEquals(totalDeviation(irisdata.getData(), doubles.getMedoidIndices(), Distance.MANHATTAN),
+					VecUtils.sum(doubles.getWSS()), 1e-6);
+				
+				// single precision may break ties differently, but should find as good a solution
+				final double floatCost = totalDeviation(irisdata.getData(), floats.getMedoidIndices(), Distance.MANHATTAN);
+				assertEquals(floatCost, VecUtils.sum(floats.getWSS()), 1e-3);
+				assertEquals(VecUtils.sum(doubles.getWSS()), floatCost, 0.01 * floatCost);
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
+	
+	@Test
+	public void testParallelVoronoi() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			
+			// large enough that both the assignment and reassignment split
+			final Array2DRowRealMatrix X = new Array2DRowRealMatrix(
+				MatUtils.randomGaussian(3000, 4, new Random(42)), false);
+			KMedoidsParameters planner = new KMedoidsParameters(5).setMaxIter(25);
+			
+			KMedoids serial = new KMedoids(X, planner.copy().setSeed(new Random(7))).fit();
+			KMedoids parallel = new KMedoids(X, planner.copy().setSeed(new Random(7))
+				.setForceParallel(true)).fit();
+			
+			assertTrue(parallel.parallel);
+			assertTrue(VecUtils.equalsExactly(serial.getMedoidIndices(), parallel.getMedoidIndices()));
+			assertTrue(VecUtils.equalsExactly(serial.getLabels(), parallel.getLabels()));
+			assertTrue(VecUtils.equalsExactly(serial.getWSS(), parallel.getWSS()));
+			assertTrue(serial.itersElapsed() == parallel.itersElapsed());
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+	}
 }
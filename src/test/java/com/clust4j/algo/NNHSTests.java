@@ -1940,4 +1940,43 @@ public class NNHSTests {
 			k.queryRadius(IRIS.getData(), 1.5, true)
 		);
 	}
+	
+	@Test
+	public void testRadiusQueryAfterUnevenSplit() {
+		/*
+		 * Each node must only split its own slice of the index array.
+		 * Splitting the leading indices of the whole array left node 
+		 * bounds that excluded their own points, and with a leaf size 
+		 * of one, (3, 6) could not even find itself within radius 2.
+		 */
+		final double[][] X = new double[][]{
+			new double[]{9, 6},
+			new double[]{8, 5},
+			new double[]{9, 7},
+			new double[]{3, 6},
+			new double[]{3, 3},
+			new double[]{6, 6}
+		};
+		
+		final Array2DRowRealMatrix mat = new Array2DRowRealMatrix(X, false);
+		final double radius = 2.0;
+		
+		for(int leafSize = 1; leafSize <= 2; leafSize++) {
+			for(NearestNeighborHeapSearch tree: new NearestNeighborHeapSearch[]{
+					new KDTree(mat, leafSize), new BallTree(mat, leafSize)}) {
+				final int[][] idcs = tree.queryRadius(X, radius, false).getIndices();
+				
+				for(int i = 0; i < X.length; i++) {
+					final ArrayList<Integer> expected = new ArrayList<>();
+					for(int j = 0; j < X.length; j++)
+						if(Distance.EUCLIDEAN.getDistance(X[i], X[j]) <= radius)
+							expected.add(j);
+					
+					assertTrue(idcs[i].length == expected.size());
+					for(int idx: idcs[i])
+						assertTrue(expected.contains(idx));
+				}
+			}
+		}
+	}
 }
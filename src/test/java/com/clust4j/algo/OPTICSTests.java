@@ -0,0 +1,556 @@
+/*******************************************************************************
+ *    Copyright 2015, 2016 Taylor G Smith
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *******************************************************************************/
+package com.clust4j.algo;
+
+import static org.junit.Assert.*;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import com.clust4j.GlobalState;
+import com.clust4j.TestSuite;
+import com.clust4j.algo.DBSCAN.DBSCANAlgorithm;
+import com.clust4j.algo.OPTICS.ClusterMethod;
+import com.clust4j.except.ModelNotFitException;
+import com.clust4j.kernel.Kernel;
+import com.clust4j.kernel.KernelTestCases;
+import com.clust4j.metrics.pairwise.Distance;
+import com.clust4j.utils.MatUtils;
+import com.clust4j.utils.VecUtils;
+import com.clust4j.utils.Series.Inequality;
+
+public class OPTICSTests implements ClusterTest, ClassifierTest, BaseModelTest {
+	final Array2DRowRealMatrix data = TestSuite.IRIS_DATASET.copy().getData();
+
+	/**
+	 * Three blobs of 150 in 2-D, each denser than the last, in a sparse background
+	 */
+	static Array2DRowRealMatrix blobs(final Random rand) {
+		final double[][] centers = new double[][]{
+			new double[]{0, 0}, new double[]{10, 0}, new double[]{0, 10}
+		};
+		final double[] spreads = new double[]{1.0, 0.5, 0.25};
+
+		final double[][] X = new double[480][];
+		for(int i = 0; i < 450; i++) {
+			final int c = i / 150;
+			X[i] = new double[]{
+				centers[c][0] + rand.nextGaussian() * spreads[c],
+				centers[c][1] + rand.nextGaussian() * spreads[c]
+			};
+		}
+
+		for(int i = 450; i < X.length; i++)
+			X[i] = new double[]{rand.nextDouble() * 20 - 5, rand.nextDouble() * 20 - 5};
+
+		return new Array2DRowRealMatrix(X, false);
+	}
+
+	@Test
+	@Override
+	public void testScoring() {
+		new OPTICS(data).fit().silhouetteScore();
+	}
+
+	@Test
+	@Override
+	public void testDefConst() {
+		new OPTICS(data);
+	}
+
+	@Test
+	@Override
+	public void testArgConst() {
+		new OPTICS(data, new OPTICSParameters(10));
+	}
+
+	@Test
+	@Override
+	public void testPlannerConst() {
+		new OPTICS(data, new OPTICSParameters().setMaxEps(2.0));
+	}
+
+	@Test
+	@Override
+	public void testFit() {
+		new OPTICSParameters().fitNewModel(data).fit();
+	}
+
+	@Test
+	@Override
+	public void testFromPlanner() {
+		new OPTICSParameters().fitNewModel(data);
+	}
+
+	@Test
+	@Override
+	public void testAllSame() {
+		final double[][] x = MatUtils.rep(-1, 3, 3);
+		final Array2DRowRealMatrix X = new Array2DRowRealMatrix(x, false);
+
+		int[] labels = new OPTICS(X, new OPTICSParameters(1)
+			.setClusterMethod(ClusterMethod.DBSCAN).setVerbose(true)).fit().getLabels();
+		assertTrue(new VecUtils.IntSeries(labels, Inequality.EQUAL_TO, labels[0]).all());
+
+		labels = new OPTICS(X, new OPTICSParameters().setVerbose(true)).fit().getLabels();
+		assertTrue(new VecUtils.IntSeries(labels, Inequality.EQUAL_TO, labels[0]).all());
+	}
+
+	@Test
+	@Override
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		OPTICS op = new OPTICS(data,
+			new OPTICSParameters(5)
+				.setMaxEps(1.0)
+				.setVerbose(true)).fit();
+		System.out.println();
+
+		int a = op.getNumberOfNoisePoints();
+		op.saveObject(new FileOutputStream(TestSuite.tmpSerPath));
+		assertTrue(TestSuite.file.exists());
+
+		OPTICS op2 = (OPTICS)OPTICS.loadObject(new FileInputStream(TestSuite.tmpSerPath));
+		assertTrue(a == op2.getNumberOfNoisePoints());
+		assertTrue(op.equals(op2));
+		assertTrue(VecUtils.equalsExactly(op.extractDBSCAN(0.5), op2.extractDBSCAN(0.5)));
+		Files.delete(TestSuite.path);
+	}
+
+	@Test
+	public void testNoSimilaritiesAllowed() {
+		OPTICS model;
+		for(Kernel k: KernelTestCases.all_kernels) {
+			model = new OPTICS(data, new OPTICSParameters().setMetric(k)).fit();
+			assertTrue(model.hasWarnings());
+			assertTrue(model.dist_metric.equals(Distance.EUCLIDEAN));
+		}
+	}
+
+	@Test
+	public void testReachability() {
+		final double[][] X = TestSuite.getRandom(300, 3).getData();
+		final double maxEps = 0.5;
+		final int minPts = 4;
+		final OPTICS model = new OPTICSParameters(minPts).setMaxEps(maxEps).fitNewModel(new Array2DRowRealMatrix(X, false));
+		final int[] ordering = model.getOrdering();
+		final double[] reach = model.getReachability(), core = model.getCoreDistances();
+		final int[] pred = model.getPredecessors();
+
+		// A permutation
+		final int[] sorted = VecUtils.copy(ordering);
+		Arrays.sort(sorted);
+		assertTrue(VecUtils.equalsExactly(sorted, VecUtils.arange(X.length)));
+		assertTrue(Double.isInfinite(reach[ordering[0]]));
+
+		// The core distance is that of the minPts-th nearest other record
+		for(int i = 0; i < X.length; i++) {
+			final double[] d = new double[X.length - 1];
+			for(int j = 0, k = 0; j < X.length; j++)
+				if(i != j)
+					d[k++] = Distance.EUCLIDEAN.getDistance(X[i], X[j]);
+			Arrays.sort(d);
+
+			assertEquals(d[minPts - 1] <= maxEps ? d[minPts - 1] : Double.POSITIVE_INFINITY, core[i], 1e-12);
+		}
+
+		// Each reachability is the least from any record earlier in the ordering
+		for(int p = 0; p < ordering.length; p++) {
+			double least = Double.POSITIVE_INFINITY;
+			for(int q = 0; q < p; q++) {
+				final double d = Distance.EUCLIDEAN.getDistance(X[ordering[q]], X[ordering[p]]);
+				if(d <= maxEps)
+					least = Math.min(least, Math.max(core[ordering[q]], d));
+			}
+
+			assertEquals(least, reach[ordering[p]], 1e-12);
+			assertTrue(Double.isInfinite(least) == (-1 == pred[ordering[p]]));
+		}
+	}
+
+	@Test
+	public void testReachabilityHeap() {
+		final Random rand = new Random(3);
+		final double[] keys = new double[500];
+		final OPTICS.ReachabilityHeap heap = new OPTICS.ReachabilityHeap(keys);
+
+		// Insert with ties, then decrease some keys
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = rand.nextInt(50);
+			heap.update(i);
+		}
+		for(int i = 0; i < keys.length; i += 3) {
+			keys[i] -= rand.nextInt(10);
+			heap.update(i);
+		}
+
+		int last = -1;
+		for(int i = 0; i < keys.length; i++) {
+			final int next = heap.pop();
+			if(last >= 0)
+				assertTrue(keys[last] < keys[next] || (keys[last] == keys[next] && last < next));
+			last = next;
+		}
+
+		assertTrue(heap.isEmpty());
+	}
+
+	@Test
+	public void testExtractDBSCANMatchesDBSCAN() {
+		final boolean orig = GlobalState.ParallelismConf.PARALLELISM_ALLOWED;
+
+		try {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = true;
+			final OPTICS model = new OPTICSParameters().setMaxEps(1.0).fitNewModel(data);
+
+			for(double eps: new double[]{0.2, 0.3, 0.5, 0.8, 1.0}) {
+				final DBSCAN dbscan = new DBSCANParameters(eps).setForceParallel(true).fitNewModel(data);
+				assertTrue(VecUtils.equalsExactly(model.extractDBSCAN(eps), dbscan.getLabels()));
+			}
+		} finally {
+			GlobalState.ParallelismConf.PARALLELISM_ALLOWED = orig;
+		}
+
+		// Against the grid engine in 2-D
+		final Array2DRowRealMatrix X = DBSCANTests.latLon(1500, 2, new Random(17));
+		final OPTICS model = new OPTICSParameters(10).setMaxEps(0.05).fitNewModel(X);
+		for(double eps: new double[]{0.005, 0.01, 0.02, 0.05}) {
+			final DBSCAN grid = new DBSCANParameters(eps).setMinPts(10)
+				.setAlgorithm(DBSCANAlgorithm.GRID).fitNewModel(X);
+			assertTrue(VecUtils.equalsExactly(model.extractDBSCAN(eps), grid.getLabels()));
+		}
+	}
+
+	@Test
+	public void testInfiniteMaxEps() {
+		final OPTICS model = new OPTICSParameters().fitNewModel(data);
+		assertTrue(Double.isInfinite(model.getMaxEps()));
+		assertTrue(model.hasWarnings());
+
+		// Extraction is unchanged with only the border neighbors kept
+		for(double eps: new double[]{0.2, 0.5, 1.0, 5.0}) {
+			final DBSCAN dbscan = new DBSCANParameters(eps).fitNewModel(data);
+			assertTrue(VecUtils.equalsExactly(model.extractDBSCAN(eps), dbscan.getLabels()));
+		}
+
+		assertFalse(new OPTICSParameters().setMaxEps(1.0).fitNewModel(data).hasWarnings());
+	}
+
+	@Test
+	public void testRetainBorderNeighbors() {
+		final int[][] neighborhoods = new int[][]{
+			new int[]{1, 2, 3},
+			new int[]{0, 2, 3},
+			new int[]{1}
+		};
+		final double[][] distances = new double[][]{
+			new double[]{0.5, 2.0, 1.0},
+			new double[]{0.5, 1.0, 1.0},
+			new double[]{1.0}
+		};
+
+		OPTICS.retainBorderNeighbors(neighborhoods, distances,
+			new double[]{1.0, 1.0, Double.POSITIVE_INFINITY});
+		assertTrue(VecUtils.equalsExactly(neighborhoods[0], new int[]{1}));
+		assertTrue(VecUtils.equalsExactly(distances[0], new double[]{0.5}));
+		assertTrue(VecUtils.equalsExactly(neighborhoods[1], new int[]{0}));
+		assertTrue(VecUtils.equalsExactly(neighborhoods[2], new int[]{1}));
+	}
+
+	@Test
+	public void testDBSCANMethod() {
+		final OPTICS model = new OPTICSParameters()
+			.setMaxEps(1.0)
+			.setClusterMethod(ClusterMethod.DBSCAN)
+			.setEps(0.5)
+			.fitNewModel(data);
+
+		final int[] labels = model.getLabels();
+		assertTrue(VecUtils.equalsExactly(labels, model.extractDBSCAN(0.5)));
+
+		int noise = 0;
+		for(int label: labels)
+			if(OPTICS.NOISE_CLASS == label)
+				noise++;
+		assertTrue(noise == model.getNumberOfNoisePoints());
+		int numClusters = 0;
+		for(int label: labels)
+			numClusters = Math.max(numClusters, label + 1);
+		assertTrue(numClusters == model.getNumberOfIdentifiedClusters());
+
+		// Core records predict their own labels; far records are noise
+		final int[] predicted = model.predict(data);
+		final double[] core = model.getCoreDistances();
+		for(int i = 0; i < labels.length; i++)
+			if(core[i] <= 0.5)
+				assertTrue(predicted[i] == labels[i]);
+
+		assertTrue(OPTICS.NOISE_CLASS == model.predict(new Array2DRowRealMatrix(
+			new double[][]{new double[]{150, 150, 150, 150}}, false))[0]);
+	}
+
+	@Test
+	public void testXiFindsBlobs() {
+		final Array2DRowRealMatrix X = blobs(new Random(7));
+		final OPTICS model = new OPTICSParameters(10)
+			.setMinClusterSize(50)
+			.fitNewModel(X);
+		final int[] labels = model.getLabels();
+		assertTrue(model.getNumberOfIdentifiedClusters() == 3);
+
+		// Each blob is mostly one cluster, and no two share one
+		final boolean[] used = new boolean[3];
+		for(int c = 0; c < 3; c++) {
+			final int[] counts = new int[3];
+			for(int i = c * 150; i < (c + 1) * 150; i++)
+				if(OPTICS.NOISE_CLASS != labels[i])
+					counts[labels[i]]++;
+
+			int majority = 0;
+			for(int k = 1; k < counts.length; k++)
+				if(counts[k] > counts[majority])
+					majority = k;
+			assertTrue(counts[majority] >= 100);
+			assertFalse(used[majority]);
+			used[majority] = true;
+		}
+
+		// Re-extraction at the fitted xi is the same
+		assertTrue(VecUtils.equalsExactly(labels, model.extractXi(OPTICS.DEF_XI, 50)));
+	}
+
+	@Test
+	public void testXiPredictFarRecordIsNoise() {
+		final Array2DRowRealMatrix X = blobs(new Random(7));
+		final OPTICS model = new OPTICSParameters(10)
+			.setMinClusterSize(50)
+			.fitNewModel(X);
+		assertTrue(Double.isInfinite(model.getMaxEps()));
+
+		// Far from every cluster, though within the infinite max eps
+		assertTrue(OPTICS.NOISE_CLASS == model.predict(new Array2DRowRealMatrix(
+			new double[][]{new double[]{1000, 1000}}, false))[0]);
+
+		// Clustered records still predict their own labels
+		final int[] labels = model.getLabels();
+		final int[] predicted = model.predict(X);
+		int agree = 0, clustered = 0;
+		for(int i = 0; i < labels.length; i++) {
+			if(OPTICS.NOISE_CLASS == labels[i])
+				continue;
+			clustered++;
+			if(predicted[i] == labels[i])
+				agree++;
+		}
+		assertTrue(agree == clustered);
+	}
+
+	/**
+	 * Extend a steep down (or up) region over the plot from its first point
+	 */
+	static int extendRegion(final double[] plot, final boolean down) {
+		final int n = plot.length - 1;
+		final boolean[] steep = new boolean[n], xward = new boolean[n];
+		for(int i = 0; i < n; i++) {
+			final double ratio = plot[i] / plot[i + 1];
+			steep[i] = down ? ratio >= 1 / 0.9 : ratio <= 0.9;
+			xward[i] = down ? ratio < 1 : ratio > 1;
+		}
+		
+		return OPTICS.extendRegion(steep, xward, 0, 2);
+	}
+	
+	@Test
+	public void testExtendRegion() {
+		final double inf = Double.POSITIVE_INFINITY;
+		
+		// Ends at the last steep point before the region turns, or
+		// before more than minPts points that are not steep
+		assertTrue(3 == extendRegion(new double[]{10, 8.9, 8.8, 8.7, 7, 10}, true));
+		assertTrue(0 == extendRegion(new double[]{10, 8.9, 8.8, 8.7, 8.6, 7, 10}, true));
+		assertTrue(4 == extendRegion(new double[]{10, 8.9, 8.8, 8.7, 7, 6, inf}, true));
+		
+		assertTrue(6 == extendRegion(new double[]{1, 2, 2.1, 2.2, 4, 8, 8, inf}, false));
+		assertTrue(0 == extendRegion(new double[]{1, 2, 2.1, 2.2, 2.3, 4, 8, 8, inf}, false));
+		assertTrue(0 == extendRegion(new double[]{1, 2, 2.1, 2, inf}, false));
+		assertTrue(2 == extendRegion(new double[]{1, 2, 2.1, inf}, false));
+		
+		// A point heading the other way ends the region
+		assertTrue(0 == OPTICS.extendRegion(
+			new boolean[]{true, false, true, false}, 
+			new boolean[]{false, true, false, false}, 0, 5));
+	}
+	
+	@Test
+	public void testXiClustersOnPlot() {
+		final double inf = Double.POSITIVE_INFINITY;
+		
+		/*
+		 * Two flat valleys, where the descent into the second turns up at 
+		 * position 7 before it falls again. That makes two steep down areas, 
+		 * [6, 6] and [8, 8], each of which starts a cluster that ends with 
+		 * the second valley. The trailing infinity closes the plot.
+		 */
+		final double[] plot = new double[]{
+			inf, 1, 1, 1, 1, 1, 10, 5, 5.5, 1, 1, 1, 1, 1, inf
+		};
+		
+		final int n = plot.length - 1;
+		final int[] ordering = new int[n], pred = new int[n];
+		for(int i = 0; i < n; i++) {
+			ordering[i] = i;
+			pred[i] = i - 1;
+		}
+		
+		final ArrayList<int[]> clusters = OPTICS.xiClusters(plot, pred, ordering, 0.1, 2, 2);
+		final int[][] expected = new int[][]{
+			new int[]{0, 5},
+			new int[]{8, 13},
+			new int[]{6, 13},
+			new int[]{0, 13}
+		};
+		
+		assertTrue(clusters.size() == expected.length);
+		for(int i = 0; i < expected.length; i++)
+			assertTrue(VecUtils.equalsExactly(expected[i], clusters.get(i)));
+	}
+	
+	@Test
+	public void testXiClustersAreNested() {
+		final OPTICS model = new OPTICSParameters(5).fitNewModel(blobs(new Random(11)));
+		final double[] reach = model.getReachability();
+		final int[] ordering = model.getOrdering(), pred = model.getPredecessors();
+		final int m = ordering.length;
+		
+		final double[] plot = new double[m + 1];
+		final int[] predPlot = new int[m];
+		for(int i = 0; i < m; i++) {
+			plot[i] = reach[ordering[i]];
+			predPlot[i] = pred[ordering[i]];
+		}
+		plot[m] = Double.POSITIVE_INFINITY;
+
+		for(double xi: new double[]{0.01, 0.05, 0.1, 0.3}) {
+			// Any two clusters are either disjoint or nested
+			final ArrayList<int[]> clusters = OPTICS.xiClusters(plot, predPlot, ordering, xi, 5, 5);
+			for(int[] a: clusters) {
+				assertTrue(a[0] <= a[1] && a[1] - a[0] + 1 >= 5);
+				for(int[] b: clusters)
+					assertTrue(a[1] < b[0] || b[1] < a[0]
+						|| (a[0] <= b[0] && b[1] <= a[1]) || (b[0] <= a[0] && a[1] <= b[1]));
+			}
+
+			// Each label is exactly one of the clusters in the ordering
+			final int[] labels = model.extractXi(xi, 5);
+			int maxLabel = -1;
+			for(int label: labels)
+				maxLabel = FastMath.max(maxLabel, label);
+			
+			for(int label = 0; label <= maxLabel; label++) {
+				int first = -1, last = -1;
+				for(int i = 0; i < m; i++) {
+					if(label == labels[ordering[i]]) {
+						if(first < 0)
+							first = i;
+						last = i;
+					}
+				}
+				
+				boolean found = false;
+				for(int[] c: clusters)
+					found |= c[0] == first && c[1] == last;
+				assertTrue(found);
+				
+				for(int i = first; i <= last; i++)
+					assertTrue(label == labels[ordering[i]]);
+			}
+		}
+	}
+
+	@Test
+	public void testErrors() {
+		final OPTICS unfit = new OPTICS(data);
+		boolean a = false;
+		try {
+			unfit.extractDBSCAN(0.5);
+		} catch(ModelNotFitException e) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+
+		a = false;
+		try {
+			unfit.getReachability();
+		} catch(ModelNotFitException e) {
+			a = true;
+		} finally {
+			assertTrue(a);
+		}
+
+		final OPTICS model = new OPTICSParameters().setMaxEps(1.0).fitNewModel(data);
+		for(double eps: new double[]{0.0, -1.0, 1.5}) {
+			a = false;
+			try {
+				model.extractDBSCAN(eps);
+			} catch(IllegalArgumentException e) {
+				a = true;
+			} finally {
+				assertTrue(a);
+			}
+		}
+
+		for(double xi: new double[]{0.0, 1.0}) {
+			a = false;
+			try {
+				model.extractXi(xi, 5);
+			} catch(IllegalArgumentException e) {
+				a = true;
+			} finally {
+				assertTrue(a);
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMaxEpsIAE() {
+		new OPTICS(data, new OPTICSParameters().setMaxEps(0.0));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testEpsExceedsMaxEpsIAE() {
+		new OPTICS(data, new OPTICSParameters()
+			.setMaxEps(1.0).setEps(2.0).setClusterMethod(ClusterMethod.DBSCAN));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testXiIAE() {
+		new OPTICS(data, new OPTICSParameters().setXi(1.5));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMinPtsIAE() {
+		new OPTICS(data, new OPTICSParameters().setMinPts(0));
+	}
+}
@@ -2,8 +2,11 @@ package com.clust4j.algo;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+
 import org.junit.Test;
 
+import com.clust4j.algo.ParallelChunkingTask.Chunk;
 import com.clust4j.algo.ParallelChunkingTask.ChunkingStrategy;
 import com.clust4j.algo.ParallelChunkingTask.SimpleChunkingStrategy;
 import com.clust4j.utils.MatUtils;
@@ -27,5 +30,27 @@ public class ParallelTaskTests {
 			@Override protected Integer compute() { return -1; }
 		}.formatName("FJ-1-1"));
 	}
-
+	
+	@Test
+	public void testChunksCoverAllRows() {
+		final double[][] X = MatUtils.randomGaussian(1250, 2);
+		
+		// A single chunk, as on a single core, must hold every row
+		ArrayList<Chunk> chunks = new SimpleChunkingStrategy() {
+			@Override public int getNumChunks(final double[][] data) { return 1; }
+		}.map(X);
+		
+		assertTrue(chunks.size() == 1);
+		assertTrue(chunks.get(0).start == 0);
+		assertTrue(chunks.get(0).size() == X.length);
+		
+		// Otherwise the chunks tile the rows in order
+		int next = 0;
+		for(Chunk chunk: new SimpleChunkingStrategy().map(X)) {
+			assertTrue(chunk.start == next);
+			next += chunk.size();
+		}
+		
+		assertTrue(next == X.length);
+	}
 }
@@ -29,6 +29,7 @@ import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.clust4j.TestSuite;
 import com.clust4j.data.BufferedMatrixReader.MatrixReaderSetup;
 import com.clust4j.except.MatrixParseException;
 import com.clust4j.utils.MatUtils;
@@ -1185,4 +1186,122 @@ public class BufferedMatrixReaderTests {
 			Files.delete(path);
 		}
 	}
+	
+	@Test
+	public void testChunkedMatchesBuffered() throws IOException {
+		try {
+			Object[] o = new Object[]{
+				"# a comment",
+				"a,b,c",
+				"1,2,3",
+				"4,5,6",
+				"",
+				"7,8,9",
+				"10,11,12",
+				"13,14,15"
+			};
+			
+			writeCSV(o);
+			final double[][] expected = readCSV().getDataRef().getDataRef();
+			
+			ChunkedMatrixReader cmr = new ChunkedMatrixReader(new File(file), 2);
+			try {
+				assertTrue(cmr.getRowDimension() == 5);
+				assertTrue(cmr.getColumnDimension() == 3);
+				assertTrue(cmr.getNumBlocks() == 3);
+				assertTrue(Arrays.equals(cmr.getHeaders(), new String[]{"a","b","c"}));
+				
+				int row = 0;
+				for(int b = 0; b < cmr.getNumBlocks(); b++) {
+					double[][] block = cmr.readBlock(b);
+					assertTrue(block.length == (b == 2 ? 1 : 2));
+					
+					for(double[] r: block)
+						assertTrue(Arrays.equals(r, expected[row++]));
+				}
+				
+				assertTrue(row == expected.length);
+			} finally {
+				cmr.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void testChunkedLargeBlocks() throws IOException {
+		try {
+			final double[][] data = TestSuite.IRIS_DATASET.getData().getData();
+			writeCSV(fromDoubleArr(data));
+			
+			ChunkedMatrixReader cmr = new ChunkedMatrixReader(new File(file), 1000);
+			try {
+				assertTrue(cmr.getNumBlocks() == 1);
+				assertTrue(null == cmr.getHeaders());
+				assertTrue(MatUtils.equalsExactly(data, cmr.readBlock(0)));
+			} finally {
+				cmr.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test(expected=MatrixParseException.class)
+	public void testChunkedJagged() throws IOException {
+		try {
+			Object[] o = new Object[]{
+				"1,2,3",
+				"4,5,6",
+				"7,8"
+			};
+			
+			writeCSV(o);
+			ChunkedMatrixReader cmr = new ChunkedMatrixReader(new File(file), 2);
+			try {
+				cmr.readBlock(1);
+			} finally {
+				cmr.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void testMappedRoundTrip() throws IOException {
+		try {
+			final double[][] data = TestSuite.IRIS_DATASET.getData().getData();
+			MappedMatrixSource.write(MatUtils.slice(data, 0, 100), new File(file), false);
+			MappedMatrixSource.write(MatUtils.slice(data, 100, data.length), new File(file), true);
+			
+			MappedMatrixSource mms = new MappedMatrixSource(new File(file), 4, 64);
+			try {
+				assertTrue(mms.getRowDimension() == 150);
+				assertTrue(mms.getNumBlocks() == 3);
+				
+				int row = 0;
+				for(int b = 0; b < mms.getNumBlocks(); b++)
+					for(double[] r: mms.readBlock(b))
+						assertTrue(Arrays.equals(r, data[row++]));
+				assertTrue(row == 150);
+			} finally {
+				mms.close();
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test(expected=MatrixParseException.class)
+	public void testMappedBadLength() throws IOException {
+		try {
+			final double[][] data = TestSuite.IRIS_DATASET.getData().getData();
+			MappedMatrixSource.write(data, new File(file), false);
+			new MappedMatrixSource(new File(file), 7).close();
+		} finally {
+			Files.delete(path);
+		}
+	}
 }
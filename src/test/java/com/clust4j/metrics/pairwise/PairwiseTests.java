@@ -390,4 +390,34 @@ public class PairwiseTests {
 		final double[] d = new double[]{1,2,3,4,5};
 		assertTrue(Similarity.COSINE.getPartialSimilarity(d, d) == Similarity.COSINE.getSimilarity(d, d));
 	}
+	
+	@Test
+	public void testCondensed() {
+		final double[][] data = MatUtils.randomGaussian(400, 4, new java.util.Random(42));
+		final int m = data.length;
+		
+		for(DistanceMetric metric: new DistanceMetric[]{Distance.EUCLIDEAN, Distance.MANHATTAN, new MinkowskiDistance(1.5)}) {
+			final double[][] full = Pairwise.getDistance(data, metric, true, false);
+			final double[] serial = Pairwise.getCondensedDistance(data, metric, false);
+			final double[] parallel = Pairwise.getCondensedDistance(data, metric, true);
+			final float[] single = Pairwise.getCondensedDistanceFloat(data, metric, true);
+			assertTrue(serial.length == m * (m - 1) / 2);
+			
+			int idx = 0;
+			for(int i = 0; i < m - 1; i++) {
+				for(int j = i + 1; j < m; j++, idx++) {
+					assertTrue(Pairwise.condensedIndex(m, i, j) == idx);
+					assertTrue(Pairwise.condensedIndex(m, j, i) == idx);
+					assertTrue(serial[idx] == full[i][j]);
+					assertTrue(parallel[idx] == full[i][j]);
+					assertTrue(single[idx] == (float)full[i][j]);
+				}
+			}
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCondensedTooLarge() {
+		Pairwise.getCondensedDistanceFloat(new double[70000][], Distance.EUCLIDEAN, false);
+	}
 }
@@ -2,6 +2,9 @@ package com.clust4j.utils;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.junit.Test;
 
 /**
@@ -18,5 +21,21 @@ public class HeapTests {
 		assertTrue(s.pop() == 1);
 		assertTrue(s.size() == 0);
 	}
-
+	
+	@Test
+	public void testPushPop() {
+		SimpleHeap<Integer> s = new SimpleHeap<Integer>(
+			new ArrayList<Integer>(Arrays.asList(new Integer[]{5, 1, 7, 3, 2, 6, 4})));
+		
+		// Less than the root, so it is returned without entering the heap
+		assertTrue(s.pushPop(0) == 0);
+		
+		// Replaces the root, which must then be sifted into place
+		assertTrue(s.pushPop(8) == 1);
+		assertTrue(s.size() == 7);
+		
+		for(int i = 2; i <= 8; i++)
+			assertTrue(s.pop() == i);
+		assertTrue(s.size() == 0);
+	}
 }